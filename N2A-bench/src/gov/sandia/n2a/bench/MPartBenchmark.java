@@ -0,0 +1,55 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.eqset.MPart;
+import gov.sandia.n2a.ui.jobs.MPartSnapshot;
+
+/**
+    Collation of a model that inherits through a deep chain, and also contains every model in
+    the chain as a subpart. The repo is passed as a snapshot, so the user's database is not involved.
+**/
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class MPartBenchmark
+{
+    @Param ({"4", "32"})
+    public int depth;
+
+    public MNode repo;
+
+    @Setup
+    public void setup ()
+    {
+        repo = Models.repo (depth);
+    }
+
+    @Benchmark
+    public MPart collate ()
+    {
+        return MPartSnapshot.from ("Top", repo);
+    }
+}
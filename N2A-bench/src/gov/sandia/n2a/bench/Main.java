@@ -0,0 +1,53 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+    Runs the benchmarks with defaults suited to tracking results over time.
+    Accepts all the usual JMH options. Unless overridden, results are written as JSON to
+    results/jmh-<date>.json, and the GC profiler is enabled so that each benchmark also
+    reports allocation rate (gc.alloc.rate.norm is bytes per operation).
+**/
+public class Main
+{
+    public static void main (String[] args) throws Exception
+    {
+        CommandLineOptions cli = new CommandLineOptions (args);
+        if (cli.shouldHelp ()  ||  cli.shouldList ()  ||  cli.shouldListWithParams ()  ||  cli.shouldListProfilers ()  ||  cli.shouldListResultFormats ())
+        {
+            org.openjdk.jmh.Main.main (args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder ().parent (cli);
+        if (! cli.getResult ().hasValue ())
+        {
+            Path dir = Paths.get ("results");
+            Files.createDirectories (dir);
+            String stamp = new SimpleDateFormat ("yyyy-MM-dd-HHmmss", Locale.ROOT).format (new Date ());
+            options.result (dir.resolve ("jmh-" + stamp + ".json").toString ());
+        }
+        if (! cli.getResultFormat ().hasValue ()) options.resultFormat (ResultFormatType.JSON);
+        if (cli.getProfilers ().isEmpty ()) options.addProfiler (GCProfiler.class);
+
+        new Runner (options.build ()).run ();
+    }
+}
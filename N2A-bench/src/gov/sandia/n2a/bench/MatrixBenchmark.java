@@ -0,0 +1,129 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.sandia.n2a.linear.KernelDense;
+import gov.sandia.n2a.linear.MatrixDense;
+
+/**
+    Dense matrix products, at sizes ranging from a 3D transform to a weight matrix between populations.
+    The "kernel" parameter switches between the contiguous kernels in KernelDense and the general strided loops.
+**/
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class MatrixBenchmark
+{
+    @Param ({"4", "64", "512"})
+    public int size;
+
+    @Param ({"true", "false"})
+    public boolean kernel;
+
+    public MatrixDense A;
+    public MatrixDense B;
+    public MatrixDense x;
+    public MatrixDense y;
+    public MatrixDense L;
+
+    @Setup
+    public void setup ()
+    {
+        Random random = new Random (1);
+        A = new MatrixDense (size, size);
+        B = new MatrixDense (size, size);
+        x = new MatrixDense (size, 1);
+        y = new MatrixDense (size, 1);
+        L = new MatrixDense (size, size);
+        for (int c = 0; c < size; c++)
+        {
+            for (int r = 0; r < size; r++)
+            {
+                A.set (r, c, random.nextDouble ());
+                B.set (r, c, random.nextDouble ());
+            }
+            for (int r = c; r < size; r++) L.set (r, c, random.nextDouble ());
+            L.set (c, c, L.get (c, c) + size);  // Keep the triangular solve well conditioned.
+            x.set (c, random.nextDouble ());
+            y.set (c, random.nextDouble ());
+        }
+        KernelDense.enabled = kernel;
+    }
+
+    @TearDown
+    public void tearDown ()
+    {
+        KernelDense.enabled = true;
+    }
+
+    @Benchmark
+    public MatrixDense multiplyMatrix ()
+    {
+        return A.multiply (B);
+    }
+
+    @Benchmark
+    public MatrixDense multiplyVector ()
+    {
+        return A.multiply (x);
+    }
+
+    @Benchmark
+    public MatrixDense multiplyScalar ()
+    {
+        return A.multiply (2.0);
+    }
+
+    @Benchmark
+    public MatrixDense add ()
+    {
+        return A.add (B);
+    }
+
+    @Benchmark
+    public MatrixDense multiplyElementwise ()
+    {
+        return A.multiplyElementwise (B);
+    }
+
+    @Benchmark
+    public double dot ()
+    {
+        return x.dot (y);
+    }
+
+    @Benchmark
+    public double norm ()
+    {
+        return A.norm (2);
+    }
+
+    @Benchmark
+    public MatrixDense backSubstitute ()
+    {
+        return L.backSubstitue (true, B);
+    }
+}
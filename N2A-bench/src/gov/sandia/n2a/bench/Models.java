@@ -0,0 +1,100 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.bench;
+
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.db.MVolatile;
+
+/**
+    Synthetic model documents shared by the benchmarks.
+    These are built in memory so that results don't depend on the contents of the user's database.
+**/
+public class Models
+{
+    /**
+        A single population of leaky integrate-and-fire neurons with recurrent excitatory connections.
+        @param n Number of neurons.
+        @param connectivity Either "sparse", where each pair connects with fixed probability,
+        or "spatial", where neurons are scattered in a unit cube and each connects to its nearest neighbors.
+        @param duration Simulated time in seconds. The time step is the default 0.1ms.
+    **/
+    public static MNode lif (int n, String connectivity, double duration)
+    {
+        MNode model = new MVolatile ("", "LIF");
+        model.set (duration, "$meta", "duration");
+
+        model.set (n,                  "A", "$n");
+        model.set ("0.025",            "A", "Ibias");
+        model.set ("+0",               "A", "I");  // Accumulates synaptic input each cycle.
+        model.set ("(Ibias+I-V)/0.02", "A", "V'");
+        model.set ("uniform()*0.02",   "A", "V", "@$init");
+        model.set ("0",                "A", "V", "@V>0.02");
+
+        model.set ("A",                "C", "A");
+        model.set ("A",                "C", "B");
+        model.set ("+0.002@A.V>0.019", "C", "B.I");
+        if (connectivity.equals ("spatial"))
+        {
+            model.set ("uniform([1;1;1])", "A", "$xyz");
+            model.set ("8",                "C", "$k");
+            model.set ("0.2",              "C", "$radius");
+        }
+        else
+        {
+            // Hold the expected fan-in near 50, so that work grows linearly with n.
+            model.set (Math.min (1.0, 50.0 / n), "C", "$p");
+        }
+        return model;
+    }
+
+    /**
+        A flat document with the given number of parts, each holding a handful of equations and metadata.
+        Resembles a large imported model, such as a NeuroML cell library.
+    **/
+    public static MNode wide (int parts)
+    {
+        MNode doc = new MVolatile ("", "Wide");
+        for (int i = 0; i < parts; i++)
+        {
+            String p = "P" + i;
+            doc.set ("",                      p);
+            doc.set ("Base",                  p, "$inherit");
+            doc.set (i,                       p, "$n");
+            doc.set (i * 0.001 + "mV",        p, "v0");
+            doc.set ("-(v-v0)/tau",           p, "v'");
+            doc.set (1 + i % 20 + "ms",       p, "tau");
+            doc.set ("Some descriptive text", p, "$meta", "notes");
+            doc.set (i % 2 == 0,              p, "$meta", "param");
+        }
+        return doc;
+    }
+
+    /**
+        A mini-repo in which "Top" inherits through a chain of the given depth, and also contains
+        every model in the chain as a subpart. This exercises the inheritance resolution in MPart.
+    **/
+    public static MNode repo (int depth)
+    {
+        MNode repo = new MVolatile ();
+        MNode base = repo.childOrCreate ("Base");
+        for (int j = 0; j < 20; j++) base.set (j + "*x", "b" + j);
+        base.set ("1ms", "tau");
+
+        for (int i = 0; i < depth; i++)
+        {
+            MNode m = repo.childOrCreate ("M" + i);
+            m.set (i == 0 ? "Base" : "M" + (i - 1), "$inherit");
+            for (int j = 0; j < 10; j++) m.set (i + j + "*y", "v" + i + "_" + j);
+            m.set (i, "b" + (i % 20));  // override something from Base
+        }
+
+        MNode top = repo.childOrCreate ("Top");
+        top.set ("M" + (depth - 1), "$inherit");
+        for (int i = 0; i < depth; i++) top.set ("M" + i, "sub" + i, "$inherit");
+        return repo;
+    }
+}
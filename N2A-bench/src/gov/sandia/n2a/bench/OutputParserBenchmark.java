@@ -0,0 +1,96 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.sandia.n2a.ui.jobs.OutputParser;
+
+/**
+    Parsing a simulation output file of the given size, in megabytes.
+    The default sizes keep a full run short. For multi-gigabyte files, run with something like
+    -p megabytes=4096 -jvmArgs -Xmx16g
+    The file is generated once per trial in the temp directory, then deleted.
+**/
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.SingleShotTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 1)
+@Measurement (iterations = 3)
+@Fork (1)
+public class OutputParserBenchmark
+{
+    @Param ({"16", "256"})
+    public int megabytes;
+
+    @Param ({"100"})
+    public int columns;
+
+    public Path file;
+
+    @Setup
+    public void setup () throws IOException
+    {
+        file = Files.createTempFile ("n2a-bench", ".out");
+        Random random = new Random (1);
+        long limit = megabytes * 1048576L;
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter (file))
+        {
+            StringBuilder line = new StringBuilder ("$t");
+            for (int c = 1; c < columns; c++) line.append ("\tA(" + c + ").V");
+            writer.write (line.toString ());
+            writer.newLine ();
+
+            for (int r = 0; written < limit; r++)
+            {
+                line.setLength (0);
+                line.append (r * 1e-4);
+                for (int c = 1; c < columns; c++)
+                {
+                    line.append ('\t');
+                    line.append ((float) random.nextGaussian ());
+                }
+                writer.write (line.toString ());
+                writer.newLine ();
+                written += line.length () + 1;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown () throws IOException
+    {
+        Files.deleteIfExists (file);
+    }
+
+    @Benchmark
+    public OutputParser parse ()
+    {
+        OutputParser result = new OutputParser ();
+        result.parse (file);
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.db.MVolatile;
+import gov.sandia.n2a.db.Schema;
+
+/**
+    Parses the text form of a large model document through the current schema (Schema2).
+**/
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 2)
+@Fork (1)
+public class SchemaBenchmark
+{
+    @Param ({"1000", "20000"})
+    public int parts;
+
+    public String text;
+
+    @Setup
+    public void setup () throws IOException
+    {
+        MNode doc = Models.wide (parts);
+        StringWriter writer = new StringWriter ();
+        Schema schema = Schema.latest ();
+        schema.write (writer);
+        schema.write (doc, writer, "");
+        text = writer.toString ();
+    }
+
+    @Benchmark
+    public MNode read () throws IOException
+    {
+        MNode result = new MVolatile ();
+        Schema.readAll (result, new StringReader (text));
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.sandia.n2a.backend.internal.InternalBackend;
+import gov.sandia.n2a.backend.internal.Simulator;
+import gov.sandia.n2a.backend.internal.Wrapper;
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.eqset.EquationSet;
+
+/**
+    Internal simulator on an LIF network.
+    "construct" measures the init cycle, which is dominated by Population.connect().
+    "simulate" adds a short run, which is dominated by EventStep.
+    Each invocation digests a fresh copy of the model outside the timed region, since
+    the simulator writes into the backend data attached to the EquationSet.
+**/
+@State (Scope.Thread)
+@BenchmarkMode (Mode.SingleShotTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 3)
+@Measurement (iterations = 10)
+@Fork (1)
+public class SimulatorBenchmark
+{
+    @Param ({"100", "1000", "10000"})
+    public int size;
+
+    @Param ({"sparse", "spatial"})
+    public String connectivity;
+
+    public MNode       model;
+    public Path        jobDir;
+    public EquationSet digested;
+
+    @Setup (Level.Trial)
+    public void setupTrial () throws IOException
+    {
+        model  = Models.lif (size, connectivity, 0.01);
+        jobDir = Files.createTempDirectory ("n2a-bench");
+    }
+
+    @Setup (Level.Invocation)
+    public void setupInvocation () throws Exception
+    {
+        digested = new EquationSet (model);
+        InternalBackend.digestModel (digested);
+        InternalBackend.prepareToRun (digested);
+    }
+
+    @Benchmark
+    public Simulator construct ()
+    {
+        Simulator result = new Simulator (new Wrapper (digested), 1, jobDir);
+        result.init ();
+        result.closeStreams ();
+        result.out.close ();
+        return result;
+    }
+
+    @Benchmark
+    public Simulator simulate ()
+    {
+        Simulator result = new Simulator (new Wrapper (digested), 1, jobDir);
+        result.init ();
+        result.run ();
+        result.out.close ();
+        return result;
+    }
+}
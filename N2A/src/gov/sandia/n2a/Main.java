@@ -7,6 +7,8 @@ the U.S. Government retains certain rights in this software.
 package gov.sandia.n2a;
 
 import gov.sandia.n2a.backend.c.JobC;
+import gov.sandia.n2a.backend.internal.DigestBenchmark;
+import gov.sandia.n2a.backend.internal.WorkerPool;
 import gov.sandia.n2a.backend.python.JobPython;
 import gov.sandia.n2a.db.AppData;
 import gov.sandia.n2a.db.MDoc;
@@ -62,7 +64,15 @@ public class Main
             else if (arg.startsWith ("-pluginDir=" )) pluginDirs      .add (Paths.get (arg.substring (11)).toAbsolutePath ());
             else if (arg.startsWith ("-param="     )) processParamFile (arg.substring (7), record);
             else if (arg.startsWith ("-install"    )) headless = "install";
+            else if (arg.startsWith ("-worker"     )) headless = "worker";
             else if (arg.startsWith ("-csv"        )) record.set (true, "$meta", "csv");
+            else if (arg.startsWith ("-baseline="  )) record.set (arg.substring (10), "$meta", "benchmark", "baseline");
+            else if (arg.startsWith ("-repeat="    )) record.set (arg.substring (8),  "$meta", "benchmark", "repeat");
+            else if (arg.startsWith ("-benchmark=" ))
+            {
+                record.set (arg.substring (11), "$meta", "benchmark", "corpus");
+                headless = "benchmark";
+            }
             else if (arg.startsWith ("-run="))
             {
                 MNode temp = new MVolatile ("", arg.substring (5));
@@ -110,9 +120,11 @@ public class Main
 
         if (! headless.isEmpty ())
         {
-            if      (headless.equals ("run"    )) runHeadless   (record);
-            else if (headless.equals ("study"  )) studyHeadless (record);
-            else if (headless.equals ("install"))
+            if      (headless.equals ("run"      )) runHeadless         (record);
+            else if (headless.equals ("study"    )) studyHeadless       (record);
+            else if (headless.equals ("benchmark")) DigestBenchmark.run (record);
+            else if (headless.equals ("worker"   )) WorkerPool.serve    ();
+            else if (headless.equals ("install"  ))
             {
                 try
                 {
@@ -8,6 +8,7 @@ package gov.sandia.n2a.backend.c;
 
 import gov.sandia.n2a.backend.internal.InternalBackendData.EventSource;
 import gov.sandia.n2a.backend.internal.InternalBackendData.EventTarget;
+import gov.sandia.n2a.backend.internal.PhaseTimer;
 import gov.sandia.n2a.db.MNode;
 import gov.sandia.n2a.eqset.EquationEntry;
 import gov.sandia.n2a.eqset.EquationSet;
@@ -62,8 +63,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
@@ -98,6 +101,7 @@ public class JobC extends Thread
     protected boolean during;
     protected boolean after;
     protected boolean kokkos;        // profiling method
+    protected boolean profile;       // Emit a timing region around each population phase and each runtime phase. Results go to a "profile" file in the job dir (one per rank), unless kokkos supplies its own collector.
     public    boolean gprof;         // profiling method
     public    boolean debug;         // compile with debug symbols; applies to current model as well as any runtime components that happen to get rebuilt
     public    boolean cli;           // command-line interface
@@ -106,8 +110,12 @@ public class JobC extends Thread
     public    boolean shared = true; // When lib is false, determines whether target binary uses static or dynamic linking to runtime. When lib is true, determines whether target library is shared or static. Target library always contains full runtime, but will not include external resources like FFmpeg.
     public    boolean csharp;        // Emit library code for use by C# (and other CLR languages). Only has an effect when lib is true.
     public    boolean tls;           // Make global objects thread-local, so multiple simulations can be run in same process. (Generally, it is cleaner to use separate process for each simulation, but some users want this.)
+    public    int     threads = 1;   // Number of threads that share the work of each time step. Values greater than 1 build a threaded runtime.
+    public    int     ranks   = 1;   // Number of processes that the model is split across. See decompose().
+    public    boolean splitmix;      // Use the counter-based generator in the runtime rather than rand(), with one stream per step partition. Results then don't depend on threads. Always true when threads > 1.
     protected boolean usesPolling;
     protected List<ProvideOperator> extensions = new ArrayList<ProvideOperator> ();
+    protected Map<EquationSet,Integer> rankOf;  // Which process runs each top-level population. Null if the model runs as a single process.
 
     // These values are unique across the whole simulation, so they go here rather than BackendDataC.
     // Where possible, the key is a String. Otherwise, it is an Operator which is specific to one expression.
@@ -153,7 +161,9 @@ public class JobC extends Thread
         {
             job.set ("Preparing", "status");
             job.set (System.currentTimeMillis (), "started");
+            PhaseTimer.begin (job.key ());
             MNode model = NodeJob.getModel (job);
+            PhaseTimer.mark ("getModel");
 
             T = model.getOrDefault ("float", "$meta", "backend", "c", "type");
             if (T.contains ("int"))
@@ -170,12 +180,16 @@ public class JobC extends Thread
                 Backend.err.get ().println ("WARNING: Unsupported numeric type. Defaulting to single-precision float.");
             }
 
-            kokkos = model.getFlag ("$meta", "backend", "c", "kokkos");
-            gprof  = model.getFlag ("$meta", "backend", "c", "gprof");
-            debug  = model.getFlag ("$meta", "backend", "c", "debug");
-            cli    = model.getFlag ("$meta", "backend", "c", "cli");
-            tls    = model.getFlag ("$meta", "backend", "c", "tls");
-            csharp = model.getFlag ("$meta", "backend", "c", "sharp");
+            kokkos  = model.getFlag ("$meta", "backend", "c", "kokkos");
+            profile = model.getFlag ("$meta", "backend", "c", "profile")  ||  kokkos;
+            gprof   = model.getFlag ("$meta", "backend", "c", "gprof");
+            debug   = model.getFlag ("$meta", "backend", "c", "debug");
+            cli     = model.getFlag ("$meta", "backend", "c", "cli");
+            tls     = model.getFlag ("$meta", "backend", "c", "tls");
+            csharp  = model.getFlag ("$meta", "backend", "c", "sharp");
+            threads = Math.max (1, model.getOrDefault (1, "$meta", "backend", "c", "threads"));
+            ranks   = Math.max (1, model.getOrDefault (1, "$meta", "backend", "c", "ranks"));
+            splitmix = model.getFlag ("$meta", "backend", "c", "splitmix")  ||  threads > 1;
             if (! lib)
             {
                 if (model.data ("$meta", "backend", "c", "shared")) shared = model.getFlag ("$meta", "backend", "c", "shared");
@@ -185,6 +199,15 @@ public class JobC extends Thread
                     Backend.err.get ().println ("WARNING: TLS is incompatible with separate shared-object runtime. Ignoring this feature.");
                 }
             }
+            if (tls  &&  threads > 1)
+            {
+                threads = 1;
+                Backend.err.get ().println ("WARNING: TLS is incompatible with a threaded runtime, because worker threads can't see thread-local model objects. Ignoring threads.");
+            }
+            if (model.data ("$meta", "backend", "all", "checkpoint"))
+            {
+                Backend.err.get ().println ("WARNING: The C runtime can't write checkpoints. Only the Internal backend supports them. This run will start over if it is stopped.");
+            }
 
             String e = model.get ("$meta", "backend", "all", "event");
             switch (e)
@@ -206,11 +229,19 @@ public class JobC extends Thread
             jobDir           = Host.getJobDir (resourceDir, job);  // Unlike localJobDir (which is created by MDir), this may not exist until we explicitly create it.
             runtimeDir       = resourceDir.resolve ("backend").resolve ("c");
             detectExternalResources ();
+            PhaseTimer.mark ("detectExternalResources");
             rebuildRuntime ();
+            PhaseTimer.mark ("rebuildRuntime");
 
             Files.createDirectories (jobDir);  // digestModel() might write to a remote file (params), so we need to ensure the dir exists first.
             digestedModel = new EquationSet (model);
+            PhaseTimer.mark ("construct");
             digestModel ();
+            if (ranks > 1)
+            {
+                decompose ();
+                PhaseTimer.mark ("decompose");
+            }
             String duration = digestedModel.metadata.get ("duration");
             if (! duration.isBlank ()) job.set (duration, "duration");
 
@@ -222,18 +253,24 @@ public class JobC extends Thread
             }
 
             System.out.println (digestedModel.dump (false));
+            PhaseTimer.skip ();  // Don't charge the dump to any phase.
 
             Path source = jobDir.resolve ("model.cc");
             generateCode (source);
+            PhaseTimer.mark ("generateCode");
 
             if (lib)
             {
                 makeLibrary (source);
+                PhaseTimer.mark ("makeLibrary");
+                finishPhases ();
                 job.clear ("status");
             }
             else
             {
                 Path commandPath = build (source);
+                PhaseTimer.mark ("build");
+                finishPhases ();
 
                 // The C program could append to the same error file, so we need to close the file before submitting.
                 PrintStream ps = Backend.err.get ();
@@ -276,12 +313,24 @@ public class JobC extends Thread
             try {Host.stringToFile ("failure", localJobDir.resolve ("finished"));}
             catch (Exception f) {}
         }
+        PhaseTimer.end ();  // In case an exception skipped finishPhases().
 
         // If an exception occurred, the err file could still be open.
         PrintStream ps = Backend.err.get ();
         if (ps != System.err) ps.close ();
     }
 
+    /**
+        Stops phase timing for this job, then records the result in the job and err file.
+    **/
+    public void finishPhases ()
+    {
+        PhaseTimer timer = PhaseTimer.end ();
+        if (timer == null) return;
+        timer.save (job);
+        timer.dump (Backend.err.get ());
+    }
+
     public static boolean contains (Path dir, String prefix, String name, String suffix)
     {
         try (DirectoryStream<Path> stream = Files.newDirectoryStream (dir))
@@ -570,6 +619,9 @@ public class JobC extends Thread
                 c.addDefine ("n2a_T", T);
                 if (T.contains ("int")) c.addDefine ("n2a_FP");
                 if (tls) c.addDefine ("n2a_TLS");
+                if (threads > 1) c.addDefine ("n2a_THREADS");
+                if (splitmix) c.addDefine ("n2a_SPLITMIX");
+                if (profile) c.addDefine ("n2a_PROFILE");
                 c.addSource (runtimeDir.resolve (stem + ".cc"));
                 c.setOutput (object);
 
@@ -678,7 +730,10 @@ public class JobC extends Thread
         if (shared) result.append ("_shared");
         if (debug ) result.append ("_debug");
         if (tls   ) result.append ("_tls");
+        if (threads > 1) result.append ("_threads");
+        else if (splitmix) result.append ("_splitmix");  // The threaded runtime always has splitmix, so only distinguish the single-threaded case.
         if (gprof ) result.append ("_gprof");
+        if (profile) result.append ("_profile");
         result.append (".o");
         return result.toString ();
     }
@@ -693,7 +748,10 @@ public class JobC extends Thread
         result.append ("runtime_" + T);
         if (debug) result.append ("_debug");
         if (tls  ) result.append ("_tls");
+        if (threads > 1) result.append ("_threads");
+        else if (splitmix) result.append ("_splitmix");  // The threaded runtime always has splitmix, so only distinguish the single-threaded case.
         if (gprof) result.append ("_gprof");
+        if (profile) result.append ("_profile");
         return result.toString ();
     }
 
@@ -754,11 +812,13 @@ public class JobC extends Thread
             if (path != null) c.addObject (path);
         }
 
-        if (kokkos)
+        if (profile)
         {
             c.addObject (runtimeDir.resolve (objectName ("profiling")));
-            c.addLibrary ("dl");  // kokkos should only be set on Linux systems.
+            if (! (env instanceof Windows)) c.addLibrary ("dl");  // For loading a kokkos collector. kokkos should only be set on Linux systems.
         }
+
+        if (threads > 1  &&  ! (env instanceof Windows)) c.addLibrary ("pthread");
     }
 
     public Path build (Path source) throws Exception
@@ -783,6 +843,8 @@ public class JobC extends Thread
         c.addDefine ("n2a_T", T);
         if (T.contains ("int")) c.addDefine ("n2a_FP");
         if (tls) c.addDefine ("n2a_TLS");
+        if (threads > 1) c.addDefine ("n2a_THREADS");
+        if (splitmix) c.addDefine ("n2a_SPLITMIX");
         c.setOutput (binary);
         c.addSource (source);
         if (shared)
@@ -790,6 +852,7 @@ public class JobC extends Thread
             c.addLibraryDir (runtimeDir);
             c.addLibrary (runtimeName ());
             if (env instanceof Windows) c.addDefine ("n2a_DLL");
+            else if (threads > 1)       c.addLibrary ("pthread");
         }
         else
         {
@@ -826,6 +889,8 @@ public class JobC extends Thread
         c.addDefine ("n2a_T", T);
         if (T.contains ("int")) c.addDefine ("n2a_FP");
         if (tls) c.addDefine ("n2a_TLS");
+        if (threads > 1) c.addDefine ("n2a_THREADS");
+        if (splitmix) c.addDefine ("n2a_SPLITMIX");
         c.setOutput (object);
         c.addSource (source);
         Path out = c.compile ();
@@ -843,64 +908,78 @@ public class JobC extends Thread
     {
         job.set ("Analyzing model", "status");
 
-        if (digestedModel.source.containsKey ("pin"))
+        EquationSet e = digestedModel;
+        if (e.source.containsKey ("pin"))
         {
-            digestedModel.collectPins ();
-            digestedModel.fillAutoPins ();
-            digestedModel.resolvePins ();
-            digestedModel.purgePins ();
+            PhaseTimer.run (e, "collectPins", "fillAutoPins", "resolvePins", "purgePins");
         }
-        digestedModel.resolveConnectionBindings ();
-        digestedModel.addGlobalConstants ();
-        digestedModel.addSpecials ();  // $connect, $index, $init, $n, $t, $t'
-        digestedModel.addAttribute ("global",      false, true,  "$max", "$min", "$k", "$radius");
-        digestedModel.addAttribute ("global",      false, false, "$n");
-        digestedModel.addAttribute ("state",       true,  false, "$n");  // Forbid $n from being temporary, even if it meets the criteria.
-        digestedModel.addAttribute ("preexistent", true,  false, "$index", "$t'", "$t");  // Technically, $index is not pre-existent, but always receives special handling which has the same effect.
+        PhaseTimer.run (e,
+            "resolveConnectionBindings",
+            "addGlobalConstants",
+            "addSpecials");  // $connect, $index, $init, $n, $t, $t'
+        e.addAttribute ("global",      false, true,  "$max", "$min", "$k", "$radius");
+        e.addAttribute ("global",      false, false, "$n");
+        e.addAttribute ("state",       true,  false, "$n");  // Forbid $n from being temporary, even if it meets the criteria.
+        e.addAttribute ("preexistent", true,  false, "$index", "$t'", "$t");  // Technically, $index is not pre-existent, but always receives special handling which has the same effect.
+        PhaseTimer.mark ("addAttribute");
         if (cli)
         {
             try (BufferedWriter params = Files.newBufferedWriter (jobDir.resolve ("params")))
             {
-                tagCommandLineParameters (digestedModel, params);
-            }
-            catch (Exception e) {e.printStackTrace ();}
-        }
-        analyzeIOvectors (digestedModel);
-        digestedModel.resolveLHS ();
-        digestedModel.fillIntegratedVariables ();
-        digestedModel.findIntegrated ();
-        digestedModel.resolveRHS ();
-        digestedModel.flatten ("c");
-        digestedModel.findExternal ();
-        digestedModel.sortParts ();
-        digestedModel.checkUnits ();
-        digestedModel.findConstants ();
-        digestedModel.determineTraceVariableName ();
-        digestedModel.collectSplits ();
-        digestedModel.findDeath ();  // Required by addImplicitDependencies(). When run before findInitOnly(), some parts may be marked lethalP when they don't need to be. One solution would be to run findDeath() again after findInitOnly().
-        addImplicitDependencies (digestedModel);
-        digestedModel.addDrawDependencies ();
-        digestedModel.removeUnused ();  // especially get rid of unneeded $variables created by addSpecials()
-        createBackendData (digestedModel);
-        findPathToContainer (digestedModel);
-        digestedModel.findAccountableConnections ();
-        digestedModel.findTemporary ();  // for connections, makes $p and $project "temporary" under some circumstances.
-        digestedModel.determineOrder ();
-        digestedModel.findDerivative ();
-        digestedModel.findInitOnly ();  // propagate initOnly through ASTs
-        digestedModel.findDeath ();  // Re-run to ensure that lethalP is only set when necessary (see comment above).
-        digestedModel.determinePoll ();
-        digestedModel.purgeInitOnlyTemporary ();
-        digestedModel.setAttributesLive ();
-        digestedModel.forceTemporaryStorageForSpecials ();
-        findLiveReferences (digestedModel);
-        digestedModel.determineTypes ();
-        digestedModel.determineDuration ();
-        digestedModel.assignParents ();
-        if (T.contains ("int")) digestedModel.determineExponents ();
-        digestedModel.findConnectionMatrix ();
-        analyzeEvents (digestedModel);
-        analyze (digestedModel);
+                tagCommandLineParameters (e, params);
+            }
+            catch (Exception x) {x.printStackTrace ();}
+            PhaseTimer.mark ("tagCommandLineParameters");
+        }
+        PhaseTimer.run (this, e, "analyzeIOvectors");
+        PhaseTimer.run (e, "resolveLHS", "fillIntegratedVariables", "findIntegrated", "resolveRHS");
+        e.flatten ("c");
+        PhaseTimer.mark ("flatten");
+        PhaseTimer.run (e,
+            "findExternal",
+            "sortParts",
+            "checkUnits",
+            "findConstants",
+            "determineTraceVariableName",
+            "collectSplits",
+            "findDeath");  // Required by addImplicitDependencies(). When run before findInitOnly(), some parts may be marked lethalP when they don't need to be. One solution would be to run findDeath() again after findInitOnly().
+        PhaseTimer.run (this, e, "addImplicitDependencies");
+        PhaseTimer.run (e,
+            "addDrawDependencies",
+            "removeUnused");  // especially get rid of unneeded $variables created by addSpecials()
+        PhaseTimer.run (this, e, "createBackendData", "findPathToContainer");
+        PhaseTimer.run (e,
+            "findAccountableConnections",
+            "findTemporary",  // for connections, makes $p and $project "temporary" under some circumstances.
+            "determineOrder",
+            "findDerivative",
+            "findInitOnly",  // propagate initOnly through ASTs
+            "findDeath",  // Re-run to ensure that lethalP is only set when necessary (see comment above).
+            "determinePoll",
+            "purgeInitOnlyTemporary",
+            "setAttributesLive",
+            "forceTemporaryStorageForSpecials");
+        PhaseTimer.run (this, e, "findLiveReferences");
+        PhaseTimer.run (e, "determineTypes", "determineDuration", "assignParents");
+        if (T.contains ("int")) PhaseTimer.run (e, "determineExponents");
+        PhaseTimer.run (e, "findConnectionMatrix", "findConnectionSkip");
+        PhaseTimer.run (this, e, "analyzeEvents", "analyze");
+    }
+
+    /**
+        Emits a timing region that covers the remainder of the current population function.
+        Region names take the form "part phase". NodeProfile relies on the phase being the last word.
+        Instance functions are not timed individually. Opening a region costs about as much as a small
+        instance function, so it would swamp what it measures. Instead, the runtime times each phase
+        as a whole, under the part name "(runtime)".
+    **/
+    public String profileRegion (EquationSet s, String phase)
+    {
+        String name = s.prefix ();
+        if (name.isEmpty ()) name = s.name;
+        name += " " + phase;
+        name = name.replace ("\\", "\\\\").replace ("\"", "\\\"");
+        return "  ProfileRegion profileRegion (\"" + name + "\");\n";
     }
 
     public void tagCommandLineParameters (EquationSet s, Writer params) throws IOException
@@ -1179,6 +1258,240 @@ public class JobC extends Thread
         for (Variable v : s.variables) v.transform (t);
     }
 
+    /**
+        Assigns each top-level population to one of several processes.
+        The processes don't exchange spikes or state, so populations that are tied together by
+        connections or variable references must stay in the same process. The resulting groups
+        are balanced across ranks by estimated instance count. If the model can't be split at
+        least two ways, it runs as a single process.
+        The top-level part is replicated on every rank, so it must not receive writes from
+        populations or read their values. Otherwise each rank would compute a different copy.
+        Spike exchange between ranks is not supported, so a single connected network always
+        runs as one process.
+    **/
+    public void decompose ()
+    {
+        int requested = ranks;
+        ranks = 1;
+        if (lib  ||  env instanceof Windows)
+        {
+            Backend.err.get ().println ("WARNING: Multi-process runs are only available for stand-alone programs on POSIX hosts. Ignoring ranks.");
+            return;
+        }
+        BackendDataC bed = (BackendDataC) digestedModel.backendData;
+        if (! bed.localBufferedExternalWrite.isEmpty ()  ||  ! bed.globalBufferedExternalWrite.isEmpty ())
+        {
+            Backend.err.get ().println ("WARNING: Top-level part receives external writes, so it can't be replicated across ranks. Running as a single process.");
+            return;
+        }
+        class PopulationReader implements Visitor
+        {
+            public boolean found;
+            public boolean visit (Operator op)
+            {
+                if (op instanceof AccessVariable)
+                {
+                    VariableReference r = ((AccessVariable) op).reference;
+                    if (r != null  &&  r.variable != null  &&  r.variable.container != digestedModel) found = true;
+                }
+                return ! found;
+            }
+        }
+        PopulationReader reader = new PopulationReader ();
+        for (Variable v : digestedModel.variables)
+        {
+            v.visit (reader);
+            if (v.reference != null  &&  v.reference.variable != null  &&  v.reference.variable.container != digestedModel) reader.found = true;
+            if (reader.found)
+            {
+                // Each rank holds only some of the populations, so the replicated copy of this variable would differ between ranks.
+                Backend.err.get ().println ("WARNING: Top-level variable " + v.nameString () + " touches values inside a population, so the top-level part can't be replicated across ranks. Running as a single process.");
+                return;
+            }
+        }
+
+        // Union-find over top-level parts
+        Map<EquationSet,EquationSet> group = new HashMap<EquationSet,EquationSet> ();
+        for (EquationSet p : digestedModel.parts) group.put (p, p);
+        for (EquationSet p : digestedModel.parts) decomposeLink (p, p, group);
+
+        Map<EquationSet,List<EquationSet>> groups = new LinkedHashMap<EquationSet,List<EquationSet>> ();
+        Map<EquationSet,Double>            weights = new HashMap<EquationSet,Double> ();
+        for (EquationSet p : digestedModel.parts)
+        {
+            EquationSet root = decomposeFind (p, group);
+            List<EquationSet> members = groups.get (root);
+            if (members == null)
+            {
+                members = new ArrayList<EquationSet> ();
+                groups.put (root, members);
+                weights.put (root, 0.0);
+            }
+            members.add (p);
+            weights.put (root, weights.get (root) + decomposeWeight (p));
+        }
+        if (groups.size () < 2)
+        {
+            Backend.err.get ().println ("WARNING: Model is a single connected network, so it can't be split without exchanging spikes. Running as a single process.");
+            return;
+        }
+        ranks = Math.min (requested, groups.size ());
+
+        // Greedy balance: heaviest group goes to the lightest rank.
+        List<EquationSet> roots = new ArrayList<EquationSet> (groups.keySet ());
+        roots.sort (new Comparator<EquationSet> ()
+        {
+            public int compare (EquationSet a, EquationSet b)
+            {
+                return Double.compare (weights.get (b), weights.get (a));
+            }
+        });
+        double[] load = new double[ranks];
+        rankOf = new HashMap<EquationSet,Integer> ();
+        for (EquationSet root : roots)
+        {
+            int lightest = 0;
+            for (int r = 1; r < ranks; r++) if (load[r] < load[lightest]) lightest = r;
+            load[lightest] += weights.get (root);
+            for (EquationSet p : groups.get (root)) rankOf.put (p, lightest);
+        }
+    }
+
+    /**
+        Subroutine of decompose(). Joins the group of top-level part "top" with every
+        top-level part that s (which lies inside top) connects to or references.
+    **/
+    public void decomposeLink (EquationSet top, EquationSet s, Map<EquationSet,EquationSet> group)
+    {
+        if (s.connectionBindings != null)
+        {
+            for (ConnectionBinding cb : s.connectionBindings) decomposeUnion (top, cb.endpoint, group);
+        }
+
+        class ReferenceVisitor implements Visitor
+        {
+            public boolean visit (Operator op)
+            {
+                if (op instanceof AccessVariable)
+                {
+                    VariableReference r = ((AccessVariable) op).reference;
+                    if (r != null) decomposeUnion (top, r, group);
+                }
+                return true;
+            }
+        }
+        ReferenceVisitor visitor = new ReferenceVisitor ();
+        for (Variable v : s.variables)
+        {
+            if (v.reference != null) decomposeUnion (top, v.reference, group);
+            v.visit (visitor);
+        }
+
+        for (EquationSet p : s.parts) decomposeLink (top, p, group);
+    }
+
+    public void decomposeUnion (EquationSet top, VariableReference r, Map<EquationSet,EquationSet> group)
+    {
+        if (r.variable != null) decomposeUnion (top, r.variable.container, group);
+        for (Object o : r.resolution)
+        {
+            if      (o instanceof EquationSet      ) decomposeUnion (top, (EquationSet) o,                  group);
+            else if (o instanceof ConnectionBinding) decomposeUnion (top, ((ConnectionBinding) o).endpoint, group);
+        }
+    }
+
+    public void decomposeUnion (EquationSet top, EquationSet other, Map<EquationSet,EquationSet> group)
+    {
+        // Climb to the top-level part that contains other. Anything in the root itself is replicated on every rank, so it doesn't join groups.
+        if (other == null) return;
+        while (other.container != null  &&  other.container != digestedModel) other = other.container;
+        if (other.container == null) return;
+        EquationSet a = decomposeFind (top,   group);
+        EquationSet b = decomposeFind (other, group);
+        if (a != b) group.put (b, a);
+    }
+
+    public EquationSet decomposeFind (EquationSet p, Map<EquationSet,EquationSet> group)
+    {
+        EquationSet parent = group.get (p);
+        if (parent == p) return p;
+        EquationSet root = decomposeFind (parent, group);
+        group.put (p, root);
+        return root;
+    }
+
+    /**
+        Rough estimate of the number of instances p will create, including the contents of each instance.
+    **/
+    public double decomposeWeight (EquationSet p)
+    {
+        double n = 1;
+        if (p.connectionBindings != null)
+        {
+            for (ConnectionBinding cb : p.connectionBindings) n *= decomposeWeight (cb.endpoint);
+        }
+        else
+        {
+            Variable v = ((BackendDataC) p.backendData).n;
+            if (v != null  &&  v.hasAttribute ("constant")) n = Math.max (1, v.equations.first ().expression.getDouble ());
+        }
+        double inside = 1;
+        for (EquationSet c : p.parts) inside += decomposeWeight (c);
+        return n * inside;
+    }
+
+    /**
+        When the model is decomposed across processes, each top-level population runs in only one rank.
+        @return A condition to prefix on a call into population e, or an empty string if e runs on every rank.
+    **/
+    public String rankGuard (EquationSet e)
+    {
+        if (rankOf == null) return "";
+        Integer r = rankOf.get (e);
+        if (r == null) return "";
+        return "if (n2a_rank == " + r + ") ";
+    }
+
+    /**
+        Determines whether update() may run concurrently on disjoint sets of parts.
+        This requires that no part writes into another part, and that no part touches
+        a shared I/O holder, since holders are not synchronized.
+    **/
+    public boolean threadSafe (EquationSet s)
+    {
+        BackendDataC bed = (BackendDataC) s.backendData;
+        if (! bed.localBufferedExternalWrite .isEmpty ()) return false;
+        if (! bed.globalBufferedExternalWrite.isEmpty ()) return false;
+
+        class CheckIO implements Visitor
+        {
+            public boolean found;
+            public boolean visit (Operator op)
+            {
+                if (found) return false;
+                if (op instanceof Input  ||  op instanceof Output  ||  op instanceof ReadImage  ||  op instanceof Draw  ||  op instanceof ReadMatrix  ||  op instanceof Mfile)
+                {
+                    found = true;
+                }
+                // Functions provided by plugins are assumed to hold shared resources.
+                else if (op instanceof Function  &&  ! op.getClass ().getName ().startsWith ("gov.sandia.n2a.language."))
+                {
+                    found = true;
+                }
+                return ! found;
+            }
+        }
+        CheckIO check = new CheckIO ();
+        for (Variable v : s.variables)
+        {
+            v.visit (check);
+            if (check.found) return false;
+        }
+
+        for (EquationSet p : s.parts) if (! threadSafe (p)) return false;
+        return true;
+    }
+
     public void generateCode (Path source) throws Exception
     {
         job.set ("Generating C++ code", "status");
@@ -1193,7 +1506,7 @@ public class JobC extends Thread
 
         result.append ("#include \"math.h\"\n");  // math.h must always come first, because it messes with mode in which <cmath> is included.
         result.append ("#include \"runtime.h\"\n");
-        if (kokkos)
+        if (profile)
         {
             result.append ("#include \"profiling.h\"\n");
         }
@@ -1391,6 +1704,10 @@ public class JobC extends Thread
         {
             result.append ("  get_callbacks ();\n");
         }
+        else if (profile)
+        {
+            result.append ("  start_profiling ();\n");
+        }
         if (cli)
         {
             result.append ("  params = new Parameters<" + T + ">;\n");
@@ -1410,6 +1727,22 @@ public class JobC extends Thread
         }
         result.append ("  " + SIMULATOR + "integrator = new " + integrator + "<" + T + ">;\n");
         result.append ("  " + SIMULATOR + "after = " + after + ";\n");
+        double metrics = digestedModel.metadata.getOrDefault (10.0, "backend", "all", "metrics");
+        if (! lib  &&  metrics > 0)
+        {
+            // Writes the file "metrics" in the job dir, which is the working directory of a standalone program.
+            result.append ("  " + SIMULATOR + "metrics = new Metrics<" + T + "> (" + metrics + ");\n");
+        }
+        if (threads > 1)
+        {
+            // Integration never touches anything outside the part, except when RungeKutta evaluates
+            // derivatives, which can write to other parts just like a regular update.
+            boolean safe = threadSafe (digestedModel);
+            result.append ("  " + SIMULATOR + "setThreads (" + threads + ");\n");
+            result.append ("  " + SIMULATOR + "parallelIntegrate = " + (safe  ||  integrator.equals ("Euler")) + ";\n");
+            result.append ("  " + SIMULATOR + "parallelUpdate = " + safe + ";\n");
+            if (! safe) Backend.err.get ().println ("WARNING: Model has external writes or I/O, so update() will run serially. Only integration is spread across threads.");
+        }
         result.append ("  initIO ();\n");
         result.append ("  wrapper = new Wrapper;\n");
         result.append ("  " + SIMULATOR + "init (wrapper);\n");  // Simulator takes possession of wrapper, so it will be freed automatically.
@@ -1433,9 +1766,10 @@ public class JobC extends Thread
         {
             result.append ("  delete params;\n");
         }
-        if (kokkos)
+        if (profile)
         {
-            result.append ("  finalize_profiling ();\n");
+            if (ranks > 1) result.append ("  finalize_profiling ((std::string (\"profile.rank\") + std::to_string (n2a_rank)).c_str ());\n");
+            else           result.append ("  finalize_profiling ();\n");
         }
         result.append ("}\n");
         result.append ("\n");
@@ -1490,10 +1824,20 @@ public class JobC extends Thread
             result.append ("\n");
             if (seed >= 0)
             {
-                result.append ("  srand (" + seed + ");\n");
+                if (splitmix) result.append ("  n2a_srand (" + seed + ");\n");  // Also seeds the partition streams, which each EventStep draws from the main stream.
+                else          result.append ("  srand (" + seed + ");\n");
             }
             result.append ("  try\n");
             result.append ("  {\n");
+            if (ranks > 1)
+            {
+                result.append ("    forkRanks (" + ranks + ");\n");  // Only returns in child processes.
+                if (seed >= 0)  // Give each rank its own random stream.
+                {
+                    if (splitmix) result.append ("    n2a_srand (" + seed + " + n2a_rank);\n");
+                    else          result.append ("    srand (" + seed + " + n2a_rank);\n");
+                }
+            }
             result.append ("    init (argc, argv);\n");
             result.append ("    " + SIMULATOR + "run ();\n");
             result.append ("    finish ();\n");
@@ -1898,13 +2242,38 @@ public class JobC extends Thread
         }
     }
 
+    /**
+        Makes a data file from Backend.getModelResourceDir() visible to the program.
+        A local program reads the file in place, so this returns its absolute path.
+        A remote program gets a copy in its job dir, under the same relative path.
+        @return The file name to use in generated code. Unchanged if the file is not a model resource.
+    **/
+    public String stageResource (String fileName)
+    {
+        if (Files.exists (jobDir.resolve (fileName))) return fileName;
+        Path resource = Backend.getModelResourceDir ().resolve (fileName);
+        if (! Files.exists (resource)) return fileName;
+        if (! (env instanceof Remote)) return resource.toAbsolutePath ().toString ().replace ('\\', '/');
+        try
+        {
+            Path target = jobDir.resolve (fileName);
+            Files.createDirectories (target.getParent ());
+            Files.copy (resource, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            Backend.err.get ().println ("WARNING: Failed to copy " + fileName + " to remote job dir.");
+        }
+        return fileName;
+    }
+
     public void generateMainInitializers (RendererC context)
     {
         StringBuilder result = context.result;
         for (ProvideOperator po : extensions) po.generateMainInitializers (context);
         for (ReadMatrix r : mainMatrix)
         {
-            result.append ("  " + r.name + " = matrixHelper<" + T + "> (\"" + r.operands[0].getString () + "\"");
+            result.append ("  " + r.name + " = matrixHelper<" + T + "> (\"" + stageResource (r.operands[0].getString ()) + "\"");
             if (T.contains ("int")) result.append (", " + r.exponent);
             result.append (");\n");
         }
@@ -2240,7 +2609,7 @@ public class JobC extends Thread
             result.append ("  virtual void multiply (" + T + " scalar);\n");
             result.append ("  virtual void addToMembers ();\n");
         }
-        if (bed.populationCanBeInactive  ||  bed.poll >= 0)
+        if (bed.populationCanBeInactive  ||  bed.poll >= 0  ||  s.connectionSkip >= -1  ||  profile  &&  s.connectionBindings != null)
         {
             result.append ("  virtual void connect ();\n");
         }
@@ -2709,6 +3078,7 @@ public class JobC extends Thread
             bed.defined.clear ();
             result.append ("void " + ns + "init ()\n");
             result.append ("{\n");
+            if (profile) result.append (profileRegion (s, "init"));
             s.setInit (1);
             //   Zero out members
             for (Variable v : bed.globalMembers)
@@ -2771,7 +3141,7 @@ public class JobC extends Thread
         {
             result.append ("void " + ns + "integrate ()\n");
             result.append ("{\n");
-            if (kokkos) result.append ("  push_region (\"" + ns + "integrate()\");\n");
+            if (profile) result.append (profileRegion (s, "integrate"));
             result.append ("  EventStep<" + T + "> * event = getEvent ();\n");
             context.hasEvent = true;
             result.append ("  " + T + " dt = event->dt;\n");
@@ -2811,7 +3181,6 @@ public class JobC extends Thread
             }
             result.append ("  }\n");
             context.hasEvent = false;
-            if (kokkos) result.append ("  pop_region ();\n");
             result.append ("}\n");
             result.append ("\n");
         }
@@ -2822,7 +3191,7 @@ public class JobC extends Thread
             bed.defined.clear ();
             result.append ("void " + ns + "update ()\n");
             result.append ("{\n");
-            if (kokkos) result.append ("  push_region (\"" + ns + "update()\");\n");
+            if (profile) result.append (profileRegion (s, "update"));
             for (Variable v : bed.globalBufferedInternalUpdate)
             {
                 result.append ("  " + type (v) + " " + mangle ("next_", v) + ";\n");
@@ -2837,7 +3206,6 @@ public class JobC extends Thread
             {
                 result.append ("  " + mangle (v) + " = " + mangle ("next_", v) + ";\n");
             }
-            if (kokkos) result.append ("  pop_region ();\n");
             result.append ("}\n");
             result.append ("\n");
         }
@@ -2847,6 +3215,7 @@ public class JobC extends Thread
         {
             result.append ("bool " + ns + "finalize ()\n");
             result.append ("{\n");
+            if (profile) result.append (profileRegion (s, "finalize"));
 
             if (bed.canResize  &&  bed.n.derivative == null  &&  bed.canGrowOrDie)  // $n shares control with other specials, so must coordinate with them
             {
@@ -2997,7 +3366,7 @@ public class JobC extends Thread
             bed.defined.clear ();
             result.append ("void " + ns + "updateDerivative ()\n");
             result.append ("{\n");
-            if (kokkos) result.append ("  push_region (\"" + ns + "updateDerivative()\");\n");
+            if (profile) result.append (profileRegion (s, "updateDerivative"));
             for (Variable v : bed.globalBufferedInternalDerivative)
             {
                 result.append ("  " + type (v) + " " + mangle ("next_", v) + ";\n");
@@ -3012,7 +3381,6 @@ public class JobC extends Thread
             {
                 result.append ("  " + mangle (v) + " = " + mangle ("next_", v) + ";\n");
             }
-            if (kokkos) result.append ("  pop_region ();\n");
             result.append ("}\n");
             result.append ("\n");
         }
@@ -3022,6 +3390,7 @@ public class JobC extends Thread
         {
             result.append ("void " + ns + "finalizeDerivative ()\n");
             result.append ("{\n");
+            if (profile) result.append (profileRegion (s, "finalizeDerivative"));
             for (Variable v : bed.globalBufferedExternalDerivative)
             {
                 result.append ("  " + mangle (v) + " = " + mangle ("next_", v) + ";\n");
@@ -3137,12 +3506,20 @@ public class JobC extends Thread
             result.append ("\n");
         }
 
-        // Population connect (override for polling or inactive testing)
-        if (bed.poll >= 0  ||  bed.populationCanBeInactive)
+        // Population connect (override for polling, geometric skipping, inactive testing, or profiling)
+        if (bed.poll >= 0  ||  bed.populationCanBeInactive  ||  s.connectionSkip >= -1  ||  profile  &&  s.connectionBindings != null)
         {
             result.append ("void " + ns + "connect ()\n");
             result.append ("{\n");
-            if (bed.poll < 0)
+            if (profile) result.append (profileRegion (s, "connect"));
+            if (bed.poll < 0  &&  s.connectionSkip >= -1)
+            {
+                // Scale converts raw $p into a probability. Without $p, the default getP() returns 1 in any numeric representation.
+                double scale = 1;
+                if (T.contains ("int")  &&  bed.p != null) scale = Math.scalb (1.0, bed.p.exponent - Operator.MSB);
+                result.append ("  connectSkip (" + s.connectionSkip + ", " + scale + ");\n");
+            }
+            else if (bed.poll < 0)
             {
                 // Use default implementation of connect()
                 result.append ("  Population::connect ();\n");
@@ -3848,7 +4225,7 @@ public class JobC extends Thread
                 {
                     if (((BackendDataC) e.backendData).needGlobalInit)
                     {
-                        result.append ("  " + mangle (e.name) + ".init ();\n");
+                        result.append ("  " + rankGuard (e) + mangle (e.name) + ".init ();\n");
                     }
                 }
             }
@@ -3864,7 +4241,6 @@ public class JobC extends Thread
         {
             result.append ("void " + ns + "integrate ()\n");
             result.append ("{\n");
-            if (kokkos) result.append ("  push_region (\"" + ns + "integrate()\");\n");
             if (bed.localIntegrated.size () > 0)
             {
                 if (bed.lastT)
@@ -3936,11 +4312,10 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalIntegrate)
                 {
-                    result.append ("  " + mangle (e.name) + ".integrate ();\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".integrate ();\n");
                 }
             }
             context.hasEvent = false;
-            if (kokkos) result.append ("  pop_region ();\n");
             result.append ("}\n");
             result.append ("\n");
         }
@@ -3951,7 +4326,6 @@ public class JobC extends Thread
             bed.defined.clear ();
             result.append ("void " + ns + "update ()\n");
             result.append ("{\n");
-            if (kokkos) result.append ("  push_region (\"" + ns + "update()\");\n");
             for (Variable v : bed.localBufferedInternalUpdate)
             {
                 result.append ("  " + type (v) + " " + mangle ("next_", v) + ";\n");
@@ -3971,10 +4345,9 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalUpdate)
                 {
-                    result.append ("  " + mangle (e.name) + ".update ();\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".update ();\n");
                 }
             }
-            if (kokkos) result.append ("  pop_region ();\n");
             result.append ("}\n");
             result.append ("\n");
         }
@@ -3991,7 +4364,7 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalFinalize)
                 {
-                    result.append ("  " + mangle (e.name) + ".finalize ();\n");  // ignore return value
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".finalize ();\n");  // ignore return value
                 }
             }
 
@@ -4217,7 +4590,6 @@ public class JobC extends Thread
             bed.defined.clear ();
             result.append ("void " + ns + "updateDerivative ()\n");
             result.append ("{\n");
-            if (kokkos) result.append ("  push_region (\"" + ns + "updateDerivative()\");\n");
             for (Variable v : bed.localBufferedInternalDerivative)
             {
                 result.append ("  " + type (v) + " " + mangle ("next_", v) + ";\n");
@@ -4237,10 +4609,9 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalUpdateDerivative)
                 {
-                    result.append ("  " + mangle (e.name) + ".updateDerivative ();\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".updateDerivative ();\n");
                 }
             }
-            if (kokkos) result.append ("  pop_region ();\n");
             result.append ("}\n");
             result.append ("\n");
         }
@@ -4263,7 +4634,7 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalFinalizeDerivative)
                 {
-                    result.append ("  " + mangle (e.name) + ".finalizeDerivative ();\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".finalizeDerivative ();\n");
                 }
             }
             result.append ("}\n");
@@ -4296,7 +4667,7 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalPreserve)
                 {
-                    result.append ("  " + mangle (e.name) + ".snapshot ();\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".snapshot ();\n");
                 }
             }
             result.append ("}\n");
@@ -4322,7 +4693,7 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalPreserve)
                 {
-                    result.append ("  " + mangle (e.name) + ".restore ();\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".restore ();\n");
                 }
             }
             result.append ("}\n");
@@ -4348,7 +4719,7 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalDerivative)
                 {
-                    result.append ("  " + mangle (e.name) + ".pushDerivative ();\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".pushDerivative ();\n");
                 }
             }
             result.append ("}\n");
@@ -4373,7 +4744,7 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalDerivative)
                 {
-                    result.append ("  " + mangle (e.name) + ".multiplyAddToStack (scalar);\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".multiplyAddToStack (scalar);\n");
                 }
             }
             result.append ("}\n");
@@ -4397,7 +4768,7 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalDerivative)
                 {
-                    result.append ("  " + mangle (e.name) + ".multiply (scalar);\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".multiply (scalar);\n");
                 }
             }
             result.append ("}\n");
@@ -4420,7 +4791,7 @@ public class JobC extends Thread
             {
                 if (((BackendDataC) e.backendData).needGlobalDerivative)
                 {
-                    result.append ("  " + mangle (e.name) + ".addToMembers ();\n");
+                    result.append ("  " + rankGuard (e) + mangle (e.name) + ".addToMembers ();\n");
                 }
             }
             result.append ("}\n");
@@ -15,6 +15,17 @@ the U.S. Government retains certain rights in this software.
 #  include <jni.h>
 #endif
 
+#ifndef _WIN32
+#  include <unistd.h>
+#  include <dirent.h>
+#  include <sys/wait.h>
+#  include <csignal>
+#  include <cerrno>
+#  ifdef __linux__
+#    include <sys/prctl.h>
+#  endif
+#endif
+
 using namespace n2a;
 using namespace std;
 
@@ -123,10 +134,284 @@ Holder::~Holder ()
 {
 }
 
+int n2a_rank = -1;
+
+#ifndef _WIN32
+
+static vector<pid_t> rankChildren;
+
+static void
+forwardSignal (int number)
+{
+    for (pid_t pid : rankChildren) kill (pid, number);
+}
+
+/**
+    Subroutine of mergeRanks(). Holds the current row of one rank's output file.
+**/
+struct RankReader
+{
+    ifstream       in;
+    vector<int>    map;     ///< column index in this file --> column index in merged file
+    vector<string> fields;
+    double         t;
+    bool           active;
+
+    void next ()
+    {
+        string line;
+        while (getline (in, line))
+        {
+            if (line.empty ()) continue;
+            if (line.compare (0, 2, "$t") == 0) continue;  // header
+            fields.clear ();
+            size_t start = 0;
+            while (true)
+            {
+                size_t end = line.find ('\t', start);
+                fields.push_back (line.substr (start, end - start));
+                if (end == string::npos) break;
+                start = end + 1;
+            }
+            t = atof (fields[0].c_str ());
+            return;
+        }
+        active = false;
+    }
+};
+
+/**
+    Combines base.rank0 ... base.rank<count-1> into a single output file, along with their column files.
+    Columns are identified by name, so a column traced by more than one rank (for example, from the
+    top-level part, which every rank simulates) is taken from the lowest rank that has a value.
+    Rows are matched by time. Rank processes write $t at full precision, and every rank advances
+    the same top-level step, so rows from the same step carry the same time up to rounding.
+    Times within a few ulps of each other are treated as one step.
+**/
+static void
+mergeRanks (const string & base, int count)
+{
+    vector<string>         names (1, "$t");
+    vector<vector<string>> modes (1);
+    vector<int>            owner (1, 0);  ///< rank that first reported each column, and thus supplies its modes
+    unordered_map<string,int> merged;
+    merged["$t"] = 0;
+    bool raw = true;
+
+    vector<RankReader *> readers;
+    for (int r = 0; r < count; r++)
+    {
+        string fileName = base + ".rank" + to_string (r);
+        RankReader * reader = new RankReader;
+        readers.push_back (reader);
+        reader->in.open (fileName);
+        reader->active = reader->in.good ();
+        if (! reader->active) continue;
+
+        // Scan column file
+        ifstream columns (fileName + ".columns");
+        string line;
+        int index = -1;
+        while (getline (columns, line))
+        {
+            if (line.empty ()  ||  line.compare (0, 11, "N2A.schema=") == 0) continue;
+            if (line[0] == ' ')  // mode line for current column
+            {
+                if (index < 0) continue;
+                int m = reader->map[index];
+                if (owner[m] == r) modes[m].push_back (line);
+                continue;
+            }
+            size_t colon = line.find (':');
+            index = atoi (line.substr (0, colon).c_str ());
+            string name = line.substr (colon + 1);
+            if ((int) reader->map.size () <= index) reader->map.resize (index + 1, -1);
+            if (index == 0)
+            {
+                reader->map[0] = 0;
+                continue;
+            }
+            auto it = merged.find (name);
+            if (it == merged.end ())
+            {
+                int m = names.size ();
+                merged[name] = m;
+                names.push_back (name);
+                modes.push_back (vector<string> ());
+                owner.push_back (r);
+                reader->map[index] = m;
+            }
+            else
+            {
+                reader->map[index] = it->second;
+            }
+        }
+        if (reader->map.empty ()) reader->map.push_back (0);
+
+        // Detect headers, then rewind
+        if (getline (reader->in, line)  &&  line.compare (0, 2, "$t") == 0) raw = false;
+        reader->in.clear ();
+        reader->in.seekg (0);
+        reader->next ();
+    }
+
+    ostream * out;
+    string columnFileName = base + ".columns";
+    if (base == "out") out = &cout;
+    else               out = new ofstream (base);
+
+    if (! raw)
+    {
+        for (size_t i = 0; i < names.size (); i++)
+        {
+            if (i) (*out) << "\t";
+            const string & header = names[i];
+            if (header.find_first_of (" \t\",") == string::npos)
+            {
+                (*out) << header;
+                continue;
+            }
+            (*out) << "\"";
+            for (char c : header)
+            {
+                if (c == '"') (*out) << '"';
+                (*out) << c;
+            }
+            (*out) << "\"";
+        }
+        (*out) << endl;
+    }
+
+    vector<string> row;
+    while (true)
+    {
+        double t = INFINITY;
+        for (auto reader : readers) if (reader->active  &&  reader->t < t) t = reader->t;
+        if (t == INFINITY) break;
+
+        row.assign (names.size (), "");
+        int last = 0;
+        double tolerance = 4 * std::numeric_limits<float>::epsilon () * fabs (t);
+        for (auto reader : readers)
+        {
+            if (! reader->active  ||  reader->t - t > tolerance) continue;
+            int count = min (reader->fields.size (), reader->map.size ());
+            for (int i = 0; i < count; i++)
+            {
+                int m = reader->map[i];
+                if (m < 0  ||  reader->fields[i].empty ()) continue;
+                if (row[m].empty ()) row[m] = reader->fields[i];
+                if (m > last) last = m;
+            }
+            reader->next ();
+        }
+        (*out) << (float) t;  // Restore the usual precision.
+        for (int i = 1; i <= last; i++)
+        {
+            (*out) << "\t";
+            (*out) << row[i];
+        }
+        (*out) << "\n";
+    }
+    out->flush ();
+    if (out != &cout) delete out;
+
+    ofstream mo (columnFileName);
+    mo << "N2A.schema=3\n";
+    for (size_t i = 0; i < names.size (); i++)
+    {
+        mo << i << ":" << names[i] << "\n";
+        for (auto & m : modes[i]) mo << m << "\n";
+    }
+
+    for (int r = 0; r < count; r++)
+    {
+        delete readers[r];
+        string fileName = base + ".rank" + to_string (r);
+        remove (fileName.c_str ());
+        remove ((fileName + ".columns").c_str ());
+    }
+}
+
+int
+forkRanks (int count)
+{
+    cout.flush ();
+    cerr.flush ();
+    for (int r = 0; r < count; r++)
+    {
+        pid_t pid = fork ();
+        if (pid < 0) throw "Failed to start rank process";
+        if (pid == 0)
+        {
+#           ifdef __linux__
+            prctl (PR_SET_PDEATHSIG, SIGTERM);  // Don't outlive the parent, even if it is killed without a chance to forward signals.
+#           endif
+            rankChildren.clear ();
+            n2a_rank = r;
+            String fileName = String ("out.rank") + r;
+            if (! freopen (fileName.c_str (), "w", stdout)) throw "Failed to redirect output of rank process";
+            return r;
+        }
+        rankChildren.push_back (pid);
+    }
+
+    // Parent: supervise children, then merge their output.
+    struct sigaction action = {};
+    action.sa_handler = forwardSignal;
+    sigaction (SIGINT,  &action, 0);
+    sigaction (SIGTERM, &action, 0);
+
+    bool failed = false;
+    int remaining = count;
+    while (remaining > 0)
+    {
+        int status;
+        pid_t pid = waitpid (-1, &status, 0);
+        if (pid < 0)
+        {
+            if (errno == EINTR) continue;
+            break;
+        }
+        remaining--;
+        if (! WIFEXITED (status)  ||  WEXITSTATUS (status) != 0)
+        {
+            cerr << "Rank process " << pid << " failed" << endl;
+            failed = true;
+        }
+    }
+
+    vector<string> bases;
+    DIR * dir = opendir (".");
+    if (dir)
+    {
+        while (dirent * entry = readdir (dir))
+        {
+            string name = entry->d_name;
+            const string suffix = ".rank0";
+            if (name.size () <= suffix.size ()) continue;
+            if (name.compare (name.size () - suffix.size (), suffix.size (), suffix) != 0) continue;
+            string base = name.substr (0, name.size () - suffix.size ());
+            if (base == "profile"  ||  base == "metrics") continue;  // Per-rank profiles and metrics are kept separate. See finalize_profiling() and Metrics::begin().
+            bases.push_back (base);
+        }
+        closedir (dir);
+    }
+    for (auto & base : bases) mergeRanks (base, count);
+
+    exit (failed ? 1 : 0);
+}
+
+#endif
+
 template class Parameters<n2a_T>;
 template class IteratorNonzero<n2a_T>;
 template class IteratorSkip<n2a_T>;
 template class IteratorSparse<n2a_T>;
+#ifndef _WIN32
+template class MatrixMapped<n2a_T>;
+template class IteratorMapped<n2a_T>;
+#endif
 template class MatrixInput<n2a_T>;
 template class Mfile<n2a_T>;
 template class ImageInput<n2a_T>;
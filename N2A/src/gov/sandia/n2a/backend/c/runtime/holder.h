@@ -110,13 +110,62 @@ public:
     virtual bool next ();
 };
 
+#ifndef _WIN32
+/**
+    Read-only view of a sparse binary matrix file, held in a memory map.
+    The file is compressed-column (CSC), as written by gov.sandia.n2a.linear.MatrixBinary.
+    Nothing is copied onto the heap, so a connection matrix may be larger than physical memory.
+    Values are converted to T as they are read.
+**/
+template<class T>
+class SHARED MatrixMapped : public MatrixAbstract<T>
+{
+public:
+    void *          map;
+    size_t          size;
+    int             rows_;
+    int             columns_;
+    const int64_t * start;  ///< columns_+1 offsets into row and value, one for the beginning of each column
+    const int32_t * row;    ///< ascending within each column
+    const double *  value;
+#   ifdef n2a_FP
+    int             exponent;
+#   endif
+
+#   ifdef n2a_FP
+    MatrixMapped (const String & fileName, int exponent);  ///< Throws if the file is truncated or can't be mapped.
+#   else
+    MatrixMapped (const String & fileName);
+#   endif
+    virtual ~MatrixMapped ();
+    virtual uint32_t classID () const;
+
+    T           element     (int64_t k) const;  ///< Converts the k-th stored value.
+    virtual T   get         (const int row, const int column) const;
+    virtual T & operator () (const int row, const int column) const;  ///< Returns a dummy element that holds a copy of the value. Assigning to it has no effect.
+    virtual int rows        () const;
+    virtual int columns     () const;
+};
+
+template<class T>
+class SHARED IteratorMapped : public IteratorNonzero<T>
+{
+public:
+    MatrixMapped<T> * A;
+    int64_t           k;  ///< index of next stored element
+
+    IteratorMapped (MatrixMapped<T> * A);
+    virtual bool next ();
+};
+#endif
+
 SHARED int convert (String input, int exponent);
 
 template<class T>
 class SHARED MatrixInput : public Holder
 {
 public:
-    MatrixAbstract<T> * A;  // Will be either Matrix or MatrixSparse, determined by matrixHelper when reading the file.
+    MatrixAbstract<T> * A;  // Will be Matrix, MatrixSparse or MatrixMapped, determined by matrixHelper when reading the file.
 
     MatrixInput (const String & fileName);
     virtual ~MatrixInput ();
@@ -388,6 +437,23 @@ template<class T> SHARED InputHolder<T> * inputHelper (const String & fileName,
 template<class T> SHARED InputHolder<T> * inputHelper (const String & fileName,               InputHolder<T> * oldHandle = 0);
 #endif
 
+/**
+    Index of this process when a model is decomposed across several cooperating processes.
+    -1 means the model runs as a single process. Otherwise, each OutputHolder appends
+    ".rank<n>" to its file name, and the parent process merges the files at the end.
+**/
+extern SHARED int n2a_rank;
+
+#ifndef _WIN32
+/**
+    Forks count child processes, one per rank, and returns the rank index in each child.
+    Each child has stdout redirected to its own file.
+    The parent never returns. It waits for all children, merges their output files
+    by time, then exits with nonzero status if any child failed.
+**/
+SHARED int forkRanks (int count);
+#endif
+
 template<class T>
 class SHARED OutputHolder : public Holder
 {
@@ -17,8 +17,20 @@ the U.S. Government retains certain rights in this software.
 
 #include <fstream>
 #include <stdlib.h>
+#include <string.h>
 #include <time.h>
 #include <sys/stat.h>
+
+#ifdef n2a_PROFILE
+#  include "profiling.h"
+#endif
+
+#ifndef _WIN32
+#  include <sys/mman.h>
+#  include <fcntl.h>
+#  include <unistd.h>
+#endif
+
 #ifdef _MSC_VER
 #  define stat _stat
 #else
@@ -251,15 +263,17 @@ IteratorNonzero<T> *
 getIterator (MatrixAbstract<T> * A)
 {
     if (A->classID () & MatrixSparseID) return new IteratorSparse<T> ((MatrixSparse<T> *) A);
+#   ifndef _WIN32
+    if (A->classID () & MatrixMappedID) return new IteratorMapped<T> ((MatrixMapped<T> *) A);
+#   endif
     return new IteratorSkip<T> ((Matrix<T> *) A);
 }
 
 #ifdef n2a_FP
 
 int
-convert (String input, int exponent)
+convert (double d, int exponent)
 {
-    const double d = atof (input.c_str ());
     if (d == 0) return 0;
     if (std::isnan (d)) return NAN;
     bool negate = d < 0;
@@ -277,7 +291,266 @@ convert (String input, int exponent)
     return bits >> 52 - FP_MSB + exponent - e;
 }
 
+int
+convert (String input, int exponent)
+{
+    return convert (atof (input.c_str ()), exponent);
+}
+
+#endif
+
+#ifndef _WIN32
+
+// class MatrixMapped --------------------------------------------------------
+
+template<class T>
+#ifdef n2a_FP
+MatrixMapped<T>::MatrixMapped (const String & fileName, int exponent)
+:   exponent (exponent)
+#else
+MatrixMapped<T>::MatrixMapped (const String & fileName)
 #endif
+{
+    map  = MAP_FAILED;
+    size = 0;
+    int fd = open (fileName.c_str (), O_RDONLY);
+    struct stat info;
+    if (fd >= 0  &&  fstat (fd, &info) == 0)
+    {
+        size = info.st_size;
+        if (size >= 32) map = mmap (0, size, PROT_READ, MAP_PRIVATE, fd, 0);
+    }
+    if (fd >= 0) close (fd);  // The mapping stays valid after the descriptor is closed.
+    if (map == MAP_FAILED)
+    {
+        std::cerr << "Failed to map binary matrix file: " << fileName << std::endl;
+        throw "Failed to map binary matrix file";
+    }
+
+    const char * base = (const char *) map;
+    rows_    = *(int32_t *) (base + 12);
+    columns_ = *(int32_t *) (base + 16);
+    int64_t count = *(int64_t *) (base + 24);
+    start = (const int64_t *) (base + 32);
+    row   = (const int32_t *) (start + columns_ + 1);
+    value = (const double *)  (base + 32 + (columns_ + 1) * 8 + (count * 4 + 7) / 8 * 8);
+    if ((const char *) (value + count) > base + size  ||  start[0] != 0  ||  start[columns_] != count)
+    {
+        munmap (map, size);
+        std::cerr << "Truncated or ill-formed binary matrix file: " << fileName << std::endl;
+        throw "Ill-formed binary matrix file";
+    }
+}
+
+template<class T>
+MatrixMapped<T>::~MatrixMapped ()
+{
+    munmap (map, size);
+}
+
+template<class T>
+uint32_t
+MatrixMapped<T>::classID () const
+{
+    return MatrixMappedID;
+}
+
+template<class T>
+T
+MatrixMapped<T>::element (int64_t k) const
+{
+#   ifdef n2a_FP
+    return convert (value[k], exponent);
+#   else
+    return (T) value[k];
+#   endif
+}
+
+template<class T>
+T
+MatrixMapped<T>::get (const int r, const int c) const
+{
+    if (r < 0  ||  r >= rows_  ||  c < 0  ||  c >= columns_) return 0;
+    const int32_t * first = row + start[c];
+    const int32_t * last  = row + start[c+1];
+    const int32_t * it    = std::lower_bound (first, last, r);
+    if (it == last  ||  *it != r) return 0;
+    return element (it - row);
+}
+
+template<class T>
+T &
+MatrixMapped<T>::operator () (const int r, const int c) const
+{
+    static T dummy;
+    dummy = get (r, c);
+    return dummy;
+}
+
+template<class T>
+int
+MatrixMapped<T>::rows () const
+{
+    return rows_;
+}
+
+template<class T>
+int
+MatrixMapped<T>::columns () const
+{
+    return columns_;
+}
+
+
+// class IteratorMapped ------------------------------------------------------
+
+template<class T>
+IteratorMapped<T>::IteratorMapped (MatrixMapped<T> * A)
+:   A (A)
+{
+    this->row    = 0;
+    this->column = 0;
+    this->value  = 0;
+    k            = 0;
+}
+
+template<class T>
+bool
+IteratorMapped<T>::next ()
+{
+    int64_t count = A->start[A->columns_];
+    while (k < count)
+    {
+        while (A->start[this->column+1] <= k) this->column++;
+        this->row   = A->row[k];
+        this->value = A->element (k++);
+        if (this->value) return true;  // A value may round to zero when converted to fixed-point.
+    }
+    return false;
+}
+
+#endif
+
+/**
+    Reads the binary matrix format written by gov.sandia.n2a.linear.MatrixBinary.
+    See that class for the layout. Dense data is read in blocks straight from the file, with no text parsing.
+    Sparse data is mapped in place as a MatrixMapped. On Windows, it is instead streamed column by
+    column into a MatrixSparse.
+    @return null if the file does not start with the binary header. Any other problem with the file
+    throws, since the text parser would only misread it.
+**/
+template<class T>
+MatrixAbstract<T> *
+#ifdef n2a_FP
+matrixBinary (const String & fileName, int exponent)
+#else
+matrixBinary (const String & fileName)
+#endif
+{
+    std::ifstream ifs (fileName.c_str (), std::ios::binary);
+    char header[32];
+    ifs.read (header, 4);
+    if (! ifs.good ()  ||  memcmp (header, "N2AB", 4)) return 0;
+#   if BYTE_ORDER != LITTLE_ENDIAN
+    std::cerr << "Binary matrix files are only supported on little-endian machines: " << fileName << std::endl;
+    throw "Unsupported binary matrix file";
+#   endif
+    ifs.read (header + 4, sizeof (header) - 4);
+
+    int32_t version = *(int32_t *) (header + 4);
+    int32_t type    = *(int32_t *) (header + 8);
+    int32_t rows    = *(int32_t *) (header + 12);
+    int32_t columns = *(int32_t *) (header + 16);
+    int64_t count   = *(int64_t *) (header + 24);
+    if (! ifs.good ()  ||  version != 1  ||  rows <= 0  ||  columns <= 0  ||  count < 0)
+    {
+        std::cerr << "Unsupported binary matrix file: " << fileName << std::endl;
+        throw "Unsupported binary matrix file";
+    }
+
+    const int blockSize = 4096;
+    std::vector<double> block (blockSize);
+    if (type == 0)  // dense, column-major
+    {
+        if (count != (int64_t) rows * columns)
+        {
+            std::cerr << "Ill-formed dense matrix in file: " << fileName << std::endl;
+            throw "Ill-formed binary matrix file";
+        }
+        Matrix<T> * A = new Matrix<T> (rows, columns);
+        T * a = A->base ();
+        int64_t remaining = count;
+        while (remaining > 0)
+        {
+            int n = std::min ((int64_t) blockSize, remaining);
+            ifs.read ((char *) block.data (), n * sizeof (double));
+            if (! ifs.good ())
+            {
+                delete A;
+                std::cerr << "Truncated binary matrix file: " << fileName << std::endl;
+                throw "Truncated binary matrix file";
+            }
+            for (int i = 0; i < n; i++)
+            {
+#               ifdef n2a_FP
+                *a++ = convert (block[i], exponent);
+#               else
+                *a++ = (T) block[i];
+#               endif
+            }
+            remaining -= n;
+        }
+        return A;
+    }
+    if (type == 1)  // sparse, compressed column
+    {
+#       ifndef _WIN32
+        ifs.close ();
+#       ifdef n2a_FP
+        return new MatrixMapped<T> (fileName, exponent);
+#       else
+        return new MatrixMapped<T> (fileName);
+#       endif
+#       else
+        std::vector<int64_t> start (columns + 1);
+        ifs.read ((char *) start.data (), (columns + 1) * sizeof (int64_t));
+        std::streamoff rowOffset   = ifs.tellg ();
+        std::streamoff valueOffset = rowOffset + (count * 4 + 7) / 8 * 8;
+        std::ifstream values (fileName.c_str (), std::ios::binary);
+        values.seekg (valueOffset);
+
+        MatrixSparse<T> * S = new MatrixSparse<T> (rows, columns);
+        std::vector<int32_t> rowBlock (blockSize);
+        int64_t k = 0;
+        int c = 0;
+        while (k < count)
+        {
+            int n = std::min ((int64_t) blockSize, count - k);
+            ifs   .read ((char *) rowBlock.data (), n * sizeof (int32_t));
+            values.read ((char *) block   .data (), n * sizeof (double));
+            if (! ifs.good ()  ||  ! values.good ())
+            {
+                delete S;
+                std::cerr << "Truncated binary matrix file: " << fileName << std::endl;
+                throw "Truncated binary matrix file";
+            }
+            for (int i = 0; i < n; i++, k++)
+            {
+                while (c < columns  &&  start[c+1] <= k) c++;
+#               ifdef n2a_FP
+                T element = convert (block[i], exponent);
+#               else
+                T element = (T) block[i];
+#               endif
+                if (element) S->set (rowBlock[i], c, element);
+            }
+        }
+        return S;
+#       endif
+    }
+    std::cerr << "Unknown type of binary matrix file: " << fileName << std::endl;
+    throw "Unknown type of binary matrix file";
+}
 
 template<class T>
 MatrixInput<T> *
@@ -293,6 +566,13 @@ matrixHelper (const String & fileName,               MatrixInput<T> * oldHandle)
         handle = new MatrixInput<T> (fileName);
         SIMULATOR holders.push_back (handle);
 
+#       ifdef n2a_FP
+        handle->A = matrixBinary<T> (fileName, exponent);
+#       else
+        handle->A = matrixBinary<T> (fileName);
+#       endif
+        if (handle->A) return handle;
+
         std::ifstream ifs (fileName.c_str ());
         if (! ifs.good ()) std::cerr << "Failed to open matrix file: " << fileName << std::endl;
         String line;
@@ -2451,13 +2731,16 @@ OutputHolder<T>::OutputHolder (const String & fileName)
 
     if (fileName.empty ())
     {
-        out = &std::cout;
-        columnFileName = "out.columns";
+        out = &std::cout;  // In a rank process, forkRanks() has already redirected stdout.
+        if (n2a_rank >= 0) columnFileName = String ("out.rank") + n2a_rank + ".columns";
+        else               columnFileName = "out.columns";
     }
     else
     {
-        out = new std::ofstream (fileName.c_str ());
-        columnFileName = fileName + ".columns";
+        String name = fileName;
+        if (n2a_rank >= 0) name = name + ".rank" + n2a_rank;
+        out = new std::ofstream (name.c_str ());
+        columnFileName = name + ".columns";
     }
 }
 
@@ -2710,6 +2993,9 @@ template<class T>
 void
 OutputHolder<T>::writeTrace ()
 {
+#   ifdef n2a_PROFILE
+    ProfileRegion profileRegion ("(runtime) output");
+#   endif
     if (! traceReceived  ||  ! out) return;  // Don't output anything unless at least one value was set.
 
     const int count = columnValues.size ();
@@ -2755,7 +3041,13 @@ OutputHolder<T>::writeTrace ()
     for (int i = 0; i <= last; i++)
     {
         float & c = columnValues[i];
-        if (! std::isnan (c)) (*out) << c;
+        if (i == 0  &&  n2a_rank >= 0)  // Exact time, so mergeRanks() can match rows from different ranks.
+        {
+            std::streamsize p = out->precision (std::numeric_limits<float>::max_digits10);
+            (*out) << c;
+            out->precision (p);
+        }
+        else if (! std::isnan (c)) (*out) << c;
         if (i < last) (*out) << "\t";
         c = NANf;
     }
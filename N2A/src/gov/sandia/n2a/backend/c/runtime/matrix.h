@@ -33,6 +33,7 @@ the U.S. Government retains certain rights in this software.
 #define MatrixID          0x2
 #define MatrixFixedID     0x4
 #define MatrixSparseID    0x8
+#define MatrixMappedID    0x10  // See holder.h
 
 
 // Matrix general interface -------------------------------------------------
@@ -5,8 +5,19 @@ the U.S. Government retains certain rights in this software.
 */
 
 
+#include "profiling.h"
+
 #include <string>
 #include <iostream>
+#include <fstream>
+#include <vector>
+#include <map>
+#include <unordered_map>
+#include <algorithm>
+#include <mutex>
+#include <chrono>
+#include <cstdint>
+#include <cstdlib>
 
 
 using namespace std;
@@ -50,17 +61,129 @@ void get_callbacks ()
 
 #endif
 
-void push_region (const std::string& kName)
+
+// Built-in collector ---------------------------------------------------------
+// Each thread keeps its own stack and statistics, so pushing and popping a region never
+// takes a lock. Statistics are keyed by name pointer, since generated code always passes
+// string literals. Results are merged by name content when the report is written.
+
+typedef chrono::steady_clock Clock;
+
+struct RegionStats
+{
+    uint64_t calls = 0;
+    int64_t  total = 0;  // nanoseconds, including nested regions
+    int64_t  self  = 0;  // nanoseconds, excluding nested regions
+};
+
+struct RegionFrame
+{
+    const char *      name;
+    Clock::time_point start;
+    int64_t           children;  // nanoseconds spent in nested regions
+};
+
+struct ThreadProfile
+{
+    vector<RegionFrame>                        stack;
+    unordered_map<const char *, RegionStats>   stats;
+};
+
+static bool                    builtin = false;
+static mutex                   profilesMutex;
+static vector<ThreadProfile *> profiles;  // Never freed, because a thread may exit before finalize_profiling() reads its stats.
+
+static ThreadProfile * threadProfile ()
+{
+    static thread_local ThreadProfile * result = nullptr;
+    if (! result)
+    {
+        result = new ThreadProfile;
+        lock_guard<mutex> lock (profilesMutex);
+        profiles.push_back (result);
+    }
+    return result;
+}
+
+void start_profiling ()
+{
+    builtin = true;
+}
+
+void push_region (const char * name)
 {
-    if (push_region_cb) (*push_region_cb) (kName.c_str ());
+    if (push_region_cb)
+    {
+        (*push_region_cb) (name);
+        return;
+    }
+    if (! builtin) return;
+
+    ThreadProfile * p = threadProfile ();
+    p->stack.push_back ({name, Clock::now (), 0});
 }
 
 void pop_region ()
 {
-    if (pop_region_cb) (*pop_region_cb) ();
+    if (pop_region_cb)
+    {
+        (*pop_region_cb) ();
+        return;
+    }
+    if (! builtin) return;
+
+    ThreadProfile * p = threadProfile ();
+    if (p->stack.empty ()) return;
+    RegionFrame & f = p->stack.back ();
+    int64_t elapsed = chrono::duration_cast<chrono::nanoseconds> (Clock::now () - f.start).count ();
+    RegionStats & s = p->stats[f.name];
+    s.calls++;
+    s.total += elapsed;
+    s.self  += elapsed - f.children;
+    p->stack.pop_back ();
+    if (! p->stack.empty ()) p->stack.back ().children += elapsed;
 }
 
-void finalize_profiling ()
+void finalize_profiling (const char * fileName)
 {
-    (*finalize_cb) ();
+    if (finalize_cb)
+    {
+        (*finalize_cb) ();
+        return;
+    }
+    if (! builtin) return;
+    builtin = false;
+
+    map<string,RegionStats> merged;
+    {
+        lock_guard<mutex> lock (profilesMutex);
+        for (ThreadProfile * p : profiles)
+        {
+            for (auto & it : p->stats)
+            {
+                RegionStats & m = merged[it.first];
+                m.calls += it.second.calls;
+                m.total += it.second.total;
+                m.self  += it.second.self;
+            }
+        }
+    }
+
+    vector<pair<string,RegionStats>> sorted (merged.begin (), merged.end ());
+    sort (sorted.begin (), sorted.end (), [] (const pair<string,RegionStats> & a, const pair<string,RegionStats> & b)
+    {
+        return a.second.self > b.second.self;
+    });
+
+    ofstream out (fileName);
+    if (! out.good ())
+    {
+        cerr << "Failed to write profile" << endl;
+        return;
+    }
+    out << "region\tcalls\ttotal\tself" << endl;  // times in seconds
+    for (auto & it : sorted)
+    {
+        out << it.first << "\t" << it.second.calls << "\t" << it.second.total / 1e9 << "\t" << it.second.self / 1e9 << endl;
+    }
 }
@@ -8,9 +8,27 @@ the U.S. Government retains certain rights in this software.
 #ifndef n2a_profiling_h
 #define n2a_profiling_h
 
-void get_callbacks ();
-void push_region (const std::string&);
+void get_callbacks ();       ///< Route regions to the Kokkos profiling library named by KOKKOS_PROFILE_LIBRARY.
+void start_profiling ();     ///< Route regions to the built-in collector, which writes a "profile" file at finalize.
+void push_region (const char * name);
 void pop_region ();
-void finalize_profiling ();
+void finalize_profiling (const char * fileName = "profile");  ///< fileName is ignored when regions go to Kokkos. Each rank of a multi-process run writes its own file.
+
+/**
+    Times the remainder of the enclosing scope.
+    The name must remain valid for the life of the program, so generally a string literal.
+**/
+struct ProfileRegion
+{
+    ProfileRegion (const char * name)
+    {
+        push_region (name);
+    }
+
+    ~ProfileRegion ()
+    {
+        pop_region ();
+    }
+};
 
 #endif
@@ -62,6 +62,137 @@ void signalHandler (int number)
 #endif
 
 
+// Random numbers ------------------------------------------------------------
+
+#ifdef n2a_SPLITMIX
+
+static n2a_THREAD_LOCAL uint64_t randomCounter = 0;
+static n2a_THREAD_LOCAL uint64_t randomSeed    = 0;
+
+uint64_t
+n2a_random (uint64_t seed, uint64_t counter)
+{
+    uint64_t z = seed + counter * 0x9E3779B97F4A7C15ull;
+    z = (z ^ (z >> 30)) * 0xBF58476D1CE4E5B9ull;
+    z = (z ^ (z >> 27)) * 0x94D049BB133111EBull;
+    return z ^ (z >> 31);
+}
+
+int
+n2a_rand ()
+{
+    return (int) (n2a_random (randomSeed, ++randomCounter) >> 33);  // 31 bits, so it can stand in for rand() with RAND_MAX == 0x7FFFFFFF
+}
+
+void
+n2a_srand (unsigned int seed)
+{
+    randomSeed    = seed;
+    randomCounter = 0;
+}
+
+void
+n2a_swapRandom (uint64_t & seed, uint64_t & counter)
+{
+    swap (randomSeed,    seed);
+    swap (randomCounter, counter);
+}
+
+#endif
+
+
+// Threads -------------------------------------------------------------------
+
+#ifdef n2a_THREADS
+
+ThreadPool::ThreadPool (int count)
+{
+    generation = 0;
+    pending    = 0;
+    quit       = false;
+    // Workers don't draw from the caller's generator, so creating the pool leaves the main stream
+    // unchanged regardless of count. Each worker picks up the stream of whatever partition it visits.
+    for (int i = 1; i < count; i++) threads.emplace_back (&ThreadPool::work, this, i);
+}
+
+ThreadPool::~ThreadPool ()
+{
+    {
+        lock_guard<mutex> lock (access);
+        quit = true;
+    }
+    start.notify_all ();
+    for (auto & t : threads) t.join ();
+}
+
+int
+ThreadPool::size () const
+{
+    return threads.size () + 1;
+}
+
+void
+ThreadPool::run (function<void (int)> f)
+{
+    {
+        lock_guard<mutex> lock (access);
+        job     = f;
+        pending = threads.size ();
+        error   = nullptr;
+        generation++;
+    }
+    start.notify_all ();
+
+    exception_ptr local;
+    try
+    {
+        f (0);
+    }
+    catch (...)
+    {
+        local = current_exception ();
+    }
+
+    unique_lock<mutex> lock (access);
+    done.wait (lock, [this] {return pending == 0;});
+    if (local) rethrow_exception (local);
+    if (error) rethrow_exception (error);
+}
+
+void
+ThreadPool::work (int index)
+{
+    int seen = 0;
+    while (true)
+    {
+        function<void (int)> f;
+        {
+            unique_lock<mutex> lock (access);
+            start.wait (lock, [this, seen] {return quit  ||  generation != seen;});
+            if (quit) return;
+            seen = generation;
+            f    = job;
+        }
+
+        exception_ptr e;
+        try
+        {
+            f (index);
+        }
+        catch (...)
+        {
+            e = current_exception ();
+        }
+
+        lock_guard<mutex> lock (access);
+        if (e  &&  ! error) error = e;
+        if (--pending == 0) done.notify_one ();
+    }
+}
+
+#endif
+
+
 // classes -------------------------------------------------------------------
 
 template class Simulatable<n2a_T>;
@@ -73,6 +204,7 @@ template class ConnectPopulation<n2a_T>;
 template class ConnectPopulationNN<n2a_T>;
 template class ConnectMatrix<n2a_T>;
 template class Population<n2a_T>;
+template class Metrics<n2a_T>;
 template class Simulator<n2a_T>;
 template class Integrator<n2a_T>;
 template class Euler<n2a_T>;
@@ -18,6 +18,8 @@ the U.S. Government retains certain rights in this software.
 #include <queue>
 #include <vector>
 #include <map>
+#include <chrono>
+#include <fstream>
 
 #include "shared.h"
 
@@ -27,6 +29,28 @@ the U.S. Government retains certain rights in this software.
 # define SIMULATOR Simulator<T>::instance.
 #endif
 
+#ifdef n2a_THREADS
+# include <thread>
+# include <mutex>
+# include <condition_variable>
+# include <exception>
+# define n2a_THREAD_LOCAL thread_local
+# ifndef n2a_SPLITMIX
+#   define n2a_SPLITMIX  // Threads always need a generator with per-thread state.
+# endif
+#else
+# define n2a_THREAD_LOCAL
+#endif
+
+#ifdef n2a_SPLITMIX
+# define N2A_RAND_MAX   0x7FFFFFFF
+# define N2A_PARTITIONS 64  // Number of visitors in each EventStep. Fixed rather than based on thread count, so that results don't depend on the machine.
+#else
+# define n2a_rand  rand
+# define n2a_srand srand
+# define N2A_RAND_MAX RAND_MAX
+#endif
+
 
 // General functions ---------------------------------------------------------
 // See the N2A language reference for details.
@@ -49,6 +73,23 @@ template<> inline int modFloor (int a, int b)
     return result;
 }
 
+#ifdef n2a_SPLITMIX
+/**
+    Replacements for rand() and srand(), based on SplitMix64.
+    The generator is counter-based: draw n is a pure function of seed and n, so a stream
+    costs one add and a few multiplies per draw, and never takes a lock.
+    Each EventStep splits its instances across N2A_PARTITIONS visitors, and each visitor
+    carries its own stream, which it swaps onto whichever thread runs it. An instance
+    always lands in the same partition, so its draws depend only on the seed, not on the
+    number of threads. Draws made outside a visitor (init, finalize, spike events) come
+    from the main stream on the calling thread, which is always serial.
+**/
+SHARED int      n2a_rand       ();
+SHARED void     n2a_srand      (unsigned int seed);
+SHARED uint64_t n2a_random     (uint64_t seed, uint64_t counter);    ///< Draw number "counter" from the stream with the given seed, without touching any state.
+SHARED void     n2a_swapRandom (uint64_t & seed, uint64_t & counter); ///< Exchange the calling thread's stream with the given one.
+#endif
+
 template<class T> SHARED T                  uniform ();
 template<class T> SHARED T                  uniform (T sigma);
 template<class T> SHARED T                  uniform (T lo, T hi, T step = (T) 1);
@@ -196,6 +237,36 @@ template<class T> class Visitor;
 template<class T> class VisitorStep;
 template<class T> class VisitorSpikeMulti;
 template<class T> class DelayBuffer;
+template<class T> class Metrics;
+
+#ifdef n2a_THREADS
+/**
+    Persistent set of worker threads that execute one job in lock-step.
+    The calling thread always takes index 0, so a pool of size n starts n-1 threads.
+    Index i is bound to the same thread for the life of the pool. Random streams do not
+    belong to the threads, but rather to the partitions of work they pick up. See n2a_rand().
+**/
+class SHARED ThreadPool
+{
+public:
+    std::vector<std::thread>  threads;
+    std::mutex                access;
+    std::condition_variable   start;
+    std::condition_variable   done;
+    std::function<void (int)> job;
+    int                       generation; ///< Incremented for each call to run(). Workers compare against the last generation they executed.
+    int                       pending;    ///< Number of workers that have not yet finished the current job.
+    bool                      quit;
+    std::exception_ptr        error;      ///< First exception thrown by a worker during the current job. Rethrown on the calling thread.
+
+    ThreadPool (int count);
+    ~ThreadPool ();
+
+    int  size () const;
+    void run  (std::function<void (int)> f); ///< Calls f(i) for every index in the pool, then waits until all calls complete.
+    void work (int index);
+};
+#endif
 
 
 /**
@@ -456,6 +527,7 @@ public:
 
     // Connections
     virtual void                   connect            ();          ///< For a connection population, evaluate each possible connection (or some well-defined subset thereof).
+    void                           connectSkip        (int endpoint, double scale); ///< Implementation of connect() for $p that is the same for every candidate, or depends only on the given endpoint (-1 for none). Draws geometric gaps between accepted candidates rather than testing each one. scale converts the value returned by getP() into a probability.
     virtual void                   clearNew           ();          ///< Reset newborn index
     virtual ConnectIterator<T> *   getIterators       (bool poll); ///< Assembles one or more nested iterators in an optimal manner and returns the outermost one.
     ConnectIterator<T> *           getIteratorsSimple (bool poll); ///< Implementation of getIterators() without nearest-neighbor search.
@@ -513,6 +585,37 @@ class priorityQueue : public std::priority_queue<Event<T> *,std::vector<Event<T>
 {
 };
 
+/**
+    Periodic record of simulator activity, appended as JSON lines to the file "metrics" in the job dir.
+    Uses the same format as gov.sandia.n2a.backend.internal.Metrics, except that all spike events are
+    counted together under "EventSpike", memory is reported as "rss" (Linux only), and there is no "live" count.
+    In a multi-process run, each rank writes "metrics.rank<n>" and tags every record with "rank".
+**/
+template<class T>
+class SHARED Metrics
+{
+public:
+    typedef std::chrono::steady_clock::time_point Time;
+
+    double        period;       ///< Seconds of wall-clock time between records.
+    std::ofstream out;
+    Time          start;
+    Time          last;         ///< When the previous record was written.
+    double        connectTime;  ///< Seconds spent in Simulator::updatePopulations().
+    T             t;            ///< Time of most recent event.
+    int           countdown;
+    uint64_t      steps;
+    uint64_t      spikes;
+    uint64_t      stepsLast;
+    uint64_t      spikesLast;
+
+    Metrics (double period);
+    void begin  ();                  ///< Opens the file and writes the first record. Called by the first Simulator::run().
+    void count  (Event<T> * event);  ///< Called as each event is dequeued. Writes a record once the period has elapsed.
+    void finish ();                  ///< Writes the final record.
+    void write  (Time now);
+};
+
 /**
     Lifetime management: When the simulator shuts down, it must dequeue all
     parts. In general, a simulator will run until its queue is empty.
@@ -535,6 +638,12 @@ public:
     Event<T> *                                   currentEvent;
     bool                                         after;         ///< When true, and timesteps match, sort spike events after step events. Otherwise sort them before.
     std::vector<Holder *>                        holders;
+    Metrics<T> *                                 metrics;       ///< Optional. Publishes a periodic record of progress. Simulator takes ownership.
+#   ifdef n2a_THREADS
+    ThreadPool *                                 threads;
+    bool                                         parallelIntegrate; ///< Integration may run concurrently across partitions. True whenever the integration phase touches nothing outside each part.
+    bool                                         parallelUpdate;    ///< Update may run concurrently across partitions. Only true if the model has no external writes and no I/O.
+#   endif
 
     // Singleton
 #   ifdef n2a_TLS
@@ -546,6 +655,9 @@ public:
     Simulator ();
     ~Simulator ();
     void clear ();  ///< Restores simulator to same condition as newly-constructed object.
+#   ifdef n2a_THREADS
+    void setThreads (int count);  ///< Must be called before init(). Each EventStep splits its parts into this many partitions.
+#   endif
 
     void init (WrapperBase<T> * wrapper); ///< init phase and event queue set up
     void run (T until = (T) INFINITY);    ///< Run until given time. This function can be called multiple times to step through simulation. Default value runs until queue is empty.
@@ -601,6 +713,12 @@ class SHARED EventStep : public Event<T>
 public:
     T dt;
     std::vector<VisitorStep<T> *> visitors;
+#   ifdef n2a_SPLITMIX
+    int  nextVisitor; ///< Round-robin position for balancing newly-enqueued parts across visitors.
+#   endif
+#   ifdef n2a_THREADS
+    bool parallel;    ///< When true, visit() spreads the visitors across the thread pool. Only set during phases that are safe to run concurrently.
+#   endif
 
     EventStep (T t, T dt);
     virtual ~EventStep ();  ///< Frees any parts that have not yet died.
@@ -675,7 +793,7 @@ public:
 };
 
 /**
-    Manages the subset of EventStep's load of instances assigned to a specific thread.
+    Manages one partition of EventStep's load of instances. With n2a_THREADS, the partitions are spread across the thread pool.
 **/
 template<class T>
 class SHARED VisitorStep : public Visitor<T>
@@ -683,6 +801,10 @@ class SHARED VisitorStep : public Visitor<T>
 public:
     Part<T>   queue;    ///< The head of a singly-linked list. queue itself never executes, rather, its "next" field points to the first active part.
     Part<T> * previous; ///< Points to the part immediately ahead of the current part.
+#   ifdef n2a_SPLITMIX
+    uint64_t  randomSeed;    ///< Stream for draws made while visiting this partition. Swapped onto the running thread by visit().
+    uint64_t  randomCounter;
+#   endif
 
     VisitorStep (EventStep<T> * event);
     ~VisitorStep ();  ///< Free any parts still lingering in queue.
@@ -15,6 +15,10 @@ the U.S. Government retains certain rights in this software.
 
 #include <climits>
 
+#ifdef n2a_PROFILE
+#  include "profiling.h"
+#endif
+
 #ifdef _WIN32
 #  define WIN32_LEAN_AND_MEAN
 #  include <windows.h>
@@ -23,6 +27,10 @@ the U.S. Government retains certain rights in this software.
 #  undef max
 #endif
 
+#ifdef __linux__
+#  include <unistd.h>
+#endif
+
 // These seem to get defined under GCC, but we want to use them as parameter names.
 #undef near
 #undef far
@@ -34,14 +42,14 @@ template<class T>
 T
 uniform ()
 {
-    return rand () / (RAND_MAX + (T) 1);
+    return n2a_rand () / (N2A_RAND_MAX + (T) 1);
 }
 
 template<class T>
 T
 uniform (T sigma)
 {
-    return sigma * rand () / (RAND_MAX + (T) 1);
+    return sigma * n2a_rand () / (N2A_RAND_MAX + (T) 1);
 }
 
 template<class T>
@@ -49,7 +57,7 @@ T
 uniform (T lo, T hi, T step)
 {
     int steps = floor ((hi - lo) / step + 1);
-    return lo + step * (rand () % steps);
+    return lo + step * (n2a_rand () % steps);
 }
 
 // Box-Muller method (polar variant) for Gaussian random numbers.
@@ -57,15 +65,17 @@ template<class T>
 T
 gaussian ()
 {
-    static bool haveNextGaussian = false;
-    static T nextGaussian;
+    static n2a_THREAD_LOCAL bool haveNextGaussian = false;
+    static n2a_THREAD_LOCAL T nextGaussian;
 
+#   ifndef n2a_SPLITMIX  // The spare would carry over between partitions that share a thread, so draws would depend on thread count.
     if (haveNextGaussian)
     {
         haveNextGaussian = false;
         return nextGaussian;
     }
     else
+#   endif
     {
         T v1, v2, s;
         do
@@ -346,10 +356,10 @@ int
 uniform ()
 {
     // exponent=-1; We promise the semi-open interval [0,1), so must never actaully reach 1.
-#if RAND_MAX == 0x7FFFFFFF
-    return rand ();
-#elif RAND_MAX == 0x7FFF
-    return rand () << 16;
+#if N2A_RAND_MAX == 0x7FFFFFFF
+    return n2a_rand ();
+#elif N2A_RAND_MAX == 0x7FFF
+    return n2a_rand () << 16;
 #else
 # error Need support for unique size of RAND_MAX
 #endif
@@ -368,7 +378,7 @@ uniform (int lo, int hi, int step)
 {
     // lo, hi and step all have same exponent
     int steps = (hi - lo) / step + 1;
-    return lo + step * (rand () % steps);
+    return lo + step * (n2a_rand () % steps);
 }
 
 // Box-Muller method (polar variant) for Gaussian random numbers.
@@ -378,15 +388,17 @@ template<>
 int
 gaussian ()
 {
-    static bool haveNextGaussian = false;
-    static int nextGaussian;
+    static n2a_THREAD_LOCAL bool haveNextGaussian = false;
+    static n2a_THREAD_LOCAL int nextGaussian;
 
+#   ifndef n2a_SPLITMIX  // The spare would carry over between partitions that share a thread, so draws would depend on thread count.
     if (haveNextGaussian)
     {
         haveNextGaussian = false;
         return nextGaussian;
     }
     else
+#   endif
     {
         const int half  = 0x40000000; // 0.5, with exponent=-1
         const int big   = 0xFFFF;     // Too large for log(). exponent=14
@@ -1302,6 +1314,111 @@ Population<T>::connect ()
     delete outer;  // Automatically deletes inner iterators as well.
 }
 
+template<class T>
+void
+Population<T>::connectSkip (int endpoint, double scale)
+{
+    std::vector<ConnectPopulation<T> *> iterators;
+    bool fallback = false;
+    while (true)
+    {
+        ConnectPopulation<T> * it = getIterator (iterators.size (), false);
+        if (! it) break;
+        iterators.push_back (it);
+        // Limits and spatial filters make candidates depend on each other. Old instances require the newborn filter.
+        if (it->Max  ||  it->Min  ||  it->k  ||  it->radius  ||  it->firstborn != 0) fallback = true;
+    }
+    int count = iterators.size ();
+    if (fallback)
+    {
+        for (ConnectPopulation<T> * it : iterators) delete it;
+        Population<T>::connect ();
+        return;
+    }
+
+    // The probe holds stand-in endpoints while $p is evaluated. It never enters the simulation.
+    // Since $p does not depend on these endpoints, any live instance will do.
+    Part<T> * probe = create ();
+    int64_t run = 1;  // Number of candidates that share one value of $p. Spans every endpoint except the row.
+    for (int i = 0; i < count; i++)
+    {
+        if (i == endpoint) continue;
+        ConnectPopulation<T> * it = iterators[i];
+        run *= it->size;
+        Part<T> * p = 0;
+        for (Part<T> * q : *it->instances)
+        {
+            if (! q) continue;
+            p = q;
+            break;
+        }
+        if (p) probe->setPart (i, p);
+        else   run = 0;  // An endpoint with no live instances admits no connections.
+    }
+
+    EventStep<T> * event = container->getEvent ();
+    int rows = endpoint < 0 ? 1 : iterators[endpoint]->size;
+    for (int r = 0; r < rows  &&  run > 0; r++)
+    {
+        Part<T> * row = 0;
+        if (endpoint >= 0)
+        {
+            row = (*iterators[endpoint]->instances)[r];
+            if (! row) continue;
+            probe->setPart (endpoint, row);
+        }
+        double create = probe->getP () * scale;
+        if (create <= 0) continue;
+        double logq = create < 1 ? std::log1p (-create) : 0;
+
+        int64_t j = -1;  // Position within the run, in mixed radix over the non-row endpoints.
+        while (true)
+        {
+            if (create >= 1)
+            {
+                j++;
+            }
+            else
+            {
+                double u = (n2a_rand () + 1.0) / (N2A_RAND_MAX + 1.0);  // in (0,1]
+                double gap = std::log (u) / logq;  // Number of rejected candidates before the next accepted one.
+                if (gap >= run) break;
+                j += 1 + (int64_t) gap;
+            }
+            if (j >= run) break;
+
+            Part<T> * c = this->create ();
+            int64_t q = j;
+            bool live = true;
+            for (int i = count - 1; i >= 0; i--)
+            {
+                if (i == endpoint) continue;
+                ConnectPopulation<T> * it = iterators[i];
+                Part<T> * p = (*it->instances)[q % it->size];
+                q /= it->size;
+                if (! p)
+                {
+                    live = false;
+                    break;
+                }
+                c->setPart (i, p);
+            }
+            if (! live)  // Dead instances are not candidates, so dropping this draw does not bias the others.
+            {
+                delete c;
+                continue;
+            }
+            if (endpoint >= 0) c->setPart (endpoint, row);
+
+            c->enterSimulation ();
+            event->enqueue (c);
+            c->init ();
+        }
+    }
+    delete probe;
+    for (ConnectPopulation<T> * it : iterators) delete it;
+}
+
 template<class T>
 void
 Population<T>::clearNew ()
@@ -1454,6 +1571,93 @@ Population<T>::getIterator (int i, bool poll)
 }
 
 
+// class Metrics -------------------------------------------------------------
+
+template<class T>
+Metrics<T>::Metrics (double period)
+:   period (period)
+{
+    connectTime = 0;
+    t           = 0;
+    countdown   = 64;
+    steps       = 0;
+    spikes      = 0;
+    stepsLast   = 0;
+    spikesLast  = 0;
+}
+
+template<class T>
+void
+Metrics<T>::begin ()
+{
+    if (n2a_rank >= 0) out.open (("metrics.rank" + std::to_string (n2a_rank)).c_str (), std::ios::app);
+    else               out.open ("metrics", std::ios::app);
+    start = std::chrono::steady_clock::now ();
+    last  = start;
+    write (start);
+}
+
+template<class T>
+void
+Metrics<T>::count (Event<T> * event)
+{
+    if (event->isStep ()) steps++;
+    else                  spikes++;
+    t = event->t;
+
+    if (--countdown > 0) return;
+    countdown = 64;  // Keeps the clock read out of the inner loop.
+    Time now = std::chrono::steady_clock::now ();
+    if (std::chrono::duration<double> (now - last).count () >= period) write (now);
+}
+
+template<class T>
+void
+Metrics<T>::finish ()
+{
+    if (! out.is_open ()) return;
+    write (std::chrono::steady_clock::now ());
+    out.close ();
+}
+
+template<class T>
+void
+Metrics<T>::write (Time now)
+{
+    if (! out.is_open ()) return;
+    double wall     = std::chrono::duration<double> (now - start).count ();
+    double interval = std::chrono::duration<double> (now - last ).count ();
+    if (interval <= 0) interval = INFINITY;  // Forces rates to zero.
+#   ifdef n2a_FP
+    double time = (double) t / pow (2.0, FP_MSB - Event<T>::exponent);
+#   else
+    double time = t;
+#   endif
+
+    out << "{\"wall\":" << wall;
+    if (n2a_rank >= 0) out << ",\"rank\":" << n2a_rank;
+    out << ",\"t\":" << time;
+    out << ",\"steps\":" << steps;
+    out << ",\"stepRate\":" << (steps - stepsLast) / interval;
+    out << ",\"events\":{\"EventStep\":" << steps << ",\"EventSpike\":" << spikes << "}";
+    out << ",\"eventRate\":{\"EventStep\":" << (steps - stepsLast) / interval << ",\"EventSpike\":" << (spikes - spikesLast) / interval << "}";
+    out << ",\"queueEvent\":" << SIMULATOR queueEvent.size ();
+    out << ",\"queueConnect\":" << SIMULATOR queueConnect.size ();
+#   ifdef __linux__
+    std::ifstream statm ("/proc/self/statm");
+    long pages = 0;
+    long resident = 0;
+    if (statm >> pages >> resident) out << ",\"rss\":" << resident * sysconf (_SC_PAGESIZE);
+#   endif
+    out << ",\"phases\":{\"connect\":" << connectTime << ",\"events\":" << std::max (0.0, wall - connectTime) << "}";
+    out << "}" << std::endl;
+
+    stepsLast  = steps;
+    spikesLast = spikes;
+    last       = now;
+}
+
+
 // class Simulator -----------------------------------------------------------
 
 #ifdef n2a_TLS
@@ -1469,6 +1673,12 @@ Simulator<T>::Simulator ()
     stop         = false;
     currentEvent = 0;
     after        = false;
+    metrics      = 0;
+#   ifdef n2a_THREADS
+    threads           = 0;
+    parallelIntegrate = false;
+    parallelUpdate    = false;
+#   endif
 }
 
 template<class T>
@@ -1481,6 +1691,13 @@ template<class T>
 void
 Simulator<T>::clear ()
 {
+    if (metrics)
+    {
+        metrics->finish ();
+        delete metrics;
+        metrics = 0;
+    }
+
     // Free all non-step events still in queue.
     while (! queueEvent.empty ())
     {
@@ -1506,8 +1723,26 @@ Simulator<T>::clear ()
 
     stop  = false;
     after = false;
+
+#   ifdef n2a_THREADS
+    if (threads) delete threads;
+    threads           = 0;
+    parallelIntegrate = false;
+    parallelUpdate    = false;
+#   endif
 }
 
+#ifdef n2a_THREADS
+template<class T>
+void
+Simulator<T>::setThreads (int count)
+{
+    if (threads) delete threads;
+    threads = 0;
+    if (count > 1) threads = new ThreadPool (count);
+}
+#endif
+
 template<class T>
 void
 Simulator<T>::init (WrapperBase<T> * wrapper)
@@ -1537,11 +1772,13 @@ Simulator<T>::run (T until)
 #   endif
 
     // Regular simulation
+    if (metrics  &&  ! metrics->out.is_open ()) metrics->begin ();
     while (! queueEvent.empty ()  &&  ! stop)
     {
         currentEvent = queueEvent.top ();
         if (currentEvent->t >= until) return;  // Event remains in queue, so a subsequent call to run() will resume seamlessly.
         queueEvent.pop ();
+        if (metrics) metrics->count (currentEvent);  // Before run(), because a spike event deletes itself.
         currentEvent->run ();
 
 #       ifdef _WIN32
@@ -1561,6 +1798,9 @@ template<class T>
 void
 Simulator<T>::updatePopulations ()
 {
+    typename Metrics<T>::Time begin;
+    if (metrics) begin = std::chrono::steady_clock::now ();
+
     // Resize populations that have requested it
     for (auto it : queueResize) it.first->resize (it.second);
     queueResize.clear ();
@@ -1575,6 +1815,8 @@ Simulator<T>::updatePopulations ()
     // Clear new flag from populations that have requested it
     for (auto it : queueClearNew) it->clearNew ();
     queueClearNew.clear ();
+
+    if (metrics) metrics->connectTime += std::chrono::duration<double> (std::chrono::steady_clock::now () - begin).count ();
 }
 
 template<class T>
@@ -1844,7 +2086,23 @@ EventStep<T>::EventStep (T t, T dt)
 :   dt (dt)
 {
     this->t = t;
+#   ifdef n2a_SPLITMIX
+    // Take one draw from the main stream as a base, then key each partition's stream by its index.
+    // Events are only created serially, so the base depends only on the seed.
+    uint64_t base = n2a_rand ();
+    for (int i = 0; i < N2A_PARTITIONS; i++)
+    {
+        VisitorStep<T> * v = new VisitorStep<T> (this);
+        v->randomSeed = n2a_random (base, i + 1);
+        visitors.push_back (v);
+    }
+    nextVisitor = 0;
+#   else
     visitors.push_back (new VisitorStep<T> (this));
+#   endif
+#   ifdef n2a_THREADS
+    parallel = false;
+#   endif
 }
 
 template<class T>
@@ -1865,22 +2123,49 @@ void
 EventStep<T>::run ()
 {
     // Update parts
-    SIMULATOR integrator->run (*this);
-    visit ([](Visitor<T> * visitor)
+    // Each phase is timed as a whole, rather than per instance. See JobC.profileRegion().
+#   ifdef n2a_THREADS
+    parallel = SIMULATOR parallelIntegrate;
+#   endif
     {
-        visitor->part->update ();
-    });
-    visit ([](Visitor<T> * visitor)
+#       ifdef n2a_PROFILE
+        ProfileRegion profileRegion ("(runtime) integrate");
+#       endif
+        SIMULATOR integrator->run (*this);
+    }
+#   ifdef n2a_THREADS
+    parallel = SIMULATOR parallelUpdate;
+#   endif
     {
-        if (! visitor->part->finalize ())
+#       ifdef n2a_PROFILE
+        ProfileRegion profileRegion ("(runtime) update");
+#       endif
+        visit ([](Visitor<T> * visitor)
         {
-            VisitorStep<T> * v = (VisitorStep<T> *) visitor;
-            Part<T> * p = visitor->part;  // for convenience
-            if (p->next) p->next->setPrevious (v->previous);
-            v->previous->next = p->next;
-            p->leaveSimulation ();
-        }
-    });
+            visitor->part->update ();
+        });
+    }
+#   ifdef n2a_THREADS
+    // Finalize is always serial. It generates events, kills parts, and moves parts between
+    // periods, all of which modify structures shared by every partition.
+    parallel = false;
+#   endif
+    {
+#       ifdef n2a_PROFILE
+        ProfileRegion profileRegion ("(runtime) finalize");
+#       endif
+        visit ([](Visitor<T> * visitor)
+        {
+            if (! visitor->part->finalize ())
+            {
+                VisitorStep<T> * v = (VisitorStep<T> *) visitor;
+                Part<T> * p = visitor->part;  // for convenience
+                if (p->next) p->next->setPrevious (v->previous);
+                v->previous->next = p->next;
+                p->leaveSimulation ();
+            }
+        });
+    }
     if (SIMULATOR stop) return;
 
     SIMULATOR updatePopulations ();
@@ -1891,14 +2176,38 @@ template<class T>
 void
 EventStep<T>::visit (std::function<void (Visitor<T> * visitor)> f)
 {
+#   ifdef n2a_THREADS
+    if (parallel)
+    {
+        // Thread i takes partitions i, i+n, i+2n, ... Each partition brings its own random stream,
+        // so the assignment of partitions to threads doesn't affect the results.
+        int n = SIMULATOR threads->size ();
+        SIMULATOR threads->run ([this, &f, n](int i)
+        {
+            int count = visitors.size ();
+            for (int j = i; j < count; j += n) visitors[j]->visit (f);
+        });
+        return;
+    }
+#   endif
+#   ifdef n2a_SPLITMIX
+    for (auto v : visitors) v->visit (f);
+#   else
     visitors[0]->visit (f);
+#   endif
 }
 
 template<class T>
 void
 EventStep<T>::requeue ()
 {
+#   ifdef n2a_SPLITMIX
+    bool active = false;
+    for (auto v : visitors) if (v->queue.next) {active = true; break;}
+    if (active)  // still have instances, so re-queue event
+#   else
     if (visitors[0]->queue.next)  // still have instances, so re-queue event
+#   endif
     {
         this->t += dt;
         SIMULATOR queueEvent.push (this);
@@ -1913,7 +2222,12 @@ template<class T>
 void
 EventStep<T>::enqueue (Part<T> * part)
 {
+#   ifdef n2a_SPLITMIX
+    visitors[nextVisitor]->enqueue (part);
+    if (++nextVisitor >= (int) visitors.size ()) nextVisitor = 0;
+#   else
     visitors[0]->enqueue (part);
+#   endif
 }
 
 
@@ -1923,6 +2237,9 @@ template<class T>
 void
 EventSpikeSingle<T>::run ()
 {
+#   ifdef n2a_PROFILE
+    ProfileRegion profileRegion ("(runtime) events");  // Only pops the region stack, so safe to destruct after "delete this".
+#   endif
     target->setLatch (this->latch);
 
     SIMULATOR integrator->run (*this);
@@ -1962,6 +2279,9 @@ template<class T>
 void
 EventSpikeMulti<T>::run ()
 {
+#   ifdef n2a_PROFILE
+    ProfileRegion profileRegion ("(runtime) events");  // Only pops the region stack, so safe to destruct after "delete this".
+#   endif
     setLatch ();
 
     SIMULATOR integrator->run (*this);
@@ -2047,6 +2367,10 @@ VisitorStep<T>::VisitorStep (EventStep<T> * event)
 {
     queue.next = 0;
     previous = 0;
+#   ifdef n2a_SPLITMIX
+    randomSeed    = 0;
+    randomCounter = 0;
+#   endif
 }
 
 template<class T>
@@ -2067,6 +2391,9 @@ template<class T>
 void
 VisitorStep<T>::visit (std::function<void (Visitor<T> * visitor)> f)
 {
+#   ifdef n2a_SPLITMIX
+    n2a_swapRandom (randomSeed, randomCounter);  // Draws made by our parts come from this partition's stream, whichever thread runs us.
+#   endif
     previous = &queue;
     while (previous->next)
     {
@@ -2074,6 +2401,9 @@ VisitorStep<T>::visit (std::function<void (Visitor<T> * visitor)> f)
         f (this);
         if (previous->next == this->part) previous = this->part;  // Normal advance through list. Check is necessary in case part dequeued while f() was running.
     }
+#   ifdef n2a_SPLITMIX
+    n2a_swapRandom (randomSeed, randomCounter);
+#   endif
 }
 
 template<class T>
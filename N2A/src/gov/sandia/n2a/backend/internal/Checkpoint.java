@@ -0,0 +1,1002 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.backend.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import gov.sandia.n2a.backend.internal.InternalBackendData.EventTarget;
+import gov.sandia.n2a.db.MDoc;
+import gov.sandia.n2a.eqset.EquationSet;
+import gov.sandia.n2a.language.EvaluationException;
+import gov.sandia.n2a.language.function.Delay.DelayBuffer;
+import gov.sandia.n2a.language.function.Input;
+import gov.sandia.n2a.language.function.Output;
+import gov.sandia.n2a.language.type.Instance;
+import gov.sandia.n2a.language.type.Matrix;
+import gov.sandia.n2a.language.type.Matrix.IteratorNonzero;
+import gov.sandia.n2a.language.type.Scalar;
+import gov.sandia.n2a.language.type.Text;
+import gov.sandia.n2a.linear.MatrixDense;
+import gov.sandia.n2a.linear.MatrixMapped;
+import gov.sandia.n2a.linear.MatrixSparse;
+import gov.sandia.n2a.plugins.extpoints.Backend;
+
+/**
+    Saves the complete state of a running Simulator to a file, and restores a freshly constructed Simulator from it.
+    A checkpoint is only taken right after an EventStep finishes, when the resize, connect and clear-new queues are empty.
+    At that point everything needed to continue lives in the instance tree, the event queue, the RNG and the output holders.
+
+    <p>The file contains, in order:
+    <ul>
+    <li>Header: magic "N2AK", version, simulated time.
+    <li>RNG, as a serialized Java object.
+    <li>Layout of each equation set, so a model whose storage no longer matches is rejected rather than misread.
+    <li>Table of EventStep objects.
+    <li>Declaration of each tracked object (instances, lists, sets, connection tables, delay buffers), then the contents of each.
+        References between tracked objects are written as indices into this table, so the object graph is written
+        without recursion, however deep it may be.
+    <li>Member list of each EventStep, then any spike events still in the queue.
+    <li>State of each Output holder, along with the length of its file. On restore, each file is cut back to that length
+        and reopened for append, so output continues seamlessly from the checkpoint.
+    <li>State of each Input holder, along with the number of lines it has consumed. On restore, the file is reopened
+        and that many lines are skipped, so inputs read by time and inputs read row-by-row both continue where they were.
+    </ul>
+
+    Input from stdin can't be reopened, so a simulation that reads it can't be checkpointed. Other holders, such as
+    matrices read whole, are not saved. They are reopened on first use after restore.
+    Only the Internal backend writes checkpoints. The C runtime ignores the checkpoint key, with a warning.
+
+    <p>The equation sets themselves are not saved. The caller digests the model again and matches parts by name.
+    Since constants are never stored in instances, changed parameters take effect in the restored simulation,
+    as long as they don't change the storage layout.
+
+    <p>A checkpoint may also serve as a fork point: a warm-up job runs to forkTime, writes its state and stops,
+    then each member of a study starts from that state with its own parameters. See read() for how a fork
+    differs from a resume.
+**/
+public class Checkpoint
+{
+    public    Path             path;
+    public    long             period;     // nanoseconds between checkpoints. 0 means only on request.
+    public    volatile boolean requested;  // Set by another thread (such as a shutdown hook) to request one final checkpoint, after which the simulator stops.
+    public    double           forkTime = Double.POSITIVE_INFINITY;  // Simulated time at which to write forkPath and stop.
+    public    Path             forkPath;
+    protected long             last;
+    protected int              countdown;
+
+    public static final int  CHECK   = 64;     // Events between checks of the wall clock.
+    public static       long grace   = 20000;  // Milliseconds the shutdown hook waits for the final checkpoint. Slurm allows 30 seconds between SIGTERM and SIGKILL by default.
+    public static final int  VERSION = 2;
+
+    // Tags for values in object slots
+    protected static final int NULL          = 0;
+    protected static final int REFERENCE     = 1;
+    protected static final int SCALAR        = 2;
+    protected static final int TEXT          = 3;
+    protected static final int MATRIX_DENSE  = 4;
+    protected static final int MATRIX_SPARSE = 5;
+    protected static final int STRING        = 6;
+    protected static final int INTEGER       = 7;
+
+    // Kinds of tracked objects
+    protected static final int WRAPPER    = 0;
+    protected static final int PART       = 1;
+    protected static final int POPULATION = 2;
+    protected static final int LIST       = 3;
+    protected static final int SET        = 4;
+    protected static final int TABLE      = 5;
+    protected static final int DELAY      = 6;
+
+    // Kinds of spike events
+    protected static final int SINGLE       = 0;
+    protected static final int SINGLE_LATCH = 1;
+    protected static final int MULTI        = 2;
+    protected static final int MULTI_LATCH  = 3;
+
+    /**
+        @param period Seconds of wall-clock time between checkpoints. 0 means only write a checkpoint when requested.
+    **/
+    public Checkpoint (Path path, double period)
+    {
+        this.path   = path;
+        this.period = (long) (period * 1e9);
+        last        = System.nanoTime ();
+        countdown   = CHECK;
+    }
+
+    /**
+        Called by Simulator.run() after each event.
+    **/
+    public void check (Simulator simulator)
+    {
+        if (! (simulator.currentEvent instanceof EventStep)  ||  simulator.stop) return;
+        if (simulator.currentEvent.t >= forkTime)
+        {
+            save (simulator, forkPath);
+            simulator.stop     = true;
+            simulator.fastExit = true;  // Reaching the fork point is the normal end of a warm-up job.
+            return;
+        }
+        if (requested)
+        {
+            save (simulator, path);
+            simulator.stop = true;
+            return;
+        }
+        if (period <= 0  ||  --countdown > 0) return;
+        countdown = CHECK;
+        if (System.nanoTime () - last < period) return;
+        save (simulator, path);
+        last = System.nanoTime ();  // Time spent writing does not count against the period.
+    }
+
+    /**
+        Writes a checkpoint to a temporary file, then moves it into place, so a process killed in the middle
+        of writing leaves the previous checkpoint intact.
+    **/
+    public static void save (Simulator simulator, Path path)
+    {
+        Path temp = path.resolveSibling (path.getFileName () + ".tmp");
+        try
+        {
+            write (simulator, temp);
+            Files.move (temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (Exception e)
+        {
+            Backend.err.get ().println ("WARNING: Failed to write checkpoint: " + e.getMessage ());
+            try {Files.deleteIfExists (temp);}
+            catch (IOException f) {}
+        }
+    }
+
+    /**
+        Creates a thread suitable for Runtime.addShutdownHook(). It asks for a final checkpoint, then waits
+        a limited time for the simulation thread to write it and stop.
+    **/
+    public Thread hook (Thread simulation)
+    {
+        return new Thread ("Checkpoint on exit")
+        {
+            public void run ()
+            {
+                requested = true;
+                try {simulation.join (grace);}
+                catch (InterruptedException e) {}
+            }
+        };
+    }
+
+    /**
+        Collects every equation set in the model, keyed by its path of names from the top-level model.
+    **/
+    protected static Map<String,EquationSet> collect (Simulator simulator)
+    {
+        Map<String,EquationSet> result = new LinkedHashMap<String,EquationSet> ();
+        EquationSet model = ((Population) simulator.wrapper.valuesObject[0]).equations;
+        collect (model, "", result);
+        return result;
+    }
+
+    protected static void collect (EquationSet s, String key, Map<String,EquationSet> result)
+    {
+        result.put (key, s);
+        for (EquationSet p : s.parts) collect (p, key + "." + p.name, result);
+    }
+
+    public static boolean tracked (Object o)
+    {
+        return o instanceof Instance  ||  o instanceof ArrayList  ||  o instanceof HashSet  ||  o instanceof ConnectionTable  ||  o instanceof DelayBuffer;
+    }
+
+    /**
+        Writes the state of the given simulator. Must be called between events, at a point where check() would accept.
+    **/
+    @SuppressWarnings("unchecked")
+    public static void write (Simulator simulator, Path file) throws IOException
+    {
+        if (! simulator.queueResize.isEmpty ()  ||  ! simulator.queueConnect.isEmpty ()  ||  ! simulator.queueClearNew.isEmpty ())
+        {
+            throw new EvaluationException ("Simulator is in the middle of a cycle");
+        }
+
+        // Equation sets
+        Map<String,EquationSet>  equations      = collect (simulator);
+        Map<EquationSet,Integer> equationsIndex = new IdentityHashMap<EquationSet,Integer> ();
+        Map<EventTarget,int[]>   targets        = new IdentityHashMap<EventTarget,int[]> ();
+        for (EquationSet s : equations.values ())
+        {
+            int i = equationsIndex.size ();
+            equationsIndex.put (s, i);
+            InternalBackendData bed = (InternalBackendData) s.backendData;
+            int j = 0;
+            for (EventTarget et : bed.eventTargets) targets.put (et, new int[] {i, j++});
+        }
+
+        // Event steps
+        List<EventStep>        steps     = new ArrayList<EventStep> ();
+        Map<EventStep,Integer> stepIndex = new IdentityHashMap<EventStep,Integer> ();
+        List<EventSpike>       spikes    = new ArrayList<EventSpike> ();
+        List<Event>            queue     = new ArrayList<Event> (simulator.queueEvent);  // Iteration order is the order of the heap array. Adding events back in this order reproduces the same heap.
+        for (Event e : queue)
+        {
+            if (e instanceof EventStep) addStep ((EventStep) e, steps, stepIndex);
+            else                        spikes.add ((EventSpike) e);
+        }
+        for (EventStep e : simulator.periods.values ()) addStep (e, steps, stepIndex);
+
+        // Discover tracked objects. The wrapper is always object 0.
+        List<Object>        objects = new ArrayList<Object> ();
+        Map<Object,Integer> ids     = new IdentityHashMap<Object,Integer> ();
+        ArrayDeque<Object>  pending = new ArrayDeque<Object> ();
+        discover (simulator.wrapper, objects, ids, pending);
+        for (EventStep e : steps) for (Part p = e.head.next; p != e.head; p = p.next) discover (p, objects, ids, pending);
+        for (EventSpike e : spikes)
+        {
+            if (e instanceof EventSpikeSingle) discover (((EventSpikeSingle) e).target, objects, ids, pending);
+            else                               discover (((EventSpikeMulti)  e).targets, objects, ids, pending);
+        }
+        while (! pending.isEmpty ())
+        {
+            Object o = pending.remove ();
+            if (o instanceof Instance)
+            {
+                Instance i = (Instance) o;
+                discover (i.container, objects, ids, pending);
+                if (i.valuesObject != null) for (Object v : i.valuesObject) discover (v, objects, ids, pending);
+                if (i instanceof Part  &&  ((Part) i).event != null) addStep (((Part) i).event, steps, stepIndex);
+            }
+            else if (o instanceof ArrayList)
+            {
+                for (Object v : (ArrayList<Object>) o) discover (v, objects, ids, pending);
+            }
+            else if (o instanceof HashSet)
+            {
+                for (Object v : (HashSet<Object>) o) discover (v, objects, ids, pending);
+            }
+            else if (o instanceof ConnectionTable)
+            {
+                ConnectionTable t = (ConnectionTable) o;
+                for (Part[] column : t.endpoints) for (int r = 0; r < t.size; r++) discover (column[r], objects, ids, pending);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream (new BufferedOutputStream (Files.newOutputStream (file), 1 << 16)))
+        {
+            out.write ("N2AK".getBytes (StandardCharsets.UTF_8));
+            out.writeInt (VERSION);
+            out.writeDouble (simulator.currentEvent == null ? 0 : simulator.currentEvent.t);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream ();
+            try (ObjectOutputStream oos = new ObjectOutputStream (baos))
+            {
+                oos.writeObject (simulator.random);
+            }
+            out.writeInt (baos.size ());
+            baos.writeTo (out);
+
+            out.writeInt (equations.size ());
+            for (Entry<String,EquationSet> e : equations.entrySet ())
+            {
+                InternalBackendData bed = (InternalBackendData) e.getValue ().backendData;
+                writeString (out, e.getKey ());
+                out.writeInt (bed.countLocalFloat);
+                out.writeInt (bed.countLocalObject);
+                out.writeInt (bed.countGlobalFloat);
+                out.writeInt (bed.countGlobalObject);
+            }
+
+            out.writeInt (steps.size ());
+            for (EventStep e : steps)
+            {
+                out.writeDouble (e.t);
+                out.writeDouble (e.dt);
+            }
+            Integer current = stepIndex.get (simulator.currentEvent);
+            out.writeInt (current == null ? -1 : current);
+
+            // Declarations
+            out.writeInt (objects.size ());
+            for (Object o : objects)
+            {
+                if (o instanceof Wrapper)
+                {
+                    out.writeByte (WRAPPER);
+                }
+                else if (o instanceof Part  ||  o instanceof Population)
+                {
+                    out.writeByte (o instanceof Part ? PART : POPULATION);
+                    Integer index = equationsIndex.get (((Instance) o).equations);
+                    if (index == null) throw new EvaluationException ("Instance of unknown part");
+                    out.writeInt (index);
+                }
+                else if (o instanceof ArrayList)       out.writeByte (LIST);
+                else if (o instanceof HashSet)         out.writeByte (SET);
+                else if (o instanceof ConnectionTable) out.writeByte (TABLE);
+                else if (o instanceof DelayBuffer)     out.writeByte (DELAY);
+                else throw new EvaluationException ("Checkpoint can't save " + o.getClass ().getName ());
+            }
+
+            // Contents
+            for (Object o : objects)
+            {
+                if (o instanceof Instance)
+                {
+                    Instance i = (Instance) o;
+                    writeValue (out, i.container, ids);
+                    if (i.valuesFloat == null)
+                    {
+                        out.writeInt (-1);
+                    }
+                    else
+                    {
+                        out.writeInt (i.valuesFloat.length);
+                        for (float f : i.valuesFloat) out.writeFloat (f);
+                    }
+                    if (i.valuesObject == null)
+                    {
+                        out.writeInt (-1);
+                    }
+                    else
+                    {
+                        out.writeInt (i.valuesObject.length);
+                        for (Object v : i.valuesObject) writeValue (out, v, ids);
+                    }
+                    if (i instanceof Population)
+                    {
+                        out.writeInt (((Population) i).n);
+                    }
+                    else
+                    {
+                        Integer s = stepIndex.get (((Part) i).event);
+                        out.writeInt (s == null ? -1 : s);
+                    }
+                }
+                else if (o instanceof ArrayList)
+                {
+                    ArrayList<Object> list = (ArrayList<Object>) o;
+                    out.writeInt (list.size ());
+                    for (Object v : list) writeValue (out, v, ids);
+                }
+                else if (o instanceof HashSet)
+                {
+                    HashSet<Object> set = (HashSet<Object>) o;
+                    out.writeInt (set.size ());
+                    for (Object v : set) writeValue (out, v, ids);
+                }
+                else if (o instanceof ConnectionTable)
+                {
+                    ConnectionTable t = (ConnectionTable) o;
+                    out.writeInt (t.size);
+                    out.writeInt (t.endpoints.length);
+                    out.writeInt (t.values.length);
+                    for (Part[]  column : t.endpoints) for (int r = 0; r < t.size; r++) writeValue (out, column[r], ids);
+                    for (float[] column : t.values)    for (int r = 0; r < t.size; r++) out.writeFloat (column[r]);
+                }
+                else  // DelayBuffer
+                {
+                    DelayBuffer d = (DelayBuffer) o;
+                    out.writeDouble (d.value);
+                    out.writeInt (d.buffer.size ());
+                    for (Entry<Double,Double> e : d.buffer.entrySet ())
+                    {
+                        out.writeDouble (e.getKey ());
+                        out.writeDouble (e.getValue ());
+                    }
+                }
+            }
+
+            // Members of each event step, in queue order
+            for (EventStep e : steps)
+            {
+                int count = 0;
+                for (Part p = e.head.next; p != e.head; p = p.next) count++;
+                out.writeInt (count);
+                for (Part p = e.head.next; p != e.head; p = p.next) out.writeInt (ids.get (p));
+            }
+
+            // Event queue
+            out.writeInt (queue.size ());
+            for (Event e : queue)
+            {
+                if (e instanceof EventStep)
+                {
+                    out.writeByte (-1);
+                    out.writeInt (stepIndex.get (e));
+                    continue;
+                }
+
+                EventSpike spike = (EventSpike) e;
+                int[] target = targets.get (spike.eventType);
+                if (target == null) throw new EvaluationException ("Spike event of unknown type");
+                if      (e instanceof EventSpikeSingleLatch) out.writeByte (SINGLE_LATCH);
+                else if (e instanceof EventSpikeSingle)      out.writeByte (SINGLE);
+                else if (e instanceof EventSpikeMultiLatch)  out.writeByte (MULTI_LATCH);
+                else                                         out.writeByte (MULTI);
+                out.writeDouble (e.t);
+                out.writeInt (target[0]);
+                out.writeInt (target[1]);
+                if (e instanceof EventSpikeSingle) writeValue (out, ((EventSpikeSingle) e).target, ids);
+                else                               writeValue (out, ((EventSpikeMulti)  e).targets, ids);
+            }
+
+            // Output holders
+            simulator.out.flush ();
+            List<Entry<String,Output.Holder>> holders = new ArrayList<Entry<String,Output.Holder>> ();
+            for (Entry<String,Object> e : simulator.holders.entrySet ())
+            {
+                Object h = e.getValue ();
+                if (h instanceof Output.Holder) holders.add (Map.entry (e.getKey (), (Output.Holder) h));
+            }
+            Path stdout = simulator.jobDir.resolve ("out");
+            out.writeLong (Files.exists (stdout) ? Files.size (stdout) : -1);
+            out.writeInt (holders.size ());
+            for (Entry<String,Output.Holder> e : holders)
+            {
+                Output.Holder h = e.getValue ();
+                h.out.flush ();
+                h.columnMode.save ();
+                writeString (out, e.getKey ());
+                out.writeLong (h.target == null ? -1 : Files.size (h.target));
+                out.writeBoolean (h.raw);
+                out.writeDouble (h.t);
+                out.writeInt (h.columnsPrevious);
+                out.writeBoolean (h.traceReceived);
+                out.writeInt (h.columnMap.size ());
+                for (Entry<String,Integer> c : h.columnMap.entrySet ())
+                {
+                    writeString (out, c.getKey ());
+                    out.writeInt (c.getValue ());
+                }
+                out.writeInt (h.columnValues.size ());
+                for (Float f : h.columnValues) out.writeFloat (f);
+            }
+
+            // Input holders
+            List<Entry<String,Input.Holder>> inputs = new ArrayList<Entry<String,Input.Holder>> ();
+            for (Entry<String,Object> e : simulator.holders.entrySet ())
+            {
+                Object h = e.getValue ();
+                if (! (h instanceof Input.Holder)) continue;
+                if (e.getKey ().isEmpty ()) throw new IOException ("Input from stdin can't be reopened, so this simulation can't be checkpointed.");
+                inputs.add (Map.entry (e.getKey (), (Input.Holder) h));
+            }
+            out.writeInt (inputs.size ());
+            for (Entry<String,Input.Holder> e : inputs)
+            {
+                Input.Holder h = e.getValue ();
+                writeString (out, e.getKey ());
+                out.writeLong    (h.linesRead);
+                out.writeBoolean (h.time);
+                out.writeBoolean (h.smooth);
+                out.writeDouble  (h.currentLine);
+                writeDoubles     (out, h.currentValues);
+                out.writeDouble  (h.nextLine);
+                writeDoubles     (out, h.nextValues);
+                writeValue       (out, h.A, ids);
+                out.writeDouble  (h.Alast);
+                out.writeInt     (h.headers.size ());
+                for (String header : h.headers) writeString (out, header);
+                out.writeInt     (h.columnMap.size ());
+                for (Entry<String,Integer> c : h.columnMap.entrySet ())
+                {
+                    writeString (out, c.getKey ());
+                    out.writeInt (c.getValue ());
+                }
+                out.writeInt     (h.columnCount);
+                out.writeInt     (h.timeColumn);
+                out.writeBoolean (h.timeColumnSet);
+                out.writeChar    (h.delimiter);
+                out.writeBoolean (h.delimiterSet);
+                out.writeDouble  (h.epsilon);
+            }
+        }
+    }
+
+    protected static void writeDoubles (DataOutputStream out, double[] values) throws IOException
+    {
+        out.writeInt (values.length);
+        for (double v : values) out.writeDouble (v);
+    }
+
+    protected static double[] readDoubles (DataInputStream in) throws IOException
+    {
+        int length = in.readInt ();
+        if (length == 0) return Input.Holder.empty;
+        double[] result = new double[length];
+        for (int i = 0; i < length; i++) result[i] = in.readDouble ();
+        return result;
+    }
+
+    protected static void addStep (EventStep e, List<EventStep> steps, Map<EventStep,Integer> stepIndex)
+    {
+        if (stepIndex.containsKey (e)) return;
+        stepIndex.put (e, steps.size ());
+        steps.add (e);
+    }
+
+    protected static void discover (Object o, List<Object> objects, Map<Object,Integer> ids, ArrayDeque<Object> pending)
+    {
+        if (! tracked (o)  ||  ids.containsKey (o)) return;
+        ids.put (o, objects.size ());
+        objects.add (o);
+        pending.add (o);
+    }
+
+    protected static void writeValue (DataOutputStream out, Object o, Map<Object,Integer> ids) throws IOException
+    {
+        if (o == null)
+        {
+            out.writeByte (NULL);
+        }
+        else if (tracked (o))
+        {
+            out.writeByte (REFERENCE);
+            out.writeInt (ids.get (o));
+        }
+        else if (o instanceof Scalar)
+        {
+            out.writeByte (SCALAR);
+            out.writeDouble (((Scalar) o).value);
+        }
+        else if (o instanceof Text)
+        {
+            out.writeByte (TEXT);
+            writeString (out, ((Text) o).value);
+        }
+        else if (o instanceof MatrixSparse  ||  o instanceof MatrixMapped)
+        {
+            Matrix A = (Matrix) o;
+            out.writeByte (MATRIX_SPARSE);
+            out.writeInt (A.rows ());
+            out.writeInt (A.columns ());
+            int count = 0;
+            IteratorNonzero it = A.getIteratorNonzero ();
+            while (it.hasNext ())
+            {
+                it.next ();
+                count++;
+            }
+            out.writeInt (count);
+            it = A.getIteratorNonzero ();
+            while (it.hasNext ())
+            {
+                double v = it.next ();
+                out.writeInt (it.getRow ());
+                out.writeInt (it.getColumn ());
+                out.writeDouble (v);
+            }
+        }
+        else if (o instanceof Matrix)
+        {
+            Matrix A = (Matrix) o;
+            int rows    = A.rows ();
+            int columns = A.columns ();
+            out.writeByte (MATRIX_DENSE);
+            out.writeInt (rows);
+            out.writeInt (columns);
+            for (int c = 0; c < columns; c++) for (int r = 0; r < rows; r++) out.writeDouble (A.get (r, c));
+        }
+        else if (o instanceof String)
+        {
+            out.writeByte (STRING);
+            writeString (out, (String) o);
+        }
+        else if (o instanceof Integer)
+        {
+            out.writeByte (INTEGER);
+            out.writeInt ((Integer) o);
+        }
+        else
+        {
+            throw new EvaluationException ("Checkpoint can't save " + o.getClass ().getName ());
+        }
+    }
+
+    /**
+        Unlike writeUTF(), allows strings longer than 64KB.
+    **/
+    protected static void writeString (DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes (StandardCharsets.UTF_8);
+        out.writeInt (bytes.length);
+        out.write (bytes);
+    }
+
+    protected static String readString (DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt ()];
+        in.readFully (bytes);
+        return new String (bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+        Replaces the state of a simulator with the contents of a checkpoint.
+        The simulator must be freshly constructed around the same model, but init() must not be called.
+        Afterward, run() continues from the point where the checkpoint was written.
+        @param fork The checkpoint was written by a different job. The simulator keeps its own RNG, so that
+        members of a study diverge after the fork. Output starts in fresh files in this job's dir, with
+        headers and column modes carried over, rather than continuing the files of the job that wrote the checkpoint.
+    **/
+    @SuppressWarnings("unchecked")
+    public static void read (Simulator simulator, Path file, boolean fork) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream (new BufferedInputStream (Files.newInputStream (file), 1 << 16)))
+        {
+            byte[] magic = new byte[4];
+            in.readFully (magic);
+            if (! Arrays.equals (magic, "N2AK".getBytes (StandardCharsets.UTF_8))) throw new EvaluationException ("Not a checkpoint file: " + file);
+            if (in.readInt () != VERSION) throw new EvaluationException ("Unsupported version of checkpoint file: " + file);
+            double t = in.readDouble ();
+
+            byte[] bytes = new byte[in.readInt ()];
+            in.readFully (bytes);
+            if (! fork)
+            {
+                try (ObjectInputStream ois = new ObjectInputStream (new ByteArrayInputStream (bytes)))
+                {
+                    simulator.random = (Random) ois.readObject ();
+                }
+                catch (ClassNotFoundException e)
+                {
+                    throw new IOException (e);
+                }
+            }
+
+            // Equation sets
+            Map<String,EquationSet> available = collect (simulator);
+            int count = in.readInt ();
+            EquationSet[] equations = new EquationSet[count];
+            for (int i = 0; i < count; i++)
+            {
+                String key = readString (in);
+                EquationSet s = available.get (key);
+                int[] layout = {in.readInt (), in.readInt (), in.readInt (), in.readInt ()};
+                if (s == null)
+                {
+                    Backend.err.get ().println ("ERROR: Checkpoint contains a part that is not in the model: " + key);
+                    throw new Backend.AbortRun ();
+                }
+                InternalBackendData bed = (InternalBackendData) s.backendData;
+                if (layout[0] != bed.countLocalFloat  ||  layout[1] != bed.countLocalObject  ||  layout[2] != bed.countGlobalFloat  ||  layout[3] != bed.countGlobalObject)
+                {
+                    Backend.err.get ().println ("ERROR: Storage layout of " + s.prefix () + " differs from the checkpoint, so the model has changed structurally since it was written.");
+                    throw new Backend.AbortRun ();
+                }
+                equations[i] = s;
+                bed.liveCount = 0;
+            }
+
+            // Event steps
+            simulator.queueEvent.clear ();
+            simulator.periods.clear ();
+            count = in.readInt ();
+            EventStep[] steps = new EventStep[count];
+            for (int i = 0; i < count; i++)
+            {
+                double et  = in.readDouble ();
+                double edt = in.readDouble ();
+                steps[i] = simulator.eventFactory.create (et, edt);
+            }
+            int current = in.readInt ();
+            if (current >= 0)
+            {
+                simulator.currentEvent = steps[current];
+            }
+            else
+            {
+                simulator.currentEvent = simulator.eventFactory.create (t, simulator.getNextDt ());
+            }
+            simulator.currentEvent.t = t;
+
+            // Declarations
+            count = in.readInt ();
+            Object[] objects = new Object[count];
+            for (int i = 0; i < count; i++)
+            {
+                int kind = in.readByte ();
+                switch (kind)
+                {
+                    case WRAPPER:
+                        objects[i] = simulator.wrapper;
+                        break;
+                    case PART:
+                        Part p = new Part ();
+                        p.equations = equations[in.readInt ()];
+                        objects[i] = p;
+                        break;
+                    case POPULATION:
+                        objects[i] = new Population (equations[in.readInt ()]);
+                        break;
+                    case LIST:
+                        objects[i] = new ArrayList<Object> ();
+                        break;
+                    case SET:
+                        objects[i] = new HashSet<Object> ();
+                        break;
+                    case TABLE:
+                        objects[i] = new ConnectionTable (0, 0);
+                        break;
+                    case DELAY:
+                        objects[i] = new DelayBuffer ();
+                        break;
+                    default:
+                        throw new EvaluationException ("Ill-formed checkpoint file: " + file);
+                }
+            }
+
+            // Contents
+            for (Object o : objects)
+            {
+                if (o instanceof Instance)
+                {
+                    Instance i = (Instance) o;
+                    i.container = (Instance) readValue (in, objects);
+                    int length = in.readInt ();
+                    if (length < 0)
+                    {
+                        i.valuesFloat = null;
+                    }
+                    else
+                    {
+                        i.valuesFloat = new float[length];
+                        for (int j = 0; j < length; j++) i.valuesFloat[j] = in.readFloat ();
+                    }
+                    length = in.readInt ();
+                    if (length < 0)
+                    {
+                        i.valuesObject = null;
+                    }
+                    else
+                    {
+                        i.valuesObject = new Object[length];
+                        for (int j = 0; j < length; j++) i.valuesObject[j] = readValue (in, objects);
+                    }
+                    if (i instanceof Population)
+                    {
+                        Population p = (Population) i;
+                        p.n = in.readInt ();
+                        ((InternalBackendData) p.equations.backendData).liveCount += p.n;
+                    }
+                    else
+                    {
+                        int s = in.readInt ();
+                        ((Part) i).event = s < 0 ? null : steps[s];
+                    }
+                }
+                else if (o instanceof ArrayList)
+                {
+                    ArrayList<Object> list = (ArrayList<Object>) o;
+                    int size = in.readInt ();
+                    list.ensureCapacity (size);
+                    for (int j = 0; j < size; j++) list.add (readValue (in, objects));
+                }
+                else if (o instanceof HashSet)
+                {
+                    HashSet<Object> set = (HashSet<Object>) o;
+                    int size = in.readInt ();
+                    for (int j = 0; j < size; j++) set.add (readValue (in, objects));
+                }
+                else if (o instanceof ConnectionTable)
+                {
+                    ConnectionTable table = (ConnectionTable) o;
+                    int size           = in.readInt ();
+                    int countEndpoints = in.readInt ();
+                    int countValues    = in.readInt ();
+                    int capacity       = Math.max (16, size);
+                    table.size      = size;
+                    table.endpoints = new Part [countEndpoints][capacity];
+                    table.values    = new float[countValues   ][capacity];
+                    for (Part[]  column : table.endpoints) for (int r = 0; r < size; r++) column[r] = (Part) readValue (in, objects);
+                    for (float[] column : table.values)    for (int r = 0; r < size; r++) column[r] = in.readFloat ();
+                }
+                else  // DelayBuffer
+                {
+                    DelayBuffer d = (DelayBuffer) o;
+                    d.value = in.readDouble ();
+                    int size = in.readInt ();
+                    for (int j = 0; j < size; j++) d.buffer.put (in.readDouble (), in.readDouble ());
+                }
+            }
+
+            // Members of each event step. The list is rebuilt directly rather than through enqueue(),
+            // because Part.event was already restored and some parts may be listed under an event other than the one they reference.
+            for (EventStep e : steps)
+            {
+                count = in.readInt ();
+                Part previous = e.head;
+                for (int j = 0; j < count; j++)
+                {
+                    Part p = (Part) objects[in.readInt ()];
+                    p.previous    = previous;
+                    previous.next = p;
+                    previous      = p;
+                }
+                previous.next   = e.head;
+                e.head.previous = previous;
+            }
+
+            // Event queue
+            count = in.readInt ();
+            for (int i = 0; i < count; i++)
+            {
+                int kind = in.readByte ();
+                if (kind < 0)
+                {
+                    EventStep e = steps[in.readInt ()];
+                    simulator.queueEvent.add (e);
+                    simulator.periods.put (e.dt, e);
+                    continue;
+                }
+
+                EventSpike spike;
+                switch (kind)
+                {
+                    case SINGLE:       spike = new EventSpikeSingle ();      break;
+                    case SINGLE_LATCH: spike = new EventSpikeSingleLatch (); break;
+                    case MULTI:        spike = new EventSpikeMulti ();       break;
+                    default:           spike = new EventSpikeMultiLatch ();
+                }
+                spike.t = in.readDouble ();
+                InternalBackendData bed = (InternalBackendData) equations[in.readInt ()].backendData;
+                spike.eventType = bed.eventTargets.get (in.readInt ());
+                Object target = readValue (in, objects);
+                if (spike instanceof EventSpikeSingle) ((EventSpikeSingle) spike).target  = (Instance) target;
+                else                                   ((EventSpikeMulti)  spike).targets = (List<Instance>) target;
+                simulator.queueEvent.add (spike);
+            }
+
+            // Output holders
+            Map<Path,Long> lengths = new HashMap<Path,Long> ();
+            long length = in.readLong ();
+            if (length >= 0) lengths.put (simulator.jobDir.resolve ("out"), length);
+            count = in.readInt ();
+            for (int i = 0; i < count; i++)
+            {
+                String key = readString (in);
+                Output.Holder h = new Output.Holder (simulator, key, true);
+                simulator.holders.put (key, h);
+                length = in.readLong ();
+                if (h.target != null  &&  length >= 0) lengths.put (h.target, length);
+                h.raw             = in.readBoolean ();
+                h.t               = in.readDouble ();
+                h.columnsPrevious = in.readInt ();
+                h.traceReceived   = in.readBoolean ();
+                int size = in.readInt ();
+                for (int j = 0; j < size; j++)
+                {
+                    String column = readString (in);
+                    h.columnMap.put (column, in.readInt ());
+                }
+                size = in.readInt ();
+                for (int j = 0; j < size; j++) h.columnValues.add (in.readFloat ());
+
+                if (fork)
+                {
+                    h.columnsPrevious = 0;  // Forces headers to be written at the top of the new file.
+                    String name = h.target == null ? "out" : h.target.getFileName ().toString ();
+                    Path columns = file.resolveSibling (name + ".columns");
+                    if (Files.exists (columns)) h.columnMode.merge (new MDoc (columns));
+                }
+            }
+
+            // Input holders
+            count = in.readInt ();
+            for (int i = 0; i < count; i++)
+            {
+                String key = readString (in);
+                Input.Holder h = new Input.Holder ();
+                h.reopen (simulator.jobDir.resolve (key), in.readLong ());
+                h.time          = in.readBoolean ();
+                h.smooth        = in.readBoolean ();
+                h.currentLine   = in.readDouble ();
+                h.currentValues = readDoubles (in);
+                h.nextLine      = in.readDouble ();
+                h.nextValues    = readDoubles (in);
+                h.A             = (Matrix) readValue (in, objects);
+                h.Alast         = in.readDouble ();
+                int size = in.readInt ();
+                for (int j = 0; j < size; j++) h.headers.add (readString (in));
+                size = in.readInt ();
+                for (int j = 0; j < size; j++)
+                {
+                    String column = readString (in);
+                    h.columnMap.put (column, in.readInt ());
+                }
+                h.columnCount   = in.readInt ();
+                h.timeColumn    = in.readInt ();
+                h.timeColumnSet = in.readBoolean ();
+                h.delimiter     = in.readChar ();
+                h.delimiterSet  = in.readBoolean ();
+                h.epsilon       = in.readDouble ();
+                simulator.holders.put (key, h);
+            }
+            if (fork) return;
+
+            // Discard anything written after the checkpoint. The streams were opened for append, so new output starts at the cut.
+            for (Entry<Path,Long> e : lengths.entrySet ())
+            {
+                Path target = e.getKey ();
+                if (! Files.exists (target)) continue;
+                try (FileChannel channel = FileChannel.open (target, StandardOpenOption.WRITE))
+                {
+                    if (channel.size () > e.getValue ()) channel.truncate (e.getValue ());
+                }
+            }
+        }
+    }
+
+    protected static Object readValue (DataInputStream in, Object[] objects) throws IOException
+    {
+        int tag = in.readByte ();
+        switch (tag)
+        {
+            case NULL:
+                return null;
+            case REFERENCE:
+                return objects[in.readInt ()];
+            case SCALAR:
+                return new Scalar (in.readDouble ());
+            case TEXT:
+                return new Text (readString (in));
+            case MATRIX_SPARSE:
+            {
+                int rows    = in.readInt ();
+                int columns = in.readInt ();
+                int count   = in.readInt ();
+                int[]    r = new int   [count];
+                int[]    c = new int   [count];
+                double[] v = new double[count];
+                for (int i = 0; i < count; i++)
+                {
+                    r[i] = in.readInt ();
+                    c[i] = in.readInt ();
+                    v[i] = in.readDouble ();
+                }
+                return new MatrixSparse (rows, columns, r, c, v, count);
+            }
+            case MATRIX_DENSE:
+            {
+                int rows    = in.readInt ();
+                int columns = in.readInt ();
+                MatrixDense A = new MatrixDense (rows, columns);
+                for (int c = 0; c < columns; c++) for (int r = 0; r < rows; r++) A.set (r, c, in.readDouble ());
+                return A;
+            }
+            case STRING:
+                return readString (in);
+            case INTEGER:
+                return in.readInt ();
+        }
+        throw new EvaluationException ("Ill-formed checkpoint file");
+    }
+}
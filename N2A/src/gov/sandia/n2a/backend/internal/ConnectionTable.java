@@ -0,0 +1,73 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.backend.internal;
+
+import java.util.Arrays;
+
+/**
+    Compact storage for connection instances that need nothing from the simulator beyond their update() equations.
+    Rather than a full Part sitting on the event queue, each connection is reduced to a row holding its endpoints
+    and its stored float values (such as a weight), kept in parallel primitive columns.
+    Rows are appended in creation order. They are never removed, because the analysis only selects
+    connections that cannot die. See InternalBackendData.compactConnections
+
+    <p>Each cycle, Population.update() loads every row into a single scratch Part and runs its update,
+    so a synapse that adds into a postsynaptic reduction reads its endpoints and weight straight from the table.
+    Connections that deliver events are not folded, since a spike needs a live Instance as its target.
+    Folded connections still count toward $n and toward any $count on their endpoints, since init() runs as usual.
+**/
+public class ConnectionTable
+{
+    public int       size;       // Number of rows in use.
+    public Part[][]  endpoints;  // One column per connection binding.
+    public float[][] values;     // One column per entry in the connection's valuesFloat.
+
+    public ConnectionTable (int endpointCount, int valueCount)
+    {
+        int capacity = 16;
+        endpoints = new Part [endpointCount][capacity];
+        values    = new float[valueCount   ][capacity];
+    }
+
+    /**
+        Appends the given connection instance. The caller is responsible to remove c from simulation,
+        after which c can be discarded.
+        @param first Position in c.valuesObject of the first endpoint reference.
+    **/
+    public void add (Part c, int first)
+    {
+        int capacity = endpoints[0].length;
+        if (size >= capacity)
+        {
+            capacity *= 2;
+            for (int i = 0; i < endpoints.length; i++) endpoints[i] = Arrays.copyOf (endpoints[i], capacity);
+            for (int i = 0; i < values   .length; i++) values   [i] = Arrays.copyOf (values   [i], capacity);
+        }
+
+        for (int i = 0; i < endpoints.length; i++) endpoints[i][size] = (Part) c.valuesObject[first+i];
+        for (int i = 0; i < values   .length; i++) values   [i][size] = c.valuesFloat[i];
+        size++;
+    }
+
+    /**
+        Fills the given scratch instance with the contents of a row.
+        @param first Position in c.valuesObject of the first endpoint reference.
+    **/
+    public void load (int row, Part c, int first)
+    {
+        for (int i = 0; i < endpoints.length; i++) c.valuesObject[first+i] = endpoints[i][row];
+        for (int i = 0; i < values   .length; i++) c.valuesFloat[i]         = values   [i][row];
+    }
+
+    /**
+        Saves the float values of the given scratch instance back into a row.
+    **/
+    public void store (int row, Part c)
+    {
+        for (int i = 0; i < values.length; i++) values[i][row] = c.valuesFloat[i];
+    }
+}
@@ -0,0 +1,193 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.backend.internal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import gov.sandia.n2a.db.AppData;
+import gov.sandia.n2a.db.MDoc;
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.db.MVolatile;
+import gov.sandia.n2a.db.Schema;
+import gov.sandia.n2a.eqset.EquationSet;
+import gov.sandia.n2a.eqset.MPart;
+import gov.sandia.n2a.plugins.extpoints.Backend.AbortRun;
+
+/**
+    Digests a fixed corpus of models several times and reports time per phase.
+    The first pass over each model is reported separately as "cold", since it fills the
+    parse and unit caches. The remaining passes are summarized by their median.
+    If a baseline from an earlier run is given, any phase that got noticeably slower is
+    listed as a regression, and the process exits with status 1 so a script can catch it.
+
+    Invoked from the command line as
+    -benchmark=corpus [-baseline=results] [-repeat=N]
+    where corpus is a text file listing one model key per line. Blank lines and lines
+    starting with # are ignored. Results go to "benchmark.results" in the current directory,
+    in the same form as the baseline.
+**/
+public class DigestBenchmark
+{
+    public static double tolerance = 0.2;    // Fraction by which a phase may slow down before it counts as a regression.
+    public static double noise     = 0.001;  // seconds. Phases faster than this in the baseline are too short to measure reliably.
+
+    public static void run (MNode record)
+    {
+        PrintStream ps = System.out;
+        MNode config = record.childOrEmpty ("$meta", "benchmark");
+        int repeat = Math.max (2, config.getOrDefault (5, "repeat"));
+
+        List<String> corpus = new ArrayList<String> ();
+        try
+        {
+            for (String line : Files.readAllLines (Paths.get (config.get ("corpus"))))
+            {
+                line = line.trim ();
+                if (line.isEmpty ()  ||  line.startsWith ("#")) continue;
+                corpus.add (line);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println ("Can't read benchmark corpus.");
+            System.exit (1);
+        }
+
+        MNode results = new MVolatile ();
+        for (String key : corpus)
+        {
+            ps.println (key);
+            MNode result = results.childOrCreate (key);
+            Map<String,long[]> times     = new LinkedHashMap<String,long[]> ();
+            Map<String,long[]> allocated = new LinkedHashMap<String,long[]> ();
+            long[] totals = new long[repeat - 1];
+            try
+            {
+                for (int r = 0; r < repeat; r++)
+                {
+                    PhaseTimer timer = digest (key);
+                    if (r == 0)
+                    {
+                        result.set (timer.totalTime () / 1e9, "cold");
+                        continue;
+                    }
+                    int w = r - 1;
+                    totals[w] = timer.totalTime ();
+                    for (PhaseTimer.Phase p : timer.phases.values ())
+                    {
+                        long[] t = times.get (p.name);
+                        if (t == null)
+                        {
+                            t = new long[repeat - 1];
+                            times    .put (p.name, t);
+                            allocated.put (p.name, new long[repeat - 1]);
+                        }
+                        t[w] = p.time;
+                        allocated.get (p.name)[w] = p.allocated;
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                if (! (e instanceof AbortRun)) e.printStackTrace ();
+                result.set ("failed", "error");
+                continue;
+            }
+
+            result.set (median (totals) / 1e9, "warm");
+            for (String name : times.keySet ())
+            {
+                result.set (median (times    .get (name)) / 1e9, "phases", name, "time");
+                result.set (median (allocated.get (name)),       "phases", name, "allocated");
+            }
+            ps.println ("  cold " + result.get ("cold") + " s, warm " + result.get ("warm") + " s");
+        }
+
+        Path resultsPath = Paths.get ("benchmark.results");
+        try (BufferedWriter writer = Files.newBufferedWriter (resultsPath))
+        {
+            Schema.latest ().writeAll (results, writer);
+        }
+        catch (IOException e)
+        {
+            System.err.println ("Can't write " + resultsPath);
+        }
+
+        String baselineName = config.get ("baseline");
+        if (baselineName.isEmpty ()) return;
+        int regressions = compare (new MDoc (Paths.get (baselineName)), results, ps);
+        if (regressions > 0)
+        {
+            ps.println (regressions + " regressions");
+            System.exit (1);
+        }
+        ps.println ("No regressions");
+    }
+
+    /**
+        Runs the same sequence as InternalBackend, short of creating a simulator.
+    **/
+    public static PhaseTimer digest (String key) throws Exception
+    {
+        PhaseTimer.begin (key);
+        try
+        {
+            MNode model = new MPart (AppData.docs.childOrEmpty ("models", key));
+            PhaseTimer.mark ("getModel");
+            EquationSet e = new EquationSet (model);
+            PhaseTimer.mark ("construct");
+            InternalBackend.digestModel (e);
+            InternalBackend.prepareToRun (e);
+        }
+        catch (Exception e)
+        {
+            PhaseTimer.end ();
+            throw e;
+        }
+        return PhaseTimer.end ();
+    }
+
+    /**
+        Lists every phase that is slower in results than in baseline by more than tolerance.
+        @return Number of regressions found.
+    **/
+    public static int compare (MNode baseline, MNode results, PrintStream ps)
+    {
+        int count = 0;
+        for (MNode result : results)
+        {
+            MNode base = baseline.child (result.key ());
+            if (base == null) continue;
+            for (MNode phase : result.childOrEmpty ("phases"))
+            {
+                double before = base.getOrDefault (0.0, "phases", phase.key (), "time");
+                double after  = phase.getOrDefault (0.0, "time");
+                if (before < noise  ||  after <= before * (1 + tolerance)) continue;
+                ps.printf ("REGRESSION %s %s: %.4f s -> %.4f s (%+.0f%%)%n", result.key (), phase.key (), before, after, (after / before - 1) * 100);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static long median (long[] values)
+    {
+        long[] sorted = Arrays.copyOf (values, values.length);
+        Arrays.sort (sorted);
+        return sorted[sorted.length / 2];
+    }
+}
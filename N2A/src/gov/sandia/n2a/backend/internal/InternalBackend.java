@@ -7,8 +7,14 @@ the U.S. Government retains certain rights in this software.
 package gov.sandia.n2a.backend.internal;
 
 import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.eqset.EquationEntry;
 import gov.sandia.n2a.eqset.EquationSet;
+import gov.sandia.n2a.eqset.Variable;
 import gov.sandia.n2a.host.Host;
+import gov.sandia.n2a.language.AccessVariable;
+import gov.sandia.n2a.language.Operator;
+import gov.sandia.n2a.language.UnitValue;
+import gov.sandia.n2a.language.Visitor;
 import gov.sandia.n2a.plugins.extpoints.Backend;
 import gov.sandia.n2a.ui.jobs.NodeJob;
 
@@ -17,6 +23,14 @@ import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class InternalBackend extends Backend
 {
@@ -26,35 +40,110 @@ public class InternalBackend extends Backend
         return "Internal";
     }
 
+    /**
+        Jobs currently running in this JVM, keyed by job key.
+        Replaces a scan of every thread in the JVM each time the monitor polls a job.
+    **/
+    protected static Map<String,SimulationThread> running    = new ConcurrentHashMap<String,SimulationThread> ();
+    /**
+        Heap footprint of the constructed network, learned from the most recent run of each model (keyed by $inherit).
+        Members of a study all share one model, so after the first one finishes init the rest are admitted
+        based on a measured value rather than a guess.
+    **/
+    protected static Map<String,Long>             footprints = new ConcurrentHashMap<String,Long> ();
+    public    static long                         defaultFootprint = 256L << 20;  // For a model we haven't seen yet.
+
+    // Heap layout assumed by footprint(Simulator). These are the sizes on a 64-bit JVM without compressed references.
+    // That is the larger of the two usual layouts, so the estimate errs toward holding a job back rather than overcommitting.
+    public static final int HEADER_OBJECT = 16;  // mark word + class pointer
+    public static final int HEADER_ARRAY  = 24;  // object header + length, padded to 8 bytes
+    public static final int REFERENCE     = 8;
+    public static final int FIELDS_PART   = 7;   // references in a Part: equations, container, valuesFloat, valuesObject (from Instance), event, next, previous
+
+    /**
+        Admits a local Internal job only if a worker slot is free and the heap can hold its estimated footprint
+        on top of what running jobs have reserved but not yet allocated. The slot count comes from host config
+        backend.internal.workers, and defaults to the number of cores. When this returns false the job stays
+        in the host queue, and the Study thread sees it as not started and throttles itself.
+        Other hosts fall back on the general estimate in Backend.
+        When backend.internal.processes is set, jobs run in separate worker JVMs instead. See WorkerPool.
+    **/
+    @Override
+    public boolean canRunNow (Host host, MNode job)
+    {
+        if (host != Host.get ()) return super.canRunNow (host, job);
+        if (WorkerPool.size () > 0) return WorkerPool.canRunNow ();
+
+        // A thread that died abnormally (killed, or out of memory) never reaches the end of run(), so sweep those out first.
+        for (SimulationThread t : running.values ()) if (t.getState () == Thread.State.TERMINATED) running.remove (t.job.key (), t);
+        if (running.isEmpty ()) return true;  // Always start one job. If its measured footprint exceeds the heap, SimulationThread refuses it with an error. An unmeasured model gets to try.
+
+        int workers = host.config.getOrDefault (host.getProcessorTotal (), "backend", "internal", "workers");
+        if (running.size () >= workers) return false;
+
+        long needed   = footprint (job);
+        long reserved = 0;
+        for (SimulationThread t : running.values ()) reserved += t.reserved;
+        Runtime r = Runtime.getRuntime ();
+        long available = r.maxMemory () - (r.totalMemory () - r.freeMemory ());
+        return needed + reserved <= available;
+    }
+
+    public static long footprint (MNode job)
+    {
+        return footprints.getOrDefault (job.get ("$inherit"), defaultFootprint);
+    }
+
+    /**
+        Measures the constructed network, using the per-instance storage layout in InternalBackendData.
+        Each Part costs its own object, plus its valuesFloat array (4 bytes per float) and its valuesObject array
+        (one reference per slot). See the HEADER_* constants for the sizes assumed.
+        The result is still a lower bound on heap consumed, since it does not count the contents of
+        any matrices, strings, populations or lists held in object slots.
+    **/
+    public static long footprint (Simulator simulator)
+    {
+        long result = 0;
+        for (Part p : simulator)
+        {
+            InternalBackendData bed = (InternalBackendData) p.equations.backendData;
+            result += HEADER_OBJECT + REFERENCE * FIELDS_PART
+                   +  HEADER_ARRAY  + 4         * bed.countLocalFloat
+                   +  HEADER_ARRAY  + REFERENCE * bed.countLocalObject;
+        }
+        return result;
+    }
+
     @Override
     public void start (MNode job)
     {
-        Thread simulationThread = new SimulationThread (job);
+        if (WorkerPool.size () > 0) WorkerPool.start (job);
+        else                        startThread (job);
+    }
+
+    /**
+        Runs the job in this JVM. A worker process calls this directly, since it must not hand the job back to the pool.
+    **/
+    public SimulationThread startThread (MNode job)
+    {
+        SimulationThread simulationThread = new SimulationThread (job);
         simulationThread.setDaemon (true);
+        running.put (job.key (), simulationThread);
         simulationThread.start ();
+        return simulationThread;
     }
 
     public SimulationThread getThread (MNode job)
     {
-        Thread[] threads = new Thread[Thread.activeCount ()];
-        int count = Thread.enumerate (threads);
-        for (int i = 0; i < count; i++)
-        {
-            Thread t = threads[i];
-            if (t instanceof SimulationThread)
-            {
-                SimulationThread s = (SimulationThread) t;
-                if (s.job == job) return s;
-            }
-        }
-        return null;
+        return running.get (job.key ());
     }
 
     @Override
     public boolean isAlive (MNode job)
     {
         SimulationThread s = getThread (job);
-        return  s != null  &&  s.isAlive ();
+        if (s == null) return WorkerPool.isAlive (job);
+        return s.isAlive ();
     }
 
     @SuppressWarnings("deprecation")
@@ -62,7 +151,11 @@ public class InternalBackend extends Backend
     public void kill (MNode job, boolean force)
     {
         SimulationThread s = getThread (job);
-        if (s == null) return;
+        if (s == null)
+        {
+            WorkerPool.kill (job, force);
+            return;
+        }
         if (s.simulator == null) return;
         if (force) s.stop ();
         else       s.simulator.stop = true;
@@ -72,11 +165,13 @@ public class InternalBackend extends Backend
     {
         MNode job;
         Simulator simulator;
+        volatile long reserved;  // Estimated heap this job has yet to allocate. Drops to zero once the network is constructed.
 
         public SimulationThread (MNode job)
         {
             super ("Internal Simulation");
             this.job = job;
+            reserved = footprint (job);
         }
 
         public void run ()
@@ -85,18 +180,31 @@ public class InternalBackend extends Backend
             try {err.set (new PrintStream (new FileOutputStream (localJobDir.resolve ("err").toFile (), true), false, "UTF-8"));}
             catch (Exception e) {}
 
-            long startTime = 0;
-            long stopTime  = 0;
+            long   startTime = 0;
+            long   stopTime  = 0;
+            Thread hook      = null;  // Writes a final checkpoint when the JVM is asked to exit, for example by SIGTERM at the end of a batch allocation.
             try
             {
                 job.set ("Preparing", "status");
                 job.set (System.currentTimeMillis (), "started");
+                Long measured = footprints.get (job.get ("$inherit"));
+                long heap     = Runtime.getRuntime ().maxMemory ();
+                if (measured != null  &&  measured > heap)
+                {
+                    err.get ().println ("A previous run of this model needed at least " + (measured >> 20) + " MB of heap, but this JVM allows only " + (heap >> 20) + " MB.");
+                    err.get ().println ("Raise the heap limit (-Xmx), or run the model on a worker process (host config backend.internal.processes and heap).");
+                    throw new AbortRun ();
+                }
+                PhaseTimer.begin (job.key ());
 
                 MNode model = NodeJob.getModel (job);
+                PhaseTimer.mark ("getModel");
                 EquationSet digestedModel = new EquationSet (model);
+                PhaseTimer.mark ("construct");
                 digestModel (digestedModel);
                 prepareToRun (digestedModel);
-                Files.copy (new ByteArrayInputStream (digestedModel.dump (false).getBytes ("UTF-8")), localJobDir.resolve ("model.flat"));
+                Files.copy (new ByteArrayInputStream (digestedModel.dump (false).getBytes ("UTF-8")), localJobDir.resolve ("model.flat"), StandardCopyOption.REPLACE_EXISTING);  // A resumed job already has this file.
+                PhaseTimer.mark ("dump");
                 //dumpBackendData (digestedModel);
 
                 // Any new metadata generated after MPart is collated must be injected back into job
@@ -107,6 +215,7 @@ public class InternalBackend extends Backend
                 job.set (seed, "seed");
 
                 simulator = new Simulator (new Wrapper (digestedModel), seed, localJobDir);
+                simulator.threads = getThreads (digestedModel);
                 String e = model.get ("$meta", "backend", "all", "event");
                 switch (e)
                 {
@@ -123,8 +232,52 @@ public class InternalBackend extends Backend
                 }
 
                 job.clear ("status");
+                PhaseTimer.mark ("createSimulator");
                 startTime = System.nanoTime ();
-                simulator.init ();
+                Path checkpointFile = localJobDir.resolve ("checkpoint");
+                String fork = job.get ("fork");  // Checkpoint written by the warm-up job of a study.
+                if (job.getFlag ("resume")  &&  Files.exists (checkpointFile))
+                {
+                    Checkpoint.read (simulator, checkpointFile, false);
+                    err.get ().println ("Resumed from checkpoint at t=" + simulator.currentEvent.t);
+                    PhaseTimer.mark ("resume");
+                }
+                else if (! fork.isEmpty ())
+                {
+                    Checkpoint.read (simulator, Paths.get (fork), true);
+                    err.get ().println ("Started from fork at t=" + simulator.currentEvent.t);
+                    PhaseTimer.mark ("fork");
+                }
+                else
+                {
+                    simulator.init ();
+                    PhaseTimer.mark ("init");
+                }
+                footprints.put (job.get ("$inherit"), footprint (simulator));
+                reserved = 0;
+                PhaseTimer timer = PhaseTimer.end ();
+                timer.save (job);
+                timer.dump (err.get ());
+                double period = model.getOrDefault (10.0, "$meta", "backend", "all", "metrics");
+                if (period > 0)
+                {
+                    simulator.metrics = new Metrics (localJobDir.resolve ("metrics"), period);
+                    simulator.metrics.setup (timer);
+                }
+                double interval = model.getOrDefault (-1.0, "$meta", "backend", "all", "checkpoint");
+                if (interval >= 0)
+                {
+                    simulator.checkpoint = new Checkpoint (checkpointFile, interval);
+                    hook = simulator.checkpoint.hook (this);
+                    Runtime.getRuntime ().addShutdownHook (hook);
+                }
+                String forkTime = model.get ("$meta", "backend", "all", "fork");
+                if (! forkTime.isEmpty ())
+                {
+                    if (simulator.checkpoint == null) simulator.checkpoint = new Checkpoint (checkpointFile, 0);
+                    simulator.checkpoint.forkTime = new UnitValue (forkTime).get ();
+                    simulator.checkpoint.forkPath = localJobDir.resolve ("fork");
+                }
                 simulator.run ();  // Does not return until simulation is finished.
                 stopTime = System.nanoTime ();
                 if (simulator.stop  &&  ! simulator.fastExit)
@@ -139,6 +292,8 @@ public class InternalBackend extends Backend
             catch (Exception e)
             {
                 stopTime = System.nanoTime ();
+                PhaseTimer.end ();
+                if (simulator != null) simulator.closeStreams ();  // Also releases any shared resources.
                 if (e instanceof AbortRun)
                 {
                     String message = e.getMessage ();
@@ -149,12 +304,19 @@ public class InternalBackend extends Backend
                 try {Files.copy (new ByteArrayInputStream ("failure".getBytes ("UTF-8")), localJobDir.resolve ("finished"));}
                 catch (Exception f) {}
             }
+            if (hook != null)
+            {
+                try {Runtime.getRuntime ().removeShutdownHook (hook);}
+                catch (IllegalStateException e) {}  // JVM is already shutting down, which is probably why we stopped.
+            }
+
             long elapsedTime = 0;
             if (startTime != 0  &&  stopTime != 0) elapsedTime = stopTime - startTime;
 
             PrintStream e = err.get ();
             e.println ("Execution time: " + elapsedTime / 1e9 + " seconds");
             if (e != System.err) e.close ();
+            running.remove (job.key (), this);
             // Both the err stream and the simulator object are held in thread-local storage.
             // This thread is now ending, so it should become eligible for garbage collection.
         }
@@ -165,6 +327,7 @@ public class InternalBackend extends Backend
     {
         SimulationThread s = getThread (job);
         if (s != null  &&  s.simulator != null  &&  s.simulator.currentEvent != null) return s.simulator.currentEvent.t;
+        if (s == null) return super.currentSimTime (job);  // Running in a worker process, so read progress from its files.
         return 0;
     }
 
@@ -184,71 +347,182 @@ public class InternalBackend extends Backend
         prepareToRun (e);
         long seed = e.metadata.getOrDefault (System.currentTimeMillis (), "seed");
         Simulator result = new Simulator (new Wrapper (e), seed);
+        result.threads = getThreads (e);
         result.init ();
         return result;
     }
 
+    /**
+        Determines how many threads may be used to construct the network. Defaults to all cores.
+        The realized network does not depend on this number, so live simulations and code-generating
+        backends share the same default.
+    **/
+    public static int getThreads (EquationSet e)
+    {
+        return Math.max (1, e.metadata.getOrDefault (Runtime.getRuntime ().availableProcessors (), "backend", "internal", "threads"));
+    }
+
+    /**
+        Determines whether study variables can take effect in samples that start from a fork checkpoint.
+        A sample digests its own model, so a changed constant replaces the base value from the fork time on.
+        Anything the warm-up has already consumed can't be changed that way: the value of a state variable,
+        an initial condition, a structural special such as $n or $p, or the structure of the model itself.
+        Only the early phases of digestion are run, so that references have not yet been replaced by constants.
+        @param model Collated model, without any study variables applied.
+        @param paths Key path of each study variable, relative to the top of the model.
+        @param warnings Receives a note for each variable that the warm-up also used, with its base value.
+        @return null if every variable can take effect after the fork. Otherwise, an explanation of the first one that can't.
+    **/
+    public static String checkFork (MNode model, List<String[]> paths, List<String> warnings) throws Exception
+    {
+        EquationSet e = new EquationSet (model);
+        e.resolveConnectionBindings ();
+        e.addGlobalConstants ();
+        e.addSpecials ();
+        e.resolveLHS ();
+        e.fillIntegratedVariables ();
+        e.findIntegrated ();
+        e.resolveRHS ();
+
+        for (String[] keys : paths)
+        {
+            String name = String.join (".", keys);
+            EquationSet s = e;
+            Variable v = null;
+            boolean meta = false;
+            for (String key : keys)
+            {
+                if (key.equals ("$meta"))
+                {
+                    meta = true;
+                    break;
+                }
+                if (v != null) continue;  // Remaining keys select an equation or metadata within the variable.
+                EquationSet p = s.findPart (key);
+                if (p != null) s = p;
+                else           v = s.find (Variable.fromLHS (key));
+                if (p == null  &&  v == null) break;
+            }
+            if (meta) continue;  // Metadata such as duration is read when the sample starts.
+            if (v == null) return "Study variable " + name + " changes model structure, which is fixed by the warm-up.";
+            if (v.name.startsWith ("$")) return "Study variable " + name + " sets " + v.name + ", which is used to build the network during the warm-up.";
+            if (v.derivative != null) return "Study variable " + name + " is a state variable, so its value comes from the warm-up.";
+            for (EquationEntry ee : v.equations)
+            {
+                if (ee.ifString.contains ("$init")) return "Study variable " + name + " is an initial condition, which the warm-up has already applied.";
+            }
+
+            // Follow everything computed from v. Values recomputed during the run are fine. Any use at init is not.
+            List<Variable> queue   = new ArrayList<Variable> ();
+            Set<Variable>  visited = new HashSet<Variable> ();
+            queue.add (v);
+            visited.add (v);
+            boolean live = false;
+            for (int i = 0; i < queue.size (); i++)
+            {
+                Variable source = queue.get (i);
+                if (source.usedBy == null) continue;
+                for (Object o : source.usedBy)
+                {
+                    if (! (o instanceof Variable)) continue;
+                    Variable u = (Variable) o;
+                    if (! visited.add (u)) continue;
+                    for (EquationEntry ee : u.equations)
+                    {
+                        if (! references (ee, source)) continue;
+                        if (u.name.startsWith ("$")  ||  ee.ifString.contains ("$init")  ||  u.derivative != null  &&  ee.condition == null)
+                        {
+                            return "Study variable " + name + " is used at init by " + u.fullName () + ", which the warm-up has already done.";
+                        }
+                        live = true;
+                    }
+                    queue.add (u);
+                }
+            }
+            if (live) warnings.add ("Study variable " + name + " takes effect at the fork time. The warm-up uses its base value.");
+        }
+        return null;
+    }
+
+    protected static boolean references (EquationEntry e, Variable v)
+    {
+        class ReferenceVisitor implements Visitor
+        {
+            boolean found;
+            public boolean visit (Operator op)
+            {
+                if (found) return false;
+                if (op instanceof AccessVariable)
+                {
+                    AccessVariable av = (AccessVariable) op;
+                    if (av.reference != null  &&  av.reference.variable == v) found = true;
+                    return false;
+                }
+                return true;
+            }
+        }
+        ReferenceVisitor visitor = new ReferenceVisitor ();
+        if (e.expression != null) e.expression.visit (visitor);
+        if (e.condition  != null) e.condition .visit (visitor);
+        return visitor.found;
+    }
+
     public static void digestModel (EquationSet e) throws Exception
     {
         String backend = e.metadata.getOrDefault ("internal", "backend");
 
         if (e.source.containsKey ("pin"))  // crude heuristic that may save some time for regular (non-dataflow) models
         {
-            e.collectPins ();
-            e.fillAutoPins ();
-            e.resolvePins ();
-            e.purgePins ();
+            PhaseTimer.run (e, "collectPins", "fillAutoPins", "resolvePins", "purgePins");
         }
-        e.resolveConnectionBindings ();
-        e.addGlobalConstants ();
-        e.addSpecials ();  // $connect, $index, $init, $n, $t, $t'
+        PhaseTimer.run (e,
+            "resolveConnectionBindings",
+            "addGlobalConstants",
+            "addSpecials");  // $connect, $index, $init, $n, $t, $t'
         e.addAttribute ("global",       false, true,  "$max", "$min", "$k", "$radius");
         e.addAttribute ("global",       false, false, "$n");
         e.addAttribute ("state",        true,  false, "$n");  // Forbid $n from being temporary, even if it meets the criteria.
         e.addAttribute ("preexistent",  true,  false, "$t'", "$t");  // variables that are not stored because Instance.get/set intercepts them
         e.addAttribute ("readOnly",     true,  false, "$t");
         e.addAttribute ("externalRead", false, false, "$type");  // Force $type to be double-buffered. Because this is combined with REPLACE, we need to explicitly zero $type in finish().
-        e.resolveLHS ();
-        e.fillIntegratedVariables ();
-        e.findIntegrated ();
-        e.resolveRHS ();
+        PhaseTimer.mark ("addAttribute");
+        PhaseTimer.run (e, "resolveLHS", "fillIntegratedVariables", "findIntegrated", "resolveRHS");
         e.flatten (backend);
-        e.findExternal ();
-        e.sortParts ();
-        e.checkUnits ();
-        e.findConstants ();
-        e.determineTraceVariableName ();
-        e.collectSplits ();
-        e.addDrawDependencies ();
-        e.removeUnused ();  // especially get rid of unneeded $variables created by addSpecials()
-        e.findAccountableConnections ();
-        e.findTemporary ();
-        e.determineOrder ();
-        e.findDerivative ();
-        e.findInitOnly ();
-        e.findDeath ();
-        e.determinePoll ();
-        e.purgeInitOnlyTemporary ();
-        e.setAttributesLive ();
-        e.forceTemporaryStorageForSpecials ();
-        e.determineTypes ();
-        e.findConnectionMatrix ();
-        e.determineDuration ();
+        PhaseTimer.mark ("flatten");
+        PhaseTimer.run (e,
+            "findExternal",
+            "sortParts",
+            "checkUnits",
+            "findConstants",
+            "determineTraceVariableName",
+            "collectSplits",
+            "addDrawDependencies",
+            "removeUnused",  // especially get rid of unneeded $variables created by addSpecials()
+            "findAccountableConnections",
+            "findTemporary",
+            "determineOrder",
+            "findDerivative",
+            "findInitOnly",
+            "findDeath",
+            "determinePoll",
+            "purgeInitOnlyTemporary",
+            "setAttributesLive",
+            "forceTemporaryStorageForSpecials",
+            "determineTypes",
+            "findConnectionMatrix",
+            "findConnectionSkip",
+            "findConnectionParallel",
+            "determineDuration");
     }
 
     /**
         Separate from digestModel() so that other backends can use an alternate/abbreviated compilation
         process, but still use the Internal backend to run the init cycle.
     **/
-    public static void prepareToRun (EquationSet e)
+    public static void prepareToRun (EquationSet e) throws Exception
     {
-        createBackendData (e);
-        analyzeEvents (e);
-        analyze (e);
-        analyzeConversions (e);
-        analyzeLastT (e);
-        e.clearVariables ();
-        e.assignParents ();
+        PhaseTimer.run (InternalBackend.class, e, "createBackendData", "analyzeEvents", "analyze", "analyzeConversions", "analyzeLastT");
+        PhaseTimer.run (e, "clearVariables", "assignParents");
     }
 
     public static void createBackendData (EquationSet s)
@@ -111,6 +111,7 @@ public class InternalBackendData
     public List<Delay>       delays          = new ArrayList<Delay> ();     // Not related to events, but processed in a similar manner.
 
     public boolean singleton;               // $n=1 always; No structural dynamics.
+    public long    liveCount;               // Total instances of this part in the simulation, across all containing populations. Reported by Metrics.
     public boolean singleConnection;        // Indicates that this is a connection and that all endpoints are singletons and immediate peers. Used for nicer path generation.
     public boolean populationCanGrowOrDie;  // by structural dynamics other than $n
     public boolean populationCanResize;     // by manipulating $n
@@ -137,6 +138,16 @@ public class InternalBackendData
     public int     pollDeadline;            // position in population valuesFloat of time by which current poll cycle must complete. Only valid if poll>=0.
     public int     pollSorted;              // position in population valuesObject of sorted list of connections. Only valid if poll>=0.
 
+    // Conditions under which connection instances can be folded into a ConnectionTable once they are initialized:
+    // * Per-step work is limited to update(), which Population.update() runs on each row. Nothing to integrate,
+    //   nothing written into us from outside, no events or delays, and no $type or $t' that would move the instance.
+    // * Never dies, since rows are not removed from the table. This also rules out polling.
+    // * Nothing else needs the instance itself: no sub-parts, not a connection target, not on any connection path.
+    // * valuesObject holds nothing but the endpoint references.
+    // This admits synapses that add into a postsynaptic variable, but not those that deliver events.
+    public boolean compactConnections;
+    public int     connectionTable;         // position in population valuesObject of ConnectionTable. Only valid if compactConnections is true.
+
     public int     indexNext;      // position in population valuesFloat of index counter
     public int     indexAvailable; // position in population valuesObject of list of dead indices
     public int     instances = -1; // position in population valuesObject of instances list; -1 means don't track instances
@@ -1237,6 +1248,17 @@ public class InternalBackendData
             }
         }
 
+        if (s.connectionBindings != null)
+        {
+            compactConnections =  localIntegrated.isEmpty ()  &&  localBufferedExternal.isEmpty ()  &&  localBufferedExternalWrite.isEmpty ()
+                              &&  type == null  &&  (dt == null  ||  dt.equations.isEmpty ())
+                              &&  eventTargets.isEmpty ()  &&  eventSources.isEmpty ()  &&  delays.isEmpty ()
+                              &&  ! s.lethalP  &&  ! s.lethalType  &&  ! s.lethalConnection  &&  ! s.lethalContainer  &&  poll < 0
+                              &&  s.parts.isEmpty ()  &&  ! s.connected  &&  ! s.needInstanceTracking  &&  instances < 0
+                              &&  countLocalObject == endpoints + s.connectionBindings.size ();
+            if (compactConnections) connectionTable = allocateGlobalObject ("connectionTable");
+        }
+
         if      (live.hasAttribute ("constant")) liveStorage = LIVE_CONSTANT;
         else if (live.hasAttribute ("accessor")) liveStorage = LIVE_ACCESSOR;
         else                                     liveStorage = LIVE_STORED;  // $live is "initOnly"
@@ -1578,6 +1600,7 @@ public class InternalBackendData
         System.out.println ("  poll=" + poll);
         System.out.println ("  populationCanBeInactive=" + populationCanBeInactive);
         System.out.println ("  connectionCanBeInactive=" + connectionCanBeInactive);
+        System.out.println ("  compactConnections=" + compactConnections);
     }
 
     public void dumpVariableList (String name, List<Variable> list)
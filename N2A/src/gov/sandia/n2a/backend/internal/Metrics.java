@@ -0,0 +1,202 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.backend.internal;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import gov.sandia.n2a.eqset.EquationSet;
+
+/**
+    Periodic record of simulator activity, so a slow job can be told apart from a stuck one.
+    Appends one JSON object per line to the file "metrics" in the job dir, no more often than
+    once per period of wall-clock time, plus a final record when the simulation ends.
+    Each record is complete by itself, so a reader only needs the last line. Fields:
+    <ul>
+    <li>wall -- Seconds since run() started.
+    <li>t -- Simulated time.
+    <li>steps, stepRate -- Number of EventStep cycles so far, and cycles per second since the previous record.
+    <li>events, eventRate -- Same, broken down by event class.
+    <li>live -- Instances of each part currently in the simulation, summed over all containing populations.
+    <li>queueEvent, queueConnect -- Current size of each queue.
+    <li>heap -- Bytes in use on the JVM heap. This is the whole JVM, which other jobs may share.
+    <li>phases -- Seconds spent in each setup phase (from PhaseTimer), then in "connect" (updatePopulations)
+        and "events" (the remainder of run).
+    </ul>
+    The C runtime writes the same format, except that it reports "rss" rather than "heap",
+    and omits "live". Backend.getMetrics() reads the latest record.
+**/
+public class Metrics
+{
+    public    Path                   path;
+    public    long                   period;       // nanoseconds between records
+    public    long                   connectTime;  // nanoseconds spent in updatePopulations(), accumulated by Simulator
+    public    Map<String,Double>     setup = new LinkedHashMap<String,Double> ();  // seconds spent in each phase before run()
+
+    protected PrintStream            out;
+    protected long                   start;
+    protected long                   last;         // Time of previous record.
+    protected int                    countdown;
+    protected long                   steps;
+    protected long                   stepsLast;
+    protected Map<Class<?>,long[]>   events = new IdentityHashMap<Class<?>,long[]> ();  // [0] is current count, [1] is count at previous record
+    protected List<EquationSet>      parts  = new ArrayList<EquationSet> ();
+
+    public static final int CHECK = 64;  // Events between checks of the wall clock. Keeps the cost of nanoTime() out of the inner loop.
+
+    /**
+        @param period Seconds of wall-clock time between records.
+    **/
+    public Metrics (Path path, double period)
+    {
+        this.path   = path;
+        this.period = (long) (period * 1e9);
+    }
+
+    public void setup (PhaseTimer timer)
+    {
+        if (timer == null) return;
+        for (PhaseTimer.Phase p : timer.phases.values ()) setup.put (p.name, p.time / 1e9);
+    }
+
+    /**
+        Called immediately before Simulator.run() begins its loop. Writes the first record.
+    **/
+    public void begin (Simulator simulator)
+    {
+        try
+        {
+            out = new PrintStream (new FileOutputStream (path.toFile (), true), false, "UTF-8");
+        }
+        catch (IOException e)
+        {
+            return;  // Leaves out null, which silently disables all further output.
+        }
+        parts.clear ();
+        EquationSet model = ((Population) simulator.wrapper.valuesObject[0]).equations;
+        parts.add (model);
+        collect (model);
+        start       = System.nanoTime ();
+        last        = start;
+        countdown   = CHECK;
+        connectTime = 0;
+        write (simulator, start);
+    }
+
+    protected void collect (EquationSet s)
+    {
+        for (EquationSet p : s.parts)
+        {
+            parts.add (p);
+            collect (p);
+        }
+    }
+
+    /**
+        Called after each event is processed.
+    **/
+    public void count (Simulator simulator)
+    {
+        Event e = simulator.currentEvent;
+        if (e instanceof EventStep) steps++;
+        long[] c = events.get (e.getClass ());
+        if (c == null)
+        {
+            c = new long[2];
+            events.put (e.getClass (), c);
+        }
+        c[0]++;
+
+        if (--countdown > 0) return;
+        countdown = CHECK;
+        long now = System.nanoTime ();
+        if (now - last >= period) write (simulator, now);
+    }
+
+    public void finish (Simulator simulator)
+    {
+        if (out == null) return;
+        write (simulator, System.nanoTime ());
+        out.close ();
+        out = null;
+    }
+
+    public void write (Simulator simulator, long now)
+    {
+        if (out == null) return;
+        double wall     = (now - start) / 1e9;
+        double interval = (now - last)  / 1e9;
+        double t        = simulator.currentEvent == null ? 0 : simulator.currentEvent.t;
+
+        StringBuilder result = new StringBuilder ();
+        result.append ("{\"wall\":" + wall);
+        result.append (",\"t\":" + t);
+        result.append (",\"steps\":" + steps);
+        result.append (",\"stepRate\":" + rate (steps - stepsLast, interval));
+
+        StringBuilder rates = new StringBuilder ();
+        result.append (",\"events\":{");
+        boolean first = true;
+        for (Entry<Class<?>,long[]> e : events.entrySet ())
+        {
+            String name = e.getKey ().getSimpleName ();
+            long[] c    = e.getValue ();
+            if (! first)
+            {
+                result.append (",");
+                rates .append (",");
+            }
+            first = false;
+            result.append ("\"" + name + "\":" + c[0]);
+            rates .append ("\"" + name + "\":" + rate (c[0] - c[1], interval));
+            c[1] = c[0];
+        }
+        result.append ("},\"eventRate\":{" + rates + "}");
+
+        result.append (",\"live\":{");
+        first = true;
+        for (EquationSet s : parts)
+        {
+            InternalBackendData bed = (InternalBackendData) s.backendData;
+            if (! first) result.append (",");
+            first = false;
+            String name = s.container == null ? s.name : s.prefix ();
+            result.append ("\"" + name + "\":" + bed.liveCount);
+        }
+        result.append ("}");
+
+        result.append (",\"queueEvent\":"   + simulator.queueEvent.size ());
+        result.append (",\"queueConnect\":" + simulator.queueConnect.size ());
+        Runtime r = Runtime.getRuntime ();
+        result.append (",\"heap\":" + (r.totalMemory () - r.freeMemory ()));
+
+        result.append (",\"phases\":{");
+        for (Entry<String,Double> e : setup.entrySet ()) result.append ("\"" + e.getKey () + "\":" + e.getValue () + ",");
+        result.append ("\"connect\":" + connectTime / 1e9);
+        result.append (",\"events\":" + Math.max (0, now - start - connectTime) / 1e9);
+        result.append ("}}");
+
+        out.println (result);
+        out.flush ();
+        stepsLast = steps;
+        last      = now;
+    }
+
+    public static double rate (long count, double interval)
+    {
+        if (interval <= 0) return 0;
+        return Math.round (count / interval * 10) / 10.0;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.backend.internal;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.eqset.EquationSet;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+    Wall time and allocation for each stage of preparing a model.
+    A backend calls begin() when it starts work on a job, then mark() as each stage finishes.
+    A mark charges everything since the previous mark to the named phase. A phase marked more
+    than once accumulates. When no timer is active on the current thread, mark() does nothing,
+    so the calls are harmless in code shared by several backends.
+
+    Each phase is also emitted as a JFR event named "gov.sandia.n2a.Phase". This costs next to
+    nothing unless a flight recording is running with that event enabled.
+    Allocation is counted for the current thread only, so it misses work handed to other threads,
+    such as parallel construction of connections.
+**/
+public class PhaseTimer
+{
+    public    String            job;     // Key of job, for labeling JFR events.
+    public    Map<String,Phase> phases = new LinkedHashMap<String,Phase> ();  // in order of first mark
+    protected long              lastTime;
+    protected long              lastAllocated;
+    protected PhaseEvent        event;
+
+    protected static ThreadLocal<PhaseTimer>         current = new ThreadLocal<PhaseTimer> ();
+    protected static com.sun.management.ThreadMXBean threadBean;  // null if per-thread allocation is not available on this JVM
+    static
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean ();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (! threadBean.isThreadAllocatedMemorySupported ()) threadBean = null;
+            else if (! threadBean.isThreadAllocatedMemoryEnabled ()) threadBean.setThreadAllocatedMemoryEnabled (true);
+        }
+    }
+
+    public static class Phase
+    {
+        public String name;
+        public long   time;       // nanoseconds
+        public long   allocated;  // bytes
+        public int    count;      // number of marks
+    }
+
+    @Name ("gov.sandia.n2a.Phase")
+    @Label ("N2A Phase")
+    @Category ("N2A")
+    @Description ("One stage of digesting, generating or building a model.")
+    public static class PhaseEvent extends Event
+    {
+        @Label ("Job")
+        public String job;
+
+        @Label ("Phase")
+        public String phase;
+
+        @Label ("Allocated")
+        @DataAmount
+        public long allocated;
+    }
+
+    /**
+        Starts a new timer for the current thread. Any previous timer on this thread is simply dropped.
+    **/
+    public static PhaseTimer begin (String job)
+    {
+        PhaseTimer result = new PhaseTimer (job);
+        current.set (result);
+        return result;
+    }
+
+    /**
+        Detaches the timer from the current thread.
+        @return The timer that was active, or null if none.
+    **/
+    public static PhaseTimer end ()
+    {
+        PhaseTimer result = current.get ();
+        current.remove ();
+        return result;
+    }
+
+    public static PhaseTimer get ()
+    {
+        return current.get ();
+    }
+
+    public static void mark (String name)
+    {
+        PhaseTimer t = current.get ();
+        if (t != null) t.record (name);
+    }
+
+    /**
+        Calls each of the named no-argument methods on target in order, and marks a phase of the same name after each one.
+        This lets a long sequence of stages be written as a list, rather than with a mark after every line.
+        @param target Object whose public methods are called. If this is a Class, its public static methods are called instead.
+    **/
+    public static void run (Object target, String... methods) throws Exception
+    {
+        invoke (target, null, methods);
+    }
+
+    /**
+        Same as run(Object,String...), except that each method takes the given EquationSet as its only parameter.
+        Suits the analysis steps that backends implement outside EquationSet.
+    **/
+    public static void run (Object target, EquationSet argument, String... methods) throws Exception
+    {
+        invoke (target, argument, methods);
+    }
+
+    protected static void invoke (Object target, EquationSet argument, String... methods) throws Exception
+    {
+        Class<?> c        = target instanceof Class ? (Class<?>) target : target.getClass ();
+        Object   instance = target instanceof Class ? null              : target;
+        for (String name : methods)
+        {
+            try
+            {
+                if (argument == null) c.getMethod (name)                    .invoke (instance);
+                else                  c.getMethod (name, EquationSet.class).invoke (instance, argument);
+            }
+            catch (InvocationTargetException e)
+            {
+                Throwable cause = e.getCause ();
+                if (cause instanceof Exception) throw (Exception) cause;
+                if (cause instanceof Error)     throw (Error)     cause;
+                throw e;
+            }
+            mark (name);
+        }
+    }
+
+    /**
+        Excludes work since the last mark from all phases.
+    **/
+    public static void skip ()
+    {
+        PhaseTimer t = current.get ();
+        if (t != null) t.restart ();
+    }
+
+    public PhaseTimer (String job)
+    {
+        this.job = job;
+        restart ();
+    }
+
+    /**
+        Resets the reference point without charging anything to a phase.
+    **/
+    public void restart ()
+    {
+        lastTime      = System.nanoTime ();
+        lastAllocated = allocated ();
+        event = new PhaseEvent ();
+        event.begin ();
+    }
+
+    public void record (String name)
+    {
+        long now   = System.nanoTime ();
+        long bytes = allocated ();
+
+        Phase p = phases.get (name);
+        if (p == null)
+        {
+            p = new Phase ();
+            p.name = name;
+            phases.put (name, p);
+        }
+        p.time      += now   - lastTime;
+        p.allocated += bytes - lastAllocated;
+        p.count++;
+
+        event.end ();
+        if (event.shouldCommit ())
+        {
+            event.job       = job;
+            event.phase     = name;
+            event.allocated = bytes - lastAllocated;
+            event.commit ();
+        }
+
+        lastTime      = now;
+        lastAllocated = bytes;
+        event = new PhaseEvent ();
+        event.begin ();
+    }
+
+    public static long allocated ()
+    {
+        if (threadBean == null) return 0;
+        return threadBean.getCurrentThreadAllocatedBytes ();
+    }
+
+    public long totalTime ()
+    {
+        long result = 0;
+        for (Phase p : phases.values ()) result += p.time;
+        return result;
+    }
+
+    /**
+        Records all phases under the "phases" key of the given node, typically the job record.
+        Time is in seconds, allocation in bytes.
+    **/
+    public void save (MNode job)
+    {
+        for (Phase p : phases.values ())
+        {
+            job.set (p.time / 1e9, "phases", p.name, "time");
+            job.set (p.allocated,  "phases", p.name, "allocated");
+        }
+        job.set (totalTime () / 1e9, "phases", "total");
+    }
+
+    /**
+        Prints a table of phases, in the order they first occurred.
+    **/
+    public void dump (PrintStream ps)
+    {
+        int width = 5;
+        for (String name : phases.keySet ()) width = Math.max (width, name.length ());
+        String format = "%-" + width + "s %10.3f s %10.1f MB%n";
+        for (Phase p : phases.values ()) ps.printf (format, p.name, p.time / 1e9, p.allocated / 1048576.0);
+        ps.printf ("%-" + width + "s %10.3f s%n", "total", totalTime () / 1e9);
+    }
+}
@@ -6,10 +6,18 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.backend.internal;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import gov.sandia.n2a.eqset.EquationSet;
 import gov.sandia.n2a.eqset.EquationSet.ConnectionBinding;
@@ -21,6 +29,7 @@ import gov.sandia.n2a.language.type.Instance;
 import gov.sandia.n2a.language.type.Matrix.IteratorNonzero;
 import gov.sandia.n2a.linear.MatrixDense;
 import gov.sandia.n2a.language.type.Scalar;
+import gov.sandia.n2a.plugins.extpoints.Backend;
 
 /**
     An Instance which contains the global variables for a given kind of part,
@@ -30,6 +39,19 @@ public class Population extends Instance
 {
     public int n;  // current number of live members
 
+    public static int parallelGrain      = 1000;    // Minimum number of candidate combinations in each partition made by connectPartitions().
+    public static int parallelPartitions = 256;     // Fixed rather than based on thread count, so that results don't depend on the machine.
+
+    protected static ThreadPoolExecutor connectPool;  // Shared by all simulations in this JVM. Idle threads exit on their own, so there is nothing to shut down.
+
+    /**
+        Empty constructor, for use by Checkpoint. Storage and container are filled in by the caller.
+    **/
+    protected Population (EquationSet equations)
+    {
+        this.equations = equations;
+    }
+
     protected Population (EquationSet equations, Part container)
     {
         this.equations = equations;
@@ -50,6 +72,7 @@ public class Population extends Instance
         }
 
         if (bed.poll >= 0) valuesObject[bed.pollSorted] = new HashSet<Part> ();
+        if (bed.compactConnections) valuesObject[bed.connectionTable] = new ConnectionTable (equations.connectionBindings.size (), bed.countLocalFloat);
     }
 
     public double getDt ()
@@ -149,6 +172,21 @@ public class Population extends Instance
         {
             temp.setFinal (v, temp.getFinal (v));
         }
+
+        // Folded connections
+        // Their finish() would do nothing, given the conditions in InternalBackendData.compactConnections, so update() is all they need.
+        if (temp.bed.compactConnections  &&  ! temp.bed.localUpdate.isEmpty ())
+        {
+            ConnectionTable table = (ConnectionTable) valuesObject[temp.bed.connectionTable];
+            Part c = new Part (equations, (Part) container);
+            c.event = ((Part) container).event;
+            for (int row = 0; row < table.size; row++)
+            {
+                table.load (row, c, temp.bed.endpoints);
+                c.update (simulator);
+                table.store (row, c);
+            }
+        }
     }
 
     public boolean finish (Simulator simulator)
@@ -260,6 +298,8 @@ public class Population extends Instance
         public int count;  // Size of current subset of instances we are iterating through.
         public int i;
         public int stop;
+        public int partitionStart;  // When partitionEnd > 0, restricts iteration to a fixed range of instances. Only used by connectParallel().
+        public int partitionEnd;
 
         public int                 k;
         public double              radius;
@@ -463,6 +503,13 @@ public class Population extends Instance
                 }
                 i = 0;
             }
+            else if (partitionEnd > 0)  // No random start, because connectParallel() excludes $max, so there is no need to be fair.
+            {
+                count = size;  // connectParallel() guarantees that all instances are new, so newOnly makes no difference.
+                i     = partitionStart;
+                stop  = partitionEnd;
+                return;
+            }
             else
             {
                 if (newOnly) count = Math.max (0, size - firstborn);
@@ -725,8 +772,23 @@ public class Population extends Instance
         return iterators.get (0);
     }
 
-    @SuppressWarnings("unchecked")
     public void connect (Simulator simulator)
+    {
+        List<ConnectPartition> partitions = connectBegin (simulator);
+        if (partitions == null) return;
+        connectParallel (simulator, partitions);
+        connectFinish (simulator, partitions);
+    }
+
+    /**
+        Starts making connections. If this population qualifies for parallel construction, the candidates
+        are split into partitions but not evaluated yet, so the caller can pool them with the partitions of
+        other populations. See Simulator.updatePopulations(). Otherwise, all connections are made right away.
+        @return The partitions to be passed to connectParallel() and then connectFinish(), or null if
+        there is nothing more to do.
+    **/
+    @SuppressWarnings("unchecked")
+    public List<ConnectPartition> connectBegin (Simulator simulator)
     {
         boolean poll = false;  // If true, check all latent connections. If false, only check for new connections.
         InternalBackendData bed = (InternalBackendData) equations.backendData;
@@ -756,7 +818,19 @@ public class Population extends Instance
         if (outer == null)
         {
             checkInactive ();
-            return;
+            return null;
+        }
+
+        if (! poll  &&  outer instanceof ConnectPopulation  &&  connectSkip (simulator, (ConnectPopulation) outer))
+        {
+            checkInactive ();
+            return null;
+        }
+
+        if (! poll  &&  outer instanceof ConnectPopulation)
+        {
+            List<ConnectPartition> partitions = connectPartitions (simulator, (ConnectPopulation) outer);
+            if (partitions != null) return partitions;
         }
 
         HashSet<Part> pollSorted;
@@ -779,13 +853,335 @@ public class Population extends Instance
             // In that case, testing for duplicates first would make sense.
             if (poll  &&  pollSorted.contains (c)) continue;
 
-            ((Part) container).event.enqueue (c);
-            c.init (simulator);
+            accept (simulator, c);
             c = new Part (equations, (Part) container);
             outer.setProbe (c);
         }
 
         checkInactive ();
+        return null;
+    }
+
+    /**
+        Brings a connection that passed its $p test into the simulation.
+        If this population is compact, the instance leaves the queue right after init() and only its row in the ConnectionTable remains.
+        From then on, update() runs the row each cycle.
+    **/
+    public void accept (Simulator simulator, Part c)
+    {
+        ((Part) container).event.enqueue (c);
+        c.init (simulator);
+        if (simulator.connectionListener != null  &&  ! simulator.connectionListener.connected (c))
+        {
+            c.dequeue ();
+            release (c);
+            return;
+        }
+
+        InternalBackendData bed = (InternalBackendData) equations.backendData;
+        if (bed.compactConnections)
+        {
+            c.dequeue ();
+            ((ConnectionTable) valuesObject[bed.connectionTable]).add (c, bed.endpoints);
+        }
+    }
+
+    /**
+        Samples accepted candidates directly, by drawing the gap to the next accepted candidate from a geometric distribution.
+        Applies when $p is the same for every candidate, or depends on only one endpoint (see EquationSet.findConnectionSkip()).
+        In the latter case, that endpoint selects a row, and $p is evaluated once per row rather than once per candidate.
+        The cost is proportional to the number of connections made rather than the number of candidates.
+        @return false If this connection does not qualify, in which case the caller should fall back on the general method.
+    **/
+    public boolean connectSkip (Simulator simulator, ConnectPopulation outer)
+    {
+        int endpoint = equations.connectionSkip;
+        if (endpoint < -1) return false;
+        int count = equations.connectionBindings.size ();
+        ConnectPopulation[] iterators = new ConnectPopulation[count];
+        for (ConnectPopulation it = outer; it != null; it = it.permute)
+        {
+            if (it.max > 0  ||  it.k > 0  ||  it.radius > 0  ||  it.firstborn != 0) return false;
+            iterators[it.index] = it;
+        }
+
+        // The probe holds stand-in endpoints while $p is evaluated. It never enters the simulation.
+        // Since $p does not depend on these endpoints, any live instance will do.
+        Part probe = new Part (equations, (Part) container);
+        long run = 1;  // Number of candidates that share one value of $p. Spans every endpoint except the row.
+        for (int i = 0; i < count; i++)
+        {
+            if (i == endpoint) continue;
+            ConnectPopulation it = iterators[i];
+            run *= it.size;
+            Part p = null;
+            for (Part q : it.instances)
+            {
+                if (q == null) continue;
+                p = q;
+                break;
+            }
+            if (p == null) return true;  // An endpoint with no live instances admits no connections.
+            probe.setPart (i, p);
+        }
+
+        int rows = endpoint < 0 ? 1 : iterators[endpoint].size;
+        for (int r = 0; r < rows; r++)
+        {
+            Part row = null;
+            if (endpoint >= 0)
+            {
+                row = iterators[endpoint].instances.get (r);
+                if (row == null) continue;
+                probe.setPart (endpoint, row);
+            }
+            probe.resolve ();
+            double create = probe.getP (simulator);
+            if (create <= 0) continue;
+            double logq = create < 1 ? Math.log1p (-create) : 0;
+
+            long j = -1;  // Position within the run, in mixed radix over the non-row endpoints.
+            while (true)
+            {
+                if (create >= 1)
+                {
+                    j++;
+                }
+                else
+                {
+                    double gap = Math.log (1 - simulator.random.nextDouble ()) / logq;  // Number of rejected candidates before the next accepted one.
+                    if (gap >= run) break;
+                    j += 1 + (long) gap;
+                }
+                if (j >= run) break;
+
+                Part c = new Part (equations, (Part) container);
+                long q = j;
+                boolean live = true;
+                for (int i = count - 1; i >= 0; i--)
+                {
+                    if (i == endpoint) continue;
+                    ConnectPopulation it = iterators[i];
+                    Part p = it.instances.get ((int) (q % it.size));
+                    q /= it.size;
+                    if (p == null)
+                    {
+                        live = false;
+                        break;
+                    }
+                    c.setPart (i, p);
+                }
+                if (! live) continue;  // Dead instances are not candidates, so dropping this draw does not bias the others.
+                if (endpoint >= 0) c.setPart (endpoint, row);
+                c.resolve ();
+                accept (simulator, c);
+            }
+        }
+        return true;
+    }
+
+    /**
+        A contiguous range of instances in the outermost iterator, along with its own RNG stream.
+        Evaluated on a worker thread, then the accepted candidates are created on the main thread.
+    **/
+    public class ConnectPartition
+    {
+        public ConnectPopulation outer;
+        public long              seed;
+        public List<Part>        accepted = new ArrayList<Part> ();
+
+        public void run (Simulator simulator)
+        {
+            simulator.random = new SplitRandom (seed);
+            for (ConnectPopulation it = outer; it != null; it = it.permute) it.simulator = simulator;
+
+            Part c = new Part (equations, (Part) container);
+            outer.setProbe (c);
+            while (outer.next ())
+            {
+                c.resolve ();
+                double create = c.getP (simulator);
+                if (create <= 0  ||  create < 1  &&  create < simulator.random.nextDouble ()) continue;
+                accepted.add (c);
+                c = new Part (equations, (Part) container);
+                outer.setProbe (c);
+            }
+        }
+    }
+
+    /**
+        Takes partitions from a shared list until none are left. Each worker has its own helper simulator,
+        which it installs as the current one for the thread while it runs.
+    **/
+    public static class ConnectWorker implements Runnable
+    {
+        public Simulator              simulator;
+        public PrintStream            err;
+        public List<ConnectPartition> partitions;
+        public AtomicInteger          next;
+        public Throwable              exception;  // Anything that ended this worker early, including Errors such as OutOfMemoryError.
+
+        public void run ()
+        {
+            Simulator   previousSimulator = Simulator.instance.get ();
+            PrintStream previousErr       = Backend.err.get ();
+            Simulator.instance.set (simulator);
+            Backend.err.set (err);
+            int count = partitions.size ();
+            try
+            {
+                for (int k = next.getAndIncrement (); k < count; k = next.getAndIncrement ())
+                {
+                    partitions.get (k).run (simulator);
+                }
+            }
+            catch (Throwable e)
+            {
+                exception = e;
+                next.set (count);  // Stop other workers as soon as possible.
+            }
+            finally
+            {
+                simulator.closeStreams ();
+                Simulator.instance.set (previousSimulator);
+                Backend.err.set (previousErr);
+            }
+        }
+    }
+
+    /**
+        Splits candidate connections into fixed ranges of the outermost iterator, for evaluation by connectParallel().
+        This only handles the case that dominates network construction: every endpoint is new, and $p can't see the
+        side-effects of connections made earlier in the same pass (see EquationSet.findConnectionParallel()). Then the
+        candidates are independent of each other, and evaluating them all before creating any gives the same network
+        as testing them one at a time. Each range gets its own RNG stream, keyed by its index under a single draw from
+        the main stream. The number of ranges depends only on the number of candidates, and this path is taken regardless
+        of how many threads are available, so the resulting network depends only on the model and seed.
+        @return null if this connection population does not qualify, in which case the caller
+        should continue with the serial method.
+    **/
+    public List<ConnectPartition> connectPartitions (Simulator simulator, ConnectPopulation outer)
+    {
+        if (! equations.connectionParallel) return null;
+        long combinations = 1;
+        for (ConnectPopulation it = outer; it != null; it = it.permute)
+        {
+            if (it.max > 0  ||  it.k > 0  ||  it.radius > 0  ||  it.firstborn != 0) return null;
+            combinations *= it.size;
+        }
+
+        // Build all partitions up front. getIterators() touches simulator queues, so it must run on this thread.
+        // Partition streams are keyed by partition index, so they cost only one draw from the main stream.
+        int count = (int) Math.max (1, Math.min (Math.min (parallelPartitions, outer.size), combinations / parallelGrain));
+        long base = simulator.random.nextLong ();
+        List<ConnectPartition> partitions = new ArrayList<ConnectPartition> (count);
+        for (int k = 0; k < count; k++)
+        {
+            ConnectPartition partition = new ConnectPartition ();
+            partition.seed  = SplitRandom.at (base, k + 1);
+            partition.outer = (ConnectPopulation) getIterators (simulator, false);
+            partition.outer.partitionStart = (int) ((long) outer.size *  k      / count);
+            partition.outer.partitionEnd   = (int) ((long) outer.size * (k + 1) / count);
+            partitions.add (partition);
+        }
+        return partitions;
+    }
+
+    protected static synchronized ThreadPoolExecutor getConnectPool ()
+    {
+        if (connectPool == null)
+        {
+            int n = Runtime.getRuntime ().availableProcessors ();
+            connectPool = new ThreadPoolExecutor (n, n, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable> (), new ThreadFactory ()
+            {
+                public Thread newThread (Runnable r)
+                {
+                    Thread t = new Thread (r, "N2A connect");
+                    t.setDaemon (true);
+                    return t;
+                }
+            });
+            connectPool.allowCoreThreadTimeOut (true);
+        }
+        return connectPool;
+    }
+
+    /**
+        Evaluates the given partitions, using up to simulator.threads threads. The calling thread does its share of the work,
+        and the others come from a pool that lives as long as the JVM. The partitions may come from several populations.
+        Accepted candidates are held in each partition until the caller passes it to connectFinish().
+    **/
+    public static void connectParallel (Simulator simulator, List<ConnectPartition> partitions)
+    {
+        int count       = partitions.size ();
+        int threadCount = Math.max (1, Math.min (simulator.threads, count));
+        AtomicInteger next = new AtomicInteger ();
+        ConnectWorker[] workers = new ConnectWorker[threadCount];
+        for (int t = 0; t < threadCount; t++)
+        {
+            ConnectWorker w = new ConnectWorker ();
+            w.simulator  = new Simulator (simulator, 0);  // RNG is replaced for each partition.
+            w.err        = Backend.err.get ();
+            w.partitions = partitions;
+            w.next       = next;
+            workers[t] = w;
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>> (threadCount - 1);
+        if (threadCount > 1)
+        {
+            ThreadPoolExecutor pool = getConnectPool ();
+            for (int t = 1; t < threadCount; t++) futures.add (pool.submit (workers[t]));
+        }
+        workers[0].run ();
+
+        boolean interrupted = false;
+        for (Future<?> f : futures)
+        {
+            while (true)  // Partitions must not be read while any worker could still be filling them.
+            {
+                try
+                {
+                    f.get ();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                    next.set (count);  // Stop handing out partitions, then keep waiting for the ones in progress.
+                }
+                catch (ExecutionException e)  // Not expected, since workers catch everything themselves.
+                {
+                    throw new RuntimeException (e.getCause ());
+                }
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread ().interrupt ();
+            throw new RuntimeException ("Interrupted while creating connections");
+        }
+        for (ConnectWorker w : workers)
+        {
+            Throwable e = w.exception;
+            if (e == null) continue;
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            if (e instanceof Error)            throw (Error)            e;
+            throw new RuntimeException (e);
+        }
+    }
+
+    /**
+        Creates the accepted candidates of this population's partitions on the calling thread, in partition order.
+    **/
+    public void connectFinish (Simulator simulator, List<ConnectPartition> partitions)
+    {
+        for (ConnectPartition partition : partitions)
+        {
+            for (Part c : partition.accepted) accept (simulator, c);
+            partition.accepted = null;  // Release memory as we go.
+        }
+        checkInactive ();
     }
 
     public void checkInactive ()
@@ -826,6 +1222,7 @@ public class Population extends Instance
     public void insert (Part p)
     {
         InternalBackendData bed = (InternalBackendData) equations.backendData;
+        bed.liveCount++;
         if (bed.singleton) return;
 
         n++;
@@ -861,10 +1258,38 @@ public class Population extends Instance
         if (bed.poll >= 0) ((HashSet<Part>) valuesObject[bed.pollSorted]).add (p);
     }
 
+    /**
+        Drops an instance that was consumed by Simulator.connectionListener.
+        Unlike remove(), the instance still counts as part of the model. Its $index is not recycled,
+        and $n is not decremented, so every later instance sees the same values it would have
+        if the network were held entirely in memory.
+    **/
+    @SuppressWarnings("unchecked")
+    public void release (Part p)
+    {
+        InternalBackendData bed = (InternalBackendData) equations.backendData;
+        bed.liveCount--;
+        if (bed.singleton) return;
+
+        if (bed.index != null  &&  bed.instances >= 0)
+        {
+            int index = (int) p.valuesFloat[bed.index.readIndex];
+            ArrayList<Part> instances = (ArrayList<Part>) valuesObject[bed.instances];
+            instances.set (index, null);
+            // Streamed instances are released right after they are inserted, so they sit at the end of the list.
+            // Trim the tail rather than leave a hole for each one. insert() pads the list again if needed.
+            int last = instances.size () - 1;
+            while (last >= 0  &&  instances.get (last) == null) instances.remove (last--);
+        }
+
+        if (bed.poll >= 0) ((HashSet<Part>) valuesObject[bed.pollSorted]).remove (p);
+    }
+
     @SuppressWarnings("unchecked")
     public void remove (Part p)
     {
         InternalBackendData bed = (InternalBackendData) equations.backendData;
+        bed.liveCount--;
         if (bed.singleton)  // This should never happen except for top-level part.
         {
             n = 0;
@@ -0,0 +1,117 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.backend.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+    Read-only resources shared by every Simulator in this JVM.
+    Several Internal jobs running side by side (such as the members of a study) often read the same
+    large input files. Rather than each Simulator loading its own copy, a resource is loaded once and
+    handed out to every Simulator that asks for the same file, with a count of current users.
+    When the last user releases it, the entry is dropped and the memory can be reclaimed.
+    Entries are keyed by resource type, canonical path and modification time, so an edited file
+    is loaded fresh while jobs still using the old version keep their copy.
+    Only resources that are never modified after loading belong here. Anything that carries a cursor
+    or accumulates output, such as Input and Output holders, stays private to its Simulator.
+**/
+public class SharedResources
+{
+    protected static Map<String,Entry> cache = new HashMap<String,Entry> ();
+
+    public interface Loader
+    {
+        public Object load (Path path);
+    }
+
+    protected static class Entry
+    {
+        public Object resource;
+        public int    users;
+    }
+
+    /**
+        Retrieves the resource of the given type for the given file, loading it if needed.
+        The caller's Simulator records the reference, and releases it in closeStreams().
+        Loading happens outside the global lock, so jobs opening different files don't wait for each other.
+        Jobs asking for the same file wait for the first one to finish loading it.
+        @param type Distinguishes different interpretations of the same file, for example "matrix" versus "mfile".
+    **/
+    public static Object acquire (Simulator simulator, String type, Path path, Loader loader)
+    {
+        String key = key (type, path);
+        Entry entry;
+        synchronized (cache)
+        {
+            entry = cache.get (key);
+            if (entry == null)
+            {
+                entry = new Entry ();
+                cache.put (key, entry);
+            }
+            entry.users++;
+        }
+
+        synchronized (entry)
+        {
+            if (entry.resource == null)
+            {
+                try
+                {
+                    entry.resource = loader.load (path);
+                }
+                catch (RuntimeException e)
+                {
+                    release (key);
+                    throw e;
+                }
+            }
+        }
+        if (simulator.shared.containsKey (entry.resource)) release (key);  // Already counted for this simulator, probably under a different relative path.
+        else                                              simulator.shared.put (entry.resource, key);
+        return entry.resource;
+    }
+
+    public static void release (String key)
+    {
+        synchronized (cache)
+        {
+            Entry entry = cache.get (key);
+            if (entry == null) return;
+            if (--entry.users <= 0) cache.remove (key);
+        }
+    }
+
+    public static String key (String type, Path path)
+    {
+        try
+        {
+            path = path.toRealPath ();
+            return type + "|" + path + "|" + Files.getLastModifiedTime (path).toMillis ();
+        }
+        catch (IOException e)
+        {
+            // Let the loader report the problem.
+            return type + "|" + path.toAbsolutePath ().normalize ();
+        }
+    }
+
+    /**
+        @return Number of distinct resources currently held. For diagnostics.
+    **/
+    public static int size ()
+    {
+        synchronized (cache)
+        {
+            return cache.size ();
+        }
+    }
+}
@@ -6,13 +6,16 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.backend.internal;
 
+import gov.sandia.n2a.eqset.EquationSet;
 import gov.sandia.n2a.language.type.Instance;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -47,10 +50,15 @@ public class Simulator implements Iterable<Part>
     public Set<Population>             queueClearNew = new TreeSet<Population> ();
     public TreeMap<Double,EventStep>   periods       = new TreeMap<Double,EventStep> ();
     public Random                      random;
+    public ConnectionListener          connectionListener;  // Optional. Receives each new connection instance as soon as it is initialized.
+    public int                         threads       = 1;  // Number of threads that may be used to evaluate candidate connections. See Population.connectParallel()
+    public Metrics                     metrics;     // Optional. Publishes a periodic record of progress to the job dir.
+    public Checkpoint                  checkpoint;  // Optional. Saves the state of the simulation to the job dir, so it can be resumed.
 
     // Global shared data
     public Path               jobDir;
     public Map<String,Object> holders = new HashMap<String,Object> ();
+    public Map<Object,String> shared  = new IdentityHashMap<Object,String> ();  // Subset of holders that came from SharedResources, mapped to their keys.
     public PrintStream        out;
     // Note: System.in will get bound into an Input.Holder if used at all.
 
@@ -72,6 +80,22 @@ public class Simulator implements Iterable<Part>
         }
     }
 
+    /**
+        Allows a code generator to consume connection instances as they are created,
+        rather than having the simulator hold all of them. Connections are generally the
+        bulk of a network, so this lets other backends emit very large models without
+        first constructing the entire network in memory.
+    **/
+    public interface ConnectionListener
+    {
+        /**
+            Called immediately after the given connection instance completes init().
+            @return true if the connection should remain in the simulation. false if the
+            listener has fully consumed it, in which case the simulator drops it.
+        **/
+        public boolean connected (Part c);
+    }
+
     /**
         Special constructor for use only by the Study mechanism.
         This creates unusable object which references the given RNG.
@@ -83,6 +107,28 @@ public class Simulator implements Iterable<Part>
         this.random = random;
     }
 
+    /**
+        Creates a helper for a worker thread. The helper shares all global state with the parent simulator,
+        except for its RNG and its collection of open resources. Resources such as spreadsheet holders
+        carry a cursor, so they can't be shared between threads.
+    **/
+    public Simulator (Simulator parent, long seed)
+    {
+        wrapper       = parent.wrapper;
+        eventFactory  = parent.eventFactory;
+        queueEvent    = parent.queueEvent;
+        queueResize   = parent.queueResize;
+        queueConnect  = parent.queueConnect;
+        queueClearNew = parent.queueClearNew;
+        periods       = parent.periods;
+        jobDir        = parent.jobDir;
+        out           = parent.out;
+        during        = parent.during;
+        sortEvent     = parent.sortEvent;
+        currentEvent  = parent.currentEvent;
+        random        = new SplitRandom (seed);
+    }
+
     public Simulator (Wrapper wrapper, long seed) throws IOException
     {
         this (wrapper, seed, Files.createTempDirectory ("n2a"));
@@ -102,7 +148,7 @@ public class Simulator implements Iterable<Part>
         try {out = new PrintStream (new FileOutputStream (jobDir.resolve ("out").toFile (), true), false, "UTF-8");}
         catch (Exception e) {out = System.out;}  // if that fails, just use the default stdout
 
-        random = new Random (seed);
+        random = new SplitRandom (seed);
 
         eventFactory = factory;
         EventStep e = eventFactory.create (0.0, 1e-4);
@@ -132,10 +178,25 @@ public class Simulator implements Iterable<Part>
     public void run ()
     {
         // This is the core simulation loop.
-        while (! queueEvent.isEmpty ()  &&  ! stop)
+        if (metrics == null  &&  checkpoint == null)
+        {
+            while (! queueEvent.isEmpty ()  &&  ! stop)
+            {
+                currentEvent = queueEvent.remove ();
+                currentEvent.run (this);
+            }
+        }
+        else
         {
-            currentEvent = queueEvent.remove ();
-            currentEvent.run (this);
+            if (metrics != null) metrics.begin (this);
+            while (! queueEvent.isEmpty ()  &&  ! stop)
+            {
+                currentEvent = queueEvent.remove ();
+                currentEvent.run (this);
+                if (metrics    != null) metrics.count (this);
+                if (checkpoint != null) checkpoint.check (this);
+            }
+            if (metrics != null) metrics.finish (this);
         }
         // Simulation is done.
         closeStreams ();
@@ -145,12 +206,15 @@ public class Simulator implements Iterable<Part>
     {
         for (Object h : holders.values ())
         {
+            if (shared.containsKey (h)) continue;
             if (h instanceof AutoCloseable)
             {
                 try {((AutoCloseable) h).close ();}
                 catch (Exception e) {}
             }
         }
+        for (String key : shared.values ()) SharedResources.release (key);
+        shared.clear ();
     }
 
     public void integrate (Instance i)
@@ -160,6 +224,8 @@ public class Simulator implements Iterable<Part>
 
     public void updatePopulations ()
     {
+        long begin = metrics == null ? 0 : System.nanoTime ();
+
         // Resize populations that have requested it
         for (ResizeRequest r : queueResize) r.population.resize (this, r.size);
         queueResize.clear ();
@@ -167,14 +233,65 @@ public class Simulator implements Iterable<Part>
         // Evaluate connection populations that have requested it
         // To support nested connections, this is structured as an actual queue.
         // Note: The creation of nested connections, or even populations within a connection instance, should not touch the resize queue.
+        // Populations that qualify for parallel construction are gathered into a batch, and the candidates of the whole batch
+        // are evaluated together before any of them is created. A population that shares no endpoint with the batch can't see
+        // its connections, so the batch grows until the next population that could. Nested connection populations created
+        // by the batch are queued behind it.
+        List<Population>                        batch      = new ArrayList<Population> ();
+        List<List<Population.ConnectPartition>> partitions = new ArrayList<List<Population.ConnectPartition>> ();
         while (! queueConnect.isEmpty ())
         {
-            queueConnect.remove ().connect (this);
+            Population p = queueConnect.peek ();
+            if (! batch.isEmpty ()  &&  ! independent (p, batch))
+            {
+                connectBatch (batch, partitions);
+                continue;
+            }
+            queueConnect.remove ();
+            List<Population.ConnectPartition> pp = p.connectBegin (this);
+            if (pp == null) continue;
+            batch.add (p);
+            partitions.add (pp);
         }
+        connectBatch (batch, partitions);
 
         // Clear new flag from populations that have requested it
         for (Population p : queueClearNew) p.clearNew ();
         queueClearNew.clear ();
+
+        if (metrics != null) metrics.connectTime += System.nanoTime () - begin;
+    }
+
+    /**
+        Determines if the connections made by p and the connections made by every population in batch
+        can be evaluated without seeing each other. That requires that p can't see side-effects of connections
+        in general, and that no population in batch is an endpoint of p, or vice versa.
+    **/
+    public static boolean independent (Population p, List<Population> batch)
+    {
+        if (! p.equations.connectionParallel) return false;
+        for (Population b : batch)
+        {
+            for (EquationSet.ConnectionBinding c : p.equations.connectionBindings) if (c.endpoint == b.equations) return false;
+            for (EquationSet.ConnectionBinding c : b.equations.connectionBindings) if (c.endpoint == p.equations) return false;
+        }
+        return true;
+    }
+
+    /**
+        Evaluates all the partitions gathered by updatePopulations(), then creates the accepted connections in queue order.
+        Empties both lists.
+    **/
+    public void connectBatch (List<Population> batch, List<List<Population.ConnectPartition>> partitions)
+    {
+        if (batch.isEmpty ()) return;
+        List<Population.ConnectPartition> all = new ArrayList<Population.ConnectPartition> ();
+        for (List<Population.ConnectPartition> pp : partitions) all.addAll (pp);
+        Population.connectParallel (this, all);
+        int count = batch.size ();
+        for (int i = 0; i < count; i++) batch.get (i).connectFinish (this, partitions.get (i));
+        batch.clear ();
+        partitions.clear ();
     }
 
     public void move (Part i, double dt)
@@ -0,0 +1,107 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.backend.internal;
+
+import java.util.Random;
+
+/**
+    Counter-based generator (SplitMix64). Draw n of a stream is a pure function of the stream's
+    seed and n, so there is no shared state to update with CAS as in java.util.Random.
+    This class is not thread-safe. Each thread should hold its own stream. To derive a set of streams,
+    take one draw from the parent as a base, then seed stream k with at(base,k+1), as connectParallel() does.
+    The set of streams then depends only on the parent seed, not on the order in which threads happen to draw.
+    Matches n2a_random() in the C runtime, so both backends produce the same raw sequence
+    for a given seed.
+**/
+@SuppressWarnings("serial")
+public class SplitRandom extends Random
+{
+    public static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    protected long    seed;
+    protected long    counter;
+    protected boolean haveSpare;  // for nextGaussian()
+    protected double  spare;
+
+    public SplitRandom ()
+    {
+        this (System.nanoTime ());
+    }
+
+    public SplitRandom (long seed)
+    {
+        super (seed);  // Calls setSeed().
+    }
+
+    /**
+        @return Draw number "counter" from the stream with the given seed.
+    **/
+    public static long at (long seed, long counter)
+    {
+        long z = seed + counter * GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public void setSeed (long seed)
+    {
+        this.seed = seed;
+        counter   = 0;
+        haveSpare = false;
+    }
+
+    @Override
+    protected int next (int bits)
+    {
+        return (int) (nextLong () >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong ()
+    {
+        return at (seed, ++counter);
+    }
+
+    @Override
+    public double nextDouble ()
+    {
+        return (nextLong () >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public float nextFloat ()
+    {
+        return (nextLong () >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+        Same polar method as java.util.Random, but without the synchronization.
+    **/
+    @Override
+    public double nextGaussian ()
+    {
+        if (haveSpare)
+        {
+            haveSpare = false;
+            return spare;
+        }
+        double v1, v2, s;
+        do
+        {
+            v1 = 2 * nextDouble () - 1;
+            v2 = 2 * nextDouble () - 1;
+            s  = v1 * v1 + v2 * v2;
+        }
+        while (s >= 1  ||  s == 0);
+        double multiplier = Math.sqrt (-2 * Math.log (s) / s);
+        spare     = v2 * multiplier;
+        haveSpare = true;
+        return v1 * multiplier;
+    }
+}
@@ -0,0 +1,415 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.backend.internal;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gov.sandia.n2a.backend.internal.InternalBackend.SimulationThread;
+import gov.sandia.n2a.db.MDoc;
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.db.MVolatile;
+import gov.sandia.n2a.host.Host;
+import gov.sandia.n2a.plugins.extpoints.Backend;
+
+/**
+    Runs local Internal jobs in separate worker JVMs rather than in threads of the main JVM.
+    A sample that exhausts its heap or crashes takes down only its own worker, not the UI or the other samples.
+    Workers are long-lived. Each one runs a single job at a time, then waits for the next, so the JIT-compiled
+    simulator and the operator parse cache stay warm across the many short samples of a study.
+    The pool is enabled by host config backend.internal.processes, which gives the maximum number of workers.
+    The optional backend.internal.heap sets -Xmx for each worker, for example "4g".
+
+    <p>A worker is this same application started with "-worker". The protocol is one line per message,
+    with tab-separated fields. Parent to worker: "run key", "stop key". Worker to parent: "set key value path..."
+    and "clear key path...", which copy changes in the job record back to the parent as they happen,
+    then "done key" when the job ends.
+    Each job is read from its job dir by the worker, so the parent must save the record before sending "run".
+**/
+public class WorkerPool
+{
+    protected static List<Worker>       workers = new ArrayList<Worker> ();
+    protected static Map<String,Worker> jobs    = new ConcurrentHashMap<String,Worker> ();
+
+    /**
+        @return Maximum number of worker processes. 0 means jobs run as threads in this JVM.
+    **/
+    public static int size ()
+    {
+        return Host.get ().config.getOrDefault (0, "backend", "internal", "processes");
+    }
+
+    public static boolean canRunNow ()
+    {
+        synchronized (workers)
+        {
+            for (Worker w : workers) if (w.job == null) return true;
+            return workers.size () < size ();
+        }
+    }
+
+    public static void start (MNode job)
+    {
+        Worker w = null;
+        try
+        {
+            synchronized (workers)
+            {
+                for (Worker v : workers)
+                {
+                    if (v.job != null) continue;
+                    w = v;
+                    break;
+                }
+                if (w == null)  // Also when over the limit, since the host queue has already decided to start this job.
+                {
+                    w = new Worker ();
+                    workers.add (w);
+                    w.start ();
+                }
+                w.job = job;  // Claim it while still holding the lock.
+            }
+            w.submit (job);
+        }
+        catch (Exception e)
+        {
+            if (w != null) w.job = null;
+            Path localJobDir = Host.getJobDir (Host.getLocalResourceDir (), job);
+            try
+            {
+                Files.copy (new ByteArrayInputStream (("Failed to start worker process: " + e.getMessage () + "\n").getBytes ("UTF-8")), localJobDir.resolve ("err"));
+                Files.copy (new ByteArrayInputStream ("failure".getBytes ("UTF-8")), localJobDir.resolve ("finished"));
+            }
+            catch (Exception f) {}
+        }
+    }
+
+    public static boolean isAlive (MNode job)
+    {
+        Worker w = jobs.get (job.key ());
+        return  w != null  &&  w.process.isAlive ();
+    }
+
+    /**
+        @param force Destroy the worker process, rather than asking it to stop the simulation.
+        The pool starts a fresh worker the next time one is needed.
+    **/
+    public static void kill (MNode job, boolean force)
+    {
+        Worker w = jobs.get (job.key ());
+        if (w == null) return;
+        if (force) w.process.destroyForcibly ();
+        else       w.send ("stop\t" + job.key ());
+    }
+
+    /**
+        Parent's handle on one worker process. The thread itself reads replies from the worker.
+    **/
+    public static class Worker extends Thread
+    {
+        public    Process        process;
+        protected PrintStream    requests;
+        protected BufferedReader replies;
+        public    volatile MNode job;  // currently running, or null if idle
+
+        public Worker () throws IOException
+        {
+            super ("Internal Worker");
+            setDaemon (true);
+
+            List<String> command = new ArrayList<String> ();
+            command.add (Paths.get (System.getProperty ("java.home"), "bin", "java").toString ());
+            String heap = Host.get ().config.get ("backend", "internal", "heap");
+            if (! heap.isEmpty ()) command.add ("-Xmx" + heap);
+            command.add ("-cp");
+            command.add (System.getProperty ("java.class.path"));
+            command.add ("gov.sandia.n2a.Main");
+            command.add ("-worker");
+
+            ProcessBuilder builder = new ProcessBuilder (command);
+            builder.redirectError (ProcessBuilder.Redirect.INHERIT);  // Each job writes its own err file, so this only carries problems with the worker itself.
+            process  = builder.start ();
+            requests = new PrintStream (process.getOutputStream (), true, "UTF-8");
+            replies  = new BufferedReader (new InputStreamReader (process.getInputStream (), StandardCharsets.UTF_8));
+        }
+
+        public void submit (MNode job)
+        {
+            jobs.put (job.key (), this);
+            job.set (System.currentTimeMillis (), "started");  // So the monitor sees the job as running right away. The worker sends its own value later.
+            if (job instanceof MDoc) ((MDoc) job).save ();
+            send ("run\t" + job.key ());
+        }
+
+        public synchronized void send (String message)
+        {
+            requests.println (message);
+        }
+
+        public void run ()
+        {
+            try
+            {
+                String line;
+                while ((line = replies.readLine ()) != null)
+                {
+                    String[] pieces = line.split ("\t", -1);
+                    MNode j = job;
+                    if (pieces.length < 2  ||  j == null  ||  ! j.key ().equals (pieces[1])) continue;
+                    String[] keys;
+                    switch (pieces[0])
+                    {
+                        case "set":
+                            if (pieces.length < 4) break;
+                            keys = unescape (pieces, 3);
+                            j.set (unescape (pieces[2]), keys);
+                            break;
+                        case "clear":
+                            if (pieces.length < 3) break;
+                            keys = unescape (pieces, 2);
+                            j.clear (keys);
+                            break;
+                        case "done":
+                            release ();
+                            break;
+                    }
+                }
+            }
+            catch (IOException e) {}
+
+            // The worker process has ended. NodeJob sees that the job is no longer alive, and marks it dead if it never wrote "finished".
+            release ();
+            synchronized (workers) {workers.remove (this);}
+        }
+
+        protected void release ()
+        {
+            MNode j = job;
+            if (j != null) jobs.remove (j.key (), this);
+            job = null;
+        }
+    }
+
+    public static String escape (String value)
+    {
+        return value.replace ("\\", "\\\\").replace ("\t", "\\t").replace ("\n", "\\n");
+    }
+
+    public static String[] unescape (String[] pieces, int start)
+    {
+        String[] result = Arrays.copyOfRange (pieces, start, pieces.length);
+        for (int i = 0; i < result.length; i++) result[i] = unescape (result[i]);
+        return result;
+    }
+
+    public static String unescape (String value)
+    {
+        StringBuilder result = new StringBuilder ();
+        int count = value.length ();
+        for (int i = 0; i < count; i++)
+        {
+            char c = value.charAt (i);
+            if (c == '\\'  &&  i + 1 < count)
+            {
+                c = value.charAt (++i);
+                if      (c == 't') c = '\t';
+                else if (c == 'n') c = '\n';
+            }
+            result.append (c);
+        }
+        return result.toString ();
+    }
+
+    /**
+        Job record as seen by a worker process. Rather than being saved to disk, each change is sent to the parent,
+        which owns the record. A change marks the document, and a reporter thread wakes up, compares the record
+        against what the parent has already been sent, and sends the difference. This way the Runs panel
+        sees status and progress fields while the job runs, not just when it ends.
+    **/
+    public static class WorkerDoc extends MDoc
+    {
+        protected String      key;
+        protected PrintStream reply;
+        protected MNode       sent   = new MVolatile ();  // The record as the parent currently has it.
+        protected Object      signal = new Object ();
+        protected boolean     dirty;
+        protected Thread      reporter;
+
+        public WorkerDoc (Path path, String key, PrintStream reply)
+        {
+            super (path, key);
+            this.key   = key;
+            this.reply = reply;
+            sent.merge (this);
+        }
+
+        public void start ()
+        {
+            reporter = new Thread ("Worker Report")
+            {
+                public void run ()
+                {
+                    while (true)
+                    {
+                        synchronized (signal)
+                        {
+                            while (! dirty)
+                            {
+                                try {signal.wait ();}
+                                catch (InterruptedException e) {return;}
+                            }
+                            dirty = false;
+                        }
+                        report ();
+                    }
+                }
+            };
+            reporter.setDaemon (true);
+            reporter.start ();
+        }
+
+        /**
+            Stops the reporter and sends any remaining changes. Called once the simulation thread has ended.
+        **/
+        public void finish ()
+        {
+            reporter.interrupt ();
+            try {reporter.join ();}
+            catch (InterruptedException e) {}
+            report ();
+        }
+
+        /**
+            Not synchronized on this document, unlike the super method. It is called from children
+            while they hold their own locks, and only needs to wake the reporter.
+        **/
+        public void markChanged ()
+        {
+            synchronized (signal)
+            {
+                dirty = true;
+                signal.notifyAll ();
+            }
+        }
+
+        protected synchronized void report ()
+        {
+            clearChanged ();  // Re-arm change notification in children before reading them, so nothing set during the scan is missed.
+            visit (new MNode.Visitor ()
+            {
+                public boolean visit (MNode node)
+                {
+                    if (node == WorkerDoc.this) return true;
+                    String   value = node.get ();
+                    String[] keys  = node.keyPath (WorkerDoc.this);
+                    MNode    prior = sent.child (keys);
+                    if (prior != null  &&  value.equals (prior.get ())) return true;
+                    sent.set (value, keys);
+                    send ("set\t" + key + "\t" + escape (value), keys);
+                    return true;
+                }
+            });
+            List<String[]> cleared = new ArrayList<String[]> ();
+            sent.visit (new MNode.Visitor ()
+            {
+                public boolean visit (MNode node)
+                {
+                    if (node == sent) return true;
+                    String[] keys = node.keyPath (sent);
+                    if (child (keys) != null) return true;
+                    cleared.add (keys);
+                    return false;  // Subtree goes with it.
+                }
+            });
+            for (String[] keys : cleared)
+            {
+                sent.clear (keys);
+                send ("clear\t" + key, keys);
+            }
+        }
+
+        protected void send (String prefix, String[] keys)
+        {
+            StringBuilder message = new StringBuilder (prefix);
+            for (String k : keys) message.append ("\t" + escape (k));
+            synchronized (reply) {reply.println (message);}
+        }
+    }
+
+    /**
+        Main loop of a worker process. Called by Main when started with "-worker". Never returns.
+    **/
+    public static void serve ()
+    {
+        PrintStream reply = System.out;
+        System.setOut (System.err);  // Keep stray console output off the reply channel.
+        InternalBackend backend = (InternalBackend) Backend.getBackend ("internal");
+        Path jobsDir = Host.getLocalResourceDir ().resolve ("jobs");
+
+        try (BufferedReader requests = new BufferedReader (new InputStreamReader (System.in, StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = requests.readLine ()) != null)
+            {
+                String[] pieces = line.split ("\t", -1);
+                if (pieces.length < 2) continue;
+                String key = pieces[1];
+                switch (pieces[0])
+                {
+                    case "run":
+                        // Read the record fresh from disk, since a retried job reuses its key.
+                        // The record is never saved here. Changes go back to the parent, which owns it.
+                        Path jobDir = jobsDir.resolve (key);
+                        WorkerDoc job = new WorkerDoc (jobDir.resolve ("job"), key, reply);
+                        job.start ();
+                        SimulationThread thread = backend.startThread (job);
+                        Thread waiter = new Thread ("Worker Reply")
+                        {
+                            public void run ()
+                            {
+                                try {thread.join ();}
+                                catch (InterruptedException e) {}
+                                job.finish ();
+                                boolean finished = Files.exists (jobDir.resolve ("finished"));
+                                if (! finished)  // Simulation thread died abnormally, most likely out of memory. Don't trust this JVM with another job.
+                                {
+                                    try {Files.copy (new ByteArrayInputStream ("failure".getBytes ("UTF-8")), jobDir.resolve ("finished"));}
+                                    catch (IOException e) {}
+                                }
+                                synchronized (reply)
+                                {
+                                    reply.println ("done\t" + key);
+                                    reply.flush ();
+                                }
+                                if (! finished) System.exit (1);
+                            }
+                        };
+                        waiter.setDaemon (true);
+                        waiter.start ();
+                        break;
+                    case "stop":
+                        backend.kill (new MVolatile ("", key), false);
+                        break;
+                }
+            }
+        }
+        catch (IOException e) {}
+        System.exit (0);  // Parent closed the channel, so it has exited.
+    }
+}
@@ -31,10 +31,9 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -145,15 +144,16 @@ public class ExportJob extends XMLutility
             String name = destination.getFileName ().toString ();
             if (! name.contains (".")) destination = destination.getParent ().resolve (name + "." + suffix);
 
-            DOMSource dom = new DOMSource (doc);
-            TransformerFactory factoryXform = TransformerFactory.newInstance ();
-            factoryXform.setAttribute ("indent-number", 4);
-            javax.xml.transform.Transformer xform = factoryXform.newTransformer ();
-            xform.setOutputProperty (OutputKeys.INDENT, "yes");
+            // The DOM holds only the skeleton of the document. Bulk content such as population
+            // instances and connection lists is generated as it is written out.
             try (BufferedWriter writer = Files.newBufferedWriter (destination))
             {
-                StreamResult stream = new StreamResult (writer);
-                xform.transform (dom, stream);
+                XMLStreamWriter xml = XMLOutputFactory.newInstance ().createXMLStreamWriter (writer);
+                xml.writeStartDocument ("UTF-8", "1.0");
+                write (xml, doc.getDocumentElement (), 0);
+                xml.writeCharacters ("\n");
+                xml.writeEndDocument ();
+                xml.close ();
             }
         }
         catch (Exception e)
@@ -588,30 +588,7 @@ public class ExportJob extends XMLutility
                 // Output 3D structure
                 if (list)
                 {
-                    Variable xyz = part.find (new Variable ("$xyz"));
-                    Variable ijk = part.find (new Variable ("ijk"));
-                    for (int index = 0; index < size; index++)
-                    {
-                        context.index = index;
-
-                        Element instance = doc.createElement ("instance");
-                        population.appendChild (instance);
-                        instance.setAttribute ("id", String.valueOf (index));
-                        if (ijk != null)
-                        {
-                            Matrix ijkVector = (Matrix) ijk.eval (context);
-                            instance.setAttribute ("i", print (ijkVector.get (0)));
-                            instance.setAttribute ("j", print (ijkVector.get (1)));
-                            instance.setAttribute ("k", print (ijkVector.get (2)));
-                        }
-
-                        Element location = doc.createElement ("location");
-                        instance.appendChild (location);
-                        Matrix xyzVector = (Matrix) xyz.eval (context);
-                        location.setAttribute ("x", print (xyzVector.get (0) * 1e6));
-                        location.setAttribute ("y", print (xyzVector.get (1) * 1e6));
-                        location.setAttribute ("z", print (xyzVector.get (2) * 1e6));
-                    }
+                    stream (population, new Instances (part, size));
                 }
                 else if (xyzNode != null)
                 {
@@ -692,6 +669,50 @@ public class ExportJob extends XMLutility
                 }
             }
 
+            /**
+                Writes the instance list of a populationList directly to the output stream,
+                so the document never holds an element per cell.
+            **/
+            public class Instances implements StreamedContent
+            {
+                public Variable xyz;
+                public Variable ijk;
+                public int      size;
+
+                public Instances (EquationSet part, int size)
+                {
+                    xyz = part.find (new Variable ("$xyz"));
+                    ijk = part.find (new Variable ("ijk"));
+                    this.size = size;
+                }
+
+                public boolean write (XMLStreamWriter writer, int depth) throws XMLStreamException
+                {
+                    for (int index = 0; index < size; index++)
+                    {
+                        context.index = index;
+
+                        startElement (writer, "instance", depth, false);
+                        writer.writeAttribute ("id", String.valueOf (index));
+                        if (ijk != null)
+                        {
+                            Matrix ijkVector = (Matrix) ijk.eval (context);
+                            writer.writeAttribute ("i", print (ijkVector.get (0)));
+                            writer.writeAttribute ("j", print (ijkVector.get (1)));
+                            writer.writeAttribute ("k", print (ijkVector.get (2)));
+                        }
+
+                        startElement (writer, "location", depth + 1, true);
+                        Matrix xyzVector = (Matrix) xyz.eval (context);
+                        writer.writeAttribute ("x", print (xyzVector.get (0) * 1e6));
+                        writer.writeAttribute ("y", print (xyzVector.get (1) * 1e6));
+                        writer.writeAttribute ("z", print (xyzVector.get (2) * 1e6));
+                        endElement (writer, depth, true);
+                    }
+                    return size > 0;
+                }
+            }
+
             public Matrix parseVector (String input)
             {
                 input = input.split ("[", 2)[1].split ("]", 2)[0];
@@ -792,90 +813,132 @@ public class ExportJob extends XMLutility
         public void connections (MPart source, Element result, String type, String preComponent, String postComponent)
         {
             result.setAttribute ("id", source.key ());
-            List<Element> projectionElements = new ArrayList<Element> ();
-            connections (source, result, projectionElements, type, preComponent, postComponent);
-            sequencer.append (result, projectionElements);
+            stream (result, new Connections (source, result, type, preComponent, postComponent));
         }
 
-        public void connections (MPart source, Element result, List<Element> projectionElements, String type, String preComponent, String postComponent)
+        /**
+            Emits the connection elements of a projection directly to the output stream.
+            An all-to-all projection is enumerated on the fly, so memory stays flat regardless
+            of the size of the populations.
+        **/
+        public class Connections implements StreamedContent
         {
-            String[] pieces = source.get ("A").split ("\\.");
-            String prePopulationID = pieces[0];
-            AbstractCell preCell = null;
-            Population prePopulation = populations.get (prePopulationID);
-            if (prePopulation != null) preCell = prePopulation.cell;
-            String preSegment = "";
-            if (pieces.length > 1) preSegment = pieces[1];
-
-            pieces = source.get ("B").split ("\\.");
-            String postPopulationID = pieces[0];
-            AbstractCell postCell = null;
-            Population postPopulation = populations.get (postPopulationID);
-            if (postPopulation != null) postCell = postPopulation.cell;
-            String postSegment = "";
-            if (pieces.length > 1) postSegment = pieces[1];
-
-            boolean electrical    = type.contains ("electrical");
-            boolean inputList     = type.equals   ("input");
-            boolean explicitInput = type.equals   ("explicitInput");
-            boolean isConnection  = type.equals   ("connection");
-            if (inputList)
-            {
-                result.setAttribute ("population", postPopulationID);
-            }
-            else if (! explicitInput)
-            {
-                result.setAttribute ("presynapticPopulation",  prePopulationID);
-                result.setAttribute ("postsynapticPopulation", postPopulationID);
-            }
-
-            // Prepare list of conditions
-            MVolatile p = new MVolatile ();
-            MNode originalP = source.child ("$p");
-            if (originalP == null)  // no $p, so all-to-all connection
-            {
-                // Generate every possible combination
-                // Even self-connection is implied by an absent $p
-                int preN = 1;
-                if (preCell != null) preN = preCell.populationSize;
-                int postN = 1;
-                if (postCell != null) postN = postCell.populationSize;
-                for (int i = 0; i < preN; i++)
-                {
-                    String A;
-                    if (preSegment.isEmpty ()) A = "A.$index==" + i;
-                    else                       A = "A.$up.$index==" + i;
-                    // We don't bother with the segment index, because NeuroML doesn't represent that information.
-                    // We create it on import and lose it on export.
-
-                    for (int j = 0; j < postN; j++)
-                    {
-                        String B;
-                        if (postSegment.isEmpty ()) B = "B.$index==" + j;
-                        else                        B = "B.$up.$index==" + j;
+            public MPart        source;
+            public String       type;
+            public String       preComponent;
+            public String       postComponent;
+            public String       prePopulationID;
+            public String       postPopulationID;
+            public Population   prePopulation;
+            public Population   postPopulation;
+            public AbstractCell preCell;
+            public AbstractCell postCell;
+            public String       preSegment  = "";
+            public String       postSegment = "";
+            public boolean      electrical;
+            public boolean      inputList;
+            public boolean      explicitInput;
+            public boolean      isConnection;
+            public int          count;
+
+            public Connections (MPart source, Element result, String type, String preComponent, String postComponent)
+            {
+                this.source        = source;
+                this.type          = type;
+                this.preComponent  = preComponent;
+                this.postComponent = postComponent;
+
+                String[] pieces = source.get ("A").split ("\\.");
+                prePopulationID = pieces[0];
+                prePopulation = populations.get (prePopulationID);
+                if (prePopulation != null) preCell = prePopulation.cell;
+                if (pieces.length > 1) preSegment = pieces[1];
+
+                pieces = source.get ("B").split ("\\.");
+                postPopulationID = pieces[0];
+                postPopulation = populations.get (postPopulationID);
+                if (postPopulation != null) postCell = postPopulation.cell;
+                if (pieces.length > 1) postSegment = pieces[1];
+
+                electrical    = type.contains ("electrical");
+                inputList     = type.equals   ("input");
+                explicitInput = type.equals   ("explicitInput");
+                isConnection  = type.equals   ("connection");
+                if (inputList)
+                {
+                    result.setAttribute ("population", postPopulationID);
+                }
+                else if (! explicitInput)
+                {
+                    result.setAttribute ("presynapticPopulation",  prePopulationID);
+                    result.setAttribute ("postsynapticPopulation", postPopulationID);
+                }
+            }
 
-                        p.set ("1", "@" + A + "&&" + B);
-                    }
+            public boolean write (XMLStreamWriter writer, int depth) throws XMLStreamException
+            {
+                count = 0;
+                if (isConnection)
+                {
+                    // The schema requires all plain connections to precede the weighted ones,
+                    // so make one pass for each type rather than collecting and sorting them.
+                    write (writer, depth, false);
+                    write (writer, depth, true);
+                }
+                else
+                {
+                    write (writer, depth, false);
                 }
+                return count > 0;
             }
-            else
+
+            /**
+                Scans conditions and emits a connection for each one.
+            **/
+            public void write (XMLStreamWriter writer, int depth, boolean WD) throws XMLStreamException
             {
-                p.set (originalP);
-                String condition = p.get ();
+                MNode originalP = source.child ("$p");
+                if (originalP == null)  // no $p, so all-to-all connection
+                {
+                    // Generate every possible combination
+                    // Even self-connection is implied by an absent $p
+                    int preN = 1;
+                    if (preCell != null) preN = preCell.populationSize;
+                    int postN = 1;
+                    if (postCell != null) postN = postCell.populationSize;
+                    for (int i = 0; i < preN; i++)
+                    {
+                        String A;
+                        if (preSegment.isEmpty ()) A = "A.$index==" + i;
+                        else                       A = "A.$up.$index==" + i;
+                        // We don't bother with the segment index, because NeuroML doesn't represent that information.
+                        // We create it on import and lose it on export.
+
+                        for (int j = 0; j < postN; j++)
+                        {
+                            String B;
+                            if (postSegment.isEmpty ()) B = "B.$index==" + j;
+                            else                        B = "B.$up.$index==" + j;
+
+                            write (writer, depth, WD, "@" + A + "&&" + B);
+                        }
+                    }
+                    return;
+                }
+
+                String condition = originalP.get ();
                 if (! condition.isEmpty ()  &&  ! condition.equals ("0"))
                 {
-                    p.set ("");
-                    p.set ("1", "@" + condition);
+                    write (writer, depth, WD, "@" + condition);
+                }
+                for (MNode c : originalP)
+                {
+                    if (c.get ().equals ("1")) write (writer, depth, WD, c.key ());
                 }
             }
 
-            // Scan conditions and emit connection for each one
-            int count = 0;
-            for (MNode c : p)
+            public void write (XMLStreamWriter writer, int depth, boolean WD, String condition) throws XMLStreamException
             {
-                if (! c.get ().equals ("1")) continue;
-                String condition = c.key ();
-
                 String indexA   = "0";
                 String indexAup = "0";
                 String indexB   = "0";
@@ -883,7 +946,7 @@ public class ExportJob extends XMLutility
                 String[] clauses = condition.substring (1).split ("&&");
                 for (String clause : clauses)
                 {
-                    pieces = clause.split ("==");
+                    String[] pieces = clause.split ("==");
                     switch (pieces[0])
                     {
                         case "A.$index"    : indexA   = pieces[1]; break;
@@ -900,8 +963,9 @@ public class ExportJob extends XMLutility
 
                 String typeWD = type;
                 if (isConnection  &&  !(weight == 1  &&  delay == 0)) typeWD += "WD";
-                Element connection = addElement (typeWD, projectionElements);
-                if (! explicitInput) connection.setAttribute ("id", String.valueOf (count++));
+                if (typeWD.endsWith ("WD") != WD) return;  // Belongs to the other pass.
+                startElement (writer, typeWD, depth, true);
+                if (! explicitInput) writer.writeAttribute ("id", String.valueOf (count++));
 
                 String Cell    = "Cell";
                 String Segment = "Segment";
@@ -925,12 +989,12 @@ public class ExportJob extends XMLutility
                         if (preCell != null)
                         {
                             String mappedID = ((Cell) preCell).mapID (preSegment, indexA);
-                            if (! mappedID.equals ("0")) connection.setAttribute ("pre" + Segment, mappedID);
+                            if (! mappedID.equals ("0")) writer.writeAttribute ("pre" + Segment, mappedID);
                         }
                     }
                     if (prePopulation != null  &&  prePopulation.list) index = "../" + prePopulationID + "/" + index +  "/" + preCell.id;
                     else                                               index = "../" + prePopulationID + "[" + index + "]";
-                    connection.setAttribute ("pre" + Cell, index);
+                    writer.writeAttribute ("pre" + Cell, index);
                 }
 
                 String index;
@@ -946,46 +1010,46 @@ public class ExportJob extends XMLutility
                         String mappedID = ((Cell) postCell).mapID (postSegment, indexB);
                         if (! mappedID.equals ("0"))  // Strictly speaking, inputList does not specify a default for segmentId, so we might need to emit it in any case.
                         {
-                            if (inputList) connection.setAttribute ("segmentId",      mappedID);
-                            else           connection.setAttribute ("post" + Segment, mappedID);
+                            if (inputList) writer.writeAttribute ("segmentId",      mappedID);
+                            else           writer.writeAttribute ("post" + Segment, mappedID);
                         }
                     }
                 }
                 if (postPopulation != null  &&  postPopulation.list) index = postPopulationID + "/" + index +  "/" + postCell.id;
                 else                                                 index = postPopulationID + "[" + index + "]";
                 if (! explicitInput) index = "../" + index;
-                if (inputList  ||  explicitInput) connection.setAttribute ("target",      index);
-                else                              connection.setAttribute ("post" + Cell, index);
+                if (inputList  ||  explicitInput) writer.writeAttribute ("target",      index);
+                else                              writer.writeAttribute ("post" + Cell, index);
 
                 if (inputList)
                 {
-                    if (postFraction != 0.5) connection.setAttribute ("fractionAlong", print (postFraction));
+                    if (postFraction != 0.5) writer.writeAttribute ("fractionAlong", print (postFraction));
                 }
                 else if (! explicitInput)
                 {
-                    if (weight       != 1  ) connection.setAttribute ("weight",            print (weight));
-                    if (delay        != 0  ) connection.setAttribute ("delay",             print (delay));
-                    if (preFraction  != 0.5) connection.setAttribute ("preFractionAlong",  print (preFraction));
-                    if (postFraction != 0.5) connection.setAttribute ("postFractionAlong", print (postFraction));
+                    if (weight       != 1  ) writer.writeAttribute ("weight",            print (weight));
+                    if (delay        != 0  ) writer.writeAttribute ("delay",             print (delay));
+                    if (preFraction  != 0.5) writer.writeAttribute ("preFractionAlong",  print (preFraction));
+                    if (postFraction != 0.5) writer.writeAttribute ("postFractionAlong", print (postFraction));
                 }
 
                 if (electrical)
                 {
-                    connection.setAttribute ("synapse", preComponent);
+                    writer.writeAttribute ("synapse", preComponent);
                 }
                 else if (inputList)
                 {
-                    connection.setAttribute ("destination", "synapses");
+                    writer.writeAttribute ("destination", "synapses");
                 }
                 else if (explicitInput)
                 {
-                    connection.setAttribute ("destination", "synapses");
-                    connection.setAttribute ("input", preComponent);  // Not strictly a preComponent. Instead, we are re-purposing the parameter.
+                    writer.writeAttribute ("destination", "synapses");
+                    writer.writeAttribute ("input", preComponent);  // Not strictly a preComponent. Instead, we are re-purposing the parameter.
                 }
                 else
                 {
-                    if (! preComponent .isEmpty ()) connection.setAttribute ("preComponent",  preComponent);
-                    if (! postComponent.isEmpty ()) connection.setAttribute ("postComponent", postComponent);
+                    if (! preComponent .isEmpty ()) writer.writeAttribute ("preComponent",  preComponent);
+                    if (! postComponent.isEmpty ()) writer.writeAttribute ("postComponent", postComponent);
                 }
             }
         }
@@ -27,14 +27,19 @@ import gov.sandia.n2a.language.type.Matrix.IteratorNonzero;
 import gov.sandia.n2a.language.type.Scalar;
 import gov.sandia.n2a.linear.MatrixBoolean;
 import gov.sandia.n2a.linear.MatrixDense;
+import gov.sandia.n2a.plugins.extpoints.Backend;
 import gov.sandia.n2a.ui.eq.tree.NodePart;
 import gov.sandia.n2a.ui.eq.undo.AddDoc;
 import systems.uom.ucum.internal.format.TokenException;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -51,18 +56,19 @@ import java.util.TreeSet;
 
 import javax.measure.Unit;
 import javax.measure.format.MeasurementParseException;
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
 
 import tech.units.indriya.AbstractUnit;
 import tech.units.indriya.function.MultiplyConverter;
@@ -88,6 +94,9 @@ public class ImportJob extends XMLutility
     Map<String,TreeSet<String>> aliases         = new HashMap<String,TreeSet<String>> ();
     Map<String,Unit<?>>         dimensions      = new TreeMap<String,Unit<?>> ();  // Declared dimension names
 
+    public static int bulkThreshold = 10000;    // Number of connections in a single projection beyond which they are streamed to matrix files rather than folded into conditional equations.
+    public static int bulkPairLimit = 1 << 22;  // Number of connections held in memory at once while checking a bulk projection for repeated pairs. 8 bytes each.
+
     public ImportJob (PartMap partMap)
     {
         this.partMap = partMap;
@@ -106,28 +115,27 @@ public class ImportJob extends XMLutility
         alreadyIncluded.add (source);
 
         sources.push (source);
-        try
+        try (InputStream stream = Files.newInputStream (source))
         {
-            // Open and parse XML document
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance ();
-            factory.setCoalescing (true);
-            factory.setIgnoringComments (true);
-            factory.setIgnoringElementContentWhitespace (true);
-            factory.setXIncludeAware (true);  // Doesn't seem to actually include other files, at least on the samples I've tried so far. Must be missing something.
-            DocumentBuilder builder = factory.newDocumentBuilder ();
-            Document doc = builder.parse (source.toFile ());
+            // Open XML document as a stream. Bulk sections of a network are processed directly
+            // from the stream, while everything else is collected into small DOM subtrees.
+            XMLStreamReader reader = openStream (stream);
+            Document doc = DocumentBuilderFactory.newInstance ().newDocumentBuilder ().newDocument ();
 
             // Extract models
-            Node node = doc.getDocumentElement ();
-            switch (node.getNodeName ())
+            if (nextElement (reader))
             {
-                case "morphml":
-                case "channelml":
-                case "networkml":
-                case "neuroml":
-                case "Lems":
-                    neuroml (node);
+                switch (getName (reader))
+                {
+                    case "morphml":
+                    case "channelml":
+                    case "networkml":
+                    case "neuroml":
+                    case "Lems":
+                        neuroml (reader, doc);
+                }
             }
+            reader.close ();
         }
         catch (IOException e)
         {
@@ -135,13 +143,43 @@ public class ImportJob extends XMLutility
         catch (ParserConfigurationException e)
         {
         }
-        catch (SAXException e)
+        catch (XMLStreamException e)
         {
         }
         sources.pop ();
     }
 
     public void neuroml (Node node)
+    {
+        MNode model = neuromlStart (node);
+        for (Node child = node.getFirstChild (); child != null; child = child.getNextSibling ())
+        {
+            if (child.getNodeType () == Node.ELEMENT_NODE) topLevel (child, model);
+        }
+    }
+
+    /**
+        Streaming version of neuroml(Node). Each top-level element is read into its own DOM subtree,
+        except for networks, which are streamed so that large connection lists never reside in memory.
+    **/
+    public void neuroml (XMLStreamReader reader, Document doc) throws XMLStreamException
+    {
+        MNode model = neuromlStart (shallowElement (reader, doc));
+        while (nextElement (reader))
+        {
+            if (getName (reader).equals ("network"))
+            {
+                Network network = new Network (reader, doc);
+                networks.put (network.id, network);
+            }
+            else
+            {
+                topLevel (readElement (reader, doc), model);
+            }
+        }
+    }
+
+    public MNode neuromlStart (Node node)
     {
         Path source = sources.getLast ();
         if (modelName.isEmpty ())
@@ -162,106 +200,107 @@ public class ImportJob extends XMLutility
 
         String description = getAttribute (node, "description");
         if (! description.isEmpty ()) model.set (description, "$meta", "description");
+        return model;
+    }
 
-        for (Node child = node.getFirstChild (); child != null; child = child.getNextSibling ())
+    public void topLevel (Node child, MNode model)
+    {
+        Path source = sources.getLast ();
+        switch (child.getNodeName ())
         {
-            if (child.getNodeType () != Node.ELEMENT_NODE) continue;
-            switch (child.getNodeName ())
-            {
-                case "include":  // NeuroML include
-                    // TODO: what if href actually references a web document?
-                    Path nextSource = source.getParent ().resolve (getAttribute (child, "href"));
-                    process (nextSource);
-                    break;
-                case "Include":  // LEMS include
-                    nextSource = source.getParent ().resolve (getAttribute (child, "file"));
-                    process (nextSource);
-                    break;
+            case "include":  // NeuroML include
+                // TODO: what if href actually references a web document?
+                Path nextSource = source.getParent ().resolve (getAttribute (child, "href"));
+                process (nextSource);
+                break;
+            case "Include":  // LEMS include
+                nextSource = source.getParent ().resolve (getAttribute (child, "file"));
+                process (nextSource);
+                break;
 
-                // NeuroML ---------------------------------------------------
-                case "intracellularProperties":
-                case "extracellularProperties":
-                    properties.put (getAttribute (child, "id"), child);
-                    break;
-                case "morphology":
-                    morphologies.put (getAttribute (child, "id"), child);
-                    break;
-                case "ionChannel":
-                case "ionChannelHH":
-                case "ionChannelKS":
-                case "ionChannelVShift":
-                    ionChannel (child);
-                    break;
-                case "decayingPoolConcentrationModel":
-                case "fixedFactorConcentrationModel":
-                case "fixedFactorConcentrationModelTraub":  // This tag appears in Cells.xml, but not in NeuroML_v2beta4.xsd
-                    concentrationModel (child);
-                    break;
-                case "blockingPlasticSynapse":
-                    blockingPlasticSynapse (child);
-                    break;
-                case "biophysicalProperties":
-                    biophysics.put (getAttribute (child, "id"), child);
-                    break;
-                case "cell":
-                    // Check if this should actually be a Compartment (point cell) rather than a regular (multi-compartment) cell.
-                    String type = getAttribute (child, "type");
-                    if (type.isEmpty ())
-                    {
-                        Cell cell = new Cell (child);
-                        cells.put (cell.id, cell);
-                    }
-                    else
-                    {
-                        genericPart (child, model);
-                    }
-                    break;
-                case "fitzHughNagumoCell":
-                    MNode FN = genericPart (child, model);
-                    FN.set ("1s", "TS");  // Force time-scale to match the hard-coded value in LEMS definitions.
-                    break;
-                case "poissonFiringSynapse":
-                case "transientPoissonFiringSynapse":
-                case "spikeArray":
-                case "timedSynapticInput":
-                    spikingSynapse (child);
-                    break;
-                case "compoundInput":
-                    compoundInput (child);
-                    break;
-                case "doubleSynapse":
-                    doubleSynapse (child);
-                    break;
-                case "network":
-                    Network network = new Network (child);
-                    networks.put (network.id, network);
-                    break;
-                case "Simulation":
-                    simulation (child);
-                    break;
+            // NeuroML ---------------------------------------------------
+            case "intracellularProperties":
+            case "extracellularProperties":
+                properties.put (getAttribute (child, "id"), child);
+                break;
+            case "morphology":
+                morphologies.put (getAttribute (child, "id"), child);
+                break;
+            case "ionChannel":
+            case "ionChannelHH":
+            case "ionChannelKS":
+            case "ionChannelVShift":
+                ionChannel (child);
+                break;
+            case "decayingPoolConcentrationModel":
+            case "fixedFactorConcentrationModel":
+            case "fixedFactorConcentrationModelTraub":  // This tag appears in Cells.xml, but not in NeuroML_v2beta4.xsd
+                concentrationModel (child);
+                break;
+            case "blockingPlasticSynapse":
+                blockingPlasticSynapse (child);
+                break;
+            case "biophysicalProperties":
+                biophysics.put (getAttribute (child, "id"), child);
+                break;
+            case "cell":
+                // Check if this should actually be a Compartment (point cell) rather than a regular (multi-compartment) cell.
+                String type = getAttribute (child, "type");
+                if (type.isEmpty ())
+                {
+                    Cell cell = new Cell (child);
+                    cells.put (cell.id, cell);
+                }
+                else
+                {
+                    genericPart (child, model);
+                }
+                break;
+            case "fitzHughNagumoCell":
+                MNode FN = genericPart (child, model);
+                FN.set ("1s", "TS");  // Force time-scale to match the hard-coded value in LEMS definitions.
+                break;
+            case "poissonFiringSynapse":
+            case "transientPoissonFiringSynapse":
+            case "spikeArray":
+            case "timedSynapticInput":
+                spikingSynapse (child);
+                break;
+            case "compoundInput":
+                compoundInput (child);
+                break;
+            case "doubleSynapse":
+                doubleSynapse (child);
+                break;
+            case "network":
+                Network network = new Network (child);
+                networks.put (network.id, network);
+                break;
+            case "Simulation":
+                simulation (child);
+                break;
 
-                // LEMS ------------------------------------------------------
-                case "Target":
-                    target (child);
-                    break;
-                case "Dimension":
-                    dimension (child);
-                    break;
-                case "Unit":
-                    unit (child);
-                    break;
-                case "Constant":
-                    new ComponentType (model).genericVariable (child, "");  // Create a bogus component to wrap the top level, so we can add a LEMS constant to it.
-                    break;
-                case "ComponentType":
-                    ComponentType component = new ComponentType (child);
-                    components.put (component.part.key (), component);
-                    break;
-                case "Component":
-                default:
-                    genericPart (child, model);  // Any NeuroML part not specifically processed above will fall through to here.
-                    break;
-            }
+            // LEMS ------------------------------------------------------
+            case "Target":
+                target (child);
+                break;
+            case "Dimension":
+                dimension (child);
+                break;
+            case "Unit":
+                unit (child);
+                break;
+            case "Constant":
+                new ComponentType (model).genericVariable (child, "");  // Create a bogus component to wrap the top level, so we can add a LEMS constant to it.
+                break;
+            case "ComponentType":
+                ComponentType component = new ComponentType (child);
+                components.put (component.part.key (), component);
+                break;
+            case "Component":
+            default:
+                genericPart (child, model);  // Any NeuroML part not specifically processed above will fall through to here.
+                break;
         }
     }
 
@@ -2046,11 +2085,42 @@ public class ImportJob extends XMLutility
         MNode network;
         List<Node>               extracellularProperties = new ArrayList<Node> ();
         List<Node>               projections             = new ArrayList<Node> ();
+        List<BulkProjection>     bulkProjections         = new ArrayList<BulkProjection> ();
         List<Node>               explicitInputs          = new ArrayList<Node> ();
         List<ExplicitConnection> explicitConnections     = new ArrayList<ExplicitConnection> ();
         Set<String>              explicitInputRecheck    = new TreeSet<String> ();
 
         public Network (Node node)
+        {
+            start (node);
+            for (Node child = node.getFirstChild (); child != null; child = child.getNextSibling ())
+            {
+                if (child.getNodeType () == Node.ELEMENT_NODE) child (child);
+            }
+        }
+
+        /**
+            Streaming version of the constructor. Projections are read one connection at a time,
+            while all other elements are small enough to process as DOM subtrees.
+        **/
+        public Network (XMLStreamReader reader, Document doc) throws XMLStreamException
+        {
+            start (shallowElement (reader, doc));
+            while (nextElement (reader))
+            {
+                switch (getName (reader))
+                {
+                    case "projection":
+                    case "inputList":
+                        projection (reader, doc);
+                        break;
+                    default:
+                        child (readElement (reader, doc));
+                }
+            }
+        }
+
+        public void start (Node node)
         {
             id                 = getAttribute (node, "id");
             String temperature = getAttribute (node, "temperature");
@@ -2058,38 +2128,37 @@ public class ImportJob extends XMLutility
             network = models.childOrCreate (modelName, id);
             network.set ("network", "$meta", "backend", "lems", "part");
             if (! temperature.isEmpty ()) network.set (biophysicalUnits (temperature), "temperature");
+        }
 
-            for (Node child = node.getFirstChild (); child != null; child = child.getNextSibling ())
+        public void child (Node child)
+        {
+            switch (child.getNodeName ())
             {
-                if (child.getNodeType () != Node.ELEMENT_NODE) continue;
-                switch (child.getNodeName ())
-                {
-                    case "space":
-                        space (child);
-                        break;
-                    case "region":
-                        String spaceID = getAttribute (child, "space");
-                        network.set (spaceID, "$region", child.getNodeValue ());  // Region is little more than an alias of a space, as of NeuroML 2 beta 4.
-                        break;
-                    case "extracellularProperties":
-                        extracellularProperties.add (child);
-                        break;
-                    case "population":
-                        population (child);
-                        break;
-                    // TODO: cellSet -- Ignoring. Has one attribute and no elements. Attribute is ill-defined.
-                    case "projection":
-                    case "continuousProjection":
-                    case "electricalProjection":
-                    case "inputList":
-                        projections.add (child);
-                        break;
-                    case "synapticConnection":
-                    case "synapticConnectionWD":
-                    case "explicitInput":
-                        explicitInputs.add (child);
-                        break;
-                }
+                case "space":
+                    space (child);
+                    break;
+                case "region":
+                    String spaceID = getAttribute (child, "space");
+                    network.set (spaceID, "$region", child.getNodeValue ());  // Region is little more than an alias of a space, as of NeuroML 2 beta 4.
+                    break;
+                case "extracellularProperties":
+                    extracellularProperties.add (child);
+                    break;
+                case "population":
+                    population (child);
+                    break;
+                // TODO: cellSet -- Ignoring. Has one attribute and no elements. Attribute is ill-defined.
+                case "projection":
+                case "continuousProjection":
+                case "electricalProjection":
+                case "inputList":
+                    projections.add (child);
+                    break;
+                case "synapticConnection":
+                case "synapticConnectionWD":
+                case "explicitInput":
+                    explicitInputs.add (child);
+                    break;
             }
         }
 
@@ -2470,6 +2539,358 @@ public class ImportJob extends XMLutility
             }
         }
 
+        /**
+            Reads a projection or inputList from the stream. Small projections are collected into a DOM
+            subtree and handled later by projection(Node) as usual. Once the number of connections exceeds
+            bulkThreshold, the projection switches to BulkProjection, which writes the connections straight
+            to sparse matrix files rather than keeping them in memory.
+        **/
+        public void projection (XMLStreamReader reader, Document doc) throws XMLStreamException
+        {
+            Element node = shallowElement (reader, doc);
+            BulkProjection bulk = null;
+            int count = 0;
+            while (nextElement (reader))
+            {
+                Element child = readElement (reader, doc);
+                if (bulk != null)
+                {
+                    bulk.add (child);
+                    continue;
+                }
+                node.appendChild (child);
+                if (++count == bulkThreshold)
+                {
+                    bulk = new BulkProjection (node);
+                    if (bulk.failed) bulk = null;  // Fall back on DOM for the remainder. It will be slow, but still correct.
+                }
+            }
+            if (bulk == null)
+            {
+                projections.add (node);
+                return;
+            }
+
+            bulk.close ();
+            if (bulk.fallback)
+            {
+                // Bulk mode can't represent these connections faithfully, so go back to the DOM path,
+                // which handles segments and repeated pairs. It will be slow, but correct.
+                Element full = bulk.reread (doc);
+                if (full != null)
+                {
+                    bulk.delete ();
+                    projections.add (full);
+                    return;
+                }
+            }
+            bulkProjections.add (bulk);
+        }
+
+        /**
+            A projection with too many connections to represent as conditional equations.
+            The connections are streamed into sparse matrix files in the model's resource directory
+            (see Backend.getModelResourceDir()), and the part selects them with $p=connectMatrix(A.$index,B.$index).
+            This is the form that EquationSet.findConnectionMatrix() recognizes, so the backends only
+            visit the nonzero elements when building the connection.
+            Each connection is one element of the matrices, so a connection on a segment other than 0,
+            or a second connection between the same pair of cells, can't be represented. If either
+            turns up, the projection is read again from the source and handled by the DOM path.
+        **/
+        public class BulkProjection
+        {
+            public Element             node;      // The projection element. Its children are removed once they have been written out.
+            public String              id;
+            public String              A;
+            public String              B;
+            public MNode               instancesA;
+            public MNode               instancesB;
+            public BulkColumn          connect;
+            public List<BulkColumn>    columns = new ArrayList<BulkColumn> ();
+            public Map<String,Double>  delays  = new HashMap<String,Double> ();  // Cache of parsed delay strings, since these are usually drawn from a small set.
+            public Path                source;
+            public long                count;     // Number of connections written
+            public boolean             segments;  // Some connection specified a segment other than 0. Bulk mode only connects to the default segment.
+            public boolean             duplicates;  // Some pair of cells has more than one connection. Bulk mode holds only one connection per pair.
+            public boolean             fallback;  // Stop writing, and hand the projection to the DOM path.
+            public boolean             failed;
+
+            public BulkProjection (Element node)
+            {
+                this.node  = node;
+                id         = getAttribute  (node, "id");
+                A          = getAttributes (node, "presynapticPopulation", "from");
+                B          = getAttributes (node, "postsynapticPopulation", "population", "to");
+                instancesA = network.child (A, "$instance");
+                instancesB = network.child (B, "$instance");
+
+                source = sources.getLast ();
+                String stem = modelName + "/" + Network.this.id + "_" + id + "_";
+                try
+                {
+                    Files.createDirectories (Backend.getModelResourceDir ().resolve (modelName));
+                    connect = new BulkColumn ("$p",           stem + "connect.txt",      0,   "connectMatrix");
+                    columns.add (new BulkColumn ("weight",       stem + "weight.txt",       1,   "weightMatrix"));
+                    columns.add (new BulkColumn ("delay",        stem + "delay.txt",        0,   "delayMatrix"));
+                    columns.add (new BulkColumn ("preFraction",  stem + "preFraction.txt",  0.5, "preFractionMatrix"));
+                    columns.add (new BulkColumn ("postFraction", stem + "postFraction.txt", 0.5, "postFractionMatrix"));
+                }
+                catch (IOException e)
+                {
+                    failed = true;
+                    close ();
+                    return;
+                }
+
+                while (node.hasChildNodes ())
+                {
+                    Node child = node.getFirstChild ();
+                    node.removeChild (child);
+                    add (child);
+                }
+            }
+
+            public void add (Node child)
+            {
+                if (failed  ||  fallback) return;
+
+                String preCell     = getAttributes (child, "preCell", "preCellId");
+                String postCell    = getAttributes (child, "postCell", "postCellId", "target");
+                String preSegment  = getAttributes (child, "preSegment", "preSegmentId");
+                String postSegment = getAttributes (child, "postSegment", "postSegmentId", "segmentId");
+                String delay       = getAttribute  (child, "delay");
+
+                String[] pieces = preCell.split ("/");
+                if (pieces.length >= 3) preCell = pieces[2];
+                pieces = postCell.split ("/");
+                if (pieces.length >= 3) postCell = pieces[2];
+
+                if (instancesA != null) preCell  = instancesA.getOrDefault (preCell,  "$index", preCell);
+                if (instancesB != null) postCell = instancesB.getOrDefault (postCell, "$index", postCell);
+                if (preCell .isEmpty ()) preCell  = "0";  // inputList has no presynaptic cell
+                if (postCell.isEmpty ()) postCell = "0";
+
+                if (! preSegment .isEmpty ()  &&  ! preSegment .equals ("0")) segments = true;
+                if (! postSegment.isEmpty ()  &&  ! postSegment.equals ("0")) segments = true;
+                if (segments)
+                {
+                    fallback = true;
+                    return;
+                }
+
+                double postFraction = 0.5;
+                String postFractionString = getAttributes (child, "postFractionAlong", "fractionAlong");
+                if (! postFractionString.isEmpty ()) postFraction = Double.valueOf (postFractionString);
+
+                double delayValue = 0;
+                if (! delay.isEmpty ())
+                {
+                    Double d = delays.get (delay);
+                    if (d == null)
+                    {
+                        d = Scalar.convert (delay);
+                        delays.put (delay, d);
+                    }
+                    delayValue = d;
+                }
+
+                try
+                {
+                    connect   .add (preCell, postCell, 1);
+                    columns.get (0).add (preCell, postCell, getAttribute  (child, "weight", 1.0));
+                    columns.get (1).add (preCell, postCell, delayValue);
+                    columns.get (2).add (preCell, postCell, getAttribute  (child, "preFractionAlong", 0.5));
+                    columns.get (3).add (preCell, postCell, postFraction);
+                }
+                catch (IOException e)
+                {
+                    failed = true;
+                }
+                count++;
+            }
+
+            public void close ()
+            {
+                if (connect != null) connect.close ();
+                for (BulkColumn c : columns) c.close ();
+                if (failed  ||  fallback) return;
+
+                try
+                {
+                    duplicates = findDuplicates ();
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    duplicates = true;  // Can't rule them out, so let the DOM path sort it out.
+                }
+                if (duplicates) fallback = true;
+            }
+
+            /**
+                Scans the connect file for two connections between the same pair of cells.
+                At most bulkPairLimit pairs are held in memory. If there are more connections
+                than that, the file is read in several passes, and each pass keeps only the pairs
+                that hash to one partition.
+            **/
+            public boolean findDuplicates () throws IOException
+            {
+                int    passes = (int) (count / bulkPairLimit + 1);
+                long[] pairs  = new long[(int) Math.min (count, bulkPairLimit)];
+                for (int p = 0; p < passes; p++)
+                {
+                    int n = 0;
+                    try (BufferedReader reader = Files.newBufferedReader (connect.path))
+                    {
+                        reader.readLine ();  // "Sparse"
+                        String line;
+                        while ((line = reader.readLine ()) != null)
+                        {
+                            int a = line.indexOf (',');
+                            int b = line.indexOf (',', a + 1);
+                            long pair = Long.parseLong (line.substring (0, a)) << 32 | Long.parseLong (line.substring (a + 1, b));
+                            if (passes > 1  &&  Long.remainderUnsigned (pair * 0x9E3779B97F4A7C15L >>> 1, passes) != p) continue;
+                            if (n >= pairs.length) pairs = Arrays.copyOf (pairs, Math.max (16, n * 3 / 2));  // Only when hashing is uneven.
+                            pairs[n++] = pair;
+                        }
+                    }
+                    Arrays.sort (pairs, 0, n);
+                    for (int i = 1; i < n; i++) if (pairs[i] == pairs[i-1]) return true;
+                }
+                return false;
+            }
+
+            /**
+                Reads this projection again from its source document, this time as a complete DOM subtree.
+                @return null if the projection could not be found.
+            **/
+            public Element reread (Document doc)
+            {
+                try (InputStream stream = Files.newInputStream (source))
+                {
+                    XMLStreamReader reader = openStream (stream);
+                    try
+                    {
+                        if (! nextElement (reader)) return null;  // root element
+                        while (nextElement (reader))
+                        {
+                            if (getName (reader).equals ("network")  &&  Network.this.id.equals (getAttribute (reader, "id")))
+                            {
+                                while (nextElement (reader))
+                                {
+                                    String name = getName (reader);
+                                    if ((name.equals ("projection")  ||  name.equals ("inputList"))  &&  id.equals (getAttribute (reader, "id"))) return readElement (reader, doc);
+                                    skipElement (reader);
+                                }
+                                return null;
+                            }
+                            skipElement (reader);
+                        }
+                        return null;
+                    }
+                    finally
+                    {
+                        reader.close ();
+                    }
+                }
+                catch (IOException | XMLStreamException e)
+                {
+                    return null;
+                }
+            }
+
+            public void delete ()
+            {
+                if (connect != null) connect.delete ();
+                for (BulkColumn c : columns) c.delete ();
+            }
+
+            public void makePart ()
+            {
+                projection (node);  // With no children, this produces a minimal part with $p=0, and also selects the default segment group of a multi-compartment endpoint.
+                MNode part = network.child (id);
+
+                String condition = "";
+                String rowIndex  = "A.$index";
+                String colIndex  = "B.$index";
+                SegmentFinder finder = new SegmentFinder ();
+                if (part.get ("A").contains ("."))
+                {
+                    rowIndex = "A.$up.$index";
+                    finder.find ("0", A);
+                    if (finder.index >= 0) condition += "&&A.$index==" + finder.index;
+                }
+                if (part.get ("B").contains ("."))
+                {
+                    colIndex = "B.$up.$index";
+                    finder.find ("0", B);
+                    if (finder.index >= 0) condition += "&&B.$index==" + finder.index;
+                }
+                String index = rowIndex + "," + colIndex;
+
+                connect.makeEquations (part, index, condition);
+                for (BulkColumn c : columns) c.makeEquations (part, index, "");
+                // Warnings below only appear if the source could not be read again for the DOM path.
+                if (segments)   part.set ("Some connections named a segment other than 0. Connections from there on are missing.", "$meta", "warning1");
+                if (failed)     part.set ("Failed to write connection matrix files. Some connections are missing.",                "$meta", "warning2");
+                if (duplicates) part.set ("Some pairs of cells have more than one connection. Only one of each pair was kept.",    "$meta", "warning3");
+            }
+        }
+
+        public class BulkColumn
+        {
+            public String         variable;
+            public String         matrix;        // Name of the local variable that holds the loaded matrix.
+            public String         fileName;      // Relative to Backend.getModelResourceDir(). This is how the model refers to the file.
+            public Path           path;
+            public double         defaultValue;
+            public boolean        used;          // Indicates that some connection has a value other than default.
+            public BufferedWriter writer;
+
+            public BulkColumn (String variable, String fileName, double defaultValue, String matrix) throws IOException
+            {
+                this.variable     = variable;
+                this.fileName     = fileName;
+                this.defaultValue = defaultValue;
+                this.matrix       = matrix;
+                path   = Backend.getModelResourceDir ().resolve (fileName);
+                writer = Files.newBufferedWriter (path);
+                writer.write ("Sparse\n");
+            }
+
+            public void add (String row, String column, double value) throws IOException
+            {
+                if (value != defaultValue) used = true;
+                if (value == 0) return;  // Implicit in sparse format.
+                writer.write (row + "," + column + "," + print (value) + "\n");
+            }
+
+            public void close ()
+            {
+                if (writer == null) return;
+                try {writer.close ();}
+                catch (IOException e) {}
+                writer = null;
+            }
+
+            public void delete ()
+            {
+                close ();
+                try {Files.deleteIfExists (path);}
+                catch (IOException e) {}
+            }
+
+            public void makeEquations (MNode part, String index, String condition)
+            {
+                if (! used)
+                {
+                    delete ();
+                    return;
+                }
+                part.set ("matrix(\"" + fileName + "\")", matrix);
+                part.set (matrix + "(" + index + ")" + condition, variable);
+            }
+        }
+
         class SegmentFinder
         {
             public String group = "";
@@ -2677,6 +3098,7 @@ public class ImportJob extends XMLutility
         public void finish1 ()
         {
             for (Node p               : projections)         projection (p);
+            for (BulkProjection p     : bulkProjections)     p.makePart ();
             for (Node e               : explicitInputs)      explicitInput (e);
             for (ExplicitConnection c : explicitConnections) c.makePart ();
             network.clear ("$space");
@@ -6,13 +6,22 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.backend.neuroml;
 
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import javax.measure.Dimension;
 import javax.measure.Unit;
 import javax.measure.format.UnitFormat;
 import javax.measure.spi.SystemOfUnits;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
@@ -188,4 +197,188 @@ public class XMLutility
             return defaultValue;
         }
     }
+
+    /**
+        Opens an XML document as a stream, configured the way the importers expect.
+    **/
+    public static XMLStreamReader openStream (InputStream stream) throws XMLStreamException
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance ();
+        factory.setProperty (XMLInputFactory.IS_COALESCING,      true);
+        factory.setProperty (XMLInputFactory.SUPPORT_DTD,        false);
+        factory.setProperty (XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory.createXMLStreamReader (stream);
+    }
+
+    /**
+        Advances the reader to the next child element of the current element.
+        @return true if the reader is positioned on the START_ELEMENT of a child. false if the
+        END_ELEMENT of the containing element (or end of document) was reached instead.
+    **/
+    public static boolean nextElement (XMLStreamReader reader) throws XMLStreamException
+    {
+        while (reader.hasNext ())
+        {
+            switch (reader.next ())
+            {
+                case XMLStreamConstants.START_ELEMENT: return true;
+                case XMLStreamConstants.END_ELEMENT:   return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+        Consumes the rest of the current element, up to and including its END_ELEMENT.
+        The reader must be positioned on the START_ELEMENT.
+    **/
+    public static void skipElement (XMLStreamReader reader) throws XMLStreamException
+    {
+        int depth = 1;
+        while (reader.hasNext ())
+        {
+            switch (reader.next ())
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (--depth == 0) return;
+            }
+        }
+    }
+
+    /**
+        @return The value of the named attribute on the current START_ELEMENT, or an empty string if it is absent.
+    **/
+    public static String getAttribute (XMLStreamReader reader, String name)
+    {
+        String result = reader.getAttributeValue (null, name);
+        if (result == null) return "";
+        return result;
+    }
+
+    public static String getName (XMLStreamReader reader)
+    {
+        String prefix = reader.getPrefix ();
+        if (prefix == null  ||  prefix.isEmpty ()) return reader.getLocalName ();
+        return prefix + ":" + reader.getLocalName ();
+    }
+
+    /**
+        Creates a DOM element from the current START_ELEMENT, with attributes but no children.
+        The reader is left on the START_ELEMENT, so the caller may continue with the children.
+    **/
+    public static Element shallowElement (XMLStreamReader reader, Document doc)
+    {
+        Element result = doc.createElement (getName (reader));
+        int count = reader.getAttributeCount ();
+        for (int i = 0; i < count; i++)
+        {
+            String name   = reader.getAttributeLocalName (i);
+            String prefix = reader.getAttributePrefix (i);
+            if (prefix != null  &&  ! prefix.isEmpty ()) name = prefix + ":" + name;
+            result.setAttribute (name, reader.getAttributeValue (i));
+        }
+        return result;
+    }
+
+    /**
+        Builds a DOM subtree from the current START_ELEMENT, consuming everything up to and including
+        the matching END_ELEMENT. This lets a streaming reader hand small sections of a document to
+        code written against DOM. Comments and whitespace-only text are dropped.
+    **/
+    public static Element readElement (XMLStreamReader reader, Document doc) throws XMLStreamException
+    {
+        Element result = shallowElement (reader, doc);
+        while (reader.hasNext ())
+        {
+            switch (reader.next ())
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    result.appendChild (readElement (reader, doc));
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (! reader.isWhiteSpace ()) result.appendChild (doc.createTextNode (reader.getText ()));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+        Content that is generated directly into the output stream rather than held in the DOM.
+        Attach to an element with stream(). The content is emitted after any DOM children of the element.
+    **/
+    public interface StreamedContent
+    {
+        /**
+            @param depth Indentation level of the child elements.
+            @return true if any elements were written.
+        **/
+        public boolean write (XMLStreamWriter writer, int depth) throws XMLStreamException;
+    }
+
+    public static void stream (Element element, StreamedContent content)
+    {
+        element.setUserData ("streamed", content, null);
+    }
+
+    /**
+        Serializes an element, including any streamed content, with 4-space indentation.
+    **/
+    public static void write (XMLStreamWriter writer, Element element, int depth) throws XMLStreamException
+    {
+        StreamedContent content = (StreamedContent) element.getUserData ("streamed");
+        boolean empty = ! element.hasChildNodes ()  &&  content == null;
+        startElement (writer, element.getTagName (), depth, empty);
+        NamedNodeMap attributes = element.getAttributes ();
+        int count = attributes.getLength ();
+        for (int i = 0; i < count; i++)
+        {
+            Attr a = (Attr) attributes.item (i);
+            String name = a.getName ();
+            if      (name.equals ("xmlns"))      writer.writeDefaultNamespace (a.getValue ());
+            else if (name.startsWith ("xmlns:")) writer.writeNamespace (name.substring (6), a.getValue ());
+            else                                 writer.writeAttribute (name, a.getValue ());
+        }
+        if (empty) return;
+
+        boolean hasElements = false;
+        for (Node child = element.getFirstChild (); child != null; child = child.getNextSibling ())
+        {
+            switch (child.getNodeType ())
+            {
+                case Node.ELEMENT_NODE:
+                    write (writer, (Element) child, depth + 1);
+                    hasElements = true;
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    writer.writeCharacters (child.getNodeValue ());
+                    break;
+            }
+        }
+        if (content != null  &&  content.write (writer, depth + 1)) hasElements = true;
+        endElement (writer, depth, hasElements);
+    }
+
+    public static void startElement (XMLStreamWriter writer, String name, int depth, boolean empty) throws XMLStreamException
+    {
+        writer.writeCharacters ("\n" + " ".repeat (depth * 4));
+        if (empty) writer.writeEmptyElement (name);
+        else       writer.writeStartElement (name);
+    }
+
+    /**
+        @param hasElements Indicates that the closing tag should be placed on its own line.
+    **/
+    public static void endElement (XMLStreamWriter writer, int depth, boolean hasElements) throws XMLStreamException
+    {
+        if (hasElements) writer.writeCharacters ("\n" + " ".repeat (depth * 4));
+        writer.writeEndElement ();
+    }
 }
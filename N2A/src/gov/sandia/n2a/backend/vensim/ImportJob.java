@@ -251,7 +251,7 @@ public class ImportJob
                             {
                                 Holder H = new Holder (sourceDir.resolve (fileName));
                                 String sheetName = xls.operands.get (1).value;
-                                if (H.wb.containsKey (sheetName))
+                                if (H.worksheetNames ().contains (sheetName))
                                 {
                                     String first  = xls.operands.get (2).value;
                                     String last   = xls.operands.get (3).value;
@@ -104,6 +104,7 @@ public class ProvideSpreadsheet implements ProvideOperator
             c.addDefine ("n2a_T", job.T);
             if (job.T.contains ("int")) c.addDefine ("n2a_FP");
             if (job.tls) c.addDefine ("n2a_TLS");
+            if (job.threads > 1) c.addDefine ("n2a_THREADS");
             c.setOutput (object);
             c.addSource (runtimeDir.resolve ("spreadsheet.cc"));
 
@@ -6,22 +6,26 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.backend.vensim;
 
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.lang.ref.SoftReference;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import gov.sandia.n2a.backend.internal.Simulator;
 import gov.sandia.n2a.backend.neuroml.XMLutility;
@@ -32,13 +36,9 @@ import gov.sandia.n2a.language.Function;
 import gov.sandia.n2a.language.Operator;
 import gov.sandia.n2a.language.Type;
 import gov.sandia.n2a.language.type.Instance;
-import gov.sandia.n2a.language.type.Matrix;
 import gov.sandia.n2a.language.type.Matrix.IteratorNonzero;
 import gov.sandia.n2a.language.type.Scalar;
 import gov.sandia.n2a.language.type.Text;
-import gov.sandia.n2a.linear.MatrixDense;
-import gov.sandia.n2a.linear.MatrixSparse;
-import gov.sandia.n2a.linear.MatrixSparse.IteratorSparse;
 import gov.sandia.n2a.plugins.extpoints.Backend;
 import tech.units.indriya.AbstractUnit;
 
@@ -113,234 +113,629 @@ public class Spreadsheet extends Function implements NonzeroIterable
         return new Scalar ();
     }
 
+    /**
+        Compact store for the cells of one worksheet.
+        Each column is a pair of primitive arrays: sorted row numbers and the values found at those rows.
+        Empty cells are not stored at all. If the cells turn out to fill most of the sheet, they are
+        repacked into a single column-major array, which is faster to access and smaller than the sparse form.
+    **/
+    public static class Cells
+    {
+        public    int        rows;                     // One past the largest occupied row.
+        public    int        columns;                  // One past the largest occupied column.
+        public    int        fill;                     // Number of stored cells.
+        protected int[]      counts   = new int[0];    // Number of cells actually used in each column.
+        protected int[][]    rowIndex = new int[0][];
+        protected double[][] values   = new double[0][];
+        protected double[]   dense;                    // Column-major. When non-null, replaces all the sparse structures.
+
+        /**
+            Adds a cell. Worksheets list cells in row-major order, so each column sees ascending row numbers
+            and the new cell simply goes on the end. Out-of-order input is still handled correctly, just slower.
+        **/
+        public void set (int r, int c, double value)
+        {
+            if (c >= rowIndex.length)
+            {
+                int length = Math.max (c + 1, rowIndex.length * 2);
+                counts   = Arrays.copyOf (counts,   length);
+                rowIndex = Arrays.copyOf (rowIndex, length);
+                values   = Arrays.copyOf (values,   length);
+            }
+            int[]    R     = rowIndex[c];
+            double[] V     = values[c];
+            int      count = counts[c];
+            if (R == null)
+            {
+                R = rowIndex[c] = new int[4];
+                V = values[c]   = new double[4];
+            }
+
+            int i = count;
+            if (count > 0  &&  R[count-1] >= r)
+            {
+                i = Arrays.binarySearch (R, 0, count, r);
+                if (i >= 0)  // Overwrite existing cell.
+                {
+                    V[i] = value;
+                    return;
+                }
+                i = -i - 1;
+            }
+            if (count == R.length)
+            {
+                R = rowIndex[c] = Arrays.copyOf (R, count * 2);
+                V = values[c]   = Arrays.copyOf (V, count * 2);
+            }
+            if (i < count)
+            {
+                System.arraycopy (R, i, R, i + 1, count - i);
+                System.arraycopy (V, i, V, i + 1, count - i);
+            }
+            R[i] = r;
+            V[i] = value;
+            counts[c]++;
+            fill++;
+            rows    = Math.max (rows,    r + 1);
+            columns = Math.max (columns, c + 1);
+        }
+
+        /**
+            Trims excess capacity left over from loading, and converts to dense form if fill-in is high enough.
+        **/
+        public void pack (double fillThreshold)
+        {
+            if (fill > 0  &&  (double) fill / ((double) rows * columns) > fillThreshold)
+            {
+                dense = new double[rows * columns];
+                for (int c = 0; c < columns; c++)
+                {
+                    int[]    R      = rowIndex[c];
+                    double[] V      = values[c];
+                    int      count  = counts[c];
+                    int      offset = c * rows;
+                    for (int i = 0; i < count; i++) dense[offset + R[i]] = V[i];
+                }
+                counts   = null;
+                rowIndex = null;
+                values   = null;
+                return;
+            }
+
+            counts   = Arrays.copyOf (counts,   columns);
+            rowIndex = Arrays.copyOf (rowIndex, columns);
+            values   = Arrays.copyOf (values,   columns);
+            for (int c = 0; c < columns; c++)
+            {
+                if (rowIndex[c] == null) continue;
+                rowIndex[c] = Arrays.copyOf (rowIndex[c], counts[c]);
+                values[c]   = Arrays.copyOf (values[c],   counts[c]);
+            }
+        }
+
+        /**
+            @return The value stored at the given cell, or 0 if the cell is empty or outside the sheet.
+        **/
+        public double get (int r, int c)
+        {
+            if (r < 0  ||  c < 0  ||  r >= rows  ||  c >= columns) return 0;
+            if (dense != null) return dense[c * rows + r];
+            int[] R = rowIndex[c];
+            if (R == null) return 0;
+            int i = Arrays.binarySearch (R, 0, counts[c], r);
+            if (i < 0) return 0;
+            return values[c][i];
+        }
+
+        /**
+            Visits the nonzero cells at or below/right of the given anchor, in column-major order.
+            Coordinates reported by the iterator are relative to the anchor.
+        **/
+        public IteratorNonzero getIteratorNonzero (int ar, int ac)
+        {
+            return new IteratorCells (this, ar, ac);
+        }
+    }
+
+    public static class IteratorCells implements IteratorNonzero
+    {
+        protected Cells  A;
+        protected int    ar;  // anchor row
+        protected int    ac;  // anchor column
+
+        protected int    nextRow;
+        protected int    nextColumn;
+        protected int    nextIndex;  // position within sparse column, or row within dense column
+        protected int    nextCount;  // end of current column
+        protected Double nextValue;
+
+        protected int    row;
+        protected int    column;
+
+        public IteratorCells (Cells A, int ar, int ac)
+        {
+            this.A     = A;
+            this.ar    = Math.max (0, ar);
+            this.ac    = Math.max (0, ac);
+            nextColumn = this.ac - 1;
+            getNext ();
+        }
+
+        protected void getNext ()
+        {
+            while (true)
+            {
+                while (nextIndex < nextCount)
+                {
+                    int i = nextIndex++;
+                    double value;
+                    if (A.dense == null)
+                    {
+                        nextRow = A.rowIndex[nextColumn][i];
+                        value   = A.values[nextColumn][i];
+                    }
+                    else
+                    {
+                        nextRow = i;
+                        value   = A.dense[nextColumn * A.rows + i];
+                    }
+                    if (value == 0) continue;
+                    nextValue = value;
+                    return;
+                }
+                if (++nextColumn >= A.columns)
+                {
+                    nextValue = null;
+                    return;
+                }
+                if (A.dense == null)
+                {
+                    int[] R = A.rowIndex[nextColumn];
+                    if (R == null)
+                    {
+                        nextIndex = 0;
+                        nextCount = 0;
+                        continue;
+                    }
+                    nextCount = A.counts[nextColumn];
+                    nextIndex = Arrays.binarySearch (R, 0, nextCount, ar);
+                    if (nextIndex < 0) nextIndex = -nextIndex - 1;
+                }
+                else
+                {
+                    nextIndex = ar;
+                    nextCount = A.rows;
+                }
+            }
+        }
+
+        public boolean hasNext ()
+        {
+            return nextValue != null;
+        }
+
+        public Double next ()
+        {
+            Double value = nextValue;
+            row    = nextRow    - ar;
+            column = nextColumn - ac;
+            getNext ();
+            return value;
+        }
+
+        public int getRow ()
+        {
+            return row;
+        }
+
+        public int getColumn ()
+        {
+            return column;
+        }
+    }
+
     public static class Sheet
     {
-        public Matrix numbers; // Dense matrix stores empty cells and strings as 0. Sparse matrix does not store them at all. 
-        public Matrix strings; // 1-based indices into string collection. Empty cells and numbers are 0.
-        public int    rows;
-        public int    columns;
+        public    String       target;       // Path of worksheet XML within the archive.
+        public    Cells        numbers;      // Null until the sheet is loaded.
+        public    Cells        strings;      // Positive values are 1-based indices into shared strings. Negative values are 1-based indices into localStrings.
+        public    List<String> localStrings; // Strings that are stored directly in the worksheet rather than in the shared collection.
+        public    int          rows;
+        public    int          columns;
     }
 
-    public static class Holder
+    /**
+        The parsed contents of a workbook file. This is immutable once a given part is loaded,
+        so a single instance is shared by all jobs in the JVM that reference the same file.
+        Only the workbook structure and styles are read up front. Individual worksheets are streamed
+        into compact cell stores the first time they are referenced, and the shared-string table
+        is read only when some string value is actually requested.
+    **/
+    public static class Workbook
     {
-        protected List<String>      strings = new ArrayList<String> ();     // collection of all strings that appear in the workbook
-        protected Map<String,Sheet> wb      = new HashMap<String,Sheet> (); // workbook, a collection of worksheets
-        protected Sheet             first;                                  // The first sheet defined in the file. This is the default when no sheet is specified in cell address.
-        protected String            cell;                                   // The most recently parsed anchor cell address. Includes sheet name and coordinates.
-        protected Sheet             ws;                                     // anchor sheet
-        protected int               ar;                                     // anchor row
-        protected int               ac;                                     // anchor column
+        protected Path              path;
+        protected long              modified;
+        protected String            sharedStringsPath = "";
+        protected List<String>      strings;                                    // Collection of strings shared by all worksheets. Null until first needed.
+        protected Set<Integer>      dateStyles = new HashSet<Integer> ();       // Collection of all style numbers that should be treated as date.
+        protected Map<String,Sheet> sheets     = new HashMap<String,Sheet> ();
+        protected Sheet             first;                                      // The first sheet defined in the file. This is the default when no sheet is specified in cell address.
+
+        protected static ConcurrentMap<Path,SoftReference<Workbook>> cache = new ConcurrentHashMap<Path,SoftReference<Workbook>> ();
+
+        /**
+            Retrieves the workbook for the given file, loading it if needed.
+            A cached copy is reused as long as the file has not been modified since it was loaded.
+            The cache holds soft references, so unused workbooks can be reclaimed under memory pressure.
+            Loading happens outside any lock, so a slow workbook doesn't hold up lookups of other files.
+            If two threads load the same file at once, the first to publish wins and the other copy is dropped.
+        **/
+        public static Workbook get (Path path)
+        {
+            path = path.toAbsolutePath ().normalize ();
+            long modified = path.toFile ().lastModified ();
+            SoftReference<Workbook> reference = cache.get (path);
+            if (reference != null)
+            {
+                Workbook result = reference.get ();
+                if (result != null  &&  result.modified == modified) return result;
+            }
 
-        // May need to support merging spreadsheets, such that one overrides the other.
-        // Could take a list of files to load, in reverse precedence order.
-        public Holder (Path path)
+            Workbook                loaded = new Workbook (path, modified);
+            SoftReference<Workbook> fresh  = new SoftReference<Workbook> (loaded);
+            while (true)
+            {
+                SoftReference<Workbook> prior = cache.putIfAbsent (path, fresh);
+                if (prior == null) return loaded;
+                Workbook other = prior.get ();
+                if (other != null  &&  other.modified == modified) return other;  // Another thread published the same version first.
+                if (cache.replace (path, prior, fresh)) return loaded;  // Prior entry was stale or reclaimed.
+            }
+        }
+
+        public Workbook (Path path, long modified)
         {
+            this.path     = path;
+            this.modified = modified;
+
             try (ZipFile archive = new ZipFile (path.toFile ()))
             {
-                // Set up XML parser
-                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance ();
-                factory.setCoalescing (true);
-                factory.setIgnoringComments (true);
-                DocumentBuilder builder = factory.newDocumentBuilder ();
+                XMLInputFactory factory = factory ();
 
                 // Read workbook relationship file to determine paths to sheets, shared strings and styles.
                 Map<String,String> IDtarget = new HashMap<String,String> ();
-                String sharedStringsPath = "";
-                String stylesPath        = "";
-                ZipEntry entry = archive.getEntry ("xl/_rels/workbook.xml.rels");
-                Document doc = builder.parse (archive.getInputStream (entry));
-                Node docElement = doc.getDocumentElement ();
-                for (Node rel = docElement.getFirstChild (); rel != null; rel = rel.getNextSibling ())
+                String stylesPath = "";
+                try (InputStream stream = archive.getInputStream (archive.getEntry ("xl/_rels/workbook.xml.rels")))
                 {
-                    NamedNodeMap attr = rel.getAttributes ();
-                    String Type = attr.getNamedItem ("Type").getTextContent ();
-                    if (Type.endsWith ("/worksheet"))
+                    XMLStreamReader reader = factory.createXMLStreamReader (stream);
+                    while (reader.hasNext ())
                     {
-                        String Id = attr.getNamedItem ("Id").getTextContent ();
-                        String Target = "xl/" + attr.getNamedItem ("Target").getTextContent ();
-                        IDtarget.put (Id, Target);
+                        if (reader.next () != XMLStreamConstants.START_ELEMENT) continue;
+                        if (! reader.getLocalName ().equals ("Relationship")) continue;
+                        String Type   = reader.getAttributeValue (null, "Type");
+                        String Target = "xl/" + reader.getAttributeValue (null, "Target");
+                        if      (Type.endsWith ("/worksheet"    )) IDtarget.put (reader.getAttributeValue (null, "Id"), Target);
+                        else if (Type.endsWith ("/sharedStrings")) sharedStringsPath = Target;
+                        else if (Type.endsWith ("/styles"       )) stylesPath        = Target;
                     }
-                    else if (Type.endsWith ("/sharedStrings"))
+                    reader.close ();
+                }
+
+                // Determine date styles
+                ZipEntry entry = stylesPath.isEmpty () ? null : archive.getEntry (stylesPath);
+                if (entry != null)
+                {
+                    try (InputStream stream = archive.getInputStream (entry))
                     {
-                        sharedStringsPath = "xl/" + attr.getNamedItem ("Target").getTextContent ();
+                        XMLStreamReader reader = factory.createXMLStreamReader (stream);
+                        boolean inCellXfs   = false;  // Other collections (such as cellStyleXfs) also contain xf elements, but don't count toward style numbers.
+                        int     styleNumber = 0;
+                        while (reader.hasNext ())
+                        {
+                            int event = reader.next ();
+                            if (event == XMLStreamConstants.END_ELEMENT)
+                            {
+                                if (reader.getLocalName ().equals ("cellXfs")) break;
+                                continue;
+                            }
+                            if (event != XMLStreamConstants.START_ELEMENT) continue;
+                            String name = reader.getLocalName ();
+                            if (name.equals ("cellXfs"))
+                            {
+                                inCellXfs = true;
+                            }
+                            else if (inCellXfs  &&  name.equals ("xf"))
+                            {
+                                String value = reader.getAttributeValue (null, "numFmtId");
+                                int id = value == null ? 0 : Integer.valueOf (value);
+                                if (id >= 14  &&  id <= 22  ||  id >= 45  &&  id <= 47) dateStyles.add (styleNumber);
+                                styleNumber++;
+                            }
+                        }
+                        reader.close ();
                     }
-                    else if (Type.endsWith ("/styles"))
+                }
+
+                // Scan workbook for sheets
+                try (InputStream stream = archive.getInputStream (archive.getEntry ("xl/workbook.xml")))
+                {
+                    XMLStreamReader reader = factory.createXMLStreamReader (stream);
+                    while (reader.hasNext ())
                     {
-                        stylesPath = "xl/" + attr.getNamedItem ("Target").getTextContent ();
+                        if (reader.next () != XMLStreamConstants.START_ELEMENT) continue;
+                        if (! reader.getLocalName ().equals ("sheet")) continue;
+                        String target = IDtarget.get (reader.getAttributeValue (null, "id"));  // r:id
+                        if (target == null) continue;
+                        Sheet ws = new Sheet ();
+                        ws.target = target;
+                        sheets.put (reader.getAttributeValue (null, "name"), ws);
+                        if (first == null) first = ws;
                     }
+                    reader.close ();
                 }
+            }
+            catch (Exception e)
+            {
+                fail (e);
+            }
+        }
 
-                // Load shared strings
-                if (! sharedStringsPath.isEmpty ())
+        public static XMLInputFactory factory ()
+        {
+            XMLInputFactory factory = XMLInputFactory.newInstance ();
+            factory.setProperty (XMLInputFactory.IS_COALESCING, true);
+            factory.setProperty (XMLInputFactory.SUPPORT_DTD,   false);
+            return factory;
+        }
+
+        protected void fail (Exception e)
+        {
+            PrintStream err = Backend.err.get ();
+            err.println ("ERROR: Failed to parse spreadsheet file: " + path);
+            e.printStackTrace (err);
+            throw new Backend.AbortRun ();
+        }
+
+        /**
+            Streams the given worksheet into its cell stores, if that hasn't been done already.
+        **/
+        public synchronized void load (Sheet ws)
+        {
+            if (ws.numbers != null) return;
+
+            // We could try to read the dimension element, but it is not reliable
+            // (not required to be present, and not always formatted correctly).
+            // Thus, the only safe way to load a spreadsheet is with sparse storage.
+            // There are several delicate tradeoffs between time and space here.
+            // We don't want to lock down more memory than necessary. OTOH, it is a
+            // waste of time to convert to dense storage if each element is accessed
+            // only once during a simulation. Here it is impossible to know how
+            // all that will play out, so we use a simple heuristic based on fill-in
+            // to decide whether to convert to dense storage after the load finishes.
+            Cells        N            = new Cells ();
+            Cells        S            = new Cells ();
+            List<String> localStrings = new ArrayList<String> ();
+            final double fillThreshold = 0.5;
+
+            try (ZipFile archive = new ZipFile (path.toFile ());
+                 InputStream stream = archive.getInputStream (archive.getEntry (ws.target)))
+            {
+                XMLStreamReader reader = factory ().createXMLStreamReader (stream);
+                int row    = -1;
+                int column = -1;
+                while (reader.hasNext ())
                 {
-                    entry = archive.getEntry (sharedStringsPath);
-                    if (entry != null)
+                    if (reader.next () != XMLStreamConstants.START_ELEMENT) continue;
+                    String name = reader.getLocalName ();
+                    if (name.equals ("row"))
+                    {
+                        String r = reader.getAttributeValue (null, "r");
+                        if (r == null) row++;  // Row and cell addresses are optional. When absent, position is implied by sequence.
+                        else           row = Integer.valueOf (r) - 1;
+                        column = -1;
+                        continue;
+                    }
+                    if (! name.equals ("c")) continue;
+
+                    String r = reader.getAttributeValue (null, "r");
+                    if (r == null)
+                    {
+                        column++;
+                    }
+                    else
                     {
-                        doc = builder.parse (archive.getInputStream (entry));
-                        docElement = doc.getDocumentElement ();
-                        int uniqueCount = XMLutility.getAttribute (docElement, "uniqueCount", 0);
-                        if (uniqueCount > 0) strings = new ArrayList<String> (uniqueCount);  // re-allocate array, now that we know the size
-                        for (Node si = docElement.getFirstChild (); si != null; si = si.getNextSibling ())
+                        column = 0;
+                        int pos = 0;
+                        int length = r.length ();
+                        for (; pos < length; pos++)
                         {
-                            strings.add (extractSI (si));
+                            char c = r.charAt (pos);
+                            if (c < 'A') break;
+                            column = column * 26 + c - 'A' + 1;
                         }
+                        column--;
+                        if (pos < length) row = Integer.valueOf (r.substring (pos)) - 1;
                     }
-                }
+                    String t = reader.getAttributeValue (null, "t");
+                    String s = reader.getAttributeValue (null, "s");
 
-                // Determine date styles
-                Set<Integer> dateStyles = new HashSet<Integer> ();  // collection of all style numbers that should be treated as date
-                if (! stylesPath.isEmpty ())
-                {
-                    entry = archive.getEntry (stylesPath);
-                    if (entry != null)
+                    // Collect content of cell
+                    String v = null;
+                    while (XMLutility.nextElement (reader))
                     {
-                        doc = builder.parse (archive.getInputStream (entry));
-                        docElement = doc.getDocumentElement ();
-                        Node cellXfs = XMLutility.getChild (docElement, "cellXfs");
-                        int styleNumber = 0;
-                        for (Node xf = cellXfs.getFirstChild (); xf != null; xf = xf.getNextSibling ())
+                        switch (reader.getLocalName ())
                         {
-                            int id = XMLutility.getAttribute (xf, "numFmtId", 0);
-                            if (id >= 14  &&  id <= 22  ||  id >= 45  &&  id <= 47) dateStyles.add (styleNumber);
-                            styleNumber++;
+                            case "v":
+                                v = reader.getElementText ();
+                                break;
+                            case "is":  // inline string
+                                v = extractSI (reader);
+                                break;
+                            default:
+                                skip (reader);
                         }
                     }
+                    if (v == null) continue;  // Sometimes a cell exists in the XML file but has no value.
+
+                    if (t == null) t = "n";
+                    switch (t)
+                    {
+                        case "s":  // indexed string
+                            // Whether the shared string is empty can't be known without loading the shared-string table,
+                            // so that check is deferred until someone asks (see Holder.isEmpty()).
+                            S.set (row, column, Integer.valueOf (v.trim ()) + 1);  // Offset index by 1, so the 0 can represent empty string.
+                            break;
+                        case "str":  // "formula string". Not sure how this is different from inlineStr.
+                        case "inlineStr":
+                            String str = v.trim ();
+                            if (str.isEmpty ()) continue;
+                            localStrings.add (str);
+                            S.set (row, column, -localStrings.size ());  // by putting this call after the add(), we get 1-based index
+                            break;
+                        case "e": continue;
+                        default:  // All other types should be numeric. Includes "n", "b" and empty string (with default value "n").
+                            // Dates are stored by Excel internally as number of days since December 31, 1899.
+                            // Day 25569 is start of Unix epoch, January 1, 1970.
+                            // I believe that day number includes leap days, so all we need to do is multiply by 86400.
+                            // There are more subtle elements of horology to consider, but this should be good enough.
+
+                            // The difficulty is identifying a date cell. The only way is to check style (attribute "s").
+                            // See https://www.brendanlong.com/the-minimum-viable-xlsx-reader.html
+                            // At a minimum, we could check all pre-defined data styles: 14-22, 45-47
+                            // It appears that MS Excel won't store negative date numbers. Instead, the value is stored as a string.
+
+                            double d = Double.valueOf (v);
+                            if (s != null  &&  dateStyles.contains (Integer.valueOf (s))) d = (d - 25569) * 86400;  // Convert from Excel time to Unix time.
+                            if (d == 0) continue;  // should we also check for NAN?
+                            N.set (row, column, d);
+                    }
                 }
+                reader.close ();
+            }
+            catch (Exception e)
+            {
+                fail (e);
+            }
 
-                // Scan workbook for sheets
-                entry = archive.getEntry ("xl/workbook.xml");
-                doc = builder.parse (archive.getInputStream (entry));
-                docElement = doc.getDocumentElement ();
-                Node sheets = XMLutility.getChild (docElement, "sheets");
-                for (Node sheet = sheets.getFirstChild (); sheet != null; sheet = sheet.getNextSibling ())
+            N.pack (fillThreshold);
+            S.pack (fillThreshold);
+            ws.rows         = Math.max (N.rows,    S.rows);
+            ws.columns      = Math.max (N.columns, S.columns);
+            ws.localStrings = localStrings;
+            ws.strings      = S;
+            ws.numbers      = N;  // Assign last, since this marks the sheet as loaded.
+        }
+
+        /**
+            Retrieves an entry from the shared-string table, loading the table on first use.
+        **/
+        public synchronized String sharedString (int index)
+        {
+            if (strings == null)
+            {
+                strings = new ArrayList<String> ();
+                if (! sharedStringsPath.isEmpty ())
                 {
-                    String rid = XMLutility.getAttribute (sheet, "r:id");
-                    String target = IDtarget.get (rid);
-                    if (target == null) continue;
-                    String name = XMLutility.getAttribute (sheet, "name");
-
-                    // Process worksheet
-                    // We could try to read the dimension element, but it is not reliable
-                    // (not required to be present, and not always formatted correctly).
-                    // Thus, the only safe way to load a spreadsheet is with sparse matrices.
-                    // There are several delicate tradeoffs between time and space here.
-                    // We don't want to lock down more memory than necessary. OTOH, it is a
-                    // waste of time to convert to dense matrix if each element is accessed
-                    // only once during a simulation. Here it is impossible to know how
-                    // all that will play out, so we use a simple heuristic based on fill-in
-                    // to decide whether to covnert to dense matrix after the load finishes.
-                    Sheet ws = new Sheet ();
-                    wb.put (name, ws);
-                    if (first == null) first = ws;
-                    MatrixSparse N = new MatrixSparse ();
-                    MatrixSparse S = new MatrixSparse ();
-                    ws.numbers = N;
-                    ws.strings = S;
-                    int fillN = 0;
-                    int fillS = 0;
-                    final double fillThreshold = 0.5;
-
-                    entry = archive.getEntry (target);
-                    Document worksheet = builder.parse (archive.getInputStream (entry));
-                    docElement = worksheet.getDocumentElement ();
-                    Node sheetData = XMLutility.getChild (docElement, "sheetData");
-                    for (Node row = sheetData.getFirstChild (); row != null; row = row.getNextSibling ())
+                    try (ZipFile archive = new ZipFile (path.toFile ()))
                     {
-                        for (Node c = row.getFirstChild (); c != null; c = c.getNextSibling ())
+                        ZipEntry entry = archive.getEntry (sharedStringsPath);
+                        if (entry != null)
                         {
-                            parseA1 (XMLutility.getAttribute (c, "r"));
-                            switch (XMLutility.getAttribute (c, "t"))
+                            try (InputStream stream = archive.getInputStream (entry))
                             {
-                                case "s":  // indexed string
-                                    Node v = XMLutility.getChild (c, "v");
-                                    int index = Integer.valueOf (v.getTextContent ());
-                                    String value = strings.get (index);
-                                    if (value == null  ||  value.isEmpty ()) continue;
-                                    S.set (ar, ac, index+1);  // Offset index by 1, so the 0 can represent empty string.
-                                    fillS++;
-                                    break;
-                                case "str":  // "formula string". Not sure how this is different from inlineStr.
-                                    v = XMLutility.getChild (c, "v");
-                                    String str = v.getTextContent ().trim ();
-                                    if (str.isEmpty ()) continue;
-                                    strings.add (str);
-                                    S.set (ar, ac, strings.size ());  // by putting this call after the add(), we get 1-based index
-                                    fillS++;
-                                    break;
-                                case "inlineStr":
-                                    Node si = XMLutility.getChild (c, "si");
-                                    str = extractSI (si).trim ();
-                                    if (str.isEmpty ()) continue;
-                                    strings.add (str);
-                                    S.set (ar, ac, strings.size ());
-                                    fillS++;
-                                    break;
-                                case "e": continue;
-                                default:  // All other types should be numeric. Includes "n", "b" and empty string (with default value "n").
-                                    // Dates are stored by Excel internally as number of days since December 31, 1899.
-                                    // Day 25569 is start of Unix epoch, January 1, 1970.
-                                    // I believe that day number includes leap days, so all we need to do is multiply by 86400.
-                                    // There are more subtle elements of horology to consider, but this should be good enough.
-
-                                    // The difficulty is identifying a date cell. The only way is to check style (attribute "s").
-                                    // See https://www.brendanlong.com/the-minimum-viable-xlsx-reader.html
-                                    // At a minimum, we could check all pre-defined data styles: 14-22, 45-47
-                                    // It appears that MS Excel won't store negative date numbers. Instead, the value is stored as a string.
-
-                                    v = XMLutility.getChild (c, "v");
-                                    if (v == null) continue;  // Sometimes a cell exists in the XML file but has not value.
-                                    double d = Double.valueOf (v.getTextContent ());
-                                    int s = XMLutility.getAttribute (c, "s", -1);
-                                    if (dateStyles.contains (s)) d = (d - 25569) * 86400;  // Convert from Excel time to Unix time.
-                                    if (d == 0) continue;  // should we also check for NAN?
-                                    N.set (ar, ac, d);
-                                    fillN++;
+                                XMLStreamReader reader = factory ().createXMLStreamReader (stream);
+                                while (reader.hasNext ())
+                                {
+                                    if (reader.next () != XMLStreamConstants.START_ELEMENT) continue;
+                                    String name = reader.getLocalName ();
+                                    if (name.equals ("sst"))
+                                    {
+                                        String uniqueCount = reader.getAttributeValue (null, "uniqueCount");
+                                        if (uniqueCount != null) strings = new ArrayList<String> (Integer.valueOf (uniqueCount));  // re-allocate array, now that we know the size
+                                    }
+                                    else if (name.equals ("si"))
+                                    {
+                                        strings.add (extractSI (reader));
+                                    }
+                                }
+                                reader.close ();
                             }
                         }
                     }
-
-                    // Check fill-in and possibly convert to dense
-                    int Nrows = N.rows ();
-                    int Ncols = N.columns ();
-                    int Srows = S.rows ();
-                    int Scols = S.columns ();
-                    ws.rows    = Math.max (Nrows, Srows);
-                    ws.columns = Math.max (Ncols, Scols);
-                    if ((double) fillN / (Nrows * Ncols) > fillThreshold) ws.numbers = new MatrixDense (N);
-                    if ((double) fillS / (Srows * Scols) > fillThreshold) ws.strings = new MatrixDense (S);
+                    catch (Exception e)
+                    {
+                        fail (e);
+                    }
                 }
-
-                ws = first;
-                ar = 0;
-                ac = 0;
-            }
-            catch (Exception e)
-            {
-                PrintStream err = Backend.err.get ();
-                err.println ("ERROR: Failed to parse spreadsheet file: " + path);
-                e.printStackTrace (err);
-                throw new Backend.AbortRun ();
             }
+            if (index < 0  ||  index >= strings.size ()) return "";
+            return strings.get (index);
         }
 
-        public static String extractSI (Node si)
+        /**
+            Collects the text of a string item (either "si" in the shared-string table or "is" in a cell).
+            On entry, the reader is positioned at the START_ELEMENT of the item. On exit, it is at the matching END_ELEMENT.
+            Phonetic runs are excluded, since they are only hints for pronunciation.
+        **/
+        public static String extractSI (XMLStreamReader reader) throws XMLStreamException
         {
-            String result = "";
-            for (Node n = si.getFirstChild (); n != null; n = n.getNextSibling ())
+            StringBuilder result = new StringBuilder ();
+            while (XMLutility.nextElement (reader))
             {
-                switch (n.getNodeName ())
+                switch (reader.getLocalName ())
                 {
                     case "t":  // simple text element
-                        result += n.getTextContent ();
+                        result.append (reader.getElementText ());
                         break;
                     case "r":  // rich text element
-                        for (Node m = n.getFirstChild (); m != null; m = m.getNextSibling ())
+                        while (XMLutility.nextElement (reader))
                         {
-                            if (m.getNodeName ().equals ("t")) result += m.getTextContent ();
+                            if (reader.getLocalName ().equals ("t")) result.append (reader.getElementText ());
+                            else                                     skip (reader);
                         }
+                        break;
+                    default:
+                        skip (reader);
                 }
             }
-            return result;
+            return result.toString ();
+        }
+
+        /**
+            Moves the reader from the START_ELEMENT of the current element to its matching END_ELEMENT.
+        **/
+        public static void skip (XMLStreamReader reader) throws XMLStreamException
+        {
+            int depth = 1;
+            while (depth > 0  &&  reader.hasNext ())
+            {
+                switch (reader.next ())
+                {
+                    case XMLStreamConstants.START_ELEMENT: depth++; break;
+                    case XMLStreamConstants.END_ELEMENT:   depth--;
+                }
+            }
+        }
+    }
+
+    /**
+        A cursor into a shared Workbook. Each user (simulator or importer) gets its own holder,
+        since the parse state below changes with every access.
+    **/
+    public static class Holder
+    {
+        protected Workbook wb;
+        protected String   cell; // The most recently parsed anchor cell address. Includes sheet name and coordinates.
+        protected Sheet    ws;   // anchor sheet
+        protected int      ar;   // anchor row
+        protected int      ac;   // anchor column
+
+        // May need to support merging spreadsheets, such that one overrides the other.
+        // Could take a list of files to load, in reverse precedence order.
+        public Holder (Path path)
+        {
+            wb = Workbook.get (path);
+            ws = wb.first;
         }
 
         public void parse (String cell)
@@ -372,9 +767,10 @@ public class Spreadsheet extends Function implements NonzeroIterable
                 coordinates = pieces[1];
             }
 
-            Sheet sheet = wb.get (sheetName);
-            if (sheet == null) ws = first;
+            Sheet sheet = wb.sheets.get (sheetName);
+            if (sheet == null) ws = wb.first;
             else               ws = sheet;
+            wb.load (ws);
             parseA1 (coordinates);
         }
 
@@ -419,7 +815,7 @@ public class Spreadsheet extends Function implements NonzeroIterable
             int result = 0;
             for (int r = ar; r < ws.rows; r++)
             {
-                if (ws.numbers.get (r, ac) == 0  &&  ws.strings.get (r, ac) == 0) break;
+                if (isEmpty (r, ac)) break;
                 result++;
             }
             return result;
@@ -431,12 +827,22 @@ public class Spreadsheet extends Function implements NonzeroIterable
             int result = 0;
             for (int c = ac; c < ws.columns; c++)
             {
-                if (ws.numbers.get (ar, c) == 0  &&  ws.strings.get (ar, c) == 0) break;
+                if (isEmpty (ar, c)) break;
                 result++;
             }
             return result;
         }
 
+        /**
+            Determines if the cell has neither a number nor a non-empty string.
+            Uses absolute coordinates within the current sheet.
+        **/
+        public boolean isEmpty (int r, int c)
+        {
+            if (ws.numbers.get (r, c) != 0) return false;
+            return getString (r, c).isEmpty ();
+        }
+
         public double getDouble (String cell, double row, double column)
         {
             parse (cell);
@@ -444,38 +850,14 @@ public class Spreadsheet extends Function implements NonzeroIterable
             column += ac;
             int r = (int) row;
             int c = (int) column;
-            Matrix A = ws.numbers;
-            double d00 = 0;  // Simpler to set zero here rather than in non-sparse case below, but this is minutely less efficient.
-            int rows = 0;  // Don't actually need to initialize, but this silences compiler.
-            int cols = 0;
-            if (A instanceof MatrixSparse)
-            {
-                d00 = A.get (r, c);
-            }
-            else
-            {
-                rows = A.rows ();
-                cols = A.columns ();
-                if (r >= 0  &&  r < rows  &&  c >= 0  &&  c < cols) d00 = A.get (r, c);
-            }
+            Cells A = ws.numbers;
+            double d00 = A.get (r, c);  // Returns 0 for any position outside the stored cells.
             if (r == row  &&  c == column) return d00;  // integer coordinates, so no need for interpolation
 
             // Interpolate data
-            double d01 = 0;
-            double d10 = 0;
-            double d11 = 0;
-            if (A instanceof MatrixSparse)
-            {
-                d01 = A.get (r,   c+1);
-                d10 = A.get (r+1, c  );
-                d11 = A.get (r+1, c+1);
-            }
-            else
-            {
-                if (r >=  0  &&  r < rows    &&  c >= -1  &&  c < cols-1) d01 = A.get (r,   c+1);
-                if (r >= -1  &&  r < rows-1  &&  c >=  0  &&  c < cols  ) d10 = A.get (r+1, c  );
-                if (r >= -1  &&  r < rows-1  &&  c >= -1  &&  c < cols-1) d11 = A.get (r+1, c+1);
-            }
+            double d01 = A.get (r,   c+1);
+            double d10 = A.get (r+1, c  );
+            double d11 = A.get (r+1, c+1);
             if (c >= ws.columns)
             {
                 d01 = d00;
@@ -496,16 +878,23 @@ public class Spreadsheet extends Function implements NonzeroIterable
         public String getString (String cell, int row, int column)
         {
             parse (cell);
-            row    += ar;
-            column += ac;
+            return getString (row + ar, column + ac);
+        }
+
+        /**
+            Retrieves string at absolute coordinates within the current sheet.
+        **/
+        public String getString (int row, int column)
+        {
             int index = (int) ws.strings.get (row, column);
             if (index == 0) return "";
-            return strings.get (index - 1);  // offset index back to zero-based
+            if (index < 0) return ws.localStrings.get (-index - 1);
+            return wb.sharedString (index - 1);  // offset index back to zero-based
         }
 
         public Set<String> worksheetNames ()
         {
-            return wb.keySet ();
+            return wb.sheets.keySet ();
         }
     }
 
@@ -603,8 +992,6 @@ public class Spreadsheet extends Function implements NonzeroIterable
         String cell = operands[1].getString ();  // This is required to be constant, so we can simply retrieve the string.
         H.parse (cell);
 
-        Matrix A = H.ws.numbers;
-        if (A instanceof MatrixSparse) return new IteratorSparse ((MatrixSparse) A, H.ar, H.ac);
-        return ((MatrixDense) A).getRegion (H.ar, H.ac).getIteratorNonzero ();
+        return H.ws.numbers.getIteratorNonzero (H.ar, H.ac);
     }
 }
@@ -10,7 +10,9 @@ import gov.sandia.n2a.backend.internal.Simulator;
 import gov.sandia.n2a.backend.internal.InstanceTemporaries;
 import gov.sandia.n2a.backend.internal.InternalBackendData;
 import gov.sandia.n2a.backend.internal.InternalBackend;
-import gov.sandia.n2a.backend.internal.Population;
+import gov.sandia.n2a.backend.internal.Part;
+import gov.sandia.n2a.backend.internal.Simulator.ConnectionListener;
+import gov.sandia.n2a.backend.internal.Wrapper;
 import gov.sandia.n2a.backend.xyce.netlist.Symbol;
 import gov.sandia.n2a.backend.xyce.netlist.XyceRenderer;
 import gov.sandia.n2a.db.MNode;
@@ -29,11 +31,14 @@ import gov.sandia.n2a.ui.jobs.NodeJob;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 class XyceBackend extends Backend
 {
@@ -70,8 +75,10 @@ class XyceBackend extends Backend
                     Path prnFile = jobDir.resolve ("out");  // "prn" doesn't work, at least on Windows
 
                     EquationSet digestedModel = new EquationSet (model);
-                    Simulator simulator = InternalBackend.constructStaticNetwork (digestedModel, null);
-                    analyze (digestedModel);
+                    InternalBackend.digestModel  (digestedModel);
+                    InternalBackend.prepareToRun (digestedModel);
+                    Map<EquationSet,XyceBackendData> backendData = new IdentityHashMap<EquationSet,XyceBackendData> ();
+                    analyze (digestedModel, backendData);
 
                     String duration = digestedModel.metadata.getOrDefault ("1.0", "duration");
                     job.set (duration, "duration");
@@ -84,7 +91,7 @@ class XyceBackend extends Backend
 
                     try (BufferedWriter writer = Files.newBufferedWriter (cirFile))
                     {
-                        generateNetlist (job, simulator, writer);
+                        generateNetlist (job, digestedModel, backendData, seed, writer);
                     }
 
                     PrintStream ps = Backend.err.get ();
@@ -133,24 +140,27 @@ class XyceBackend extends Backend
         return getSimTimeFromOutput (job, out, 1);
     }
 
-    public void analyze (EquationSet s)
+    public void analyze (EquationSet s, Map<EquationSet,XyceBackendData> backendData)
     {
-        for (EquationSet p : s.parts) analyze (p);
+        for (EquationSet p : s.parts) analyze (p, backendData);
         XyceBackendData bed = new XyceBackendData ();
         bed.internal = (InternalBackendData) s.backendData;
-        s.backendData = bed;
+        backendData.put (s, bed);
         bed.analyze (s);
     }
 
-    public void generateNetlist (MNode job, Simulator simulator, BufferedWriter writer) throws Exception
+    /**
+        Writes the netlist while Internal constructs the network.
+        Compartments must stay in memory because connections refer to them, but each connection
+        is written out as soon as it is created and then dropped. Connections make up the bulk
+        of most networks, so peak memory is roughly that of the compartments alone.
+    **/
+    public void generateNetlist (MNode job, EquationSet digestedModel, Map<EquationSet,XyceBackendData> backendData, long seed, final BufferedWriter writer) throws Exception
     {
-        Population toplevel = (Population) simulator.wrapper.valuesObject[0];
-        XyceRenderer renderer = new XyceRenderer (simulator);
-
         // Header
-        writer.append (toplevel.equations.name + "\n");
+        writer.append (digestedModel.name + "\n");
         writer.append ("\n");
-        writer.append ("* seed: " + job.get ("seed") + "\n");
+        writer.append ("* seed: " + seed + "\n");
         writer.append (".tran 0 " + job.get ("duration") + "\n");
 
         MNode integrator = job.child ("integrator");
@@ -165,79 +175,112 @@ class XyceBackend extends Backend
         }
 
         // Equations
+        final Simulator    simulator = new Simulator (new Wrapper (digestedModel), seed);
+        final XyceRenderer renderer  = new XyceRenderer (simulator, backendData);
+        simulator.threads = InternalBackend.getThreads (digestedModel);
+        simulator.connectionListener = new ConnectionListener ()
+        {
+            public boolean connected (Part c)
+            {
+                // Only stream connections that nothing else can refer to.
+                EquationSet s = c.equations;
+                InternalBackendData bed = (InternalBackendData) s.backendData;
+                if (! s.parts.isEmpty ()  ||  s.connected  ||  ! bed.eventTargets.isEmpty ()) return true;
+
+                try
+                {
+                    generateInstance (c, simulator, renderer, writer);
+                }
+                catch (IOException e)
+                {
+                    throw new Backend.AbortRun ("Failed to write netlist: " + e.getMessage ());
+                }
+                renderer.release (c);
+                return false;
+            }
+        };
+        simulator.init ();
+
+        // Write all the instances that remain in the simulator.
         for (Instance i : simulator)
         {
             if (i == simulator.wrapper) continue;
+            generateInstance (i, simulator, renderer, writer);
+        }
 
-            writer.append ("\n");
-            writer.append ("* " + i + "\n");
+        // Trailer
+        writer.append (".end\n");
+    }
 
-            renderer.pi         = i;
-            renderer.exceptions = null;
-            XyceBackendData bed = (XyceBackendData) i.equations.backendData;
+    public void generateInstance (Instance i, Simulator simulator, XyceRenderer renderer, BufferedWriter writer) throws IOException
+    {
+        writer.append ("\n");
+        writer.append ("* " + i + "\n");
 
-            if (bed.deviceSymbol != null)
-            {
-                writer.append (bed.deviceSymbol.getDefinition (renderer));
-            }
+        renderer.pi         = i;
+        renderer.exceptions = null;
+        XyceBackendData bed = renderer.getBackendData (i.equations);
 
-            InstanceTemporaries temp = new InstanceTemporaries (i, simulator, bed.internal);
-            for (final Variable v : i.equations.variables)
+        if (bed.deviceSymbol != null)
+        {
+            writer.append (bed.deviceSymbol.getDefinition (renderer));
+        }
+
+        InstanceTemporaries temp = new InstanceTemporaries (i, simulator, bed.internal);
+        for (final Variable v : i.equations.variables)
+        {
+            // Compute variable v
+            // TODO: how to switch between multiple conditions that can be true during normal operation? IE: how to make Xyce code conditional?
+            // Perhaps gate each condition (through a transistor?) and sum them at a single node.
+            EquationEntry e = v.select (temp);  // e can be null
+            Symbol def = bed.equationSymbols.get (e);
+            if (def == null) continue;
+            writer.append (def.getDefinition (renderer));
+
+            // Initial condition
+            // TODO: output an ".ic" line for any var with nonzero value (since they all just came from the init cycle)
+
+            // Trace
+            TraceFinder traceFinder = new TraceFinder ();
+            e.expression.visit (traceFinder);
+            for (Operator trace : traceFinder.traces)
             {
-                // Compute variable v
-                // TODO: how to switch between multiple conditions that can be true during normal operation? IE: how to make Xyce code conditional?
-                // Perhaps gate each condition (through a transistor?) and sum them at a single node.
-                EquationEntry e = v.select (temp);  // e can be null
-                Symbol def = bed.equationSymbols.get (e);
-                if (def == null) continue;
-                writer.append (def.getDefinition (renderer));
-
-                // Initial condition
-                // TODO: output an ".ic" line for any var with nonzero value (since they all just came from the init cycle)
-
-                // Trace
-                class TraceFinder implements Visitor
+                writer.append (".print tran {");  // We don't know if contents is .func, expression or a node, so always wrap in braces.
+                if (trace instanceof AccessVariable)
                 {
-                    List<Operator> traces = new ArrayList<Operator> ();
-                    public boolean visit (Operator op)
-                    {
-                        if (op instanceof Output)
-                        {
-                            traces.add (((Output) op).operands[1]);
-                            return false;
-                        }
-                        return true;
-                    }
+                    AccessVariable av = (AccessVariable) trace;
+                    writer.append (renderer.change (av.reference));
                 }
-                TraceFinder traceFinder = new TraceFinder ();
-                e.expression.visit (traceFinder);
-                for (Operator trace : traceFinder.traces)
+                else  // trace is an expression
                 {
-                    writer.append (".print tran {");  // We don't know if contents is .func, expression or a node, so always wrap in braces.
-                    if (trace instanceof AccessVariable)
+                    if (e.expression instanceof Output  &&  ((Output) e.expression).operands[1] == trace)  // this trace wraps the entire equation
                     {
-                        AccessVariable av = (AccessVariable) trace;
-                        writer.append (renderer.change (av.reference));
+                        // simply print the LHS variable, similar to the AccessVariable case above
+                        writer.append (renderer.change (v.reference));
                     }
-                    else  // trace is an expression
+                    else
                     {
-                        if (e.expression instanceof Output  &&  ((Output) e.expression).operands[1] == trace)  // this trace wraps the entire equation
-                        {
-                            // simply print the LHS variable, similar to the AccessVariable case above
-                            writer.append (renderer.change (v.reference));
-                        }
-                        else
-                        {
-                            // arbitrary expression
-                            writer.append (renderer.change (trace));
-                        }
+                        // arbitrary expression
+                        writer.append (renderer.change (trace));
                     }
-                    writer.append ("}\n");  // one .print line per variable
                 }
+                writer.append ("}\n");  // one .print line per variable
             }
         }
+    }
 
-        // Trailer
-        writer.append (".end\n");
+    public static class TraceFinder implements Visitor
+    {
+        public List<Operator> traces = new ArrayList<Operator> ();
+
+        public boolean visit (Operator op)
+        {
+            if (op instanceof Output)
+            {
+                traces.add (((Output) op).operands[1]);
+                return false;
+            }
+            return true;
+        }
     }
-}
\ No newline at end of file
+}
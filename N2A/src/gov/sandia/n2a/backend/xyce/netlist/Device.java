@@ -173,7 +173,7 @@ public class Device
             }
             else if (v != empty)
             {
-                nodeNames.add (getInstanceVarname (v.reference, renderer.pi));
+                nodeNames.add (getInstanceVarname (v.reference, renderer));
             }
         }
 
@@ -203,7 +203,7 @@ public class Device
         result.append (Xyceisms.defineYDeviceWithModel (device.getDeviceTypeName (),
                                                         eqSet.name,
                                                         nodeNames,
-                                                        renderer.pi.hashCode (),
+                                                        renderer.serial (renderer.pi),
                                                         modelName,
                                                         instanceParams));
 
@@ -231,19 +231,19 @@ public class Device
             {
                 inputEq = av;
             }
-            String eqName = Xyceisms.referenceVariable (v.name, renderer.pi.hashCode ());
-            String instanceVarName = getInstanceVarname (v.reference, renderer.pi);
+            String eqName = Xyceisms.referenceVariable (v.name, renderer.serial (renderer.pi));
+            String instanceVarName = getInstanceVarname (v.reference, renderer);
             result.append (Xyceisms.updateDiffEq (eqName, instanceVarName, renderer.change (inputEq)));
         }
 
         return result.toString ();
     }
 
-    public String getInstanceVarname (VariableReference r, Instance pi)
+    public String getInstanceVarname (VariableReference r, XyceRenderer renderer)
     {
-        Instance target = pi;
-        if (r.index >= 0) target = (Instance) pi.valuesObject[r.index];
-        return Xyceisms.referenceVariable (r.variable.name, target.hashCode ());
+        Instance target = renderer.pi;
+        if (r.index >= 0) target = (Instance) target.valuesObject[r.index];
+        return Xyceisms.referenceVariable (r.variable.name, renderer.serial (target));
     }
 
     public static boolean isXyceDevice (EquationSet s)
@@ -31,6 +31,6 @@ public class Symbol
     **/
     public String getReference (XyceRenderer renderer)
     {
-        return Xyceisms.referenceStateVar (eq.variable.name, renderer.pi.hashCode ());
+        return Xyceisms.referenceStateVar (eq.variable.name, renderer.serial (renderer.pi));
     }
 }
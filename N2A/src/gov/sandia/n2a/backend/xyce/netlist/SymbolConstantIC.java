@@ -21,7 +21,7 @@ public class SymbolConstantIC extends Symbol
     @Override
     public String getReference (XyceRenderer renderer) 
     {
-        return Xyceisms.referenceVariable (eq.variable.name, renderer.pi.hashCode ());
+        return Xyceisms.referenceVariable (eq.variable.name, renderer.serial (renderer.pi));
     }
 
     public String getDefinition (XyceRenderer renderer)
@@ -33,6 +33,6 @@ public class SymbolConstantIC extends Symbol
             Backend.err.get ().println ("unexpected evaluation result for " + eq.toString ());
             throw new Backend.AbortRun ();
         }
-        return Xyceisms.setInitialCondition (eq.variable.name, renderer.pi.hashCode (), ((Scalar) stored).value);
+        return Xyceisms.setInitialCondition (eq.variable.name, renderer.serial (renderer.pi), ((Scalar) stored).value);
     }
 }
@@ -56,9 +56,15 @@ public class SymbolFunc extends Symbol
         }
     }
 
+    /**
+        The body of a .func is written entirely in terms of formal arguments, so it is the same for
+        every instance of the part. Emit it once and let all instances reference the shared definition.
+    **/
     @Override
     public String getDefinition (XyceRenderer renderer) 
     {
+        if (! renderer.defined.add (eq)) return "";
+
         // use a set to avoid duplicate entries for variables that appear multiple times
         Set<String> formalArguments = new LinkedHashSet<String> ();
         for (VariableReference r : args) formalArguments.add (r.variable.name);
@@ -66,7 +72,7 @@ public class SymbolFunc extends Symbol
         // but Xyce doesn't understand 'trace', and XyceSimulation code handles the .print statement for any use of 'trace',
         // so just remove use of 'trace' while keeping any expression involved
         String RHS = eq.toString ().replaceAll ("trace", "");
-        return Xyceisms.defineFunction (eq.variable.name, renderer.pi.hashCode (), formalArguments, RHS);
+        return Xyceisms.defineFunction (eq.variable.name, renderer.serial (eq), formalArguments, RHS);
     }
 
     @Override
@@ -81,6 +87,6 @@ public class SymbolFunc extends Symbol
         {
             newArgs.add (renderer.change (r));
         }
-        return Xyceisms.referenceFunction (eq.variable.name, newArgs, renderer.pi.hashCode ());
+        return Xyceisms.referenceFunction (eq.variable.name, newArgs, renderer.serial (eq));
     }
 }
@@ -20,12 +20,12 @@ public class SymbolParam extends Symbol
     @Override
     public String getDefinition (XyceRenderer renderer) 
     {
-        return Xyceisms.param (eq.variable.name, renderer.pi.hashCode (), renderer.change (eq.expression));
+        return Xyceisms.param (eq.variable.name, renderer.serial (renderer.pi), renderer.change (eq.expression));
     }
 
     @Override
     public String getReference (XyceRenderer renderer)
     {
-        return Xyceisms.referenceVariable (eq.variable.name, renderer.pi.hashCode ());
+        return Xyceisms.referenceVariable (eq.variable.name, renderer.serial (renderer.pi));
     }
 }
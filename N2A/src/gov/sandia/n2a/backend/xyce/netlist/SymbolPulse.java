@@ -110,6 +110,6 @@ public class SymbolPulse extends Symbol
         params.add (renderer.change (width));
         params.add (renderer.change (period));
 
-        return Xyceisms.voltagePulse (eq.variable.name, renderer.pi.hashCode (), params);
+        return Xyceisms.voltagePulse (eq.variable.name, renderer.serial (renderer.pi), params);
     }
 }
@@ -44,6 +44,6 @@ public class SymbolSinewave extends Symbol
             params.add (renderer.change (sinewave.operands[a]));
         }
 
-        return Xyceisms.voltageSinWave (eq.variable.name, renderer.pi.hashCode (), params);
+        return Xyceisms.voltageSinWave (eq.variable.name, renderer.serial (renderer.pi), params);
     }
 }
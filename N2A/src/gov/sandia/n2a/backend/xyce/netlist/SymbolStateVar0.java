@@ -24,6 +24,6 @@ public class SymbolStateVar0 extends Symbol
     @Override
     public String getDefinition (XyceRenderer renderer)
     {
-        return Xyceisms.defineStateVar (eq.variable.name, renderer.pi.hashCode (), renderer.change (eq.expression));
+        return Xyceisms.defineStateVar (eq.variable.name, renderer.serial (renderer.pi), renderer.change (eq.expression));
     }
 }
@@ -28,14 +28,14 @@ public class SymbolStateVar1 extends Symbol
         VariableReference r = v.reference;
         if (r.index < 0)  // symbol is defined here; no += allowed within same part
         {
-            return Xyceisms.defineDiffEq (v.name, renderer.pi.hashCode (), translatedEq);
+            return Xyceisms.defineDiffEq (v.name, renderer.serial (renderer.pi), translatedEq);
         }
 
         // This symbol refers to a symbol in another part. We don't re-define the
         // variable, rather we create another diff eq that updates the existing one.
         Instance target = (Instance) renderer.pi.valuesObject[r.index];
-        String thisVarname = r.variable.name + "_" + target     .hashCode ();
-        String eqName      = v.name          + "_" + renderer.pi.hashCode ();
+        String thisVarname = r.variable.name + "_" + renderer.serial (target);
+        String eqName      = v.name          + "_" + renderer.serial (renderer.pi);
         return Xyceisms.updateDiffEq (eqName, thisVarname, translatedEq);
     }
 }
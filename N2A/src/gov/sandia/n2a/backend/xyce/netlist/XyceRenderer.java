@@ -8,6 +8,7 @@ package gov.sandia.n2a.backend.xyce.netlist;
 
 import gov.sandia.n2a.backend.internal.Simulator;
 import gov.sandia.n2a.backend.xyce.XyceBackendData;
+import gov.sandia.n2a.eqset.EquationSet;
 import gov.sandia.n2a.eqset.VariableReference;
 import gov.sandia.n2a.language.AccessVariable;
 import gov.sandia.n2a.language.Operator;
@@ -19,6 +20,11 @@ import gov.sandia.n2a.language.type.Instance;
 import gov.sandia.n2a.language.type.Scalar;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class XyceRenderer extends Renderer
 {
@@ -26,9 +32,60 @@ public class XyceRenderer extends Renderer
     public Instance                      pi;
     public Collection<VariableReference> exceptions;
 
-    public XyceRenderer (Simulator simulator)
+    // Shared by all renderers working on the same netlist
+    public Map<EquationSet,XyceBackendData> backendData;
+    public Map<Object,Integer>              serials;     // Number used to make symbol names unique for each instance, or for each shared definition.
+    public AtomicInteger                    nextSerial;
+    public Set<Object>                      defined;     // Shared definitions that have already been written to the netlist.
+
+    public XyceRenderer (Simulator simulator, Map<EquationSet,XyceBackendData> backendData)
+    {
+        this.simulator   = simulator;
+        this.backendData = backendData;
+        serials          = new IdentityHashMap<Object,Integer> ();
+        nextSerial       = new AtomicInteger ();
+        defined          = new HashSet<Object> ();
+    }
+
+    /**
+        Creates a renderer that works in a different context but shares all netlist-wide state with the given one.
+    **/
+    public XyceRenderer (XyceRenderer that)
+    {
+        simulator   = that.simulator;
+        backendData = that.backendData;
+        serials     = that.serials;
+        nextSerial  = that.nextSerial;
+        defined     = that.defined;
+    }
+
+    public XyceBackendData getBackendData (EquationSet s)
+    {
+        return backendData.get (s);
+    }
+
+    /**
+        Returns the serial number for the given object, assigning a new one if needed.
+        Unlike hashCode(), serial numbers are guaranteed unique within the netlist,
+        even after an instance is released and its memory reused.
+    **/
+    public int serial (Object o)
+    {
+        Integer result = serials.get (o);
+        if (result == null)
+        {
+            result = nextSerial.getAndIncrement ();
+            serials.put (o, result);
+        }
+        return result;
+    }
+
+    /**
+        Forget the serial number of an instance that has been completely written out and will not be referenced again.
+    **/
+    public void release (Object o)
     {
-        this.simulator = simulator;
+        serials.remove (o);
     }
 
     public boolean render (Operator op)
@@ -90,7 +147,7 @@ public class XyceRenderer extends Renderer
         if (r.index >= 0)
         {
             // Evaluate in referenced equation set's context
-            XyceRenderer context = new XyceRenderer (simulator);
+            XyceRenderer context = new XyceRenderer (this);
             context.pi = (Instance) pi.valuesObject[r.index];
             return context.change (r.variable.reference);   // this should be a self-reference within r.variable
         }
@@ -106,17 +163,17 @@ public class XyceRenderer extends Renderer
         if (r.variable.hasAttribute ("constant")) return r.variable.equations.first ().expression.toString ();
 
         // finally, actual translation of some user-defined symbol!
-        XyceBackendData bed = (XyceBackendData) pi.equations.backendData;
+        XyceBackendData bed = getBackendData (pi.equations);
         if (bed.deviceSymbol != null)  // A device may have some variable that require special handling
         {
             if (bed.deviceSymbol.ivars.containsKey (r.variable))
             {
                 // example n(y%synapse%syn_w), where 'w' is the varname passed in
-                return "n(y%" + bed.deviceSymbol.device.getDeviceTypeName () + "%" + pi.equations.name + "-" + pi.hashCode () + "_" + bed.deviceSymbol.ivars.get (r.variable) + ")";
+                return "n(y%" + bed.deviceSymbol.device.getDeviceTypeName () + "%" + pi.equations.name + "-" + serial (pi) + "_" + bed.deviceSymbol.ivars.get (r.variable) + ")";
             }
             if (bed.deviceSymbol.varnames.contains (r.variable))
             {
-                return Xyceisms.referenceStateVar (r.variable.name, pi.hashCode ());
+                return Xyceisms.referenceStateVar (r.variable.name, serial (pi));
             }
             // Any variables not in the above 2 categories fall through to regular processing ...
         }
@@ -88,6 +88,8 @@ public class EquationSet implements Comparable<EquationSet>
     public boolean                             lethalContainer;        // our parent could die
     public boolean                             referenced;             // Some other equation set writes to one of our variables. If we can die, then exercise care not to reuse this part while other parts are still writing to it. Otherwise our reincarnated part might get written with values from our previous life.
     public ConnectionMatrix                    connectionMatrix;       // If non-null, this is a connection whose existence depends primarily on elements of a matrix.
+    public int                                 connectionSkip = -2;    // If >= -1, connection candidates can be sampled by geometric skipping. -1 means $p is the same for every candidate. Otherwise, the index of the only endpoint that $p depends on.
+    public boolean                             connectionParallel;     // Candidate connections can be evaluated concurrently, because nothing $p depends on changes while connections are made.
     public Object                              backendData;            // holder for extra data associated with each equation set by a given backend
 
     public static final List<String> endpointSpecials = Arrays.asList ("$count", "$k", "$max", "$min", "$project", "$radius");  // $variables that appear after an endpoint identifier
@@ -5093,6 +5095,180 @@ public class EquationSet implements Comparable<EquationSet>
         });
     }
 
+    /**
+        Determines if $p is uniform across long runs of candidate connections, so that the backend can jump directly from one
+        accepted candidate to the next by drawing geometric gaps rather than testing every candidate. This requires $p to be
+        free of random draws and I/O, and to depend on at most one endpoint. Connections that limit their count or search
+        neighborhoods ($max, $min, $k, $radius) are excluded, as are those already handled by findConnectionMatrix().
+        Endpoint values that can change while connections are being made ($count, or anything written from outside the
+        endpoint, such as by the init of a new connection) also disqualify $p.
+        Skipping consumes random numbers differently than testing each candidate, so the resulting network differs from
+        the usual one for a given seed. For that reason it is opt-in, by setting $p's metadata key "skip".
+        Depends on results of: findConnectionMatrix()
+    **/
+    public void findConnectionSkip ()
+    {
+        for (EquationSet s : parts)
+        {
+            s.findConnectionSkip ();
+        }
+
+        if (connectionBindings == null) return;
+        if (connectionMatrix != null) return;
+        for (ConnectionBinding c : connectionBindings)
+        {
+            for (String special : Arrays.asList ("$max", "$min", "$k", "$radius"))
+            {
+                if (find (new Variable (c.alias + "." + special)) != null) return;
+            }
+        }
+
+        Variable p = find (new Variable ("$p"));
+        if (p == null)
+        {
+            connectionSkip = -1;  // Every candidate connects, so no random numbers are drawn either way.
+            return;
+        }
+        if (! p.metadata.getFlag ("skip")) return;
+
+        class DependencyVisitor implements Visitor
+        {
+            public Set<Variable> visited = new HashSet<Variable> ();
+            public Set<Integer>  bound   = new TreeSet<Integer> ();
+            public boolean       failed;
+
+            public void check (Variable v)
+            {
+                if (! visited.add (v)) return;
+                for (EquationEntry e : v.equations)
+                {
+                    if (e.expression != null) e.expression.visit (this);
+                    if (e.condition  != null) e.condition .visit (this);
+                }
+            }
+
+            public boolean visit (Operator op)
+            {
+                if (failed) return false;
+                if (op instanceof Function  &&  ! ((Function) op).canBeInitOnly ())
+                {
+                    failed = true;  // Random draws, outputs, events and delays all break the uniformity of $p.
+                    return false;
+                }
+                if (op instanceof AccessVariable)
+                {
+                    VariableReference r = ((AccessVariable) op).reference;
+                    if (r == null  ||  r.variable == null)
+                    {
+                        failed = true;
+                        return false;
+                    }
+                    Variable v = r.variable;
+                    for (Object o : r.resolution)
+                    {
+                        if (! (o instanceof ConnectionBinding)) continue;
+                        bound.add (((ConnectionBinding) o).index);
+                        if (v.name.equals ("$count")  ||  v.hasAttribute ("externalWrite"))
+                        {
+                            failed = true;  // Changes during the connect pass.
+                            return false;
+                        }
+                    }
+                    if (v.container == p.container  &&  r.resolution.isEmpty ())
+                    {
+                        ConnectionBinding c = findConnection (v.nameString ());
+                        if (c != null) bound.add (c.index);
+                        else           check (v);
+                    }
+                    return false;
+                }
+                return true;
+            }
+        }
+        DependencyVisitor dv = new DependencyVisitor ();
+        dv.check (p);
+        if (dv.failed) return;
+        if (dv.bound.size () > 1) return;
+        if (dv.bound.isEmpty ()) connectionSkip = -1;
+        else                     connectionSkip = dv.bound.iterator ().next ();
+    }
+
+    /**
+        Determines if candidate connections can be evaluated concurrently, all against the network as it stood before
+        the connect pass. This holds when creating a connection can't change anything $p depends on. The values that
+        can change are the $count of an endpoint, anything written from outside its own part (such as by the init of
+        a new connection), and the $n of this connection population. Random draws are allowed, since the backend gives
+        each group of candidates its own stream. Connections that limit their count or search neighborhoods
+        ($max, $min, $k, $radius) are excluded, as are those handled by findConnectionMatrix().
+        Depends on results of: findConnectionMatrix()
+    **/
+    public void findConnectionParallel ()
+    {
+        for (EquationSet s : parts)
+        {
+            s.findConnectionParallel ();
+        }
+
+        if (connectionBindings == null) return;
+        if (connectionMatrix != null) return;
+        for (ConnectionBinding c : connectionBindings)
+        {
+            for (String special : Arrays.asList ("$max", "$min", "$k", "$radius"))
+            {
+                if (find (new Variable (c.alias + "." + special)) != null) return;
+            }
+        }
+
+        Variable p = find (new Variable ("$p"));
+        if (p == null)
+        {
+            connectionParallel = true;
+            return;
+        }
+
+        class DependencyVisitor implements Visitor
+        {
+            public Set<Variable> visited = new HashSet<Variable> ();
+            public boolean       failed;
+
+            public void check (Variable v)
+            {
+                if (! visited.add (v)) return;
+                if (v.name.equals ("$count")  ||  v.hasAttribute ("externalWrite")  ||  v.name.equals ("$n")  &&  v.container == p.container)
+                {
+                    failed = true;  // Changes during the connect pass.
+                    return;
+                }
+                if (v.container != p.container) return;  // Values in other parts are stored, so their equations don't run while $p is evaluated.
+                for (EquationEntry e : v.equations)
+                {
+                    if (e.expression != null) e.expression.visit (this);
+                    if (e.condition  != null) e.condition .visit (this);
+                }
+            }
+
+            public boolean visit (Operator op)
+            {
+                if (failed) return false;
+                if (op instanceof AccessVariable)
+                {
+                    VariableReference r = ((AccessVariable) op).reference;
+                    if (r == null  ||  r.variable == null)
+                    {
+                        failed = true;
+                        return false;
+                    }
+                    check (r.variable);
+                    return false;
+                }
+                return true;
+            }
+        }
+        DependencyVisitor dv = new DependencyVisitor ();
+        dv.check (p);
+        connectionParallel = ! dv.failed;
+    }
+
     public int compareTo (EquationSet that)
     {
         return name.compareTo (that.name);
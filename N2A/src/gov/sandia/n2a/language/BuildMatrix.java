@@ -64,6 +64,7 @@ public class BuildMatrix extends Operator
             int columns = operands.length;
             if (columns == 0) return result;
             int rows = operands[0].length;
+            result.operands = new Operator[columns][rows];  // clone() only made a shallow copy of the array, so it would still be shared with the original.
             for (int c = 0; c < columns; c++)
             {
                 for (int r = 0; r < rows; r++)
@@ -65,6 +65,15 @@ public class Constant extends Operator
         }
     }
 
+    public Operator deepCopy ()
+    {
+        Constant result = (Constant) super.deepCopy ();
+        // Some analysis steps write directly into a scalar value (for example, Equality.getIndex()).
+        // Other types are never modified in place, so they can be shared.
+        if (value instanceof Scalar) result.value = new Scalar (((Scalar) value).value);
+        return result;
+    }
+
     /**
         Constants are constructed so that "center" points to the most-significant bit of the value.
 
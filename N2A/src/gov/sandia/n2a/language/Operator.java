@@ -93,7 +93,9 @@ import gov.sandia.n2a.language.type.Instance;
 import gov.sandia.n2a.language.type.Scalar;
 import gov.sandia.n2a.plugins.ExtensionPoint;
 import gov.sandia.n2a.plugins.PluginManager;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 
 import javax.measure.Unit;
@@ -531,11 +533,54 @@ public class Operator implements Cloneable
         for (ExtensionPoint e : extensions) register ((Factory) e);
     }
 
+    /**
+        Parsed form of recently-seen expression strings, shared by the whole JVM.
+        Each entry is a prototype that is never handed out directly. Callers get a deep copy,
+        which they are free to modify. Only successful parses are kept.
+        Bounded in size, with least-recently-used entries dropped first.
+    **/
+    @SuppressWarnings("serial")
+    public static Map<String,Operator> parseCache = new LinkedHashMap<String,Operator> (1024, 0.75f, true)
+    {
+        protected boolean removeEldestEntry (Map.Entry<String,Operator> eldest)
+        {
+            return size () > parseCacheLimit;
+        }
+    };
+    public static int  parseCacheLimit = 100000;
+    public static long parseHits;
+    public static long parseMisses;
+
     public static Operator parse (String line) throws Exception
     {
+        // ExpressionParser.namedUnits changes how units are resolved (used by NeuroML import), so results are not interchangeable.
+        boolean cache = ExpressionParser.namedUnits == null;
+        if (cache)
+        {
+            synchronized (parseCache)
+            {
+                Operator prototype = parseCache.get (line);
+                if (prototype != null)
+                {
+                    parseHits++;
+                    return prototype.deepCopy ();
+                }
+                parseMisses++;
+            }
+        }
+
         try
         {
-            return getFrom (ExpressionParser.parse (line));
+            Operator result = getFrom (ExpressionParser.parse (line));
+            if (cache)
+            {
+                synchronized (parseCache)
+                {
+                    parseCache.put (line, result);
+                }
+                result = result.deepCopy ();
+            }
+            return result;
         }
         catch (Exception e)
         {
@@ -550,6 +595,18 @@ public class Operator implements Cloneable
         }
     }
 
+    /**
+        Summarizes parse cache activity since the JVM started, for reporting alongside digest time.
+        Counts are JVM-wide, so they include every job that has run in this process.
+    **/
+    public static String parseCacheStats ()
+    {
+        synchronized (parseCache)
+        {
+            return "parse cache " + parseCache.size () + " entries, " + parseHits + " hits, " + parseMisses + " misses";
+        }
+    }
+
     public static Operator getFrom (SimpleNode node) throws Exception
     {
         Operator result;
@@ -6,7 +6,9 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.language;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,6 +35,9 @@ public class UnitValue
     public static UnitFormat    UCUM          = ServiceProvider.current ().getFormatService ().getUnitFormat ("UCUM");
     public static Unit<?>       seconds       = UCUM.parse ("s");
 
+    protected static Map<String,Unit<?>>  parsedUnits     = new ConcurrentHashMap<String,Unit<?>> ();
+    protected static Map<Unit<?>,Unit<?>> simplifiedUnits = new ConcurrentHashMap<Unit<?>,Unit<?>> ();
+
     // Allow empty constructor
     public UnitValue ()
     {
@@ -57,7 +62,7 @@ public class UnitValue
         }
         if (! unitString.isEmpty ())
         {
-            try {unit = UCUM.parse (unitString);}
+            try {unit = parseUnit (unitString);}
             catch (Exception e) {}
         }
     }
@@ -67,7 +72,7 @@ public class UnitValue
         this.value = value;
         if (! unitString.isEmpty ())
         {
-            try {unit = UCUM.parse (unitString);}
+            try {unit = parseUnit (unitString);}
             catch (Exception e) {}
         }
     }
@@ -84,11 +89,31 @@ public class UnitValue
         return unit.getConverterTo ((Unit) systemUnit).convert (value);
     }
 
+    /**
+        Same as UCUM.parse(), but remembers the result. Unit strings recur constantly across
+        equations and across repeated digests of the same model, and UCUM parsing is relatively slow.
+        Only successful parses are memoized, so an error is thrown again on every attempt.
+    **/
+    public static Unit<?> parseUnit (String unitString)
+    {
+        Unit<?> result = parsedUnits.get (unitString);
+        if (result != null) return result;
+        result = UCUM.parse (unitString);
+        parsedUnits.put (unitString, result);
+        return result;
+    }
+
     public static Unit<?> simplify (Unit<?> unit)
     {
+        Unit<?> result = simplifiedUnits.get (unit);
+        if (result != null) return result;
+
         Set<? extends Unit<?>> set = systemOfUnits.getUnits (unit.getDimension ());
-        if (! set.isEmpty ()) unit = set.iterator ().next ();  // Get first (arbitrary) built-in unit with matching dimensions.
-        return unit.getSystemUnit ();
+        result = unit;
+        if (! set.isEmpty ()) result = set.iterator ().next ();  // Get first (arbitrary) built-in unit with matching dimensions.
+        result = result.getSystemUnit ();
+        simplifiedUnits.put (unit, result);
+        return result;
     }
 
     public static int findUnits (String value)
@@ -89,8 +89,8 @@ public class Delay extends Function
 
     public static class DelayBuffer
     {
-        double value;  // Return value is not strictly immutable, but generally treated that way, so we will use this repeatedly.
-        NavigableMap<Double,Double> buffer = new TreeMap<Double,Double> ();
+        public double                      value;  // Return value is not strictly immutable, but generally treated that way, so we will use this repeatedly.
+        public NavigableMap<Double,Double> buffer = new TreeMap<Double,Double> ();
 
         public void step (double now, double delay, double value)
         {
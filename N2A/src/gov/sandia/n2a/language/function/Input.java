@@ -10,6 +10,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -126,6 +127,7 @@ public class Input extends Function
         public char                delimiter = ' ';            // Regular expression for separator character. Allows switch between comma and space/tab.
         public boolean             delimiterSet;               // Indicates that check for CSV has been performed. Avoids constant re-checking.
         public double              epsilon;
+        public long                linesRead;                  // Number of lines consumed from stream. Lets a checkpoint reopen the file at the same position.
 
         public static Holder get (Simulator simulator, String path, boolean time) throws IOException
         {
@@ -159,6 +161,19 @@ public class Input extends Function
             catch (IOException e) {}
         }
 
+        /**
+            Opens the given file and moves past the given number of lines, in preparation for restoring the rest of
+            this holder's state from a checkpoint.
+        **/
+        public void reopen (Path file, long lines) throws IOException
+        {
+            stream = Files.newBufferedReader (file);
+            for (linesRead = 0; linesRead < lines; linesRead++)
+            {
+                if (stream.readLine () == null) throw new IOException ("Input file is shorter than when the checkpoint was written: " + file);
+            }
+        }
+
         public void getRow (double requested) throws IOException
         {
             while (true)
@@ -167,6 +182,7 @@ public class Input extends Function
                 if (Double.isNaN (nextLine)  &&  stream.ready ())
                 {
                     String line = stream.readLine ();
+                    if (line != null) linesRead++;
                     if (line != null  &&  ! line.isEmpty ())
                     {
                         char chars[] = line.toCharArray ();
@@ -6,12 +6,14 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.language.function;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
+import gov.sandia.n2a.backend.internal.SharedResources;
 import gov.sandia.n2a.backend.internal.Simulator;
 import gov.sandia.n2a.db.MDoc;
 import gov.sandia.n2a.db.MNode;
@@ -82,8 +84,8 @@ public class Mfile extends Function
     public static class Holder
     {
         protected MNode                    doc;
-        protected Map<String,Matrix>       matrices  = new HashMap<String,Matrix> ();
-        protected Map<String,List<String>> childKeys = new HashMap<String,List<String>> ();
+        protected Map<String,Matrix>       matrices  = new ConcurrentHashMap<String,Matrix> ();
+        protected Map<String,List<String>> childKeys = new ConcurrentHashMap<String,List<String>> ();
 
         public static Holder get (Simulator simulator, String path)
         {
@@ -91,8 +93,16 @@ public class Mfile extends Function
             Object o = simulator.holders.get (path);
             if (o == null)
             {
-                result = new Holder ();
-                result.doc = new MDoc (simulator.jobDir.resolve (path));
+                // The doc is only read, and the two maps are memos of it, so one holder can serve every simulator.
+                result = (Holder) SharedResources.acquire (simulator, "mfile", simulator.jobDir.resolve (path), new SharedResources.Loader ()
+                {
+                    public Object load (Path file)
+                    {
+                        Holder h = new Holder ();
+                        h.doc = new MDoc (file);
+                        return h;
+                    }
+                });
                 simulator.holders.put (path, result);
             }
             else if (! (o instanceof Holder))
@@ -122,6 +132,7 @@ public class Mfile extends Function
                     S.set (r, c, col.getDouble ());
                 }
             }
+            S.pack ();  // Shared between jobs, so drop spare capacity.
             matrices.put (key, S);
             return S;
         }
@@ -6,6 +6,7 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.language.function;
 
+import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -123,8 +124,17 @@ public class Output extends Function
         public double              t;
         public PrintStream         out;
         public boolean             raw;                                            // Indicates that column is an exact index.
+        public Path                target;                                         // File that out writes to, or null if out is shared with the simulator.
 
         public Holder (Simulator simulator, String path)
+        {
+            this (simulator, path, false);
+        }
+
+        /**
+            @param append Continue an existing file rather than replacing it. Used when resuming from a checkpoint.
+        **/
+        public Holder (Simulator simulator, String path, boolean append)
         {
             if (path.isEmpty ())
             {
@@ -140,19 +150,20 @@ public class Output extends Function
                     // jobDir. A sub-directory of jobDir is (currently) not visible in the jobs tab,
                     // so flatten the path. OTOH, a path to an external dir that does exist indicates
                     // that the user really wants the output to go to a special location.
-                    Path target = simulator.jobDir.resolve (path);
+                    target = simulator.jobDir.resolve (path);
                     if (! Files.exists (target.getParent ()))
                     {
                         path = path.replace ("/", "_");
                         path = path.replace ("\\", "_");
                         target = simulator.jobDir.resolve (path);
                     }
-                    out = new PrintStream (target.toFile (), "UTF-8");
+                    out = new PrintStream (new FileOutputStream (target.toFile (), append), false, "UTF-8");
                 }
                 catch (Exception e)
                 {
                     out = simulator.out;
                     path = "out";
+                    target = null;
                 }
             }
             columnMode = new MDoc (simulator.jobDir.resolve (path + ".columns"));
@@ -6,6 +6,9 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.language.function;
 
+import java.nio.file.Path;
+
+import gov.sandia.n2a.backend.internal.SharedResources;
 import gov.sandia.n2a.backend.internal.Simulator;
 import gov.sandia.n2a.eqset.EquationSet.ExponentContext;
 import gov.sandia.n2a.language.Function;
@@ -81,7 +84,13 @@ public class ReadMatrix extends Function
         Object A = simulator.holders.get (path);
         if (A == null)
         {
-            A = Matrix.factory (simulator.jobDir.resolve (path));
+            A = SharedResources.acquire (simulator, "matrix", Backend.resolveResource (simulator.jobDir, path), new SharedResources.Loader ()
+            {
+                public Object load (Path file)
+                {
+                    return Matrix.factory (file);
+                }
+            });
             simulator.holders.put (path, A);
         }
         else if (! (A instanceof Matrix))
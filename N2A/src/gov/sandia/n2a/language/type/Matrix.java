@@ -15,6 +15,7 @@ import java.util.Iterator;
 
 import gov.sandia.n2a.language.EvaluationException;
 import gov.sandia.n2a.language.Type;
+import gov.sandia.n2a.linear.MatrixBinary;
 import gov.sandia.n2a.linear.MatrixDense;
 import gov.sandia.n2a.linear.MatrixSparse;
 
@@ -27,6 +28,8 @@ public abstract class Matrix extends Type
 
     public static Matrix factory (Path path) throws EvaluationException
     {
+        if (MatrixBinary.isBinary (path)) return MatrixBinary.read (path);
+
         try (BufferedReader reader = Files.newBufferedReader (path))
         {
             char buffer[] = new char[10];
@@ -0,0 +1,179 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.linear;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+    Inner loops for MatrixDense, specialized for the case where elements of a column are contiguous (strideR == 1).
+    Each loop is written as a plain unit-stride pass over arrays, which is the form the JIT compiler
+    turns into SIMD instructions. Callers fall back on their general strided loops when any operand
+    is not contiguous.
+    With the exception of the reductions dot() and sumSquares()/sumAbs(), every kernel performs exactly the
+    same floating-point operations in the same order as the strided loops, so results are bit-identical.
+    The reductions use several independent accumulators, which changes rounding in the last few bits.
+**/
+public class KernelDense
+{
+    public static boolean enabled           = true;  // Set false to force the general strided loops, for example to compare performance.
+    public static int     blockRows         = 256;   // Rows of A processed together in gemm(). Together with blockDepth, sized so one tile of A stays in L2 cache.
+    public static int     blockDepth        = 64;    // Columns of A (rows of B) processed together in gemm().
+    public static long    parallelThreshold = 1L << 22;  // Multiply-adds in a product before gemm() splits it across the common fork-join pool.
+
+    public static void add (double[] a, int ao, double[] b, int bo, double[] c, int co, int n)
+    {
+        for (int i = 0; i < n; i++) c[co+i] = a[ao+i] + b[bo+i];
+    }
+
+    public static void add (double[] a, int ao, double s, double[] c, int co, int n)
+    {
+        for (int i = 0; i < n; i++) c[co+i] = a[ao+i] + s;
+    }
+
+    public static void multiply (double[] a, int ao, double[] b, int bo, double[] c, int co, int n)
+    {
+        for (int i = 0; i < n; i++) c[co+i] = a[ao+i] * b[bo+i];
+    }
+
+    public static void multiply (double[] a, int ao, double s, double[] c, int co, int n)
+    {
+        for (int i = 0; i < n; i++) c[co+i] = a[ao+i] * s;
+    }
+
+    /**
+        y += alpha * x
+    **/
+    public static void axpy (double alpha, double[] x, int xo, double[] y, int yo, int n)
+    {
+        for (int i = 0; i < n; i++) y[yo+i] += alpha * x[xo+i];
+    }
+
+    public static double dot (double[] a, int ao, double[] b, int bo, int n)
+    {
+        double s0 = 0;
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        int i = 0;
+        int end = n - 3;
+        for (; i < end; i += 4)
+        {
+            s0 += a[ao+i  ] * b[bo+i  ];
+            s1 += a[ao+i+1] * b[bo+i+1];
+            s2 += a[ao+i+2] * b[bo+i+2];
+            s3 += a[ao+i+3] * b[bo+i+3];
+        }
+        for (; i < n; i++) s0 += a[ao+i] * b[bo+i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static double sumSquares (double[] a, int ao, int n)
+    {
+        return dot (a, ao, a, ao, n);
+    }
+
+    public static double sumAbs (double[] a, int ao, int n)
+    {
+        double s0 = 0;
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        int i = 0;
+        int end = n - 3;
+        for (; i < end; i += 4)
+        {
+            s0 += Math.abs (a[ao+i  ]);
+            s1 += Math.abs (a[ao+i+1]);
+            s2 += Math.abs (a[ao+i+2]);
+            s3 += Math.abs (a[ao+i+3]);
+        }
+        for (; i < n; i++) s0 += Math.abs (a[ao+i]);
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+        C = A * B, where A is h by m and B is m by w, both with contiguous columns.
+        C must be freshly allocated (all zeros) with strideR == 1 and strideC == h.
+        Each column of C is accumulated as a sequence of axpy operations over columns of A,
+        blocked so that a tile of A is reused across all columns of C while it is in cache.
+        The terms of each element are still added in order of increasing index, the same as the strided loop.
+    **/
+    public static void gemm (MatrixDense A, MatrixDense B, MatrixDense C, int m)
+    {
+        int h = C.rows;
+        int w = C.columns;
+        if (w > 1  &&  (long) h * w * m >= parallelThreshold  &&  ForkJoinPool.getCommonPoolParallelism () > 1)
+        {
+            ForkJoinPool.commonPool ().invoke (new GemmTask (A, B, C, m, 0, w));
+        }
+        else
+        {
+            gemm (A, B, C, m, 0, w);
+        }
+    }
+
+    /**
+        Computes columns [first,last) of C.
+    **/
+    public static void gemm (MatrixDense A, MatrixDense B, MatrixDense C, int m, int first, int last)
+    {
+        int h = C.rows;
+        for (int i = 0; i < h; i += blockRows)
+        {
+            int n = Math.min (blockRows, h - i);
+            for (int k = 0; k < m; k += blockDepth)
+            {
+                int kEnd = Math.min (m, k + blockDepth);
+                for (int j = first; j < last; j++)
+                {
+                    int c = j * h + i;
+                    int b = B.offset + j * B.strideC + k;
+                    int a = A.offset + k * A.strideC + i;
+                    for (int p = k; p < kEnd; p++)
+                    {
+                        axpy (B.data[b++], A.data, a, C.data, c, n);
+                        a += A.strideC;
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    public static class GemmTask extends RecursiveAction
+    {
+        public MatrixDense A;
+        public MatrixDense B;
+        public MatrixDense C;
+        public int         m;
+        public int         first;
+        public int         last;
+
+        public GemmTask (MatrixDense A, MatrixDense B, MatrixDense C, int m, int first, int last)
+        {
+            this.A     = A;
+            this.B     = B;
+            this.C     = C;
+            this.m     = m;
+            this.first = first;
+            this.last  = last;
+        }
+
+        protected void compute ()
+        {
+            int w = last - first;
+            if (w < 2  ||  (long) C.rows * w * m < parallelThreshold / 4)
+            {
+                gemm (A, B, C, m, first, last);
+                return;
+            }
+            int middle = first + w / 2;
+            invokeAll (new GemmTask (A, B, C, m, first, middle), new GemmTask (A, B, C, m, middle, last));
+        }
+    }
+}
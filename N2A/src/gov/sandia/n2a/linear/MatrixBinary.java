@@ -0,0 +1,232 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.linear;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import gov.sandia.n2a.language.EvaluationException;
+import gov.sandia.n2a.language.type.Matrix;
+import gov.sandia.n2a.language.type.Matrix.IteratorNonzero;
+
+/**
+    Binary matrix file, read through a memory map rather than parsed.
+    All values are little-endian. The header is 32 bytes:
+    <pre>
+    char[4] magic   "N2AB"
+    int32   version 1
+    int32   type    0 = dense, 1 = sparse
+    int32   rows
+    int32   columns
+    int32   reserved, 0
+    int64   count   number of stored elements
+    </pre>
+    Dense data follows as count = rows * columns float64 in column-major order.
+    Sparse data is compressed-column (CSC): int64 start[columns+1] giving the offset of each column,
+    then int32 row[count] in ascending order within each column, then zero padding to a multiple
+    of 8 bytes, then float64 value[count].
+    The C runtime reads the same format, so one file can serve both backends.
+**/
+public class MatrixBinary
+{
+    public static final byte[] MAGIC   = {'N', '2', 'A', 'B'};
+    public static final int    VERSION = 1;
+    public static final int    DENSE   = 0;
+    public static final int    SPARSE  = 1;
+    public static final int    HEADER  = 32;
+
+    /**
+        Checks the magic string at the start of the stream. Consumes the first few bytes,
+        so caller should open a fresh stream for any subsequent read.
+    **/
+    public static boolean isBinary (InputStream stream) throws IOException
+    {
+        byte[] buffer = new byte[MAGIC.length];
+        int count = stream.readNBytes (buffer, 0, buffer.length);
+        return count == buffer.length  &&  Arrays.equals (buffer, MAGIC);
+    }
+
+    public static Matrix read (Path path) throws EvaluationException
+    {
+        try (FileChannel channel = FileChannel.open (path, StandardOpenOption.READ))
+        {
+            ByteBuffer header = map (channel, 0, HEADER);
+            if (header.getInt (4) != VERSION) throw new EvaluationException ("Unsupported version of binary matrix file: " + path);
+            int  type    = header.getInt  (8);
+            int  rows    = header.getInt  (12);
+            int  columns = header.getInt  (16);
+            long count   = header.getLong (24);
+
+            if (type == DENSE)
+            {
+                if (count != (long) rows * columns  ||  count > Integer.MAX_VALUE) throw new EvaluationException ("Ill-formed dense matrix in file: " + path);
+                double[] data = new double[(int) count];
+                map (channel, HEADER, count * 8).asDoubleBuffer ().get (data);  // Bulk copy. MatrixDense requires a Java array.
+                return new MatrixDense (data, 0, rows, columns, 1, rows);
+            }
+            if (type == SPARSE)
+            {
+                // The mapped regions remain valid after the channel closes.
+                long position = HEADER;
+                LongBuffer start = map (channel, position, (columns + 1) * 8L).asLongBuffer ();
+                position += (columns + 1) * 8L;
+                IntBuffer row = map (channel, position, count * 4).asIntBuffer ();
+                position += (count * 4 + 7) / 8 * 8;
+                DoubleBuffer value = map (channel, position, count * 8).asDoubleBuffer ();
+                if (start.get (columns) != count) throw new EvaluationException ("Ill-formed sparse matrix in file: " + path);
+                return new MatrixMapped (rows, columns, start, row, value);
+            }
+            throw new EvaluationException ("Unknown type of binary matrix file: " + path);
+        }
+        catch (IOException e)
+        {
+            throw new EvaluationException ("Can't open matrix file");
+        }
+    }
+
+    protected static ByteBuffer map (FileChannel channel, long position, long size) throws IOException
+    {
+        if (size > Integer.MAX_VALUE) throw new EvaluationException ("Matrix section exceeds 2GB");
+        return channel.map (FileChannel.MapMode.READ_ONLY, position, size).order (ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+        Writes A in binary form. Matrices that provide their own sparse iterator (MatrixSparse, MatrixMapped)
+        are written in sparse form. Everything else is written dense.
+    **/
+    public static void write (Matrix A, Path path) throws IOException
+    {
+        int rows    = A.rows ();
+        int columns = A.columns ();
+        boolean sparse = A instanceof MatrixSparse  ||  A instanceof MatrixMapped;
+
+        try (FileChannel channel = FileChannel.open (path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            if (! sparse)
+            {
+                long count = (long) rows * columns;
+                writeHeader (channel, DENSE, rows, columns, count);
+                ByteBuffer buffer = allocate (columns == 0 ? 0 : rows * 8);
+                for (int c = 0; c < columns; c++)
+                {
+                    buffer.clear ();
+                    for (int r = 0; r < rows; r++) buffer.putDouble (A.get (r, c));
+                    buffer.flip ();
+                    while (buffer.hasRemaining ()) channel.write (buffer);
+                }
+                return;
+            }
+
+            // First pass counts nonzeros in each column. Second pass fills them in.
+            long[] start = new long[columns + 1];
+            IteratorNonzero it = A.getIteratorNonzero ();
+            while (it.hasNext ())
+            {
+                it.next ();
+                start[it.getColumn () + 1]++;
+            }
+            for (int c = 0; c < columns; c++) start[c+1] += start[c];
+            long count = start[columns];
+            if (count * 8 > Integer.MAX_VALUE) throw new EvaluationException ("Matrix section exceeds 2GB");
+
+            int[]    row   = new int   [(int) count];
+            double[] value = new double[(int) count];
+            int[]    fill  = new int   [columns];
+            it = A.getIteratorNonzero ();
+            while (it.hasNext ())
+            {
+                double v = it.next ();
+                int c = it.getColumn ();
+                int i = (int) start[c] + fill[c]++;
+                row  [i] = it.getRow ();
+                value[i] = v;
+            }
+
+            // Rows within a column may arrive in any order (for example, from a hash map), so sort each column.
+            for (int c = 0; c < columns; c++)
+            {
+                int begin = (int) start[c];
+                int n     = (int) start[c+1] - begin;
+                if (n < 2) continue;
+                long[] keys = new long[n];
+                for (int k = 0; k < n; k++) keys[k] = (long) row[begin+k] << 32 | k;
+                Arrays.sort (keys);
+                double[] sorted = new double[n];
+                for (int k = 0; k < n; k++)
+                {
+                    row   [begin+k] = (int) (keys[k] >>> 32);
+                    sorted[k]       = value[begin + (int) keys[k]];
+                }
+                System.arraycopy (sorted, 0, value, begin, n);
+            }
+
+            writeHeader (channel, SPARSE, rows, columns, count);
+
+            ByteBuffer buffer = allocate (start.length * 8);
+            for (long s : start) buffer.putLong (s);
+            write (channel, buffer);
+
+            buffer = allocate ((int) ((count * 4 + 7) / 8 * 8));
+            for (int r : row) buffer.putInt (r);
+            buffer.position (buffer.capacity ());  // zero padding
+            write (channel, buffer);
+
+            buffer = allocate ((int) count * 8);
+            for (double v : value) buffer.putDouble (v);
+            write (channel, buffer);
+        }
+    }
+
+    protected static void writeHeader (FileChannel channel, int type, int rows, int columns, long count) throws IOException
+    {
+        ByteBuffer header = allocate (HEADER);
+        header.put     (MAGIC);
+        header.putInt  (VERSION);
+        header.putInt  (type);
+        header.putInt  (rows);
+        header.putInt  (columns);
+        header.putInt  (0);
+        header.putLong (count);
+        write (channel, header);
+    }
+
+    protected static ByteBuffer allocate (int size)
+    {
+        return ByteBuffer.allocate (size).order (ByteOrder.LITTLE_ENDIAN);
+    }
+
+    protected static void write (FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip ();
+        while (buffer.hasRemaining ()) channel.write (buffer);
+    }
+
+    /**
+        @return true if the file starts with the binary matrix header. false if it does not, or can't be read.
+    **/
+    public static boolean isBinary (Path path)
+    {
+        try (InputStream stream = Files.newInputStream (path))
+        {
+            return isBinary (stream);
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+}
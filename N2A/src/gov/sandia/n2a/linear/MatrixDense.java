@@ -355,6 +355,22 @@ public class MatrixDense extends Matrix
             int oh = Math.min (rows,    B.rows);
             int ow = Math.min (columns, B.columns);
             MatrixDense result = new MatrixDense (rows, columns);
+            if (KernelDense.enabled  &&  strideR == 1  &&  B.strideR == 1)
+            {
+                for (int c = 0; c < columns; c++)
+                {
+                    int a = offset + c * strideC;
+                    int r = c * rows;
+                    int n = 0;
+                    if (c < ow)
+                    {
+                        n = oh;
+                        KernelDense.add (data, a, B.data, B.offset + c * B.strideC, result.data, r, n);
+                    }
+                    System.arraycopy (data, a + n, result.data, r + n, rows - n);
+                }
+                return result;
+            }
             int stepA =   strideC - rows *   strideR;
             int stepB = B.strideC - oh   * B.strideR;
             int a =   offset;
@@ -436,6 +452,11 @@ public class MatrixDense extends Matrix
     public MatrixDense add (double that)
     {
         MatrixDense result = new MatrixDense (rows, columns);
+        if (KernelDense.enabled  &&  strideR == 1)
+        {
+            for (int c = 0; c < columns; c++) KernelDense.add (data, offset + c * strideC, that, result.data, c * rows, rows);
+            return result;
+        }
         int step = strideC - rows * strideR;
         int i = offset;
         int r = 0;
@@ -570,6 +591,11 @@ public class MatrixDense extends Matrix
             int w = B.columns;
             int m = Math.min (columns, B.rows);
             MatrixDense result = new MatrixDense (h, w);
+            if (KernelDense.enabled  &&  strideR == 1  &&  B.strideR == 1)
+            {
+                KernelDense.gemm (this, B, result, m);
+                return result;
+            }
             int b = B.offset;
             int r = 0;
             int end = rows * B.columns;
@@ -632,6 +658,11 @@ public class MatrixDense extends Matrix
     public MatrixDense multiply (double scalar)
     {
         MatrixDense result = new MatrixDense (rows, columns);
+        if (KernelDense.enabled  &&  strideR == 1)
+        {
+            for (int c = 0; c < columns; c++) KernelDense.multiply (data, offset + c * strideC, scalar, result.data, c * rows, rows);
+            return result;
+        }
         int step = strideC - rows * strideR;
         int i   = offset;
         int r   = 0;
@@ -657,6 +688,22 @@ public class MatrixDense extends Matrix
             int oh = Math.min (rows,    B.rows);
             int ow = Math.min (columns, B.columns);
             MatrixDense result = new MatrixDense (rows, columns);
+            if (KernelDense.enabled  &&  strideR == 1  &&  B.strideR == 1)
+            {
+                for (int c = 0; c < columns; c++)
+                {
+                    int a = offset + c * strideC;
+                    int r = c * rows;
+                    int n = 0;
+                    if (c < ow)
+                    {
+                        n = oh;
+                        KernelDense.multiply (data, a, B.data, B.offset + c * B.strideC, result.data, r, n);
+                    }
+                    System.arraycopy (data, a + n, result.data, r + n, rows - n);
+                }
+                return result;
+            }
             int stepA =   strideC - rows *   strideR;
             int stepB = B.strideC - oh   * B.strideR;
             int a =   offset;
@@ -1151,6 +1198,11 @@ public class MatrixDense extends Matrix
         }
         else if (n == 1)
         {
+            if (KernelDense.enabled  &&  strideR == 1)
+            {
+                for (int c = 0; c < columns; c++) result += KernelDense.sumAbs (data, offset + c * strideC, rows);
+                return result;
+            }
             while (r < end)
             {
                 int columnEnd = r + rows;
@@ -1165,6 +1217,11 @@ public class MatrixDense extends Matrix
         }
         else if (n == 2)
         {
+            if (KernelDense.enabled  &&  strideR == 1)
+            {
+                for (int c = 0; c < columns; c++) result += KernelDense.sumSquares (data, offset + c * strideC, rows);
+                return Math.sqrt (result);
+            }
             while (r < end)
             {
                 int columnEnd = r + rows;
@@ -1225,6 +1282,7 @@ public class MatrixDense extends Matrix
         if (that instanceof MatrixDense)
         {
             MatrixDense B = (MatrixDense) that;
+            if (KernelDense.enabled  &&  strideR == 1  &&  B.strideR == 1) return KernelDense.dot (data, offset, B.data, B.offset, m);
             int b = B.offset;
             while (a != end)
             {
@@ -1271,6 +1329,11 @@ public class MatrixDense extends Matrix
                     int a = k * (strideC + strideR);  // on diagonal
                     double e = X.data[kj] /= data[a];  // solve for element ij
                     // Apply effect of solved element to rest of column.
+                    if (KernelDense.enabled  &&  strideR == 1)  // X is always contiguous, since we just created it.
+                    {
+                        KernelDense.axpy (-e, data, a + 1, X.data, kj + 1, d - k - 1);
+                        continue;
+                    }
                     a += strideR;
                     int ij  = kj + X.strideR;
                     int end = d * X.strideR + j * X.strideC;
@@ -1293,6 +1356,11 @@ public class MatrixDense extends Matrix
                     if (X.data[kj] == 0) continue;
                     int a = k * (strideC + strideR);  // on diagonal
                     double e = X.data[kj] /= data[a];
+                    if (KernelDense.enabled  &&  strideR == 1)
+                    {
+                        KernelDense.axpy (-e, data, a - k, X.data, kj - k, k);
+                        continue;
+                    }
                     a -= strideR;
                     int ij  = kj - X.strideR;
                     int end = j * X.strideC - X.strideR;
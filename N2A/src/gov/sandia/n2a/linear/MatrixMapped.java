@@ -0,0 +1,132 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.linear;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import gov.sandia.n2a.language.EvaluationException;
+import gov.sandia.n2a.language.type.Matrix;
+
+/**
+    Read-only sparse matrix in compressed-column form, backed directly by a memory-mapped file.
+    See MatrixBinary for the file layout. Nothing is copied onto the heap, so a connection matrix
+    with hundreds of millions of entries costs only what the OS chooses to keep paged in.
+    Element access is a binary search within the column. The main consumer is the nonzero
+    iterator, which simply walks the file in order.
+**/
+public class MatrixMapped extends Matrix
+{
+    protected int          rows;
+    protected int          columns;
+    protected LongBuffer   start;  // offset of first element in each column, plus one final entry for the total count
+    protected IntBuffer    row;
+    protected DoubleBuffer value;
+
+    public MatrixMapped (int rows, int columns, LongBuffer start, IntBuffer row, DoubleBuffer value)
+    {
+        this.rows    = rows;
+        this.columns = columns;
+        this.start   = start;
+        this.row     = row;
+        this.value   = value;
+    }
+
+    public int rows ()
+    {
+        return rows;
+    }
+
+    public int columns ()
+    {
+        return columns;
+    }
+
+    public double get (int r, int c)
+    {
+        if (c < 0  ||  c >= columns) return 0;
+        int lo = (int) start.get (c);
+        int hi = (int) start.get (c + 1) - 1;
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            int m   = row.get (mid);
+            if      (m < r) lo = mid + 1;
+            else if (m > r) hi = mid - 1;
+            else            return value.get (mid);
+        }
+        return 0;
+    }
+
+    public void set (int row, int column, double a)
+    {
+        throw new EvaluationException ("Matrix file is read-only");
+    }
+
+    public Matrix clear (double initialValue)
+    {
+        return new MatrixSparse (rows, columns, initialValue);
+    }
+
+    public Matrix identity ()
+    {
+        return new MatrixSparse (rows, columns).identity ();
+    }
+
+    public static class IteratorMapped implements IteratorNonzero
+    {
+        protected MatrixMapped A;
+        protected int          count;
+        protected int          next;        // index of next element
+        protected int          nextColumn;  // column of next element
+        protected int          row;
+        protected int          column;
+
+        public IteratorMapped (MatrixMapped A)
+        {
+            this.A = A;
+            count  = (int) A.start.get (A.columns);
+            advanceColumn ();
+        }
+
+        protected void advanceColumn ()
+        {
+            while (nextColumn < A.columns  &&  A.start.get (nextColumn + 1) <= next) nextColumn++;
+        }
+
+        public boolean hasNext ()
+        {
+            return next < count;
+        }
+
+        public Double next ()
+        {
+            if (next >= count) return null;
+            row    = A.row.get (next);
+            column = nextColumn;
+            double result = A.value.get (next++);
+            advanceColumn ();
+            return result;
+        }
+
+        public int getRow ()
+        {
+            return row;
+        }
+
+        public int getColumn ()
+        {
+            return column;
+        }
+    }
+
+    public IteratorNonzero getIteratorNonzero ()
+    {
+        return new IteratorMapped (this);
+    }
+}
@@ -9,22 +9,31 @@ package gov.sandia.n2a.linear;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map.Entry;
+import java.util.Arrays;
 
 import gov.sandia.n2a.language.EvaluationException;
+import gov.sandia.n2a.language.Type;
 import gov.sandia.n2a.language.type.Matrix;
 import gov.sandia.n2a.language.type.Scalar;
 import gov.sandia.n2a.language.type.Text;
 
+/**
+    Sparse matrix in compressed-column form.
+    Each column is a pair of primitive arrays: row numbers in ascending order, and the values at those rows.
+    This costs 12 bytes per element, plus some spare capacity while the matrix is being filled in,
+    and the nonzero iterator walks each column in row order.
+    Elements equal to emptyValue are not stored. Appending elements in column-major or row-major order is cheap.
+    Inserting into the middle of a long column shifts the rest of that column. To build a large matrix from
+    arbitrary (row, column, value) triplets, use the bulk constructor instead.
+**/
 public class MatrixSparse extends Matrix
 {
-    List<HashMap<Integer,Double>> data = new ArrayList<HashMap<Integer,Double>> ();
-    int    rowCount;  // Largest index seen in any column.
-    double emptyValue;
+    protected int        rowCount;     // Largest index seen in any column.
+    protected int        columnCount;
+    protected int[]      counts   = new int[0];       // Number of elements actually used in each column.
+    protected int[][]    rowIndex = new int[0][];
+    protected double[][] values   = new double[0][];
+    protected double     emptyValue;
 
     public MatrixSparse ()
     {
@@ -32,21 +41,21 @@ public class MatrixSparse extends Matrix
 
     public MatrixSparse (int rows, int columns)
     {
-        rowCount = rows;
-        for (int c = 0; c < columns; c++) data.add (null);
+        this (rows, columns, 0);
     }
 
     public MatrixSparse (int rows, int columns, double initialValue)
     {
         rowCount   = rows;
         emptyValue = initialValue;
-        for (int c = 0; c < columns; c++) data.add (null);
+        allocate (columns);
     }
 
     public MatrixSparse (Matrix A)
     {
         int columns = A.columns ();
         int rows    = A.rows ();
+        allocate (columns);
         for (int c = 0; c < columns; c++)
         {
             for (int r = 0; r < rows; r++)
@@ -56,6 +65,84 @@ public class MatrixSparse extends Matrix
         }
     }
 
+    /**
+        Bulk construction from coordinate (COO) form. Entries may come in any order.
+        If the same position appears more than once, the last value wins, just as with a sequence of set() calls.
+        Zero values are dropped. Each column is allocated at exactly its final size.
+        @param r Row of each entry. Only the first count elements are used.
+        @param c Column of each entry.
+        @param v Value of each entry.
+    **/
+    public MatrixSparse (int rows, int columns, int[] r, int[] c, double[] v, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            rows    = Math.max (rows,    r[i] + 1);
+            columns = Math.max (columns, c[i] + 1);
+        }
+        rowCount = rows;
+        allocate (columns);
+
+        // Distribute entries among columns, preserving input order within each column.
+        for (int i = 0; i < count; i++) counts[c[i]]++;
+        for (int j = 0; j < columns; j++)
+        {
+            int n = counts[j];
+            if (n == 0) continue;
+            rowIndex[j] = new int   [n];
+            values  [j] = new double[n];
+            counts  [j] = 0;
+        }
+        boolean[] unsorted = new boolean[columns];
+        for (int i = 0; i < count; i++)
+        {
+            int j = c[i];
+            int k = counts[j]++;
+            int[] R = rowIndex[j];
+            if (k > 0  &&  R[k-1] >= r[i]) unsorted[j] = true;
+            R        [k] = r[i];
+            values[j][k] = v[i];
+        }
+
+        for (int j = 0; j < columns; j++)
+        {
+            int[]    R = rowIndex[j];
+            double[] V = values[j];
+            int      n = counts[j];
+            if (n == 0) continue;
+            if (unsorted[j])
+            {
+                // Sort by row, with input order as the tie-breaker so the last duplicate can be kept.
+                long[] keys = new long[n];
+                for (int k = 0; k < n; k++) keys[k] = (long) R[k] << 32 | k;
+                Arrays.sort (keys);
+                double[] sorted = new double[n];
+                for (int k = 0; k < n; k++)
+                {
+                    R     [k] = (int) (keys[k] >>> 32);
+                    sorted[k] = V[(int) keys[k]];
+                }
+                V = values[j] = sorted;
+            }
+            // Collapse duplicates and remove zeros.
+            int m = 0;
+            for (int k = 0; k < n; k++)
+            {
+                if (k + 1 < n  &&  R[k+1] == R[k]) continue;
+                if (V[k] == 0) continue;
+                R[m] = R[k];
+                V[m] = V[k];
+                m++;
+            }
+            counts[j] = m;
+            if (m < n)
+            {
+                rowIndex[j] = m == 0 ? null : Arrays.copyOf (R, m);
+                values  [j] = m == 0 ? null : Arrays.copyOf (V, m);
+            }
+        }
+    }
+
     public MatrixSparse (BufferedReader reader)
     {
         load (reader);
@@ -81,8 +168,16 @@ public class MatrixSparse extends Matrix
         load (reader, false);
     }
 
+    /**
+        Reads triplets in the form "row,column,value", one per line, following a header line.
+        Entries are collected in coordinate form and then assembled in a single pass.
+    **/
     public void load (BufferedReader reader, boolean units) throws EvaluationException
     {
+        int[]    R     = new int   [1024];
+        int[]    C     = new int   [1024];
+        double[] V     = new double[1024];
+        int      count = 0;
         try
         {
             String line = reader.readLine ();  // Throw away "Sparse" line
@@ -93,16 +188,68 @@ public class MatrixSparse extends Matrix
                 line = line.trim ();
                 String[] pieces = line.split (",");
                 if (pieces.length < 3) continue;
-                int    r = Integer.valueOf (pieces[0].trim ());
-                int    c = Integer.valueOf (pieces[1].trim ());
-                double v = Double .valueOf (pieces[2].trim ());
-                set (r, c, v);
+                if (count == R.length)
+                {
+                    R = Arrays.copyOf (R, count * 2);
+                    C = Arrays.copyOf (C, count * 2);
+                    V = Arrays.copyOf (V, count * 2);
+                }
+                R[count] = Integer.valueOf (pieces[0].trim ());
+                C[count] = Integer.valueOf (pieces[1].trim ());
+                V[count] = Double .valueOf (pieces[2].trim ());
+                count++;
             }
         }
         catch (IOException error)
         {
             throw new EvaluationException ("Failed to convert input to matrix");
         }
+
+        MatrixSparse A = new MatrixSparse (rowCount, columnCount, R, C, V, count);
+        rowCount    = A.rowCount;
+        columnCount = A.columnCount;
+        counts      = A.counts;
+        rowIndex    = A.rowIndex;
+        values      = A.values;
+    }
+
+    /**
+        Ensures storage for at least the given number of columns, and extends the column count to match.
+    **/
+    protected void allocate (int columns)
+    {
+        if (columns > rowIndex.length)
+        {
+            int length = Math.max (columns, rowIndex.length * 2);
+            counts   = Arrays.copyOf (counts,   length);
+            rowIndex = Arrays.copyOf (rowIndex, length);
+            values   = Arrays.copyOf (values,   length);
+        }
+        columnCount = Math.max (columnCount, columns);
+    }
+
+    /**
+        Releases spare capacity left over from incremental construction.
+    **/
+    public void pack ()
+    {
+        counts   = Arrays.copyOf (counts,   columnCount);
+        rowIndex = Arrays.copyOf (rowIndex, columnCount);
+        values   = Arrays.copyOf (values,   columnCount);
+        for (int c = 0; c < columnCount; c++)
+        {
+            int n = counts[c];
+            if (n == 0)
+            {
+                rowIndex[c] = null;
+                values  [c] = null;
+            }
+            else if (n < rowIndex[c].length)
+            {
+                rowIndex[c] = Arrays.copyOf (rowIndex[c], n);
+                values  [c] = Arrays.copyOf (values  [c], n);
+            }
+        }
     }
 
     public int rows ()
@@ -112,31 +259,77 @@ public class MatrixSparse extends Matrix
 
     public int columns ()
     {
-        return data.size ();
+        return columnCount;
     }
 
-    public double get (int row, int column)
+    /**
+        @return Number of stored elements.
+    **/
+    public int size ()
     {
-        if (column >= data.size ()) return 0;
-        HashMap<Integer,Double> rows = data.get (column);
-        if (rows == null) return 0;
-        Double result = rows.get (row);
-        if (result == null) return 0;
+        int result = 0;
+        for (int c = 0; c < columnCount; c++) result += counts[c];
         return result;
     }
 
+    public double get (int row, int column)
+    {
+        if (column < 0  ||  column >= columnCount) return 0;
+        int[] R = rowIndex[column];
+        if (R == null) return 0;
+        int i = Arrays.binarySearch (R, 0, counts[column], row);
+        if (i < 0) return 0;
+        return values[column][i];
+    }
+
     public void set (int row, int column, double a)
     {
-        for (int c = data.size (); c <= column; c++) data.add (null);
-        HashMap<Integer,Double> rows = data.get (column);
-        if (rows == null)
+        allocate (column + 1);
+        rowCount = Math.max (rowCount, row + 1);  // Any set() will stretch matrix, even if emptyValue.
+
+        int[]    R     = rowIndex[column];
+        double[] V     = values[column];
+        int      count = counts[column];
+        int      i     = count;
+        if (count > 0  &&  R[count-1] >= row)
+        {
+            i = Arrays.binarySearch (R, 0, count, row);
+            if (i >= 0)
+            {
+                if (a == emptyValue)
+                {
+                    System.arraycopy (R, i + 1, R, i, count - i - 1);
+                    System.arraycopy (V, i + 1, V, i, count - i - 1);
+                    counts[column]--;
+                }
+                else
+                {
+                    V[i] = a;
+                }
+                return;
+            }
+            i = -i - 1;
+        }
+        if (a == emptyValue) return;
+
+        if (R == null)
         {
-            rows = new HashMap<Integer,Double> ();
-            data.set (column, rows);
+            R = rowIndex[column] = new int   [4];
+            V = values  [column] = new double[4];
         }
-        if (a == emptyValue) rows.remove (row);
-        else                 rows.put    (row, a);
-        rowCount = Math.max (rowCount, row + 1);  // Any set() will stretch matrix, even if emptyValue. 
+        else if (count == R.length)
+        {
+            R = rowIndex[column] = Arrays.copyOf (R, count * 2);
+            V = values  [column] = Arrays.copyOf (V, count * 2);
+        }
+        if (i < count)
+        {
+            System.arraycopy (R, i, R, i + 1, count - i);
+            System.arraycopy (V, i, V, i + 1, count - i);
+        }
+        R[i] = row;
+        V[i] = a;
+        counts[column]++;
     }
 
     public MatrixSparse clear (double initialValue)
@@ -159,12 +352,11 @@ public class MatrixSparse extends Matrix
 
     public boolean isZero ()
     {
-        for (HashMap<Integer,Double> c : data)
+        for (int c = 0; c < columnCount; c++)
         {
-            for (Double d : c.values ())
-            {
-                if (d != 0) return false;
-            }
+            double[] V = values[c];
+            int      n = counts[c];
+            for (int i = 0; i < n; i++) if (V[i] != 0) return false;
         }
         return true;
     }
@@ -173,26 +365,39 @@ public class MatrixSparse extends Matrix
     {
         if (that instanceof MatrixSparse)
         {
+            // Merge sorted columns.
             MatrixSparse B = (MatrixSparse) that;
-            int w  = columns ();
-            int h  = rows ();
-            int Bw = B.columns ();
-            MatrixSparse result = new MatrixSparse (h, w);
+            int w = Math.max (columnCount, B.columnCount);
+            MatrixSparse result = new MatrixSparse (Math.max (rowCount, B.rowCount), w);
             for (int c = 0; c < w; c++)
             {
-                HashMap<Integer,Double> rows = data.get (c);
-                if (rows == null) continue;
-                for (Entry<Integer,Double> row : rows.entrySet ()) result.set (row.getKey (), c, row.getValue ());
-            }
-            for (int c = 0; c < Bw; c++)
-            {
-                HashMap<Integer,Double> rows = B.data.get (c);
-                if (rows == null) continue;
-                for (Entry<Integer,Double> row : rows.entrySet ())
+                int      na = c <   columnCount ?   counts[c] : 0;
+                int      nb = c < B.columnCount ? B.counts[c] : 0;
+                if (na + nb == 0) continue;
+                int[]    Ra = na > 0 ?   rowIndex[c] : null;
+                int[]    Rb = nb > 0 ? B.rowIndex[c] : null;
+                double[] Va = na > 0 ?   values[c]   : null;
+                double[] Vb = nb > 0 ? B.values[c]   : null;
+                int[]    R  = new int   [na + nb];
+                double[] V  = new double[na + nb];
+                int i = 0;
+                int j = 0;
+                int k = 0;
+                while (i < na  ||  j < nb)
                 {
-                    int r = row.getKey ();
-                    result.set (r, c, result.get (r, c) + row.getValue ());
+                    int    r;
+                    double v;
+                    if      (j >= nb  ||  i < na  &&  Ra[i] < Rb[j]) {r = Ra[i]; v = Va[i++];}
+                    else if (i >= na  ||  Rb[j] < Ra[i])             {r = Rb[j]; v = Vb[j++];}
+                    else                                             {r = Ra[i]; v = Va[i++] + Vb[j++];}
+                    if (v == 0) continue;
+                    R[k] = r;
+                    V[k] = v;
+                    k++;
                 }
+                result.rowIndex[c] = R;
+                result.values  [c] = V;
+                result.counts  [c] = k;
             }
             return result;
         }
@@ -205,13 +410,15 @@ public class MatrixSparse extends Matrix
         MatrixDense result = new MatrixDense (h, w, emptyValue);
         for (int c = 0; c < w; c++)
         {
-            HashMap<Integer,Double> rows = data.get (c);
-            if (rows == null) continue;
-            for (Entry<Integer,Double> row : rows.entrySet ()) result.set (row.getKey (), c, row.getValue ());
+            int[]    R = rowIndex[c];
+            double[] V = values[c];
+            int      n = counts[c];
+            int      o = c * h;
+            for (int i = 0; i < n; i++) result.data[o + R[i]] = V[i];
         }
         for (int c = 0; c < ow; c++)
         {
-          for (int r = 0; r < oh; r++) result.set (r, c, result.get (r, c) + B.get (r, c));
+            for (int r = 0; r < oh; r++) result.data[c * h + r] += B.get (r, c);
         }
         return result;
     }
@@ -219,58 +426,124 @@ public class MatrixSparse extends Matrix
     public MatrixSparse add (Scalar that) throws EvaluationException
     {
         double scalar = ((Scalar) that).value;
-        int w = columns ();
-        int h = rows ();
-        MatrixSparse result = new MatrixSparse (h, w, emptyValue + scalar);
-        for (int c = 0; c < w; c++)
+        MatrixSparse result = new MatrixSparse (rowCount, columnCount, emptyValue + scalar);
+        for (int c = 0; c < columnCount; c++)
         {
-            HashMap<Integer,Double> rows = data.get (c);
-            if (rows == null) continue;
-            for (Entry<Integer,Double> row : rows.entrySet ()) result.set (row.getKey (), c, row.getValue () + scalar);
+            int[]    R = rowIndex[c];
+            double[] V = values[c];
+            int      n = counts[c];
+            for (int i = 0; i < n; i++) result.set (R[i], c, V[i] + scalar);
         }
         return result;
     }
 
+    /**
+        Sparse times dense produces a dense result, visiting only the stored elements of this matrix.
+        Each column of the result is accumulated as a sum of scaled columns of this matrix.
+    **/
+    public Matrix multiply (Type that) throws EvaluationException
+    {
+        if (that instanceof Scalar)
+        {
+            double scalar = ((Scalar) that).value;
+            MatrixSparse result = new MatrixSparse (rowCount, columnCount, emptyValue * scalar);
+            for (int c = 0; c < columnCount; c++)
+            {
+                int n = counts[c];
+                if (n == 0) continue;
+                double[] V = values[c];
+                double[] S = new double[n];
+                for (int i = 0; i < n; i++) S[i] = V[i] * scalar;
+                result.rowIndex[c] = Arrays.copyOf (rowIndex[c], n);
+                result.values  [c] = S;
+                result.counts  [c] = n;
+            }
+            return result;
+        }
+        if (that instanceof Matrix  &&  emptyValue == 0)
+        {
+            Matrix B = (Matrix) that;
+            int h = rowCount;
+            int w = B.columns ();
+            int m = Math.min (columnCount, B.rows ());
+            MatrixDense result = new MatrixDense (h, w);
+            for (int j = 0; j < w; j++)
+            {
+                int o = j * h;
+                for (int p = 0; p < m; p++)
+                {
+                    int n = counts[p];
+                    if (n == 0) continue;
+                    double b = B.get (p, j);
+                    if (b == 0) continue;
+                    int[]    R = rowIndex[p];
+                    double[] V = values[p];
+                    for (int i = 0; i < n; i++) result.data[o + R[i]] += V[i] * b;
+                }
+            }
+            return result;
+        }
+        return super.multiply (that);
+    }
+
     // TODO: Fill in other binary operations
 
     public MatrixSparse negate () throws EvaluationException
     {
-        int w = columns ();
-        int h = rows ();
-        MatrixSparse result = new MatrixSparse (h, w, -emptyValue);
-        for (int c = 0; c < w; c++)
+        MatrixSparse result = new MatrixSparse (rowCount, columnCount, -emptyValue);
+        for (int c = 0; c < columnCount; c++)
         {
-            HashMap<Integer,Double> rows = data.get (c);
-            if (rows == null) continue;
-            for (Entry<Integer,Double> row : rows.entrySet ()) result.set (row.getKey (), c, -row.getValue ());
+            int[]    R = rowIndex[c];
+            double[] V = values[c];
+            int      n = counts[c];
+            for (int i = 0; i < n; i++) result.set (R[i], c, -V[i]);
         }
         return result;
     }
 
     public MatrixSparse transpose ()
     {
-        int w = columns ();
-        int h = rows ();
-        MatrixSparse result = new MatrixSparse (w, h, emptyValue);
-        for (int c = 0; c < w; c++)
+        // Count elements in each row, then distribute. Columns are visited in order,
+        // so each row of the result receives its elements in ascending order.
+        MatrixSparse result = new MatrixSparse (columnCount, rowCount, emptyValue);
+        int[] rowCounts = new int[rowCount];
+        for (int c = 0; c < columnCount; c++)
+        {
+            int[] R = rowIndex[c];
+            int   n = counts[c];
+            for (int i = 0; i < n; i++) rowCounts[R[i]]++;
+        }
+        for (int r = 0; r < rowCount; r++)
         {
-            HashMap<Integer,Double> rows = data.get (c);
-            if (rows == null) continue;
-            for (Entry<Integer,Double> row : rows.entrySet ()) result.set (c, row.getKey (), row.getValue ());
+            if (rowCounts[r] == 0) continue;
+            result.rowIndex[r] = new int   [rowCounts[r]];
+            result.values  [r] = new double[rowCounts[r]];
+        }
+        for (int c = 0; c < columnCount; c++)
+        {
+            int[]    R = rowIndex[c];
+            double[] V = values[c];
+            int      n = counts[c];
+            for (int i = 0; i < n; i++)
+            {
+                int r = R[i];
+                int k = result.counts[r]++;
+                result.rowIndex[r][k] = c;
+                result.values  [r][k] = V[i];
+            }
         }
         return result;
     }
 
     public MatrixSparse visit (Visitor visitor)
     {
-        int w = columns ();
-        int h = rows ();
-        MatrixSparse result = new MatrixSparse (h, w, visitor.apply (emptyValue));
-        for (int c = 0; c < w; c++)
+        MatrixSparse result = new MatrixSparse (rowCount, columnCount, visitor.apply (emptyValue));
+        for (int c = 0; c < columnCount; c++)
         {
-            HashMap<Integer,Double> rows = data.get (c);
-            if (rows == null) continue;
-            for (Entry<Integer,Double> row : rows.entrySet ()) result.set (row.getKey (), c, visitor.apply (row.getValue ()));
+            int[]    R = rowIndex[c];
+            double[] V = values[c];
+            int      n = counts[c];
+            for (int i = 0; i < n; i++) result.set (R[i], c, visitor.apply (V[i]));
         }
         return result;
     }
@@ -285,10 +558,10 @@ public class MatrixSparse extends Matrix
         {
             for (int c = 0; c < w; c++)
             {
-                HashMap<Integer,Double> rows = data.get (c);
-                if (rows == null) continue;
-                emptyCount -= rows.size ();
-                for (Double v : rows.values ()) if (v != 0) result++;
+                double[] V     = values[c];
+                int      count = counts[c];
+                emptyCount -= count;
+                for (int i = 0; i < count; i++) if (V[i] != 0) result++;
             }
             result += emptyCount * emptyValue;
         }
@@ -296,10 +569,10 @@ public class MatrixSparse extends Matrix
         {
             for (int c = 0; c < w; c++)
             {
-                HashMap<Integer,Double> rows = data.get (c);
-                if (rows == null) continue;
-                emptyCount -= rows.size ();
-                for (Double v : rows.values ()) result += Math.abs (v);
+                double[] V     = values[c];
+                int      count = counts[c];
+                emptyCount -= count;
+                for (int i = 0; i < count; i++) result += Math.abs (V[i]);
             }
             result += emptyCount * Math.abs (emptyValue);
         }
@@ -307,10 +580,10 @@ public class MatrixSparse extends Matrix
         {
             for (int c = 0; c < w; c++)
             {
-                HashMap<Integer,Double> rows = data.get (c);
-                if (rows == null) continue;
-                emptyCount -= rows.size ();
-                for (Double v : rows.values ()) result += v * v;
+                double[] V     = values[c];
+                int      count = counts[c];
+                emptyCount -= count;
+                for (int i = 0; i < count; i++) result += V[i] * V[i];
             }
             result += emptyCount * emptyValue * emptyValue;
             result = Math.sqrt (result);
@@ -319,9 +592,9 @@ public class MatrixSparse extends Matrix
         {
             for (int c = 0; c < w; c++)
             {
-                HashMap<Integer,Double> rows = data.get (c);
-                if (rows == null) continue;
-                for (Double v : rows.values ()) result = Math.max (result, Math.abs (v));
+                double[] V     = values[c];
+                int      count = counts[c];
+                for (int i = 0; i < count; i++) result = Math.max (result, Math.abs (V[i]));
             }
             result = Math.max (result, Math.abs (emptyValue));
         }
@@ -329,10 +602,10 @@ public class MatrixSparse extends Matrix
         {
             for (int c = 0; c < w; c++)
             {
-                HashMap<Integer,Double> rows = data.get (c);
-                if (rows == null) continue;
-                emptyCount -= rows.size ();
-                for (Double v : rows.values ()) result += Math.pow (v, n);
+                double[] V     = values[c];
+                int      count = counts[c];
+                emptyCount -= count;
+                for (int i = 0; i < count; i++) result += Math.pow (V[i], n);
             }
             result += emptyCount * Math.pow (emptyValue, n);
             result = Math.pow (result, 1 / n);
@@ -340,26 +613,28 @@ public class MatrixSparse extends Matrix
         return result;
     }
 
+    /**
+        Visits stored elements in column-major order, with ascending rows within each column.
+    **/
     public static class IteratorSparse implements IteratorNonzero
     {
-        protected MatrixSparse                    A;
-        protected int                             columns;
-        protected int                             ar;  // anchor row, for iterating over region
-        protected int                             ac;  // anchor column
+        protected MatrixSparse A;
+        protected int          ar;  // anchor row, for iterating over region
+        protected int          ac;  // anchor column
 
-        protected Double                          nextValue;
-        protected int                             nextRow;
-        protected int                             nextColumn;
-        protected Iterator<Entry<Integer,Double>> it;
+        protected int          nextRow;
+        protected int          nextColumn;
+        protected int          nextIndex;  // position within current column
+        protected int          nextCount;  // end of current column
+        protected Double       nextValue;
 
-        protected Double                          value;
-        protected int                             row;
-        protected int                             column;
+        protected Double       value;
+        protected int          row;
+        protected int          column;
 
         public IteratorSparse (MatrixSparse A, int ar, int ac)
         {
             this.A     = A;
-            columns    = A.columns ();
             this.ar    = ar;
             this.ac    = ac;
             nextColumn = ac - 1;
@@ -370,22 +645,24 @@ public class MatrixSparse extends Matrix
         {
             while (true)
             {
-                while (it != null  &&  it.hasNext ())
+                if (nextIndex < nextCount)
                 {
-                    Entry<Integer,Double> e = it.next ();
-                    nextRow = e.getKey ();
-                    if (nextRow < ar) continue;
-                    nextValue = e.getValue ();
+                    nextRow   = A.rowIndex[nextColumn][nextIndex];
+                    nextValue = A.values  [nextColumn][nextIndex++];
                     return;
                 }
-                if (++nextColumn >= columns)
+                if (++nextColumn >= A.columnCount)
                 {
                     nextValue = null;
                     return;
                 }
-                HashMap<Integer,Double> rows = A.data.get (nextColumn);
-                if (rows == null) it = null;
-                else              it = rows.entrySet ().iterator ();
+                nextCount = A.counts[nextColumn];
+                nextIndex = 0;
+                if (nextCount > 0  &&  ar > 0)
+                {
+                    nextIndex = Arrays.binarySearch (A.rowIndex[nextColumn], 0, nextCount, ar);
+                    if (nextIndex < 0) nextIndex = -nextIndex - 1;
+                }
             }
         }
 
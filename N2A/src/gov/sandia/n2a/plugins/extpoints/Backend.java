@@ -14,9 +14,12 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.List;
+import gov.sandia.n2a.db.AppData;
 import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.db.MVolatile;
 import gov.sandia.n2a.host.Host;
 import gov.sandia.n2a.host.Host.ProcessInfo;
 import gov.sandia.n2a.plugins.ExtensionPoint;
@@ -203,7 +206,13 @@ public abstract class Backend implements ExtensionPoint
     public double currentSimTime (MNode job)
     {
         String out = getOutFileName (job);
-        return getSimTimeFromOutput (job, out, 0);
+        double result = getSimTimeFromOutput (job, out, 0);
+        if (result == 0)  // Model may not produce output frequently (or at all), so fall back on the metrics record.
+        {
+            MNode metrics = getMetrics (job);
+            if (metrics != null) result = metrics.getOrDefault (0.0, "t");
+        }
+        return result;
     }
 
     /**
@@ -346,4 +355,130 @@ public abstract class Backend implements ExtensionPoint
         catch (Exception e) {}
         return 0;
     }
+
+    /**
+        Directory for data that an importer generates along with a model, such as connection matrices.
+        Each model gets a subdirectory named after it, and refers to its files by a path relative to
+        this directory. See resolveResource().
+    **/
+    public static Path getModelResourceDir ()
+    {
+        return Paths.get (AppData.properties.get ("resourceDir")).resolve ("resources");
+    }
+
+    /**
+        Locates a data file named by a model. A relative path is first looked up in the job dir,
+        which is the working directory of a simulation. If it is not there, the path is looked up
+        in getModelResourceDir().
+    **/
+    public static Path resolveResource (Path jobDir, String path)
+    {
+        Path result = jobDir.resolve (path);
+        if (Files.exists (result)) return result;
+        Path resource = getModelResourceDir ().resolve (path);
+        if (Files.exists (resource)) return resource;
+        return result;
+    }
+
+    /**
+        Reads the most recent record from the "metrics" file in the job dir.
+        See gov.sandia.n2a.backend.internal.Metrics for the format.
+        @return The record as a tree, with nested JSON objects becoming children. null if no complete record is available.
+    **/
+    public static MNode getMetrics (MNode job)
+    {
+        try
+        {
+            Host env         = Host.get (job);
+            Path resourceDir = env.getResourceDir ();
+            Path jobDir      = Host.getJobDir (resourceDir, job);
+            return getMetrics (jobDir.resolve ("metrics"));
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+        @param path The "metrics" file in a job dir. If it doesn't exist, the job may have run as several
+        processes, in which case this reads "metrics.rank0". Rank 0 stands in for the whole job.
+        The other ranks' files remain in the job dir for closer inspection.
+    **/
+    public static MNode getMetrics (Path path)
+    {
+        if (! Files.exists (path))
+        {
+            Path rank0 = path.resolveSibling (path.getFileName () + ".rank0");
+            if (Files.exists (rank0)) path = rank0;
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel (path, StandardOpenOption.READ))
+        {
+            // Records are a few hundred bytes, unless the model has many part types.
+            long size = channel.size ();
+            int length = (int) Math.min (size, 65536);
+            channel.position (size - length);
+            ByteBuffer buffer = ByteBuffer.allocate (length);
+            while (buffer.hasRemaining ()  &&  channel.read (buffer) > 0) {}
+            String text = new String (buffer.array (), 0, buffer.position (), "UTF-8");
+
+            // The final line may be incomplete if the writer is in the middle of appending it.
+            int end = text.lastIndexOf ('\n');
+            if (end < 0) return null;
+            int begin = text.lastIndexOf ('\n', end - 1) + 1;
+            String line = text.substring (begin, end);
+            if (! line.startsWith ("{")) return null;
+
+            MNode result = new MVolatile ();
+            parseJSON (line, 0, result);
+            return result;
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+        Minimal reader for the flat JSON produced by metrics writers: objects, numbers and simple strings.
+        @return Position just past the end of the object that starts at pos.
+    **/
+    public static int parseJSON (String line, int pos, MNode result)
+    {
+        pos++;  // skip '{'
+        int length = line.length ();
+        while (pos < length)
+        {
+            char c = line.charAt (pos);
+            if (c == '}') return pos + 1;
+            if (c == ','  ||  c == ' ')
+            {
+                pos++;
+                continue;
+            }
+            if (c != '"') break;
+            int end = line.indexOf ('"', pos + 1);
+            String key = line.substring (pos + 1, end);
+            pos = line.indexOf (':', end) + 1;
+            c = line.charAt (pos);
+            if (c == '{')
+            {
+                pos = parseJSON (line, pos, result.childOrCreate (key));
+            }
+            else if (c == '"')
+            {
+                end = line.indexOf ('"', pos + 1);
+                result.set (line.substring (pos + 1, end), key);
+                pos = end + 1;
+            }
+            else
+            {
+                end = pos;
+                while (end < length  &&  ",}".indexOf (line.charAt (end)) < 0) end++;
+                result.set (line.substring (pos, end).trim (), key);
+                pos = end;
+            }
+        }
+        throw new IllegalArgumentException ("Malformed metrics record");
+    }
 }
@@ -0,0 +1,226 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.ui.jobs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.TreeMap;
+
+import gov.sandia.n2a.db.AppData;
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.host.Host;
+
+/**
+    Compact summary of every job, kept in a single append-only file beside the jobs directory.
+    At startup, PanelRun reads this rather than opening the MDoc of each job. Jobs that the catalog
+    shows as finished are restored directly from their entry and never handed to a host monitor,
+    so their MDoc is only loaded if the user actually looks at them.
+
+    Each line is one entry, with tab-separated fields in the order written by Entry.toString().
+    A later line for the same key supersedes earlier ones. A line holding only a key marks a deletion.
+    The catalog is only a cache. A job missing from it simply goes through the full load, and
+    an entry for a job that no longer exists on disk is dropped.
+**/
+public class JobCatalog
+{
+    protected static JobCatalog instance;
+
+    protected Path                  path;
+    protected TreeMap<String,Entry> entries = new TreeMap<String,Entry> ();
+    protected int                   lines;  // Number of lines in file, including superseded ones.
+
+    public static class Entry
+    {
+        public String key;
+        public double complete = -1;  // Same meaning as NodeJob.complete
+        public long   started;        // Unix time in milliseconds, or 0 if unknown.
+        public long   finished;
+        public String inherit  = "";
+        public String backend  = "";
+        public String host     = "";
+        public String study    = "";  // Key of the study that generated this job, or empty if it was launched directly.
+
+        public boolean isFinished ()
+        {
+            return complete >= 1  &&  complete != 3;
+        }
+
+        public static Entry parse (String line)
+        {
+            String[] pieces = line.split ("\t", -1);
+            Entry result = new Entry ();
+            result.key = pieces[0];
+            if (pieces.length < 8) return result;
+            try
+            {
+                result.complete = Double.valueOf (pieces[1]);
+                result.started  = Long.valueOf (pieces[2]);
+                result.finished = Long.valueOf (pieces[3]);
+            }
+            catch (NumberFormatException e) {}
+            result.inherit = pieces[4];
+            result.backend = pieces[5];
+            result.host    = pieces[6];
+            result.study   = pieces[7];
+            return result;
+        }
+
+        public String toString ()
+        {
+            return key + "\t" + complete + "\t" + started + "\t" + finished + "\t" + clean (inherit) + "\t" + clean (backend) + "\t" + clean (host) + "\t" + clean (study);
+        }
+
+        public static String clean (String value)
+        {
+            return value.replace ('\t', ' ').replace ('\n', ' ').replace ('\r', ' ');
+        }
+
+        public boolean equals (Object o)
+        {
+            if (! (o instanceof Entry)) return false;
+            return toString ().equals (o.toString ());
+        }
+
+        public int hashCode ()
+        {
+            return toString ().hashCode ();
+        }
+    }
+
+    public static synchronized JobCatalog get ()
+    {
+        if (instance == null) instance = new JobCatalog (Host.getLocalResourceDir ().resolve ("jobs.catalog"));
+        return instance;
+    }
+
+    public JobCatalog (Path path)
+    {
+        this.path = path;
+        if (! Files.exists (path)) return;
+        try (BufferedReader reader = Files.newBufferedReader (path))
+        {
+            String line;
+            while ((line = reader.readLine ()) != null)
+            {
+                if (line.isEmpty ()) continue;
+                lines++;
+                if (line.indexOf ('\t') < 0)
+                {
+                    entries.remove (line);
+                }
+                else
+                {
+                    Entry e = Entry.parse (line);
+                    entries.put (e.key, e);
+                }
+            }
+        }
+        catch (IOException e) {}
+    }
+
+    public synchronized Entry get (String key)
+    {
+        return entries.get (key);
+    }
+
+    /**
+        Drops entries for jobs that are no longer on disk, then rewrites the file if superseded lines dominate.
+        @param keys Every job that currently exists.
+    **/
+    public synchronized void retain (Set<String> keys)
+    {
+        entries.keySet ().retainAll (keys);
+        if (lines <= 2 * entries.size () + 64) return;
+
+        Path temp = path.resolveSibling ("jobs.catalog.new");
+        try (BufferedWriter writer = Files.newBufferedWriter (temp))
+        {
+            for (Entry e : entries.values ())
+            {
+                writer.write (e.toString ());
+                writer.newLine ();
+            }
+        }
+        catch (IOException e)
+        {
+            return;
+        }
+        try
+        {
+            Files.move (temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lines = entries.size ();
+        }
+        catch (IOException e) {}
+    }
+
+    /**
+        Records the current state of the given job, if it differs from the catalog.
+        Progress within a running job is not recorded, only the transition into running, so a long run adds
+        a line when it starts and another when it finishes, fails or dies, rather than one per progress update.
+        @param source The job record. The caller generally has this loaded already.
+    **/
+    public void update (NodeJob job, MNode source)
+    {
+        Entry e = new Entry ();
+        e.key = job.key;
+        synchronized (job)
+        {
+            e.complete = job.complete;
+            if (e.complete > 0  &&  e.complete < 1) e.complete = 0;  // Any fraction is simply "running".
+            if (job.dateStarted  != null) e.started  = job.dateStarted .getTime ();
+            if (job.dateFinished != null) e.finished = job.dateFinished.getTime ();
+            e.inherit = job.inherit;
+        }
+        e.backend = source.get ("backend");
+        e.host    = source.get ("host");
+
+        synchronized (this)
+        {
+            Entry old = entries.get (e.key);
+            if (old != null)
+            {
+                e.study = old.study;
+            }
+            else
+            {
+                // Study jobs are keyed as the study key followed by a sample index.
+                int position = e.key.lastIndexOf ('-');
+                if (position > 0)
+                {
+                    String study = e.key.substring (0, position);
+                    if (AppData.studies.child (study) != null) e.study = study;
+                }
+            }
+            if (e.equals (old)) return;
+            entries.put (e.key, e);
+            append (e.toString ());
+        }
+    }
+
+    public synchronized void remove (String key)
+    {
+        if (entries.remove (key) == null) return;
+        append (key);
+    }
+
+    protected void append (String line)
+    {
+        try (BufferedWriter writer = Files.newBufferedWriter (path, StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+        {
+            writer.write (line);
+            writer.newLine ();
+            lines++;
+        }
+        catch (IOException e) {}
+    }
+}
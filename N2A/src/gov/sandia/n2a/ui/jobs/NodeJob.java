@@ -144,6 +144,7 @@ public class NodeJob extends NodeBase
         MNode job = getSource ();
         if (job == null) return false;
         Path localJobDir = Host.getJobDir (Host.getLocalResourceDir (), job);
+        if (Files.exists (localJobDir.resolve ("snapshotRefs"))) return true;
         if (Files.exists (localJobDir.resolve ("snapshot"))) return true;
         if (Files.exists (localJobDir.resolve ("model"))) return true;
         return false;
@@ -161,7 +162,16 @@ public class NodeJob extends NodeBase
         Remove all files from the job dir except the main job file.
         This allows the job to restart cleanly, without file-creation conflicts.
     **/
-    public synchronized void reset ()
+    public void reset ()
+    {
+        reset (false);
+    }
+
+    /**
+        @param resume Keep the checkpoint and the output files it refers to, so the job can continue from where it stopped.
+        Only the "finished" marker is removed.
+    **/
+    public synchronized void reset (boolean resume)
     {
         // Reset variables to initial state.
         complete        = -1;
@@ -174,12 +184,14 @@ public class NodeJob extends NodeBase
         // Purge files
         Host localhost = Host.get ();
         MNode source = getSource ();
+        JobCatalog.get ().update (this, source);
         Path localJobDir = Host.getJobDir (Host.getLocalResourceDir (), source);
         try (DirectoryStream<Path> dirStream = Files.newDirectoryStream (localJobDir))
         {
             for (Path path : dirStream)
             {
                 if (path.endsWith ("job")) continue;
+                if (resume  &&  ! path.endsWith ("finished")) continue;
                 localhost.deleteTree (path);  // deleteTree() works for both files and dirs, and also absorbs most exceptions. 
             }
         }
@@ -189,6 +201,23 @@ public class NodeJob extends NodeBase
         if (! panelRun.tree.isCollapsed (new TreePath (getPath ()))) build (panelRun.tree);
     }
 
+    /**
+        Fills in display state from the job catalog, without touching the job record on disk.
+        Dates and status are only taken from a finished entry, since anything else will be refreshed by monitoring.
+    **/
+    public synchronized void restore (JobCatalog.Entry entry)
+    {
+        if (! entry.inherit.isEmpty ())
+        {
+            inherit = entry.inherit;
+            setUserObject (inherit);
+        }
+        if (! entry.isFinished ()) return;
+        complete = entry.complete;
+        if (entry.started  > 0) dateStarted  = new Date (entry.started);
+        if (entry.finished > 0) dateFinished = new Date (entry.finished);
+    }
+
     /**
         Load job data in and decide which host thread should monitor it.
     **/
@@ -233,9 +262,10 @@ public class NodeJob extends NodeBase
         }
 
         long started = source.getLong ("started");
+        if (started > 0) dateStarted = new Date (started);
+        JobCatalog.get ().update (this, source);
         if (started > 0)
         {
-            dateStarted = new Date (started);
             Host env = Host.get (source);
             env.monitor (this);
         }
@@ -418,6 +448,12 @@ public class NodeJob extends NodeBase
             if (! simulator.isAlive (source)) complete = 4;
         }
 
+        if (complete != oldComplete)
+        {
+            JobCatalog.get ().update (this, source);
+            notifyAll ();  // Wake any thread in waitForFinish().
+        }
+
         PanelRun   panelRun   = PanelRun.instance;
         PanelStudy panelStudy = PanelStudy.instance;
         if (panelRun == null) return;  // Probably running headless, so skip all UI updates.
@@ -461,6 +497,18 @@ public class NodeJob extends NodeBase
         MNode source = getSource ();
         Backend.getBackend (source.get ("backend")).kill (source, complete >= 3);
         if (complete < 3) complete = 3;
+        synchronized (this) {notifyAll ();}
+    }
+
+    /**
+        Blocks until this job finishes, fails or is killed, or until the given time passes.
+        Depends on some other thread calling monitorProgress(), which the host assignment thread does for every running job.
+        @return true if the job is done.
+    **/
+    public synchronized boolean waitForFinish (long milliseconds) throws InterruptedException
+    {
+        if (complete < 1) wait (milliseconds);
+        return complete >= 1;
     }
 
     /**
@@ -646,6 +694,7 @@ public class NodeJob extends NodeBase
             if (fileName.startsWith ("n2a_job" )) return false;
             if (fileName.equals     ("job"     )) return false;  // The primary record for the jobs repo.
             if (fileName.equals     ("snapshot")) return false;  // copy of models as they existed at start of job
+            if (fileName.equals     ("snapshotRefs")) return false;  // ditto, as references into SnapshotStore
             if (fileName.equals     ("model"   )) return false;  // ditto (old style)
             if (fileName.equals     ("started" )) return false;
             if (fileName.equals     ("finished")) return false;
@@ -656,7 +705,8 @@ public class NodeJob extends NodeBase
             if (pieces.length > 1) suffix = pieces[pieces.length-1].toLowerCase ();
 
             if (forbiddenSuffixes.contains (suffix)) return false;
-            if      (fileName.endsWith ("out"))       newNode = new NodeOutput (path);
+            if      (fileName.equals   ("profile")  ||  fileName.startsWith ("profile.rank")) newNode = new NodeProfile (path);
+            else if (fileName.endsWith ("out"))       newNode = new NodeOutput (path);
             else if (fileName.endsWith ("err"))       newNode = new NodeError  (path);
             else if (imageSuffixes.contains (suffix)) newNode = new NodeImage  (path);
             else if (videoSuffixes.contains (suffix)) newNode = new NodeVideo  (path);
@@ -686,13 +736,12 @@ public class NodeJob extends NodeBase
     {
         if (job == null) return null;
         Path localJobDir  = Host.getJobDir (Host.getLocalResourceDir (), job);
-        Path snapshotPath = localJobDir.resolve ("snapshot");
         Path modelPath    = localJobDir.resolve ("model");
         String key        = job.get ("$inherit");
 
-        if (Files.exists (snapshotPath))  // mini-repo snapshot
+        MNode snapshot = getSnapshot (localJobDir);
+        if (snapshot != null)  // mini-repo snapshot
         {
-            MNode snapshot = new MDoc (snapshotPath);  // Load the mini-repo
             return MPartSnapshot.from (key, snapshot);
         }
         if (Files.exists (modelPath))  // collated snapshot
@@ -703,6 +752,19 @@ public class NodeJob extends NodeBase
         return new MPart (AppData.docs.childOrEmpty ("models", key));
     }
 
+    /**
+        @return The mini-repo of models saved when the job started, or null if the job has no mini-repo.
+        The mini-repo is either a self-contained "snapshot" file or a set of references into SnapshotStore.
+    **/
+    public static MNode getSnapshot (Path localJobDir)
+    {
+        Path refsPath = localJobDir.resolve ("snapshotRefs");
+        if (Files.exists (refsPath)) return SnapshotStore.load (refsPath);
+        Path snapshotPath = localJobDir.resolve ("snapshot");
+        if (Files.exists (snapshotPath)) return new MDoc (snapshotPath);
+        return null;
+    }
+
     /**
         Writes the collated model to the local job directory.
         @param doc The main model (not collated). May be directly from the model DB, or a temporary node.
@@ -722,9 +784,26 @@ public class NodeJob extends NodeBase
         if (snapshotMode.startsWith ("All")) addInherits (doc, snapshot);
 
         // Write snapshot to disk
+        // Normally the documents go into the shared store, so that jobs with the same models share a single copy.
+        // A headless job dir may live outside the resource dir, where SnapshotStore.collect() can't see its references,
+        // so it gets a self-contained file instead.
+        Path localJobDir = Host.getJobDir (Host.getLocalResourceDir (), job);  // The path is also contained in the job MDoc node.
+        if (! AppData.properties.getBoolean ("headless"))
+        {
+            try
+            {
+                SnapshotStore.save (snapshot, localJobDir);
+                return;
+            }
+            catch (IOException e)
+            {
+                System.err.println ("Failed to write to snapshot store. Falling back to private snapshot file.");
+                e.printStackTrace ();
+            }
+        }
+
         // See MDoc.save () for similar code.
         // We don't create an MDoc here because it would require duplicating the snapshot in memory.
-        Path localJobDir = Host.getJobDir (Host.getLocalResourceDir (), job);  // The path is also contained in the job MDoc node.
         Path modelPath   = localJobDir.resolve ("snapshot");
         try (BufferedWriter writer = Files.newBufferedWriter (modelPath))
         {
@@ -0,0 +1,42 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.ui.jobs;
+
+import java.util.List;
+
+/**
+    Placeholder at the end of the Runs tree for older jobs that have not been added to the tree yet.
+    Selecting it adds the next page of jobs. See PanelRun.showMore()
+**/
+@SuppressWarnings("serial")
+public class NodeMore extends NodeBase
+{
+    public List<NodeJob> jobs;  // Jobs held back from the tree, most recent first.
+    public int           next;  // Position in jobs of the first one not yet shown.
+
+    public NodeMore (List<NodeJob> jobs)
+    {
+        this.jobs = jobs;
+    }
+
+    public int remaining ()
+    {
+        return jobs.size () - next;
+    }
+
+    @Override
+    public boolean isLeaf ()
+    {
+        return true;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return remaining () + " older runs (select to show more)";
+    }
+}
@@ -0,0 +1,208 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.ui.jobs;
+
+import java.awt.EventQueue;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+import javax.swing.JLabel;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import gov.sandia.n2a.ui.jobs.PanelRun.DisplayThread;
+
+/**
+    Timing report written by a C backend job with the "profile" flag set.
+    Each line of the file gives a region name, call count, total time and self time (seconds).
+    Region names have the form "part phase", so the display pivots them into one row per part
+    and one column per phase, showing self time. Rows are ordered by the sum of self time.
+**/
+@SuppressWarnings("serial")
+public class NodeProfile extends NodeFile
+{
+    public NodeProfile (Path path)
+    {
+        super (path);
+        priority = 1;
+        icon     = iconOut;
+        String name = path.getFileName ().toString ();
+        if (name.startsWith ("profile.rank")) setUserObject ("Profile (rank " + name.substring (12) + ")");
+        else                                  setUserObject ("Profile");
+    }
+
+    @Override
+    public boolean couldHaveColumns ()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isGraphable ()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean render (DisplayThread dt)
+    {
+        if (dt.viz.equals ("Text")) return false;
+
+        PanelRun pr = PanelRun.instance;
+        ProfileTableModel model = new ProfileTableModel ();
+        try
+        {
+            model.parse (path);
+        }
+        catch (IOException e)
+        {
+            return false;  // Fall back on plain text.
+        }
+        if (model.rows.isEmpty ()) return false;
+
+        EventQueue.invokeLater (new Runnable ()
+        {
+            public void run ()
+            {
+                synchronized (pr.displayPane)
+                {
+                    if (dt != pr.displayThread) return;
+                    JTable table = new JTable (model);
+                    table.setAutoResizeMode (JTable.AUTO_RESIZE_OFF);
+                    ((DefaultTableCellRenderer) table.getTableHeader ().getDefaultRenderer ()).setHorizontalAlignment (JLabel.LEFT);
+                    table.getColumnModel ().getColumn (0).setPreferredWidth (table.getFontMetrics (table.getFont ()).charWidth ('0') * model.partWidth);
+                    pr.displayChart.buttonBar.setVisible (false);
+                    pr.displayPane.setViewportView (table);
+                }
+            }
+        });
+        return true;
+    }
+
+    public static class Row
+    {
+        public String   part;
+        public double   self;   // Sum over all phases
+        public double[] phases;
+        public long[]   calls;
+    }
+
+    public static class ProfileTableModel extends AbstractTableModel
+    {
+        public List<String> phases = new ArrayList<String> ();
+        public List<Row>    rows   = new ArrayList<Row> ();
+        public int          partWidth;
+
+        public void parse (Path path) throws IOException
+        {
+            // First pass collects entries, since the full set of phases isn't known until the end.
+            TreeMap<String,TreeMap<String,double[]>> entries = new TreeMap<String,TreeMap<String,double[]>> ();
+            TreeMap<String,Integer> phaseIndex = new TreeMap<String,Integer> ();
+            try (BufferedReader reader = Files.newBufferedReader (path))
+            {
+                reader.readLine ();  // Skip header
+                String line;
+                while ((line = reader.readLine ()) != null)
+                {
+                    String[] pieces = line.split ("\t");
+                    if (pieces.length < 4) continue;
+                    String region = pieces[0];
+                    String part   = region;
+                    String phase  = "";
+                    int pos = region.lastIndexOf (' ');
+                    if (pos > 0)
+                    {
+                        part  = region.substring (0, pos);
+                        phase = region.substring (pos + 1);
+                    }
+                    double[] values = new double[2];
+                    try
+                    {
+                        values[0] = Double.parseDouble (pieces[1]);
+                        values[1] = Double.parseDouble (pieces[3]);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        continue;
+                    }
+                    TreeMap<String,double[]> p = entries.get (part);
+                    if (p == null)
+                    {
+                        p = new TreeMap<String,double[]> ();
+                        entries.put (part, p);
+                    }
+                    p.put (phase, values);
+                    phaseIndex.put (phase, 0);
+                }
+            }
+
+            phases.addAll (phaseIndex.keySet ());
+            for (int i = 0; i < phases.size (); i++) phaseIndex.put (phases.get (i), i);
+
+            partWidth = 10;
+            for (String part : entries.keySet ())
+            {
+                Row r = new Row ();
+                r.part   = part;
+                r.phases = new double[phases.size ()];
+                r.calls  = new long  [phases.size ()];
+                for (String phase : entries.get (part).keySet ())
+                {
+                    double[] values = entries.get (part).get (phase);
+                    int i = phaseIndex.get (phase);
+                    r.calls [i] = (long) values[0];
+                    r.phases[i] = values[1];
+                    r.self     += values[1];
+                }
+                rows.add (r);
+                partWidth = Math.max (partWidth, part.length () + 2);
+            }
+            Collections.sort (rows, new Comparator<Row> ()
+            {
+                public int compare (Row a, Row b)
+                {
+                    return Double.compare (b.self, a.self);
+                }
+            });
+        }
+
+        public int getRowCount ()
+        {
+            return rows.size ();
+        }
+
+        public int getColumnCount ()
+        {
+            return phases.size () + 2;
+        }
+
+        public String getColumnName (int column)
+        {
+            if (column == 0) return "Part";
+            if (column == 1) return "Self (s)";
+            return phases.get (column - 2);
+        }
+
+        public Object getValueAt (int row, int column)
+        {
+            Row r = rows.get (row);
+            if (column == 0) return r.part;
+            if (column == 1) return String.format ("%.6f", r.self);
+            int i = column - 2;
+            if (r.calls[i] == 0) return "";
+            return String.format ("%.6f", r.phases[i]);
+        }
+    }
+}
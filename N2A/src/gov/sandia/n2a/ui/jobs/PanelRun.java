@@ -17,6 +17,7 @@ import gov.sandia.n2a.host.Host;
 import gov.sandia.n2a.host.Remote;
 import gov.sandia.n2a.host.Host.CopyProgress;
 import gov.sandia.n2a.host.SshFileSystemProvider.SshDirectoryStream;
+import gov.sandia.n2a.plugins.extpoints.Backend;
 import gov.sandia.n2a.ui.Lay;
 import gov.sandia.n2a.ui.MainFrame;
 import gov.sandia.n2a.ui.eq.PanelModel;
@@ -114,6 +115,8 @@ public class PanelRun extends JPanel
     protected MDir                runs;  // Copied from AppData for convenience
 
     public static Map<String,NodeJob> jobNodes = new HashMap<String,NodeJob> ();  // for quick lookup of job node based on job key.
+    public static int                 pageSize = 1000;  // Number of older jobs added to the tree at a time. The rest wait behind a NodeMore until the user asks for them.
+    protected     NodeMore            more;             // Holds jobs not yet in the tree. Null if all jobs are shown.
 
     public static ImageIcon iconConnect      = ImageUtil.getImage ("connect.gif");
     public static ImageIcon iconPause        = ImageUtil.getImage ("pause-16.png");
@@ -160,6 +163,12 @@ public class PanelRun extends JPanel
                 if (newPath == null) return;
                 NodeBase newNode = (NodeBase) newPath.getLastPathComponent ();
                 if (newNode == null) return;
+                if (newNode instanceof NodeMore)
+                {
+                    NodeJob first = showMore ();
+                    if (first != null) tree.setSelectionPath (new TreePath (first.getPath ()));
+                    return;
+                }
                 if (newNode == displayNode) return;
                 displayNode = newNode;
 
@@ -252,14 +261,35 @@ public class PanelRun extends JPanel
                 // This also means that we don't really need to synchronize on
                 // "running", because no other thread will try to access it until we give
                 // the go-ahead.
+                // The job catalog supplies names and final status, so finished jobs never need their records opened here.
+                // Only the most recent page of jobs goes into the tree. Older ones wait behind a NodeMore.
+                JobCatalog catalog = JobCatalog.get ();
                 List<NodeJob> reverse = new ArrayList<NodeJob> (AppData.runs.size ());
-                for (MNode n : AppData.runs) reverse.add (new NodeJob (n, false));
+                List<NodeJob> active  = new ArrayList<NodeJob> ();
+                Set<String> keys = new HashSet<String> ();
+                for (MNode n : AppData.runs)
+                {
+                    NodeJob job = new NodeJob (n, false);
+                    JobCatalog.Entry entry = catalog.get (job.key);
+                    if (entry != null) job.restore (entry);
+                    if (entry == null  ||  ! entry.isFinished ()) active.add (job);  // Jobs restored as finished need no monitoring at all.
+                    reverse.add (job);
+                    keys.add (job.key);
+                }
+                catalog.retain (keys);
+                List<NodeJob> older = new ArrayList<NodeJob> ();
                 for (int i = reverse.size () - 1; i >= 0; i--)  // Reverse the order, so later dates come first.
                 {
                     NodeJob n = reverse.get (i);
-                    root.add (n);
+                    if (root.getChildCount () < pageSize) root.add (n);
+                    else                                  older.add (n);
                     jobNodes.put (n.key, n);
                 }
+                if (! older.isEmpty ())
+                {
+                    more = new NodeMore (older);
+                    root.add (more);
+                }
                 EventQueue.invokeLater (new Runnable ()
                 {
                     public void run ()
@@ -280,7 +310,7 @@ public class PanelRun extends JPanel
                 Host.restartAssignmentThread ();
                 for (Host h : Host.getHosts ()) h.restartMonitorThread ();
                 // Here, order doesn't matter so much, but we sill want to examine more recent jobs first.
-                for (int i = reverse.size () - 1; i >= 0; i--) reverse.get (i).distribute ();
+                for (int i = active.size () - 1; i >= 0; i--) active.get (i).distribute ();
             }
         };
         loadHostMonitors.setDaemon (true);
@@ -1093,6 +1123,17 @@ public class PanelRun extends JPanel
         if (jobNode.dateFinished != null) contents.append ("  finished: " + jobNode.dateFinished + "\n");
         contents.append ("\n");
 
+        if (job != null)
+        {
+            // Only check the local copy. The UI thread should not wait on a remote host.
+            MNode metrics = Backend.getMetrics (Host.getJobDir (Host.getLocalResourceDir (), job).resolve ("metrics"));
+            if (metrics != null)
+            {
+                appendMetrics (metrics, contents);
+                contents.append ("\n");
+            }
+        }
+
         if (job != null) 
         {
             appendMetadata (job, contents, "backend");
@@ -1111,10 +1152,9 @@ public class PanelRun extends JPanel
             MNode model;
             String key = job.get ("$inherit");
             Path localJobDir  = Host.getJobDir (Host.getLocalResourceDir (), job);
-            Path snapshotPath = localJobDir.resolve ("snapshot");
-            if (Files.exists (snapshotPath))
+            MNode snapshot    = NodeJob.getSnapshot (localJobDir);
+            if (snapshot != null)
             {
-                MNode snapshot = new MDoc (snapshotPath);
                 doc   = snapshot.child (key);
                 model = MPartSnapshot.from (key, snapshot);
             }
@@ -1204,6 +1244,27 @@ public class PanelRun extends JPanel
         if (child != null) result.append (name + "=" + child.get () + "\n");
     }
 
+    /**
+        Summarizes the latest record written by a running simulation. See Backend.getMetrics().
+    **/
+    public void appendMetrics (MNode metrics, StringBuilder result)
+    {
+        result.append ("Metrics: (" + Study.scaleTime (metrics.getOrDefault (0.0, "wall")) + " into run)\n");
+        result.append ("  $t     = " + metrics.get ("t") + "\n");
+        result.append ("  steps  = " + metrics.get ("steps") + " (" + metrics.get ("stepRate") + "/s)\n");
+        for (MNode e : metrics.childOrEmpty ("events"))
+        {
+            String key = e.key ();
+            result.append ("  " + key + " = " + e.get () + " (" + metrics.get ("eventRate", key) + "/s)\n");
+        }
+        for (MNode p : metrics.childOrEmpty ("live")) result.append ("  live " + p.key () + " = " + p.get () + "\n");
+        result.append ("  queueEvent   = " + metrics.get ("queueEvent")   + "\n");
+        result.append ("  queueConnect = " + metrics.get ("queueConnect") + "\n");
+        if (metrics.data ("heap")) result.append ("  heap = " + metrics.getOrDefault (0L, "heap") / 1048576 + " MB\n");
+        if (metrics.data ("rss"))  result.append ("  rss  = " + metrics.getOrDefault (0L, "rss")  / 1048576 + " MB\n");
+        for (MNode p : metrics.childOrEmpty ("phases")) result.append ("  phase " + p.key () + " = " + p.get () + " s\n");
+    }
+
     public void delete ()
     {
         delete (tree.getSelectionPaths ());
@@ -1220,6 +1281,30 @@ public class PanelRun extends JPanel
     {
         if (paths == null  ||  paths.length == 0) return;
 
+        // Jobs still held by the NodeMore (such as those of a study being deleted) must enter the tree first,
+        // since the rest of this process works in terms of tree rows.
+        List<TreePath> filtered = new ArrayList<TreePath> (paths.length);
+        for (TreePath path : paths)
+        {
+            Object o = path.getLastPathComponent ();
+            if (o instanceof NodeMore) continue;  // Not a job, so nothing to delete.
+            if (o instanceof NodeJob  &&  ((NodeJob) o).getParent () == null)
+            {
+                NodeJob job = (NodeJob) o;
+                reveal (job);
+                path = new TreePath (job.getPath ());
+            }
+            filtered.add (path);
+        }
+        if (filtered.isEmpty ()) return;
+        deleteRows (filtered.toArray (new TreePath[filtered.size ()]));
+    }
+
+    /**
+        Does the work of delete(TreePath[]), once every path is known to be a row in the tree.
+    **/
+    protected void deleteRows (TreePath[] paths)
+    {
         NodeBase nextSelection = null;  // The node that will be focused after all the deletes are done.
         TreePath leadSelection = tree.getLeadSelectionPath ();
         if (leadSelection != null) nextSelection = (NodeBase) leadSelection.getLastPathComponent ();
@@ -1380,7 +1465,11 @@ public class PanelRun extends JPanel
                 }
                 if (nodeBase == null)
                 {
-                    if (allQueued) break;  // done
+                    if (allQueued)  // done
+                    {
+                        SnapshotStore.collect ();  // Deleted jobs may have held the last reference to some snapshot entries.
+                        break;
+                    }
                     try {sleep (1000);}
                     catch (InterruptedException e) {}
                     continue;
@@ -1401,6 +1490,7 @@ public class PanelRun extends JPanel
                             env.deleteTree (remoteJobDir);
                         }
                         job.delete ();  // deletes local job directory
+                        JobCatalog.get ().remove (nodeJob.key);
                     }
                     else if (nodeBase instanceof NodeFile)
                     {
@@ -1449,6 +1539,49 @@ public class PanelRun extends JPanel
         }
     }
 
+    /**
+        Moves the next page of older jobs from the NodeMore into the tree.
+        Must be called on the EDT.
+        @return The first job added, or null if there was nothing to show.
+    **/
+    public NodeJob showMore ()
+    {
+        if (more == null) return null;
+        int index = root.getIndex (more);
+        int count = Math.min (pageSize, more.remaining ());
+        int[] indices = new int[count];
+        NodeJob result = null;
+        for (int i = 0; i < count; i++)
+        {
+            NodeJob job = more.jobs.get (more.next++);
+            if (result == null) result = job;
+            root.insert (job, index + i);
+            indices[i] = index + i;
+        }
+        model.nodesWereInserted (root, indices);
+        if (more.remaining () > 0)
+        {
+            model.nodeChanged (more);
+        }
+        else
+        {
+            model.removeNodeFromParent (more);
+            more = null;
+        }
+        return result;
+    }
+
+    /**
+        Ensures that the given job is in the tree, showing more pages if needed.
+        Must be called on the EDT.
+    **/
+    public void reveal (NodeJob job)
+    {
+        if (more == null  ||  job.getParent () != null) return;
+        if (more.jobs.indexOf (job) < more.next) return;  // Not held by the NodeMore, so it was probably deleted.
+        while (job.getParent () == null  &&  more != null) showMore ();
+    }
+
     /**
         Add a newly-created job to the list, and do all remaining setup to monitor it.
         This must be called on the EDT.
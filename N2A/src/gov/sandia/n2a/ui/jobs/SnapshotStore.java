@@ -0,0 +1,158 @@
+/*
+Copyright 2026 National Technology & Engineering Solutions of Sandia, LLC (NTESS).
+Under the terms of Contract DE-NA0003525 with NTESS,
+the U.S. Government retains certain rights in this software.
+*/
+
+package gov.sandia.n2a.ui.jobs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+import gov.sandia.n2a.db.MDoc;
+import gov.sandia.n2a.db.MNode;
+import gov.sandia.n2a.db.MVolatile;
+import gov.sandia.n2a.db.Schema;
+import gov.sandia.n2a.host.Host;
+
+/**
+    Content-addressed storage for model snapshots, shared by all jobs.
+    Each document in a snapshot is serialized on its own and stored once under the hash of its text.
+    A job dir then holds only a small "snapshotRefs" file that maps document keys to hashes.
+    Samples in a study share every inherited model, so those are written once rather than once per job.
+
+    Entries become garbage when the last job referring to them is deleted. See collect().
+**/
+public class SnapshotStore
+{
+    public static final long gracePeriod = 3600000;  // milliseconds. An entry touched more recently than this is never collected, because a job being launched right now may not have written its references yet.
+
+    public static Path getRoot ()
+    {
+        return Host.getLocalResourceDir ().resolve ("snapshots");
+    }
+
+    /**
+        Places each top-level document of snapshot in the store, and writes the references into the job dir.
+    **/
+    public static void save (MNode snapshot, Path localJobDir) throws IOException
+    {
+        Path root = getRoot ();
+        Files.createDirectories (root);
+        Schema schema = Schema.latest ();
+        MVolatile refs = new MVolatile ();
+        for (MNode doc : snapshot)
+        {
+            StringWriter text = new StringWriter ();
+            schema.write (text);
+            schema.write (doc, text, "");
+            byte[] bytes = text.toString ().getBytes (StandardCharsets.UTF_8);
+            String hash = hash (bytes);
+
+            Path entry = root.resolve (hash);
+            if (Files.exists (entry))
+            {
+                Files.setLastModifiedTime (entry, FileTime.fromMillis (System.currentTimeMillis ()));  // Renew grace period, so collect() won't race with this job.
+            }
+            else
+            {
+                // Write under a private name, then rename. Another job storing the same document at the same time produces identical content.
+                Path temp = root.resolve (hash + "." + Thread.currentThread ().getId () + ".tmp");
+                Files.write (temp, bytes);
+                Files.move (temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            refs.set (hash, doc.key ());
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter (localJobDir.resolve ("snapshotRefs")))
+        {
+            schema.writeAll (refs, writer);
+        }
+    }
+
+    /**
+        Reassembles the mini-repo for a job from its references.
+        A missing entry simply leaves out that document, in which case MPartSnapshot falls back on the models database.
+    **/
+    public static MNode load (Path refsPath)
+    {
+        Path root = getRoot ();
+        MVolatile result = new MVolatile ();
+        for (MNode r : new MDoc (refsPath))
+        {
+            try (BufferedReader reader = Files.newBufferedReader (root.resolve (r.get ())))
+            {
+                Schema.readAll (result, reader);
+            }
+            catch (IOException e) {}
+        }
+        return result;
+    }
+
+    /**
+        Deletes every entry that no job refers to.
+    **/
+    public static synchronized void collect ()
+    {
+        Path root = getRoot ();
+        if (! Files.isDirectory (root)) return;
+
+        Set<String> live = new HashSet<String> ();
+        try (DirectoryStream<Path> jobs = Files.newDirectoryStream (Host.getLocalResourceDir ().resolve ("jobs")))
+        {
+            for (Path jobDir : jobs)
+            {
+                Path refsPath = jobDir.resolve ("snapshotRefs");
+                if (! Files.exists (refsPath)) continue;
+                for (MNode r : new MDoc (refsPath)) live.add (r.get ());
+            }
+        }
+        catch (IOException e)
+        {
+            return;  // Without a full list of references, it is not safe to delete anything.
+        }
+
+        long cutoff = System.currentTimeMillis () - gracePeriod;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream (root))
+        {
+            for (Path entry : entries)
+            {
+                if (live.contains (entry.getFileName ().toString ())) continue;
+                try
+                {
+                    if (Files.getLastModifiedTime (entry).toMillis () > cutoff) continue;
+                    Files.delete (entry);
+                }
+                catch (IOException e) {}
+            }
+        }
+        catch (IOException e) {}
+    }
+
+    public static String hash (byte[] bytes)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance ("SHA-256").digest (bytes);
+            StringBuilder result = new StringBuilder (digest.length * 2);
+            for (byte b : digest) result.append (String.format ("%02x", b));
+            return result.toString ();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException (e);  // Every Java platform is required to provide SHA-256.
+        }
+    }
+}
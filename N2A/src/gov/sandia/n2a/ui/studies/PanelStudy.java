@@ -476,8 +476,9 @@ public class PanelStudy extends JPanel
 
             NodeJob node = displayStudy.getJob (index);
             if (node == null) return;
-            TreePath path = new TreePath (node.getPath ());
             PanelRun pr = PanelRun.instance;
+            pr.reveal (node);
+            TreePath path = new TreePath (node.getPath ());
             pr.tree.setSelectionPath (path);
             pr.tree.scrollPathToVisible (path);
 
@@ -6,6 +6,7 @@ the U.S. Government retains certain rights in this software.
 
 package gov.sandia.n2a.ui.studies;
 
+import gov.sandia.n2a.backend.internal.InternalBackend;
 import gov.sandia.n2a.backend.internal.Simulator;
 import gov.sandia.n2a.db.AppData;
 import gov.sandia.n2a.db.MDoc;
@@ -26,6 +27,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Base64;
@@ -48,6 +50,7 @@ public class Study
     protected int                 index;        // Of next sample that should be created. Always 1 greater than last completed sample. When 0, study is about to start. When equal to count, study has completed.
     protected List<String>        incomplete;
     protected int                 lastComplete; // Used to throttle status messages when running headless.
+    protected String              note;         // Appended to the status line. Explains how config.fork was handled. See fork().
     protected Random              random;       // random number generator used by iterator
     protected long                startTime;    // Of main loop in thread. Used to estimate time remaining.
     protected Map<String,Integer> jobMap;
@@ -323,6 +326,14 @@ public class Study
             MNode modelCopy = new MVolatile ("", inherit);
             modelCopy.merge (model);  // "model" is never touched. We only use "modelCopy".
 
+            String fork = fork (modelCopy, ps);
+            if (fork == null)  // Warm-up failed or study was paused while waiting for it.
+            {
+                thread = null;
+                showProgress ();
+                return;
+            }
+
             // Gather list of incomplete jobs.
             int jobCount = getJobCount ();
             if (incomplete == null)
@@ -403,10 +414,13 @@ public class Study
                     String jobKey = source.key () + "-" + index++;  // source key is generated the same way regular job keys. Unless the user launches a study and a regular job in the same second, they will never overlap.
                     NodeJob node;
                     synchronized (PanelRun.jobNodes) {node = PanelRun.jobNodes.get (jobKey);}
+                    boolean resume = false;
                     if (node != null)
                     {
                         if (node.complete <= 1) continue;  // Job already exists and is in good condition.
-                        node.reset ();
+                        // A job that was stopped after writing a checkpoint (for example, at the end of its time allocation) picks up where it left off.
+                        resume = Files.exists (Host.getJobDir (Host.getLocalResourceDir (), node.getSource ()).resolve ("checkpoint"));
+                        node.reset (resume);
                     }
 
                     // Launch job and maintain all records
@@ -415,6 +429,8 @@ public class Study
                     iterator.assign (modelCopy);  // Overlay current parameters. This can include $inherit itself, allowing iteration over model structure.
                     MNode collated = new MPart (modelCopy);  // TODO: the only reason to collate here is to ensure that host and backend are correctly identified if they are inherited. Need a more efficient method, such as lazy collation in MPart.
                     NodeJob.collectJobParameters (collated, inherit, job);
+                    if (resume) job.set ("", "resume");
+                    if (! fork.isEmpty ()) job.set (fork, "fork");
                     job.save ();
                     NodeJob.saveSnapshot (modelCopy, job);
 
@@ -465,6 +481,129 @@ public class Study
         }
     }
 
+    /**
+        Runs the common warm-up for a study that declares a fork time in config.fork.
+        The warm-up is an ordinary job (key ending in "-fork") made from the base model, without any study
+        variables applied. It simulates up to the fork time, then writes its complete state to the file "fork"
+        in its job dir. Each sample starts from that state with its own parameters, rather than repeating
+        the warm-up. Only the Internal backend on the local host can do this. The C runtime has no checkpoint,
+        so other backends and remote hosts run every sample in full, and say so in the status line.
+        Study variables are checked first. One that the warm-up has already consumed, such as an initial
+        condition, would silently have no effect, so the study refuses to start. See InternalBackend.checkFork().
+        If the warm-up already completed in an earlier session, its state is simply reused.
+        Must be called from StudyThread.
+        @return Path of the fork state, or empty string if the study does not fork, or null if the warm-up failed,
+        the study variables can't be applied after the fork, or the study was paused while waiting.
+    **/
+    public String fork (MNode modelCopy, PanelStudy ps)
+    {
+        note = null;
+        String forkTime = source.get ("config", "fork");
+        if (forkTime.isEmpty ()) return "";
+        MNode warmup = new MVolatile ("", modelCopy.key ());
+        warmup.merge (modelCopy);
+        warmup.set (forkTime, "$meta", "backend", "all", "fork");
+        MNode collated = new MPart (warmup);
+        if (! collated.getOrDefault ("internal", "$meta", "backend").equals ("internal")  ||  Host.get (collated.get ("$meta", "host")) != Host.get ())  // The fork state is found through the local job dir, and samples are handed a local path.
+        {
+            note = "(Fork ignored: only the Internal backend on the local host can start from a fork, so each sample runs in full.)";
+            return "";
+        }
+
+        MNode variables = source.childOrEmpty ("variables");
+        List<String[]> paths = new ArrayList<String[]> ();
+        variables.visit (new Visitor ()
+        {
+            public boolean visit (MNode n)
+            {
+                if (! n.data ()) return true;
+                if (n.child ("loss") == null) paths.add (n.keyPath (variables));  // The loss is an output, not an override.
+                return false;
+            }
+        });
+        List<String> warnings = new ArrayList<String> ();
+        String error;
+        try
+        {
+            error = InternalBackend.checkFork (new MPart (modelCopy), paths, warnings);
+        }
+        catch (Exception e)
+        {
+            error = "Could not check study variables against the fork: " + e.getMessage ();
+        }
+        if (error != null)
+        {
+            note = "(" + error + ")";
+            if (ps == null) System.err.println (error);  // headless
+            return null;
+        }
+        if (! warnings.isEmpty ())
+        {
+            note = "(" + String.join (" ", warnings) + ")";
+            if (ps == null) for (String w : warnings) System.err.println (w);
+        }
+
+        String jobKey = source.key () + "-fork";
+        final MDoc job = (MDoc) AppData.runs.childOrCreate (jobKey);
+        Path result = Host.getJobDir (Host.getLocalResourceDir (), job).resolve ("fork");
+        if (Files.exists (result)) return result.toString ();
+
+        NodeJob node;
+        synchronized (PanelRun.jobNodes) {node = PanelRun.jobNodes.get (jobKey);}
+        if (node == null  ||  node.complete > 1)  // Not started, or failed in an earlier session.
+        {
+            if (node != null) node.reset ();
+            NodeJob.collectJobParameters (collated, modelCopy.key (), job);
+            job.save ();
+            NodeJob.saveSnapshot (warmup, job);
+            if (ps == null)  // headless
+            {
+                if (node == null)
+                {
+                    node = new NodeJob (job, true);
+                    synchronized (PanelRun.jobNodes) {PanelRun.jobNodes.put (jobKey, node);}
+                }
+                Host.waitForHost (node);
+            }
+            else
+            {
+                NodeJob[] added = new NodeJob[1];  // The node is created on the UI thread, but we need it here to wait on.
+                try
+                {
+                    EventQueue.invokeAndWait (new Runnable ()
+                    {
+                        public void run ()
+                        {
+                            NodeJob node;
+                            synchronized (PanelRun.jobNodes) {node = PanelRun.jobNodes.get (jobKey);}
+                            if (node == null) node = PanelRun.instance.addNewRun (job, false);
+                            Host.waitForHost (node);
+                            added[0] = node;
+                        }
+                    });
+                }
+                catch (Exception e)
+                {
+                    return null;
+                }
+                node = added[0];
+            }
+        }
+
+        // Wait for warm-up to finish. The timeout only serves to notice when the study is paused.
+        while (! thread.stop)
+        {
+            try
+            {
+                if (node.waitForFinish (1000)) break;
+            }
+            catch (InterruptedException e) {}
+        }
+        if (Files.exists (result)) return result.toString ();
+        if (node.complete == 1) return "";  // Model ended before the fork time, so samples simply run in full.
+        return null;
+    }
+
     public void saveIterators ()
     {
         source.set (index, "barrier");
@@ -530,6 +669,7 @@ public class Study
                 else                      status += scaleTime (ETA) + " remaining";
             }
         }
+        if (note != null) status += " " + note;
         PanelStudy ps = PanelStudy.instance;
         if (ps == null)  // headless
         {